@@ -0,0 +1,71 @@
+package com.org.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.org.edi.util.tools.EdiSpec;
+import com.org.edi.util.tools.SchemaGen;
+import com.org.util.tools.mainjob.Constants;
+
+/**
+ * Generates the XSD, XSL, rule table, Avro schema and encoding plan of the 837 specification
+ * into a temporary directory laid out like the job's "InputFiles" directory.
+ *
+ * The specification is taken from the edi.spec system property, by default the 4010 file of
+ * the source tree relative to EDI_Data_Analysis.
+ *
+ * EDIReader consumes the SE, GE and IEA trailers as part of the envelope and emits no element for
+ * them, so the artifacts are generated from a copy of the specification in which these segments
+ * are optional; with them required, no record would convert to Avro. The native validator reads
+ * the specification unchanged.
+ */
+public final class Artifacts {
+	public static final String SPEC_PROPERTY = "edi.spec";
+	public static final String DEFAULT_SPEC = "src/com/org/edi/util/tools/837_04010.txt";
+	public static final String BASE_NAME = "ANSI_837_05010";
+
+	private static final Pattern REQUIRED_TRAILER = Pattern.compile("^(Segment\t[^\t]*\t(?:SE|GE|IEA)\t[^\t]*\t)Required\t");
+
+	private Artifacts() {
+		// restrict instantiation
+	}
+
+	public static File generate() throws Exception {
+		File spec = new File(System.getProperty(SPEC_PROPERTY, DEFAULT_SPEC));
+		if (!spec.isFile())
+			throw new IOException("Specification " + spec.getAbsolutePath() + " not found, set -D" + SPEC_PROPERTY);
+
+		File dir = Files.createTempDirectory("edi-artifacts").toFile();
+		Files.copy(spec.toPath(), new File(dir, Constants.SPEC_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		File generated = new File(dir, "generated-" + spec.getName());
+		Files.write(generated.toPath(), optionalTrailers(Files.readAllLines(spec.toPath(), StandardCharsets.ISO_8859_1)),
+				StandardCharsets.ISO_8859_1);
+		SchemaGen.generate(EdiSpec.load(generated.getPath()), generated.getPath(), new File(dir, BASE_NAME).getPath());
+		return dir;
+	}
+
+	private static List<String> optionalTrailers(List<String> rows) {
+		List<String> result = new ArrayList<String>(rows.size());
+		for (String row : rows)
+			result.add(REQUIRED_TRAILER.matcher(row).replaceFirst("$1Optional\t"));
+		return result;
+	}
+
+	public static byte[] read(File dir, String extension) throws IOException {
+		return Files.readAllBytes(new File(dir, BASE_NAME + extension).toPath());
+	}
+
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+}
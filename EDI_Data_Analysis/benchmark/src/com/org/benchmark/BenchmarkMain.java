@@ -0,0 +1,22 @@
+package com.org.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, e.g. "-p transactions=10 Pipeline", all
+ * of them when no pattern is given. The GC profiler is always on so every result comes with
+ * its allocation rate (gc.alloc.rate.norm is the number of bytes allocated per operation).
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class);
+		if (commandLine.getIncludes().isEmpty())
+			builder.include("com\\.org\\..*Benchmark");
+		new Runner(builder.build()).run();
+	}
+}
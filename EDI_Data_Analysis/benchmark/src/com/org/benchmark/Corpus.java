@@ -0,0 +1,164 @@
+package com.org.benchmark;
+
+import java.util.Random;
+
+/**
+ * Synthetic interchanges for the benchmarks. Every interchange holds one functional group with
+ * the given number of transactions; names, ids and amounts vary with a fixed seed so the same
+ * arguments always give the same text.
+ */
+public final class Corpus {
+	public static final String X12_837 = "837";
+	public static final String X12_835 = "835";
+	public static final String X12_850 = "850";
+	public static final String EDIFACT_ORDERS = "ORDERS";
+
+	private static final String[] NAMES = { "DOE", "ROE", "SMITH", "JONES", "STEIN", "BROWN", "LEE", "GARCIA" };
+	private static final String ISA = "ISA*00*          *00*          *ZZ*SUBMITTER      *ZZ*RECEIVER       *170315*1200*U*00401*000000001*0*P*:~";
+
+	private Corpus() {
+		// restrict instantiation
+	}
+
+	public static String interchange(String type, int transactions) {
+		Random random = new Random(transactions * 31 + type.hashCode());
+		if (EDIFACT_ORDERS.equals(type))
+			return edifact(transactions, random);
+
+		StringBuilder sb = new StringBuilder(transactions * 1024);
+		sb.append(ISA);
+		if (X12_837.equals(type))
+			sb.append("GS*HC*SUB*REC*20170315*1200*1*X*004010X098A1~");
+		else if (X12_835.equals(type))
+			sb.append("GS*HP*SUB*REC*20170315*1200*1*X*004010X091A1~");
+		else if (X12_850.equals(type))
+			sb.append("GS*PO*SUB*REC*20170315*1200*1*X*004010~");
+		else
+			throw new IllegalArgumentException("Unknown corpus type " + type);
+
+		for (int i = 1; i <= transactions; i++) {
+			String control = String.format("%04d", i);
+			int start = sb.length();
+			sb.append("ST*").append(type).append('*').append(control).append('~');
+			if (X12_837.equals(type))
+				claim(sb, i, random);
+			else if (X12_835.equals(type))
+				remittance(sb, i, random);
+			else
+				purchaseOrder(sb, i, random);
+			int segments = count(sb, start, '~') + 1;
+			sb.append("SE*").append(segments).append('*').append(control).append('~');
+		}
+		sb.append("GE*").append(transactions).append("*1~");
+		sb.append("IEA*1*000000001~");
+		return sb.toString();
+	}
+
+	private static void claim(StringBuilder sb, int i, Random random) {
+		int charge = 50 + random.nextInt(450);
+		sb.append("BHT*0019*00*").append(i).append("*20170315*1200*CH~");
+		sb.append("REF*87*004010X098A1~");
+		sb.append("NM1*41*2*SUBMITTER*****46*S1~");
+		sb.append("PER*IC*JOHN*TE*5551234~");
+		sb.append("NM1*40*2*RECEIVER*****46*R1~");
+		sb.append("HL*1**20*1~");
+		sb.append("NM1*85*2*BILLING PROVIDER*****24*").append(100000000 + random.nextInt(899999999)).append('~');
+		sb.append("N3*1 MAIN ST~");
+		sb.append("N4*CITY*ST*12345~");
+		sb.append("HL*2*1*22*1~");
+		sb.append("SBR*P*18*******CI~");
+		sb.append("NM1*IL*1*").append(name(random)).append('*').append(name(random)).append("****MI*ID").append(i).append('~');
+		sb.append("NM1*PR*2*PAYER*****PI*P1~");
+		sb.append("HL*3*2*23*0~");
+		sb.append("PAT*19~");
+		sb.append("NM1*QC*1*").append(name(random)).append('*').append(name(random)).append('~');
+		sb.append("N3*2 OAK ST~");
+		sb.append("N4*CITY*ST*12345~");
+		sb.append("DMG*D8*19700101*F~");
+		sb.append("CLM*C").append(i).append('*').append(charge).append("***11::1*Y*A*Y*Y~");
+		sb.append("DTP*431*D8*20170301~");
+		sb.append("HI*BK:4019~");
+		int lines = 1 + random.nextInt(4);
+		for (int line = 1; line <= lines; line++) {
+			sb.append("LX*").append(line).append('~');
+			sb.append("SV1*HC:992").append(10 + random.nextInt(5)).append('*').append(charge / lines).append("*UN*1***1~");
+			sb.append("DTP*472*D8*20170301~");
+		}
+	}
+
+	private static void remittance(StringBuilder sb, int i, Random random) {
+		int paid = 20 + random.nextInt(200);
+		sb.append("BPR*I*").append(paid).append("*C*CHK************20170316~");
+		sb.append("TRN*1*").append(100000 + i).append("*1386000134~");
+		sb.append("REF*EV*0055~");
+		sb.append("DTM*405*20170316~");
+		sb.append("N1*PR*PAYER~");
+		sb.append("N3*PO BOX 1~");
+		sb.append("N4*CITY*ST*12345~");
+		sb.append("N1*PE*").append(name(random)).append("*FI*111223333~");
+		sb.append("LX*1~");
+		int claims = 1 + random.nextInt(3);
+		for (int claim = 1; claim <= claims; claim++) {
+			sb.append("CLP*").append(i).append('-').append(claim).append("*1*").append(paid + 10).append('*').append(paid)
+					.append("**MC*").append(1000000000L + random.nextInt(899999999)).append('~');
+			sb.append("NM1*QC*1*").append(name(random)).append('*').append(name(random)).append("****MR*44444444~");
+			sb.append("DTM*232*20170315~");
+			sb.append("SVC*HC:99213*").append(paid + 10).append('*').append(paid).append("**1~");
+			sb.append("DTM*472*20170315~");
+			sb.append("CAS*CO*A2*10~");
+			sb.append("REF*6R*").append(123123000 + claim).append('~');
+		}
+	}
+
+	private static void purchaseOrder(StringBuilder sb, int i, Random random) {
+		sb.append("BEG*00*SA*PO").append(i).append("**20170315~");
+		sb.append("REF*DP*038~");
+		sb.append("DTM*002*20170401~");
+		sb.append("N1*ST*").append(name(random)).append(" STORE*92*").append(random.nextInt(1000)).append('~');
+		sb.append("N3*1 MAIN ST~");
+		sb.append("N4*CITY*ST*12345~");
+		int lines = 1 + random.nextInt(10);
+		for (int line = 1; line <= lines; line++) {
+			sb.append("PO1*").append(line).append('*').append(1 + random.nextInt(20)).append("*EA*")
+					.append(1 + random.nextInt(99)).append(".99**UP*0").append(12345678900L + random.nextInt(1000)).append('~');
+			sb.append("PID*F****ITEM ").append(line).append('~');
+		}
+		sb.append("CTT*").append(lines).append('~');
+	}
+
+	private static String edifact(int messages, Random random) {
+		StringBuilder sb = new StringBuilder(messages * 256);
+		sb.append("UNA:+.? '");
+		sb.append("UNB+UNOA:2+SENDER+RECEIVER+170315:1200+1'");
+		for (int i = 1; i <= messages; i++) {
+			int start = sb.length();
+			sb.append("UNH+").append(i).append("+ORDERS:D:96A:UN'");
+			sb.append("BGM+220+PO").append(i).append("+9'");
+			sb.append("DTM+137:20170315:102'");
+			sb.append("NAD+BY+").append(1000 + random.nextInt(9000)).append("::9'");
+			sb.append("NAD+SU+").append(1000 + random.nextInt(9000)).append("::9'");
+			int lines = 1 + random.nextInt(10);
+			for (int line = 1; line <= lines; line++) {
+				sb.append("LIN+").append(line).append("++").append(4000862141404L + random.nextInt(1000)).append(":EN'");
+				sb.append("QTY+21:").append(1 + random.nextInt(20)).append('\'');
+			}
+			sb.append("UNS+S'");
+			int segments = count(sb, start, '\'') + 1;
+			sb.append("UNT+").append(segments).append('+').append(i).append('\'');
+		}
+		sb.append("UNZ+").append(messages).append("+1'");
+		return sb.toString();
+	}
+
+	private static String name(Random random) {
+		return NAMES[random.nextInt(NAMES.length)];
+	}
+
+	private static int count(StringBuilder sb, int start, char terminator) {
+		int count = 0;
+		for (int i = start; i < sb.length(); i++)
+			if (sb.charAt(i) == terminator)
+				count++;
+		return count;
+	}
+}
@@ -0,0 +1,80 @@
+package com.org.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.berryworks.edireader.EDIReaderFactory;
+
+/**
+ * Full parse of an interchange into SAX events. The factory picks the ANSI reader for the X12
+ * corpora and the EDIFACT reader for ORDERS; the events go to a handler that only counts them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	@Param({ Corpus.X12_837, Corpus.X12_835, Corpus.X12_850, Corpus.EDIFACT_ORDERS })
+	public String type;
+
+	@Param({ "1", "10", "100" })
+	public int transactions;
+
+	private String text;
+
+	@Setup
+	public void setup() {
+		text = Corpus.interchange(type, transactions);
+	}
+
+	@Benchmark
+	public int parse(Blackhole blackhole) throws IOException, SAXException {
+		InputSource source = new InputSource(new StringReader(text));
+		XMLReader reader = EDIReaderFactory.createEDIReader(source);
+		CountingHandler handler = new CountingHandler(blackhole);
+		reader.setContentHandler(handler);
+		reader.parse(source);
+		return handler.elements;
+	}
+
+	private static class CountingHandler extends DefaultHandler {
+		private final Blackhole blackhole;
+		int elements;
+
+		CountingHandler(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			blackhole.consume(attributes);
+			elements++;
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			blackhole.consume(ch);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.org.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.Templates;
+
+import org.apache.avro.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.berryworks.edireader.EDIReader;
+import com.berryworks.edireader.demo.EDItoXML;
+import com.org.util.tools.mainjob.Stylizer;
+import com.org.util.tools.mainjob.XmlValidator;
+import com.org.util.tools.xmltoavro.Converter;
+
+/**
+ * The stages of CFMapper one by one for an 837 interchange: EDI to XML, styling with the
+ * generated stylesheet, XSD validation and conversion to an Avro datum. Each stage gets the
+ * output of the previous one, prepared once in setup. The legacy entry points are measured
+ * next to the compiled ones that replace them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+	@Param({ "1", "10", "100" })
+	public int transactions;
+
+	private File artifacts;
+	private String ediMsg;
+	private String xml;
+	private String styled;
+	private byte[] xsl;
+	private byte[] xsd;
+	private Templates templates;
+	private XmlValidator validator;
+	private Schema schema;
+
+	@Setup
+	public void setup() throws Exception {
+		artifacts = Artifacts.generate();
+		xsl = Artifacts.read(artifacts, ".xsl");
+		xsd = Artifacts.read(artifacts, ".xsd");
+		templates = Stylizer.compile(new ByteArrayInputStream(xsl));
+		validator = new XmlValidator(new ByteArrayInputStream(xsd));
+		schema = new Schema.Parser().parse(new String(Artifacts.read(artifacts, ".avsc"), "UTF-8"));
+
+		ediMsg = Corpus.interchange(Corpus.X12_837, transactions);
+		xml = EDItoXML.convertToXML(ediMsg);
+		styled = Stylizer.applyXMLStyle(templates, new EDIReader(), new InputSource(new StringReader(ediMsg)));
+	}
+
+	@TearDown
+	public void tearDown() {
+		Artifacts.delete(artifacts);
+	}
+
+	@Benchmark
+	public String convertToXML() throws Exception {
+		return EDItoXML.convertToXML(ediMsg);
+	}
+
+	@Benchmark
+	public String applyXMLStyle() {
+		return Stylizer.applyXMLStyle(new ByteArrayInputStream(xsl), xml);
+	}
+
+	@Benchmark
+	public String applyXMLStyleCompiled() throws Exception {
+		return Stylizer.applyXMLStyle(templates, new EDIReader(), new InputSource(new StringReader(ediMsg)));
+	}
+
+	// stops at the first error, the X12 dates and times are not valid xs:date and xs:time values
+	@Benchmark
+	public Object xmlValidate() throws IOException {
+		try {
+			XmlValidator.xmlValidate(new ByteArrayInputStream(xsd), new ByteArrayInputStream(styled.getBytes("UTF-8")));
+			return null;
+		} catch (SAXException e) {
+			return e;
+		}
+	}
+
+	@Benchmark
+	public XmlValidator.Errors xmlValidateCompiled() throws IOException {
+		return validator.validate(styled);
+	}
+
+	@Benchmark
+	public Object createDatum() {
+		return Converter.createDatum(schema, styled);
+	}
+}
@@ -0,0 +1,79 @@
+package com.org.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.berryworks.edireader.EDISyntaxException;
+import com.berryworks.edireader.tokenizer.EDITokenizer;
+import com.berryworks.edireader.tokenizer.EDITokenizerNIO;
+import com.berryworks.edireader.tokenizer.Tokenizer;
+
+/**
+ * Token throughput of the two tokenizers over a whole interchange, without any parser on top.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+	@Param({ Corpus.X12_837, Corpus.X12_835, Corpus.X12_850, Corpus.EDIFACT_ORDERS })
+	public String type;
+
+	@Param({ "1", "10", "100" })
+	public int transactions;
+
+	private String text;
+
+	@Setup
+	public void setup() {
+		text = Corpus.interchange(type, transactions);
+		// the UNA service string advice is read by the parser, not tokenized
+		if (text.startsWith("UNA"))
+			text = text.substring(9);
+	}
+
+	@Benchmark
+	public int editTokenizer(Blackhole blackhole) throws IOException, EDISyntaxException {
+		return tokenize(new EDITokenizer(new StringReader(text)), blackhole);
+	}
+
+	@Benchmark
+	public int editTokenizerNIO(Blackhole blackhole) throws IOException, EDISyntaxException {
+		return tokenize(new EDITokenizerNIO(new StringReader(text)), blackhole);
+	}
+
+	private int tokenize(Tokenizer tokenizer, Blackhole blackhole) throws IOException, EDISyntaxException {
+		if (Corpus.EDIFACT_ORDERS.equals(type)) {
+			tokenizer.setTerminator('\'');
+			tokenizer.setDelimiter('+');
+			tokenizer.setSubDelimiter(':');
+			tokenizer.setRelease('?');
+		} else {
+			tokenizer.setTerminator('~');
+			tokenizer.setDelimiter('*');
+			tokenizer.setSubDelimiter(':');
+		}
+		int tokens = 0;
+		while (tokenizer.hasMoreTokens()) {
+			blackhole.consume(tokenizer.nextToken().getType());
+			tokens++;
+		}
+		return tokens;
+	}
+}
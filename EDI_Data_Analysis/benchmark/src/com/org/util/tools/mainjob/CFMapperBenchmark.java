@@ -0,0 +1,168 @@
+package com.org.util.tools.mainjob;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.apache.avro.mapreduce.AvroKeyOutputFormat;
+import org.apache.avro.mapreduce.AvroMultipleOutputs;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.org.benchmark.Artifacts;
+import com.org.benchmark.Corpus;
+
+/**
+ * CFMapper.map end to end for one 837 interchange per call, in a task context built from the
+ * Hadoop task classes on the local file system. The named outputs are those of CFDriver and
+ * are written to a temporary directory; the map output itself is discarded. Setup checks that
+ * the record is converted and written to AvroData, so the Avro stages are part of the timing.
+ *
+ * The benchmark lives in the mapper's package because setup and cleanup are protected.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CFMapperBenchmark {
+	public static final String LEGACY = "legacy";
+	public static final String STREAMING = "streaming";
+	public static final String TABLE = "table";
+
+	@Param({ LEGACY, STREAMING, TABLE })
+	public String mode;
+
+	@Param({ "1", "10" })
+	public int transactions;
+
+	private File artifacts;
+	private File output;
+	private CFMapper mapper;
+	private Mapper<Text, Text, Text, Text>.Context context;
+	private Text key;
+	private Text value;
+
+	@Setup
+	public void setup() throws Exception {
+		artifacts = Artifacts.generate();
+		output = Files.createTempDirectory("edi-output").toFile();
+		Path outputPath = new Path(new File(output, "out").toURI());
+		Schema schema = new Schema.Parser().parse(new String(Artifacts.read(artifacts, ".avsc"), "UTF-8"));
+
+		Job job = Job.getInstance(new Configuration());
+		Configuration conf = job.getConfiguration();
+		conf.set("fs.defaultFS", "file:///");
+		conf.set("InputFiles", artifacts.getPath());
+		conf.setBoolean(Constants.STREAMING_TRANSFORM, STREAMING.equals(mode));
+		conf.setBoolean(Constants.TABLE_TRANSFORM, TABLE.equals(mode));
+		FileOutputFormat.setOutputPath(job, outputPath);
+		MultipleOutputs.addNamedOutput(job, "XMLTransformationFailed", TextOutputFormat.class, Text.class, Text.class);
+		MultipleOutputs.addNamedOutput(job, Constants.FAILURE_MANIFEST_OUTPUT, TextOutputFormat.class, NullWritable.class, Text.class);
+		MultipleOutputs.addNamedOutput(job, "XMLAvroConvFailed", TextOutputFormat.class, Text.class, Text.class);
+		MultipleOutputs.addNamedOutput(job, "XMLInvalid", TextOutputFormat.class, Text.class, Text.class);
+		MultipleOutputs.addNamedOutput(job, "EDISummary", TextOutputFormat.class, NullWritable.class, Text.class);
+		AvroMultipleOutputs.addNamedOutput(job, "AvroData", AvroKeyOutputFormat.class, schema);
+
+		TaskAttemptID attempt = new TaskAttemptID("benchmark", 1, TaskType.MAP, 0, 0);
+		conf.set(MRJobConfig.TASK_ATTEMPT_ID, attempt.toString());
+		FileOutputCommitter committer = new FileOutputCommitter(outputPath, new TaskAttemptContextImpl(conf, attempt));
+		MapContextImpl<Text, Text, Text, Text> mapContext = new MapContextImpl<Text, Text, Text, Text>(conf, attempt,
+				null, new DiscardingWriter(), committer, new CountingReporter(), null);
+		context = new WrappedMapper<Text, Text, Text, Text>().getMapContext(mapContext);
+
+		mapper = new CFMapper();
+		mapper.setup(context);
+		key = new Text("benchmark");
+		value = new Text(Corpus.interchange(Corpus.X12_837, transactions));
+
+		// a record that does not reach AvroData would only time a failure path
+		mapper.map(key, value, context);
+		for (CFMapper.ediCounters counter : new CFMapper.ediCounters[] { CFMapper.ediCounters.ediToXMLFailed,
+				CFMapper.ediCounters.xslTransformationFailed, CFMapper.ediCounters.xmlToAvroFailed })
+			if (context.getCounter(counter).getValue() != 0)
+				throw new IllegalStateException("The benchmark record does not convert to AvroData: " + counter);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		mapper.cleanup(context);
+		Artifacts.delete(artifacts);
+		Artifacts.delete(output);
+	}
+
+	@Benchmark
+	public void map() throws Exception {
+		mapper.map(key, value, context);
+	}
+
+	private static class DiscardingWriter extends RecordWriter<Text, Text> {
+		@Override
+		public void write(Text key, Text value) {
+		}
+
+		@Override
+		public void close(TaskAttemptContext context) {
+		}
+	}
+
+	private static class CountingReporter extends StatusReporter {
+		private final Counters counters = new Counters();
+
+		@Override
+		public Counter getCounter(Enum<?> name) {
+			return counters.findCounter(name);
+		}
+
+		@Override
+		public Counter getCounter(String group, String name) {
+			return counters.findCounter(group, name);
+		}
+
+		@Override
+		public void progress() {
+		}
+
+		@Override
+		public float getProgress() {
+			return 0;
+		}
+
+		@Override
+		public void setStatus(String status) {
+		}
+	}
+}
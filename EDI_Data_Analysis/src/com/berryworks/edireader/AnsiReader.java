@@ -385,7 +385,7 @@ public class AnsiReader extends StandardReader
       if (sType.equals("ST"))
       {
         docCount++;
-        parseDocument(token);
+        isolateDocument(token, "SE", "ST", "GE");
       }
       else if (sType.equals("GE"))
         break;
@@ -453,6 +453,8 @@ public class AnsiReader extends StandardReader
     if (version.length() > 6) version = version.substring(0, 6);
     String code = getGroupAttributes().getValue(getXMLTags().getStandardCode());
     PluginController pluginController = PluginController.create("ANSI", documentType, code, version, getTokenizer());
+    if (getMetrics() != null)
+      getMetrics().document(documentType);
     if (pluginController.isEnabled())
       getDocumentAttributes().addCDATA(getXMLTags().getName(), pluginController.getDocumentName());
     getDocumentAttributes().addCDATA(getXMLTags().getControl(), control = getTokenizer().nextSimpleValue());
@@ -486,7 +488,7 @@ public class AnsiReader extends StandardReader
          * </loop> to </l-XXX>
          */
     	 // endElement(getXMLTags().getLoopTag());
-    	  endElement(getXMLTags().getLoopPrefixTag() + ls.pop());
+    	  endLoop(ls);
     }
       
     int n;
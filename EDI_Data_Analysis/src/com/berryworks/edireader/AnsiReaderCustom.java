@@ -381,7 +381,7 @@ public class AnsiReaderCustom extends StandardReader {
 			String sType = token.getValue();
 			if (sType.equals("ST")) {
 				docCount++;
-				parseDocument(token);
+				isolateDocument(token, "SE", "ST", "GE");
 			} else if (sType.equals("GE"))
 				break;
 			else
@@ -460,6 +460,8 @@ public class AnsiReaderCustom extends StandardReader {
 		String code=groupStandardCode;
 		PluginController pluginController = PluginController.create("ANSI",
 				documentType, code, version, getTokenizer());
+		if (getMetrics() != null)
+			getMetrics().document(documentType);
 		if (pluginController.isEnabled())
 			/*getDocumentAttributes().addCDATA(getXMLTags().getName(),
 					pluginController.getDocumentName());*/
@@ -501,7 +503,7 @@ public class AnsiReaderCustom extends StandardReader {
 			 * and creating a loop in different way </loop> to </l-XXX>
 			 */
 			// endElement(getXMLTags().getLoopTag());
-			endElement(getXMLTags().getLoopPrefixTag() + ls.pop());
+			endLoop(ls);
 		}
 
 		int n;
@@ -114,6 +114,11 @@ public class DefaultXMLTags implements XMLTags
     return "package";
   }
 
+  public String getErrorTag()
+  {
+    return "error";
+  }
+
   public String getIdAttribute()
   {
     return "Id";
@@ -27,6 +27,7 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 
 import org.xml.sax.ContentHandler;
 import org.xml.sax.DTDHandler;
@@ -39,6 +40,7 @@ import org.xml.sax.SAXNotSupportedException;
 import org.xml.sax.XMLReader;
 
 import com.berryworks.edireader.error.EDISyntaxExceptionHandler;
+import com.berryworks.edireader.metrics.ParserMetrics;
 import com.berryworks.edireader.tokenizer.EDITokenizerNIO;
 import com.berryworks.edireader.tokenizer.Tokenizer;
 import com.berryworks.edireader.util.BranchingWriter;
@@ -53,6 +55,8 @@ public abstract class EDIAbstractReader implements XMLReader
 
   protected static final String BERRYWORKS_NAMESPACE = "http://www.berryworkssoftware.com/2008/edireader";
 
+  public static final int DEFAULT_DOCUMENT_WINDOW = 64;
+
   /**
    * The ContentHandler for this XMLReader
    */
@@ -163,6 +167,31 @@ public abstract class EDIAbstractReader implements XMLReader
 
   private TransactionCallback transactionCallback;
 
+  /**
+   * Collects throughput and timing metrics when not null.
+   */
+  private ParserMetrics metrics;
+
+  /**
+   * Parses the documents of an interchange in parallel when not null.
+   */
+  private ExecutorService documentExecutor;
+
+  /**
+   * Maximum number of documents parsed ahead of the SAX events being emitted.
+   */
+  private int documentWindow = DEFAULT_DOCUMENT_WINDOW;
+
+  /**
+   * Replaces a document having a syntax error with an error element and goes on with the next.
+   */
+  private boolean transactionIsolation;
+
+  /**
+   * Restricts the SAX events of each document to the loops, segments and elements declared.
+   */
+  private Projection projection;
+
   /**
    * Gets the character marking the boundary between segments
    *
@@ -310,6 +339,8 @@ public abstract class EDIAbstractReader implements XMLReader
   public void setTokenizer(Tokenizer t)
   {
     tokenizer = t;
+    if (t != null)
+      t.setMetrics(metrics);
     if (EDIReader.debug)
       trace("EDIAbstractReader.setTokenizer("
         + ((t == null) ? "null" : "non-null") + ")");
@@ -461,6 +492,93 @@ public abstract class EDIAbstractReader implements XMLReader
     this.transactionCallback = transactionCallback;
   }
 
+  public ParserMetrics getMetrics()
+  {
+    return metrics;
+  }
+
+  /**
+   * Turns on the collection of metrics by this reader and its tokenizer, or turns it off if
+   * metrics is null. Without metrics the parser does no timing at all.
+   *
+   * @param metrics ParserMetrics or null
+   */
+  public void setMetrics(ParserMetrics metrics)
+  {
+    this.metrics = metrics;
+    if (tokenizer != null)
+      tokenizer.setMetrics(metrics);
+  }
+
+  public ExecutorService getDocumentExecutor()
+  {
+    return documentExecutor;
+  }
+
+  /**
+   * Turns on parallel parsing of the documents within an interchange, or turns it off if
+   * executor is null. The documents are parsed by tasks submitted to the executor, and the SAX
+   * events are emitted in document order as if they had been parsed sequentially. Readers for
+   * standards that do not support parallel parsing ignore the executor; EdifactReader supports
+   * it for UNH/UNT messages.
+   *
+   * @param executor ExecutorService or null
+   */
+  public void setDocumentExecutor(ExecutorService executor)
+  {
+    documentExecutor = executor;
+  }
+
+  public int getDocumentWindow()
+  {
+    return documentWindow;
+  }
+
+  /**
+   * Sets how many documents may be parsed ahead of the SAX events being emitted, which bounds
+   * the memory used to hold their events.
+   *
+   * @param window number of documents
+   */
+  public void setDocumentWindow(int window)
+  {
+    documentWindow = window;
+  }
+
+  public boolean isTransactionIsolation()
+  {
+    return transactionIsolation;
+  }
+
+  /**
+   * Turns on the isolation of syntax errors at the level of a document: ST/SE in ANSI X12,
+   * UNH/UNT in EDIFACT. A document with an error is replaced by an error element giving the
+   * offsets of the document and the message of the error, and parsing resumes with the segment
+   * following it. Errors in the envelope segments still end the parse.
+   *
+   * @param isolation true to isolate errors
+   */
+  public void setTransactionIsolation(boolean isolation)
+  {
+    transactionIsolation = isolation;
+  }
+
+  public Projection getProjection()
+  {
+    return projection;
+  }
+
+  /**
+   * Sets the part of each ANSI X12 document to emit, or null for all of it. Segments outside
+   * the projection are passed over without tokenizing their elements.
+   *
+   * @param projection loops, segments and elements to emit
+   */
+  public void setProjection(Projection projection)
+  {
+    this.projection = projection;
+  }
+
   public EDISyntaxExceptionHandler getSyntaxExceptionHandler()
   {
     return syntaxExceptionHandler;
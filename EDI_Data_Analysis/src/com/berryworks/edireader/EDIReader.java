@@ -23,11 +23,13 @@ package com.berryworks.edireader;
 import java.io.IOException;
 
 import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
 import com.berryworks.edireader.error.ErrorMessages;
+import com.berryworks.edireader.metrics.ParserMetrics;
 
 /**
  * Reads and parses an EDI interchange in any of the supported EDI standards.
@@ -75,6 +77,28 @@ public class EDIReader extends EDIAbstractReader implements ErrorMessages
    * Parse an EDI interchange from the input source.
    */
   public void parse(InputSource source) throws SAXException, IOException
+  {
+    ParserMetrics metrics = getMetrics();
+    if (metrics == null)
+    {
+      parseSource(source);
+      return;
+    }
+
+    ContentHandler handler = getContentHandler();
+    setContentHandler(metrics.meter(handler));
+    long start = System.nanoTime();
+    try
+    {
+      parseSource(source);
+    } finally
+    {
+      setContentHandler(handler);
+      metrics.parsed(System.nanoTime() - start);
+    }
+  }
+
+  private void parseSource(InputSource source) throws SAXException, IOException
   {
 
     startXMLDocument();
@@ -99,6 +123,11 @@ public class EDIReader extends EDIAbstractReader implements ErrorMessages
         theReader.setContentHandler(getContentHandler());
         theReader.setSyntaxExceptionHandler(getSyntaxExceptionHandler());
         theReader.setNamespaceEnabled(isNamespaceEnabled());
+        theReader.setMetrics(getMetrics());
+        theReader.setDocumentExecutor(getDocumentExecutor());
+        theReader.setDocumentWindow(getDocumentWindow());
+        theReader.setTransactionIsolation(isTransactionIsolation());
+        theReader.setProjection(getProjection());
       }
       theReader.setXMLTags(xmlTags);
       theReader.parse(source);
@@ -122,10 +122,9 @@ public class EDIReaderFactory
       throw new RuntimeException("tokenizer.lookahead() returned null");
 
     // Get an appropriate parser, based on the first few characters
-    String asString = new String(buf);
-    EDIReader parser = ParserRegistry.get(asString);
+    EDIReader parser = ParserRegistry.get(buf, buf.length);
     if (parser == null)
-      throw new EDISyntaxException(ErrorMessages.NO_STANDARD_BEGINS_WITH + asString);
+      throw new EDISyntaxException(ErrorMessages.NO_STANDARD_BEGINS_WITH + new String(buf));
 
     if (debug)
       trace("parser constructed of type " + parser.getClass().getName());
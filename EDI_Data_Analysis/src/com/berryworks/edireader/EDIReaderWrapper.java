@@ -23,6 +23,7 @@ package com.berryworks.edireader;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 
 import org.xml.sax.ContentHandler;
 import org.xml.sax.DTDHandler;
@@ -34,6 +35,7 @@ import org.xml.sax.SAXNotRecognizedException;
 import org.xml.sax.SAXNotSupportedException;
 
 import com.berryworks.edireader.error.EDISyntaxExceptionHandler;
+import com.berryworks.edireader.metrics.ParserMetrics;
 import com.berryworks.edireader.tokenizer.Tokenizer;
 import com.berryworks.edireader.util.BranchingWriter;
 
@@ -178,6 +180,56 @@ public class EDIReaderWrapper extends EDIReader {
         wrappedEDIReader.setTransactionCallback(transactionCallback);
     }
 
+    @Override
+    public ParserMetrics getMetrics() {
+        return wrappedEDIReader.getMetrics();
+    }
+
+    @Override
+    public void setMetrics(ParserMetrics metrics) {
+        wrappedEDIReader.setMetrics(metrics);
+    }
+
+    @Override
+    public ExecutorService getDocumentExecutor() {
+        return wrappedEDIReader.getDocumentExecutor();
+    }
+
+    @Override
+    public void setDocumentExecutor(ExecutorService executor) {
+        wrappedEDIReader.setDocumentExecutor(executor);
+    }
+
+    @Override
+    public int getDocumentWindow() {
+        return wrappedEDIReader.getDocumentWindow();
+    }
+
+    @Override
+    public void setDocumentWindow(int window) {
+        wrappedEDIReader.setDocumentWindow(window);
+    }
+
+    @Override
+    public boolean isTransactionIsolation() {
+        return wrappedEDIReader.isTransactionIsolation();
+    }
+
+    @Override
+    public void setTransactionIsolation(boolean isolation) {
+        wrappedEDIReader.setTransactionIsolation(isolation);
+    }
+
+    @Override
+    public Projection getProjection() {
+        return wrappedEDIReader.getProjection();
+    }
+
+    @Override
+    public void setProjection(Projection projection) {
+        wrappedEDIReader.setProjection(projection);
+    }
+
     @Override
     public EDISyntaxExceptionHandler getSyntaxExceptionHandler() {
         return wrappedEDIReader.getSyntaxExceptionHandler();
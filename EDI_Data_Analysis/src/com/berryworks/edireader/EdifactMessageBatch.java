@@ -0,0 +1,310 @@
+/*
+ * Copyright 2005-2011 by BerryWorks Software, LLC. All rights reserved.
+ *
+ * This file is part of EDIReader. You may obtain a license for its use directly from
+ * BerryWorks Software, and you may also choose to use this software under the terms of the
+ * GPL version 3. Other products in the EDIReader software suite are available only by licensing
+ * with BerryWorks. Only those files bearing the GPL statement below are available under the GPL.
+ *
+ * EDIReader is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDIReader is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with EDIReader.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package com.berryworks.edireader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.xml.sax.SAXException;
+
+import com.berryworks.edireader.error.EDISyntaxExceptionHandler;
+import com.berryworks.edireader.error.ErrorMessages;
+import com.berryworks.edireader.error.RecoverableSyntaxException;
+import com.berryworks.edireader.metrics.ParserMetrics;
+import com.berryworks.edireader.tokenizer.EDITokenizerNIO;
+import com.berryworks.edireader.tokenizer.Token;
+import com.berryworks.edireader.tokenizer.Tokenizer;
+import com.berryworks.edireader.util.sax.SAXObjectRecorder;
+
+/**
+ * The messages of one EDIFACT interchange being parsed in parallel on behalf of an
+ * EdifactReader.
+ * <p/>
+ * The thread parsing the interchange only frames each message: it scans from UNH to the end of
+ * the matching UNT, recording the characters, and submits the text to the executor. A worker
+ * parses the text with an EdifactReader of its own, configured with the syntax characters of
+ * the interchange, and records the SAX events it produces. The results are replayed to the
+ * ContentHandler of the interchange strictly in the order of the messages, with startMessage
+ * called on the interchange reader so that acknowledgments are generated as they would be in
+ * sequential parsing. At most <code>window</code> messages are in flight at a time.
+ * <p/>
+ * Errors of a message are raised when the message is replayed, after the events it produced
+ * before the error. Their segment positions are relative to the UNH of the message. A message
+ * that cannot be framed, because the input ends before its UNT, produces no events at all.
+ * With transaction isolation, the offsets of the error element of a message are relative to
+ * its UNH as well.
+ */
+class EdifactMessageBatch
+{
+  private final EdifactReader reader;
+  private final ExecutorService executor;
+  private final int window;
+  private final Deque<Future<Message>> pending = new ArrayDeque<Future<Message>>();
+  private final EDISyntaxExceptionHandler syntaxExceptionHandler;
+
+  EdifactMessageBatch(EdifactReader reader, ExecutorService executor, int window)
+  {
+    this.reader = reader;
+    this.executor = executor;
+    this.window = Math.max(1, window);
+    final EDISyntaxExceptionHandler handler = reader.getSyntaxExceptionHandler();
+    if (handler == null)
+      syntaxExceptionHandler = null;
+    else
+      // the workers share the handler of the interchange one call at a time
+      syntaxExceptionHandler = new EDISyntaxExceptionHandler()
+      {
+        public boolean process(RecoverableSyntaxException syntaxException)
+        {
+          synchronized (handler)
+          {
+            return handler.process(syntaxException);
+          }
+        }
+      };
+  }
+
+  /**
+   * Frames the message whose UNH was just tokenized and submits it for parsing, first
+   * replaying the oldest message if the window is full.
+   *
+   * @throws SAXException for problem emitting SAX events
+   * @throws IOException  for problem reading EDI data
+   */
+  void submit() throws SAXException, IOException
+  {
+    String text;
+    try
+    {
+      text = frame();
+    } catch (SAXException e)
+    {
+      drain();
+      throw e;
+    } catch (IOException e)
+    {
+      drain();
+      throw e;
+    }
+    if (pending.size() >= window)
+      replay(pending.removeFirst());
+    pending.addLast(executor.submit(new MessageTask(text)));
+  }
+
+  /**
+   * Replays every message submitted so far, in order.
+   *
+   * @throws SAXException for problem emitting SAX events or an error in a message
+   * @throws IOException  for an error in a message
+   */
+  void drain() throws SAXException, IOException
+  {
+    while (!pending.isEmpty())
+      replay(pending.removeFirst());
+  }
+
+  /**
+   * Scans to the end of the UNT segment closing the current message and returns the text of the
+   * message, without counting the scan in the metrics of the interchange; the workers count the
+   * message when they parse it.
+   */
+  private String frame() throws SAXException, IOException
+  {
+    Tokenizer tokenizer = reader.getTokenizer();
+    tokenizer.setMetrics(null);
+    tokenizer.setRecorder(true);
+    try
+    {
+      while (true)
+      {
+        Token token = tokenizer.nextToken();
+        if (token.getType() == Token.TokenType.END_OF_DATA)
+          throw new EDISyntaxException(ErrorMessages.UNEXPECTED_EOF, tokenizer);
+        if (token.getType() != Token.TokenType.SEGMENT_START)
+          continue;
+        String segmentType = token.getValue();
+        if ("UNT".equals(segmentType))
+        {
+          tokenizer.skipSegment();
+          break;
+        }
+        if ("UNO".equals(segmentType))
+          skipObject(tokenizer);
+      }
+    } finally
+    {
+      tokenizer.setRecorder(false);
+      tokenizer.setMetrics(reader.getMetrics());
+    }
+    // the recording starts with the character that ended the UNH tag
+    return "UNH" + tokenizer.getRecording();
+  }
+
+  /**
+   * Skips the octets of the object introduced by a UNO, which are not tokenized.
+   */
+  private void skipObject(Tokenizer tokenizer) throws SAXException, IOException
+  {
+    List<String> lengthElement = tokenizer.nextCompositeElement();
+    if (lengthElement == null || lengthElement.isEmpty())
+      throw new EDISyntaxException(ErrorMessages.MISSING_UNO_LENGTH, tokenizer);
+    int length;
+    try
+    {
+      length = Integer.parseInt(lengthElement.get(0));
+    } catch (NumberFormatException e)
+    {
+      throw new EDISyntaxException("UNO object length must be numeric instead of " + lengthElement.get(0), tokenizer);
+    }
+    tokenizer.skipSegment();
+    tokenizer.getChars(length);
+  }
+
+  private void replay(Future<Message> future) throws SAXException, IOException
+  {
+    Message message;
+    try
+    {
+      message = future.get();
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      abandon();
+      throw new SAXException("Interrupted while waiting for an EDIFACT message to be parsed", e);
+    } catch (ExecutionException e)
+    {
+      abandon();
+      if (e.getCause() instanceof Error)
+        throw (Error) e.getCause();
+      throw new SAXException("Could not parse an EDIFACT message", e);
+    }
+
+    if (message.attributes != null)
+      reader.startMessage(message.attributes);
+    message.events.replay(reader.getContentHandler());
+    if (message.metrics != null && reader.getMetrics() != null)
+      reader.getMetrics().add(message.metrics);
+    if (message.syntaxException != null)
+      reader.setSyntaxException(message.syntaxException);
+
+    Exception failure = message.failure;
+    if (failure == null)
+      return;
+    abandon();
+    if (failure instanceof SAXException)
+      throw (SAXException) failure;
+    if (failure instanceof IOException)
+      throw (IOException) failure;
+    throw (RuntimeException) failure;
+  }
+
+  /**
+   * Gives up the messages not yet replayed after an error.
+   */
+  private void abandon()
+  {
+    while (!pending.isEmpty())
+      pending.removeFirst().cancel(false);
+  }
+
+  /**
+   * The outcome of parsing one message.
+   */
+  private static class Message
+  {
+    EDIAttributes attributes;
+    final SAXObjectRecorder events = new SAXObjectRecorder();
+    ParserMetrics metrics;
+    RecoverableSyntaxException syntaxException;
+    Exception failure;
+  }
+
+  private class MessageTask implements Callable<Message>
+  {
+    private final String text;
+
+    MessageTask(String text)
+    {
+      this.text = text;
+    }
+
+    public Message call()
+    {
+      Message message = new Message();
+      MessageReader messageReader = new MessageReader(message);
+      messageReader.setContentHandler(message.events);
+      messageReader.setXMLTags(reader.getXMLTags());
+      messageReader.setSyntaxExceptionHandler(syntaxExceptionHandler);
+      messageReader.setTransactionIsolation(reader.isTransactionIsolation());
+
+      Tokenizer tokenizer = new EDITokenizerNIO(new StringReader(text));
+      tokenizer.setDelimiter(reader.getDelimiter());
+      tokenizer.setSubDelimiter(reader.getSubDelimiter());
+      tokenizer.setRelease(reader.getRelease());
+      tokenizer.setRepetitionSeparator(reader.getRepetitionSeparator());
+      tokenizer.setTerminator(reader.getTerminator());
+      messageReader.setTokenizer(tokenizer);
+      messageReader.setDecimalMark(reader.getDecimalMark());
+
+      try
+      {
+        Token token = tokenizer.nextToken();
+        // the UNH tag was already counted by the interchange reader
+        if (reader.getMetrics() != null)
+          messageReader.setMetrics(message.metrics = new ParserMetrics());
+        if (!messageReader.isolateDocument(token, "UNT"))
+          // replaced by an error element, the message was never started
+          message.attributes = null;
+      } catch (Exception e)
+      {
+        message.failure = e;
+      }
+      message.syntaxException = messageReader.getSyntaxException();
+      return message;
+    }
+  }
+
+  /**
+   * Parses one message, keeping the attributes of its start aside for the interchange reader.
+   */
+  private static class MessageReader extends EdifactReader
+  {
+    private final Message message;
+
+    MessageReader(Message message)
+    {
+      this.message = message;
+    }
+
+    @Override
+    protected void startMessage(EDIAttributes attributes)
+    {
+      message.attributes = new EDIAttributes(attributes);
+    }
+  }
+}
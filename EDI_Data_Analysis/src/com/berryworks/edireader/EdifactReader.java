@@ -50,6 +50,11 @@ public class EdifactReader extends StandardReader
   protected boolean ungExplicit;
   protected boolean witnessedUNA;
 
+  /**
+   * Messages of the current interchange being parsed in parallel, or null.
+   */
+  private EdifactMessageBatch messageBatch;
+
   @Override
   protected Token recognizeBeginning() throws IOException, SAXException
   {
@@ -175,6 +180,9 @@ public class EdifactReader extends StandardReader
 
     startInterchange(getInterchangeAttributes());
 
+    messageBatch = getDocumentExecutor() == null ? null :
+      new EdifactMessageBatch(this, getDocumentExecutor(), getDocumentWindow());
+
     getInterchangeAttributes().clear();
     startElement(getXMLTags().getSenderTag(), getInterchangeAttributes());
     getInterchangeAttributes().addCDATA(getXMLTags().getIdAttribute(), fromId);
@@ -340,6 +348,7 @@ public class EdifactReader extends StandardReader
       token = getTokenizer().nextToken();
       if (token.getType() != Token.TokenType.SEGMENT_START)
       {
+        drainDocuments();
         throw new EDISyntaxException(
           "Invalid beginning of UNH|UNE segment",
           getTokenizer().getSegmentCount());
@@ -348,7 +357,7 @@ public class EdifactReader extends StandardReader
       if (sType.equals("UNH"))
       {
         docCount++;
-        parseDocument(token);
+        dispatchDocument(token);
       }
       else if (sType.equals("UNE"))
       {
@@ -356,11 +365,13 @@ public class EdifactReader extends StandardReader
       }
       else
       {
+        drainDocuments();
         throw new EDISyntaxException(
           "Expected UNE or UNH segment instead of " + sType,
           getTokenizer());
       }
     }
+    drainDocuments();
 
     int n;
     if (docCount != (n = getTokenizer().nextIntValue()))
@@ -400,6 +411,7 @@ public class EdifactReader extends StandardReader
     {
       if (token.getType() != Token.TokenType.SEGMENT_START)
       {
+        drainDocuments();
         throw new EDISyntaxException(
           "Invalid beginning of UNH|UNZ segment",
           getTokenizer().getSegmentCount());
@@ -408,7 +420,7 @@ public class EdifactReader extends StandardReader
       if (sType.equals("UNH"))
       {
         setGroupCount(1 + getGroupCount());
-        parseDocument(token);
+        dispatchDocument(token);
         token = getTokenizer().nextToken();
       }
       else if (sType.equals("UNZ"))
@@ -418,15 +430,45 @@ public class EdifactReader extends StandardReader
       }
       else
       {
+        drainDocuments();
         throw new EDISyntaxException(UNEXPECTED_SEGMENT_IN_CONTEXT,
           "UNH or UNZ", sType, getTokenizer());
       }
     }
+    drainDocuments();
 
     endElement(getXMLTags().getGroupTag());
     return (token);
   }
 
+  /**
+   * Parse a message, or hand it to the batch of messages being parsed in parallel.
+   *
+   * @param token parsed token that triggered call to this method
+   * @throws SAXException for problem emitting SAX events
+   * @throws IOException  for problem reading EDI data
+   */
+  protected void dispatchDocument(Token token) throws SAXException,
+    IOException
+  {
+    if (messageBatch == null)
+      isolateDocument(token, "UNT", "UNH", "UNE", "UNZ");
+    else
+      messageBatch.submit();
+  }
+
+  /**
+   * Emit the SAX events of all messages handed to the batch so far.
+   *
+   * @throws SAXException for problem emitting SAX events
+   * @throws IOException  for problem reading EDI data
+   */
+  protected void drainDocuments() throws SAXException, IOException
+  {
+    if (messageBatch != null)
+      messageBatch.drain();
+  }
+
   /**
    * Parse Edifact Message (UNH to UNT)
    *
@@ -505,6 +547,8 @@ public class EdifactReader extends StandardReader
     }
 
     PluginController pluginController = PluginController.create("EDIFACT", messageType, messageVersion, messageRelease, getTokenizer());
+    if (getMetrics() != null)
+      getMetrics().document(messageType);
     PluginController.setDebug(debug);
     if (pluginController.isEnabled())
       getDocumentAttributes().addCDATA(getXMLTags().getName(), pluginController.getDocumentName());
@@ -561,6 +605,16 @@ public class EdifactReader extends StandardReader
     return (retval);
   }
 
+  /**
+   * Projections apply to ANSI X12 only: the loops of a message are closed without their
+   * names, so a loop left out cannot be told from one that was emitted.
+   */
+  @Override
+  protected Projection documentProjection()
+  {
+    return null;
+  }
+
   protected void parseUNOUNPSequence() throws SAXException, IOException
   {
     if (debug)
@@ -653,255 +707,25 @@ public class EdifactReader extends StandardReader
   @Override
   public void preview() throws EDISyntaxException, IOException
   {
-    char[] buf = getTokenizer().lookahead(128);
-
-    if (!(buf[0] == 'U' && buf[1] == 'N'))
-    {
-      throw new EDISyntaxException(
-        "EDIFACT interchange must begin with UN");
-    }
-
     if (isPreviewed())
     {
       throw new EDISyntaxException(
         "Internal error: EDIFACT interchange previewed more than once");
     }
 
-    // Now we establish subDelimiter, delimiter, release, and terminator.
-    // If there is a UNA segment, we get the values from that. If there
-    // is no UNA, then we look to the UNB and use the defaults associated
-    // with the Syntax Code found there. However, if the release char
-    // in a UNA is space, then it means "not specified" and that there
-    // is no release character at all (i.e., no release character
-    // processing for this interchange). This is not the only
-    // reasonable interpretation of the EDIFACT standards, but
-    // one that is commonly used.
-    //
-    // So our approach will be to react to a UNA if one is there and
-    // note which of the 4 attributes are established. If one or more
-    // of the 4 is not established, then and only then do we shift the
-    // buffer and look at the UNB to establish those attributes not
-    // yet established.
-    boolean subDelimiterDetermined = false;
-    boolean delimiterDetermined = false;
-    boolean releaseDetermined = false;
-    boolean decimalMarkDetermined = false;
-    boolean terminatorDetermined = false;
-    boolean terminatorSuffixDetermined = false;
-
-    setTerminatorSuffix("");
-
-    if (buf[2] == 'A')
-    {
-
-      // UNA......
-      // 012345678
-
-      setSubDelimiter(buf[3]);
-      subDelimiterDetermined = true;
-      setDelimiter(buf[4]);
-      delimiterDetermined = true;
-      setDecimalMark(buf[5]);
-      decimalMarkDetermined = true;
-
-      if (buf[6] == ' ')
-      {
-        // no release processing
-        setRelease(-1);
-      }
-      else
-      {
-        setRelease(buf[6]);
-      }
-      releaseDetermined = true;
-
-      if (buf[7] == ' ')
-      {
-        // no repetition character specified
-        setRepetitionSeparator('\000');
-      }
-      else
-      {
-        setRepetitionSeparator(buf[7]);
-      }
-      setTerminator(buf[8]);
-
-      terminatorDetermined = true;
-
-      terminatorSuffixDetermined = shiftUNBoverUNA(buf);
-    }
-
-    if (releaseDetermined && subDelimiterDetermined && delimiterDetermined
-      && terminatorDetermined && terminatorSuffixDetermined)
-    {
-      // We have everything we need; don't bother looking at UNB.
-    }
-    else
-    {
-      previewUNB(buf, delimiterDetermined, subDelimiterDetermined,
-        decimalMarkDetermined, releaseDetermined,
-        terminatorDetermined, terminatorSuffixDetermined);
-    }
+    // Establish subDelimiter, delimiter, release, terminator and the rest
+    // from a UNA if there is one, and from the defaults of the Syntax Code
+    // in the UNB for anything the UNA leaves undetermined. If the release
+    // char in a UNA is space, then it means "not specified" and that there
+    // is no release character at all (i.e., no release character processing
+    // for this interchange). This is not the only reasonable interpretation
+    // of the EDIFACT standards, but one that is commonly used.
+    SyntaxDetector detector = SyntaxDetector.getInstance();
+    detector.detect(getTokenizer());
+    detector.applyTo(this);
     setPreviewed(true);
   }
 
-  /**
-   * Shift the buffer to look at the UNB. This is a little tricky because we
-   * don't know exactly how many bytes to shift. We need to find the first U
-   * soon after the end of the UNA segment. Remember, there might be
-   * whitespace chars between the terminator and the UNB. Take note of this
-   * whitespace, saving it as a terminatorSuffix, so that a segment could be
-   * generated with matching whitespace conventions.
-   *
-   * @param buf buffer containing chars to be shifted
-   * @return true if a terminator suffix was recognized
-   */
-  private boolean shiftUNBoverUNA(char[] buf)
-  {
-    boolean terminatorSuffixDetermined = false;
-    int nShift = 9;
-    for (int j = 9; j < 14; j++)
-    {
-      // buf[9] is the 1st char after UNA terminator
-      if (Character.isLetter(buf[j]))
-      {
-        nShift = j;
-        break;
-      }
-      setTerminatorSuffix(getTerminatorSuffix() + buf[j]);
-      // trace("...appended buf[" + j + "] to suffix");
-      terminatorSuffixDetermined = true;
-    }
-    //noinspection ManualArrayCopy
-    for (int j = 0; j < buf.length - nShift; j++)
-    {
-      buf[j] = buf[j + nShift];
-    }
-    // trace("Shifted buffer " + nShift + " chars to examine UNB");
-    return terminatorSuffixDetermined;
-  }
-
-  private void previewUNB(char[] buf, boolean delimiterDetermined,
-                          boolean subDelimiterDetermined, boolean decimalMarkDetermined, boolean releaseDetermined,
-                          boolean terminatorDetermined, boolean terminatorSuffixDetermined)
-    throws EDISyntaxException
-  {
-
-    // UNB+UNOA...
-    // 01234567
-
-    if (buf[2] != 'B')
-      throw new EDISyntaxException(
-        "Required UNB segment not found in EDIFACT interchange");
-
-    switch (buf[7])
-    {
-
-      case 'B':
-        if (!delimiterDetermined && buf[3] == '+')
-        {
-          // Strange data. It seems that there was no UNA to determine the syntax characters, and
-          // the UNB segment looked like UNB:UNOB+....
-          // The B in UNOB says that the syntax characters are supposed to be hex !D, 1F, and 1C,
-          // but actual delimiter appears to be a +. Which one should we believe?
-          // Let's believe the actual data for the delimiter, and guess that if the delimiter is a +
-          // then the other two will be the values that traditionally go with a +. We achieve this
-          // by simply falling through this case.
-        }
-        else
-        {
-
-          if (!delimiterDetermined)
-          {
-            setDelimiter('\u001D');
-            delimiterDetermined = true;
-          }
-
-          if (!subDelimiterDetermined)
-          {
-            setSubDelimiter('\u001F');
-            subDelimiterDetermined = true;
-          }
-
-          if (!terminatorDetermined)
-          {
-            setTerminator('\u001C');
-            terminatorDetermined = true;
-          }
-
-          setRelease(-1);
-          releaseDetermined = true;
-
-          setRepetitionSeparator('\u0019');
-        }
-        // Deliberately fall into the sequence below
-      case 'A':
-      case 'C':
-      case 'D':
-      case 'E':
-      case 'F':
-      case 'G':
-      case 'H':
-      case 'I':
-      case 'J':
-      case 'K':
-        if (!delimiterDetermined)
-          setDelimiter('+');
-
-        if (buf[3] != getDelimiter())
-          throw new EDISyntaxException(
-            "Expected data element separator after UNB segment tag");
-
-        if (!terminatorDetermined)
-          setTerminator('\'');
-
-        if (!subDelimiterDetermined)
-          setSubDelimiter(':');
-
-        if (!decimalMarkDetermined)
-          setDecimalMark('.');
-
-        if (!releaseDetermined)
-          setRelease('?');
-
-        break;
-
-      default:
-        throw new EDISyntaxException(
-          "Unknown Syntax Identifier in UNB segment: "
-            + new String(buf, 4, 4));
-    }
-
-    if (!terminatorSuffixDetermined)
-      // We still have not observed a terminator suffix
-      // following the first terminator in the interchange.
-      // Therefore, we must scan the buffer until we see the
-      // segment terminator, and then note suffix characters
-      // following.
-      setTerminatorSuffix(scanForSuffix(buf, 3));
-  }
-
-  protected String scanForSuffix(char[] buffer, int index)
-  {
-    StringBuilder suffix = new StringBuilder("");
-    for (int i = index; i < buffer.length; i++)
-    {
-      if (buffer[i] == getTerminator())
-      {
-        for (int j = 1; j < 3; j++)
-        {
-          i++;
-          if (i < buffer.length && !Character.isLetter(buffer[i]))
-          {
-            suffix.append(buffer[i]);
-          }
-        }
-        break;
-      }
-    }
-    return suffix.toString();
-  }
-
   public boolean isUNA()
   {
     return witnessedUNA;
@@ -4,7 +4,15 @@ import java.util.ArrayList;
 
 public class LoopStack {
 
-	public static LoopStack ls = null;
+	// one stack per thread, so that documents may be parsed in parallel
+	private static final ThreadLocal<LoopStack> stacks = new ThreadLocal<LoopStack>() {
+		@Override
+		protected LoopStack initialValue() {
+			LoopStack ls = new LoopStack();
+			ls.push("root");
+			return ls;
+		}
+	};
 	private ArrayList<String> lsLis = new ArrayList<String>();
 
 	private LoopStack() {
@@ -12,11 +20,7 @@ public class LoopStack {
 	}
 
 	public static LoopStack getLoopStack() {
-		if (ls == null) {
-			ls = new LoopStack();
-			ls.push("root");
-		}
-		return ls;
+		return stacks.get();
 	}
 
 	public void push(String str) {
@@ -36,4 +40,17 @@ public class LoopStack {
 	public ArrayList<String> getLoop() {
 		return lsLis;
 	}
+
+	public int size() {
+		return lsLis.size();
+	}
+
+	/**
+	 * Pops loops until only size remain, dropping the loops of a document
+	 * abandoned part way.
+	 */
+	public void truncate(int size) {
+		while (lsLis.size() > size)
+			lsLis.remove(lsLis.size() - 1);
+	}
 }
@@ -20,9 +20,6 @@
 
 package com.berryworks.edireader;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Data structure that associates leading character sequences with specific parser implementations.
  * When an EDI or EDI-like stream of data is to be parsed without pre-knowledge of which particular
@@ -41,13 +38,16 @@ import java.util.Map;
  * parser along with the leading data characters which signal the instance of an interchange of that format.
  * In this way, the EDIReader framework can be extended to parse previously unsupported data formats in the same
  * way that it supports X12 and EDIFACT.
+ * <p/>
+ * The leading character sequences are kept in a trie, so that selecting a parser walks the first
+ * few characters once without creating Strings. Registered class names are resolved once; a
+ * registered class that is not in the classpath is remembered as unavailable rather than looked
+ * up again for every interchange.
  */
 public class ParserRegistry
 {
 
-  private static final Map<String, Class> builtinClass = new HashMap<String, Class>();
-  private static final Map<String, String>
-    registeredClassNames = new HashMap<String, String>();
+  private static final Node root = new Node('\000');
 
   static
   {
@@ -56,17 +56,17 @@ public class ParserRegistry
 
   private ParserRegistry()
   {
-    builtinClass.put("ISA", AnsiReaderCustom.class);
-    builtinClass.put("UNA", EdifactReaderWithCONTRL.class);
-    builtinClass.put("UNB", EdifactReaderWithCONTRL.class);
-    builtinClass.put("UNH", UNHReader.class);
-    registeredClassNames.put("UNH",
+    builtin("ISA", AnsiReaderCustom.class);
+    builtin("UNA", EdifactReaderWithCONTRL.class);
+    builtin("UNB", EdifactReaderWithCONTRL.class);
+    builtin("UNH", UNHReader.class);
+    register("UNH",
       "com.berryworks.edireader.amadeus.AmadeusReader");
-    registeredClassNames.put("MSH",
+    register("MSH",
       "com.berryworks.edireader.hl7.HL7Reader");
-    registeredClassNames.put("1",
+    register("1",
       "com.berryworks.edireader.ach.ACHReader");
-    registeredClassNames.put("AA0",
+    register("AA0",
       "com.berryworks.edireader.nsf.NSFReader");
   }
 
@@ -85,53 +85,41 @@ public class ParserRegistry
 
   public static EDIReader get(String firstChars)
   {
-    EDIReader result = null;
-    Class parserClass;
+    return get(firstChars.toCharArray(), firstChars.length());
+  }
 
-    // See if a suitable registered class name is recognized by these
-    // firstChars
-    String name = (String) getMatch(firstChars, registeredClassNames);
-    if (name != null)
+  /**
+   * Equivalent to get(String), taking the first chars of data from a char array.
+   *
+   * @param firstChars of data to be parsed
+   * @param length     number of chars of data in firstChars
+   * @return subclass of EDIReader that knows how to parse the data, or null if no parser is available
+   */
+  public static EDIReader get(char[] firstChars, int length)
+  {
+    // Find the longest registered and builtin matches for these firstChars
+    Node registered = null;
+    Node builtin = null;
+    Node node = root;
+    for (int i = 0; i < length && (node = node.child(firstChars[i])) != null; i++)
     {
-      try
-      {
-        parserClass = Class.forName(name);
-        result = (EDIReader) parserClass.newInstance();
-      } catch (Exception e)
-      {
-        // ignore it
-      }
+      if (node.registration != null)
+        registered = node;
+      if (node.builtinClass != null)
+        builtin = node;
     }
 
+    EDIReader result = null;
+    if (registered != null)
+      result = newInstance(registered.registration);
+
     // If not, see if there is a builtin class that matches
-    if (result == null)
-    {
-      parserClass = (Class) getMatch(firstChars, builtinClass);
-      try
-      {
-        result = (EDIReader) parserClass.newInstance();
-      } catch (Exception e)
-      {
-        // ignore it
-      }
-    }
+    if (result == null && builtin != null)
+      result = newInstance(builtin.builtinClass);
 
     // If still nothing, return the "catch all" parser if there is one
-    if (result == null)
-    {
-      name = registeredClassNames.get("");
-      if (name != null)
-      {
-        try
-        {
-          parserClass = Class.forName(name);
-          result = (EDIReader) parserClass.newInstance();
-        } catch (Exception e)
-        {
-          // ignore it
-        }
-      }
-    }
+    if (result == null && root.registration != null)
+      result = newInstance(root.registration);
 
     return result;
   }
@@ -143,20 +131,105 @@ public class ParserRegistry
    * @param firstChars of data to be parsed
    * @param className  fully qualified classname of an EDIReader subclass
    */
-  public static void register(String firstChars, String className)
+  public static synchronized void register(String firstChars, String className)
+  {
+    add(firstChars).registration = new Registration(className);
+  }
+
+  private static synchronized void builtin(String firstChars, Class parserClass)
+  {
+    add(firstChars).builtinClass = parserClass;
+  }
+
+  private static Node add(String firstChars)
   {
-    registeredClassNames.put(firstChars, className);
+    Node node = root;
+    for (int i = 0; i < firstChars.length(); i++)
+      node = node.add(firstChars.charAt(i));
+    return node;
   }
 
-  private static Object getMatch(String firstChars, Map map)
+  private static EDIReader newInstance(Registration registration)
   {
-    Object result = null;
-    for (int n = firstChars.length(); result == null && n > 0; firstChars = firstChars.substring(0, --n))
+    Class parserClass = registration.parserClass;
+    if (parserClass == null)
     {
-      result = map.get(firstChars);
+      if (registration.unavailable)
+        return null;
+      try
+      {
+        parserClass = Class.forName(registration.className);
+        registration.parserClass = parserClass;
+      } catch (Exception e)
+      {
+        // remember it, so that it is not looked up for every interchange
+        registration.unavailable = true;
+        return null;
+      }
     }
+    return newInstance(parserClass);
+  }
 
-    return result;
+  private static EDIReader newInstance(Class parserClass)
+  {
+    try
+    {
+      return (EDIReader) parserClass.newInstance();
+    } catch (Exception e)
+    {
+      // ignore it
+      return null;
+    }
+  }
+
+  /**
+   * A node of the trie, reached by the char key from its parent. Children are replaced rather
+   * than modified when a parser is registered, so lookups need no locking.
+   */
+  private static final class Node
+  {
+    private final char key;
+    private volatile Node[] children = new Node[0];
+    private volatile Class builtinClass;
+    private volatile Registration registration;
+
+    Node(char key)
+    {
+      this.key = key;
+    }
+
+    Node child(char c)
+    {
+      for (Node child : children)
+        if (child.key == c)
+          return child;
+      return null;
+    }
+
+    Node add(char c)
+    {
+      Node child = child(c);
+      if (child == null)
+      {
+        Node[] grown = new Node[children.length + 1];
+        System.arraycopy(children, 0, grown, 0, children.length);
+        grown[children.length] = child = new Node(c);
+        children = grown;
+      }
+      return child;
+    }
+  }
+
+  private static final class Registration
+  {
+    private final String className;
+    private volatile Class parserClass;
+    private volatile boolean unavailable;
+
+    Registration(String className)
+    {
+      this.className = className;
+    }
   }
 
 }
@@ -166,6 +166,16 @@ public abstract class Plugin
     return documentName;
   }
 
+  /**
+   * Get the loop descriptors that define the loop structure of the document
+   *
+   * @return The loops value, possibly null
+   */
+  public LoopDescriptor[] getLoopDescriptors()
+  {
+    return loops;
+  }
+
   /**
    * Query the plugin about a loop that starts with a designated segment type,
    * given that you are already within a particular loop.
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2005-2011 by BerryWorks Software, LLC. All rights reserved.
+ *
+ * This file is part of EDIReader. You may obtain a license for its use directly from
+ * BerryWorks Software, and you may also choose to use this software under the terms of the
+ * GPL version 3. Other products in the EDIReader software suite are available only by licensing
+ * with BerryWorks. Only those files bearing the GPL statement below are available under the GPL.
+ *
+ * EDIReader is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDIReader is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with EDIReader.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package com.berryworks.edireader;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Declares the part of each ANSI X12 document a caller needs, so that EDIReader emits the
+ * SAX events of that part only.
+ * <p/>
+ * A projection is a list of rules, each naming a segment, optionally the loop path it must be
+ * found in and optionally the element positions to keep. A loop path is matched against the
+ * innermost loops of the LoopStack: 2010BA matches a segment directly within loop 2010BA, and
+ * 2000B/2010BA one within a 2010BA that is itself within 2000B. A segment of * stands for any
+ * segment of the loop, and a rule without a loop path matches in any loop. For example
+ * <pre>
+ *   2010BA/NM1:3,4,9;2300/CLM;2300/*
+ * </pre>
+ * keeps the name and id elements of the subscriber NM1 and everything in the claim loop.
+ * <p/>
+ * Segments matched by no rule are passed over by the tokenizer without building the values of
+ * their elements, and a loop is emitted only once a segment within it is, so the documents keep
+ * their transaction element and the loops leading to projected segments and nothing else. The
+ * segment count of SE is still checked against all segments.
+ */
+public class Projection
+{
+  public static final String ANY = "*";
+
+  private final Map<String, List<Rule>> rules = new HashMap<String, List<Rule>>();
+
+  /**
+   * Adds a rule.
+   *
+   * @param loopPath loops separated by /, innermost last, or null for any loop
+   * @param segment  segment tag, or * for all segments
+   * @param elements 1-origin element positions to keep, none for all of them
+   * @return this projection
+   */
+  public Projection include(String loopPath, String segment, int... elements)
+  {
+    String[] loops = loopPath == null || loopPath.length() == 0 || ANY.equals(loopPath)
+      ? new String[0] : loopPath.split("/");
+    BitSet kept = null;
+    if (elements.length > 0)
+    {
+      kept = new BitSet();
+      for (int element : elements)
+        kept.set(element);
+    }
+    List<Rule> list = rules.get(segment);
+    if (list == null)
+      rules.put(segment, list = new ArrayList<Rule>());
+    list.add(new Rule(loops, kept));
+    return this;
+  }
+
+  /**
+   * Creates a projection from rules separated by ; each written as
+   * [loopPath/]segment[:element,element...].
+   *
+   * @param spec the rules
+   * @return projection
+   */
+  public static Projection parse(String spec)
+  {
+    Projection projection = new Projection();
+    for (String rule : spec.split(";"))
+    {
+      rule = rule.trim();
+      if (rule.length() == 0)
+        continue;
+      int[] elements = new int[0];
+      int colon = rule.indexOf(':');
+      if (colon >= 0)
+      {
+        String[] positions = rule.substring(colon + 1).split(",");
+        elements = new int[positions.length];
+        for (int i = 0; i < positions.length; i++)
+          elements[i] = Integer.parseInt(positions[i].trim());
+        rule = rule.substring(0, colon);
+      }
+      int slash = rule.lastIndexOf('/');
+      projection.include(slash < 0 ? null : rule.substring(0, slash), rule.substring(slash + 1), elements);
+    }
+    return projection;
+  }
+
+  /**
+   * Returns the first rule keeping a segment found within the loops of a LoopStack, or null if
+   * the segment is not part of the projection.
+   *
+   * @param loops       the loops the segment is in
+   * @param segmentType tag of the segment
+   * @return matching rule or null
+   */
+  public Rule match(LoopStack loops, String segmentType)
+  {
+    Rule rule = match(rules.get(segmentType), loops);
+    return rule != null ? rule : match(rules.get(ANY), loops);
+  }
+
+  private static Rule match(List<Rule> candidates, LoopStack loops)
+  {
+    if (candidates == null)
+      return null;
+    for (Rule rule : candidates)
+      if (rule.within(loops))
+        return rule;
+    return null;
+  }
+
+  /**
+   * A rule of a projection.
+   */
+  public static class Rule
+  {
+    private final String[] loops;
+    private final BitSet elements;
+
+    Rule(String[] loops, BitSet elements)
+    {
+      this.loops = loops;
+      this.elements = elements;
+    }
+
+    boolean within(LoopStack stack)
+    {
+      int depth = stack.size();
+      if (loops.length > depth)
+        return false;
+      for (int i = 0; i < loops.length; i++)
+        if (!loops[loops.length - 1 - i].equals(stack.getLoop(depth - 1 - i)))
+          return false;
+      return true;
+    }
+
+    /**
+     * Returns whether the element at a 1-origin position of the segment is kept.
+     *
+     * @param index position of the element
+     * @return true if kept
+     */
+    public boolean includes(int index)
+    {
+      return elements == null || elements.get(index);
+    }
+  }
+}
@@ -21,7 +21,11 @@
 package com.berryworks.edireader;
 
 import com.berryworks.edireader.error.RecoverableSyntaxException;
+import com.berryworks.edireader.metrics.ParserMetrics;
 import com.berryworks.edireader.tokenizer.Token;
+import com.berryworks.edireader.tokenizer.Tokenizer;
+import com.berryworks.edireader.util.sax.SAXObjectRecorder;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
@@ -52,14 +56,162 @@ public abstract class StandardReader extends EDIReader {
 
 	private RecoverableSyntaxException syntaxException;
 
+	/**
+	 * Events of the document being parsed with faults isolated, or null.
+	 */
+	private SAXObjectRecorder isolatedEvents;
+
+	/**
+	 * Loops at the top of the LoopStack entered while parsing with a
+	 * projection whose start elements have not been emitted yet.
+	 */
+	private int pendingLoops;
+
 	protected abstract Token recognizeBeginning() throws IOException,
 			SAXException;
 
 	protected abstract Token parseInterchange(Token t) throws SAXException,
 			IOException;
 
+	protected abstract Token parseDocument(Token t) throws SAXException,
+			IOException;
+
+	/**
+	 * Parses a document, isolating a syntax error within it when transaction
+	 * isolation is on.
+	 * <p/>
+	 * The SAX events of the document are held back until its trailer has been
+	 * parsed. If a syntax error is raised instead, the events are dropped, the
+	 * tokenizer is resynchronized after the trailer of the document or before
+	 * the next segment that cannot belong to it, and a single error element
+	 * takes the place of the document. Its attributes give the character
+	 * offsets of the document and of the point where parsing resumed, counted
+	 * from the start of the interchange, the segment numbers of the header and
+	 * of the error, and the message of the error. Parsing then continues with
+	 * the rest of the interchange.
+	 * 
+	 * @param token
+	 *            the header segment token, ST or UNH
+	 * @param trailer
+	 *            segment type that closes the document, SE or UNT
+	 * @param boundaries
+	 *            segment types that start what follows a document, for example
+	 *            ST and GE
+	 * @return false if the document was replaced by an error element
+	 * @throws SAXException
+	 *             for problem emitting SAX events
+	 * @throws IOException
+	 *             for problem reading EDI data
+	 */
+	protected boolean isolateDocument(Token token, String trailer,
+			String... boundaries) throws SAXException, IOException {
+		if (!isTransactionIsolation()) {
+			parseDocument(token);
+			return true;
+		}
+
+		Tokenizer tokenizer = getTokenizer();
+		// the tag and the delimiter after it have been read
+		int offset = tokenizer.getCharCount() - token.getValue().length() - 1;
+		int segment = tokenizer.getSegmentCount();
+		LoopStack ls = LoopStack.getLoopStack();
+		int loops = ls.size();
+		if (isolatedEvents == null)
+			isolatedEvents = new SAXObjectRecorder();
+		isolatedEvents.clear();
+
+		ContentHandler handler = getContentHandler();
+		setContentHandler(isolatedEvents);
+		EDISyntaxException failure = null;
+		int failedSegment = 0;
+		try {
+			parseDocument(token);
+		} catch (EDISyntaxException e) {
+			failure = e;
+			failedSegment = tokenizer.getSegmentCount();
+		} finally {
+			setContentHandler(handler);
+		}
+
+		if (failure == null) {
+			isolatedEvents.replay(handler);
+			isolatedEvents.clear();
+			return true;
+		}
+
+		isolatedEvents.clear();
+		ls.truncate(loops);
+		pendingLoops = 0;
+		if (debug)
+			trace("isolating document at segment " + segment + ": " + failure);
+		int resumeOffset = resynchronize(trailer, boundaries);
+
+		getDocumentAttributes().clear();
+		getDocumentAttributes().addCDATA("Offset", String.valueOf(offset));
+		getDocumentAttributes().addCDATA("ResumeOffset",
+				String.valueOf(resumeOffset));
+		getDocumentAttributes().addCDATA("Segment", String.valueOf(segment));
+		getDocumentAttributes().addCDATA("ErrorSegment",
+				String.valueOf(failedSegment));
+		getDocumentAttributes().addCDATA("Message",
+				emptyStringIfNull(failure.getMessage()));
+		startElement(getXMLTags().getErrorTag(), getDocumentAttributes());
+		endElement(getXMLTags().getErrorTag());
+		return false;
+	}
+
+	/**
+	 * Skips to the end of the trailer segment, or to the start of a boundary
+	 * segment, whichever comes first. A boundary segment is left to be
+	 * tokenized again, and so is the end of data.
+	 * 
+	 * @return character offset at which parsing resumes
+	 */
+	private int resynchronize(String trailer, String[] boundaries)
+			throws SAXException, IOException {
+		Tokenizer tokenizer = getTokenizer();
+		while (true) {
+			Token t = tokenizer.nextToken();
+			if (t.getType() == Token.TokenType.END_OF_DATA) {
+				tokenizer.ungetToken();
+				return tokenizer.getCharCount();
+			}
+			if (t.getType() != Token.TokenType.SEGMENT_START)
+				continue;
+			String segmentType = t.getValue();
+			if (trailer.equals(segmentType)) {
+				tokenizer.skipSegment();
+				return tokenizer.getCharCount();
+			}
+			for (String boundary : boundaries)
+				if (boundary.equals(segmentType)) {
+					tokenizer.ungetToken();
+					return tokenizer.getCharCount() - segmentType.length() - 1;
+				}
+		}
+	}
+
 	@Override
 	public void parse(InputSource source) throws SAXException, IOException {
+		ParserMetrics metrics = getMetrics();
+		if (metrics == null || isExternalXmlDocumentStart()) {
+			// an enclosing EDIReader meters and publishes the parse
+			parseSource(source);
+			return;
+		}
+
+		ContentHandler handler = getContentHandler();
+		setContentHandler(metrics.meter(handler));
+		long start = System.nanoTime();
+		try {
+			parseSource(source);
+		} finally {
+			setContentHandler(handler);
+			metrics.parsed(System.nanoTime() - start);
+		}
+	}
+
+	private void parseSource(InputSource source) throws SAXException, IOException {
 		if (source == null)
 			throw new IOException("parse called with null InputSource");
 		if (getContentHandler() == null)
@@ -240,10 +392,41 @@ public abstract class StandardReader extends EDIReader {
 		this.ackGenerator = ackGenerator;
 	}
 
+	/**
+	 * Returns the projection applied to the documents of this reader, or null
+	 * if they are emitted in full.
+	 */
+	protected Projection documentProjection() {
+		return getProjection();
+	}
+
+	/**
+	 * Pops the innermost loop, emitting its end element unless it was entered
+	 * without any projected segment in it.
+	 * 
+	 * @param ls
+	 *            the loops of the document
+	 * @throws SAXException
+	 *             for problem emitting SAX events
+	 */
+	protected void endLoop(LoopStack ls) throws SAXException {
+		String loop = ls.pop();
+		if (pendingLoops > 0)
+			pendingLoops--;
+		else
+			endElement(getXMLTags().getLoopPrefixTag() + loop);
+	}
+
 	protected void parseSegment(PluginController pluginController,
 			String segmentType) throws SAXException, IOException {
 		LoopStack ls = LoopStack.getLoopStack();
-		if (pluginController.transition(segmentType)) {
+		Projection projection = documentProjection();
+		ParserMetrics metrics = getMetrics();
+		long start = metrics == null ? 0 : System.nanoTime();
+		boolean transitioned = pluginController.transition(segmentType);
+		if (metrics != null)
+			metrics.transitioned(transitioned, pluginController.getNestingLevel(), System.nanoTime() - start);
+		if (transitioned) {
 			// First close off any loops that were closed as the result of
 			// the transition
 			int toClose = pluginController.closedCount();
@@ -255,13 +438,17 @@ public abstract class StandardReader extends EDIReader {
 				 * Loop and creating a loop in different way </loop> to </l-XXX>
 				 */
 				// endElement(getXMLTags().getLoopTag());
-				endElement(getXMLTags().getLoopPrefixTag() + ls.pop());
+				endLoop(ls);
 			}
 
 			String s = pluginController.getLoopEntered();
 			if (pluginController.isResumed()) {
 				// We are resuming some outer loop, so we do not
 				// start a new instance of the loop.
+			} else if (projection != null) {
+				// emitted with the first projected segment within it
+				ls.push(s);
+				pendingLoops++;
 			} else {
 				/**
 				 * Srini - Modification on Loop creation Commenting Starting of
@@ -283,6 +470,22 @@ public abstract class StandardReader extends EDIReader {
 			}
 		}
 
+		Projection.Rule rule = null;
+		if (projection != null) {
+			rule = projection.match(ls, segmentType);
+			if (rule == null) {
+				if (getTokenizer().scanSegment().getType() == Token.TokenType.END_OF_DATA)
+					throw new EDISyntaxException(UNEXPECTED_EOF, getTokenizer());
+				return;
+			}
+			for (int i = ls.size() - pendingLoops; i < ls.size(); i++) {
+				getDocumentAttributes().clear();
+				startElement(getXMLTags().getLoopPrefixTag() + ls.getLoop(i),
+						getDocumentAttributes());
+			}
+			pendingLoops = 0;
+		}
+
 		/**
 		 * Srini - Modification on Segment creation Commenting Starting of
 		 * Segment and creating a segment in different way <segment id="XXX"> to
@@ -314,7 +517,8 @@ public abstract class StandardReader extends EDIReader {
 
 			}
 
-			parseSegmentElement(t);
+			if (rule == null || rule.includes(t.getIndex()))
+				parseSegmentElement(t);
 		}
 
 		/**
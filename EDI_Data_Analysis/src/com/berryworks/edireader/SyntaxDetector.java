@@ -0,0 +1,321 @@
+/*
+ * Copyright 2005-2011 by BerryWorks Software, LLC. All rights reserved.
+ *
+ * This file is part of EDIReader. You may obtain a license for its use directly from
+ * BerryWorks Software, and you may also choose to use this software under the terms of the
+ * GPL version 3. Other products in the EDIReader software suite are available only by licensing
+ * with BerryWorks. Only those files bearing the GPL statement below are available under the GPL.
+ *
+ * EDIReader is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDIReader is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with EDIReader.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package com.berryworks.edireader;
+
+import java.io.IOException;
+
+import com.berryworks.edireader.tokenizer.Tokenizer;
+
+/**
+ * Determines the syntax characters of an EDIFACT interchange in a single pass over the first
+ * characters of input: data element separator, component separator, decimal mark, release and
+ * repetition characters, segment terminator and the whitespace following it, and the syntax
+ * level named in the UNB.
+ * <p/>
+ * A UNA establishes the characters it names. Whatever it leaves undetermined is taken from the
+ * defaults of the syntax identifier in the UNB, exactly as EdifactReader did when it shifted
+ * and rescanned its lookahead buffer.
+ * <p/>
+ * An instance reuses its window and results from one interchange to the next, so detection
+ * allocates nothing. Instances are not thread-safe; <code>getInstance()</code> returns the one
+ * belonging to the calling thread.
+ */
+public final class SyntaxDetector
+{
+  public static final String ANSI = "ANSI";
+  public static final String EDIFACT = "EDIFACT";
+
+  /**
+   * Number of characters examined, enough for a UNA and a UNB segment.
+   */
+  public static final int WINDOW = 128;
+
+  private static final ThreadLocal<SyntaxDetector> INSTANCE = new ThreadLocal<SyntaxDetector>()
+  {
+    @Override
+    protected SyntaxDetector initialValue()
+    {
+      return new SyntaxDetector();
+    }
+  };
+
+  private final char[] window = new char[WINDOW];
+  private int length;
+
+  private boolean una;
+  private char delimiter;
+  private char subDelimiter;
+  private char decimalMark;
+  private int release;
+  private char repetitionSeparator;
+  private char terminator;
+  private String terminatorSuffix;
+  private char syntaxLevel;
+
+  public static SyntaxDetector getInstance()
+  {
+    return INSTANCE.get();
+  }
+
+  /**
+   * Returns the standard begun by the first characters of data, ANSI or EDIFACT, or null if
+   * it is neither.
+   *
+   * @param buf    data
+   * @param length number of chars of data in buf
+   * @return ANSI, EDIFACT or null
+   */
+  public static String standardOf(char[] buf, int length)
+  {
+    if (length < 3)
+      return null;
+    if (buf[0] == 'I' && buf[1] == 'S' && buf[2] == 'A')
+      return ANSI;
+    if (buf[0] == 'U' && buf[1] == 'N' && (buf[2] == 'A' || buf[2] == 'B' || buf[2] == 'H'))
+      return EDIFACT;
+    return null;
+  }
+
+  /**
+   * Examines the upcoming chars of the tokenizer without consuming them.
+   *
+   * @param tokenizer positioned at the start of an EDIFACT interchange
+   * @throws EDISyntaxException if the interchange does not begin with a usable UNA or UNB
+   * @throws IOException        for problem reading EDI data
+   */
+  public void detect(Tokenizer tokenizer) throws EDISyntaxException, IOException
+  {
+    detect(window, tokenizer.lookahead(window, WINDOW));
+  }
+
+  /**
+   * Examines the first length chars of buf.
+   *
+   * @param buf    data beginning with a UNA or UNB segment
+   * @param length number of chars of data in buf
+   * @throws EDISyntaxException if the data does not begin with a usable UNA or UNB
+   */
+  public void detect(char[] buf, int length) throws EDISyntaxException
+  {
+    this.length = length;
+    if (length < 3 || !(buf[0] == 'U' && buf[1] == 'N'))
+      throw new EDISyntaxException("EDIFACT interchange must begin with UN");
+
+    una = buf[2] == 'A';
+    boolean suffixDetermined = false;
+    int unb = 0;
+    terminatorSuffix = "";
+    repetitionSeparator = '\000';
+    syntaxLevel = 0;
+
+    if (una)
+    {
+      // UNA......
+      // 012345678
+      if (length < 9)
+        throw new EDISyntaxException("EDIFACT interchange must begin with UN");
+      subDelimiter = buf[3];
+      delimiter = buf[4];
+      decimalMark = buf[5];
+      // a space means no release processing, or no repetition character
+      release = buf[6] == ' ' ? -1 : buf[6];
+      repetitionSeparator = buf[7] == ' ' ? '\000' : buf[7];
+      terminator = buf[8];
+
+      // whitespace between the UNA terminator and the UNB is the terminator suffix
+      unb = 9;
+      while (unb < 14 && unb < length && !Character.isLetter(buf[unb]))
+        unb++;
+      if (unb > 9)
+      {
+        terminatorSuffix = suffix(buf, 9, unb - 9);
+        suffixDetermined = true;
+      }
+    }
+
+    // UNB+UNOA...
+    // 01234567
+    if (unb + 7 < length && buf[unb + 2] == 'B')
+      syntaxLevel = buf[unb + 7];
+
+    if (una && suffixDetermined)
+      // everything is known; the UNB is not needed
+      return;
+
+    if (unb + 7 >= length || buf[unb + 2] != 'B')
+      throw new EDISyntaxException("Required UNB segment not found in EDIFACT interchange");
+
+    boolean determined = una;
+    // With no UNA, a UNB+UNOB says the syntax characters are hex 1D, 1F and 1C; if the actual
+    // delimiter is a + instead, believe the data and use the characters that traditionally go
+    // with a +, as for the other syntax levels.
+    if (syntaxLevel == 'B' && (determined || buf[unb + 3] != '+'))
+    {
+      if (!determined)
+      {
+        delimiter = '\u001D';
+        subDelimiter = '\u001F';
+        terminator = '\u001C';
+      }
+      release = -1;
+      repetitionSeparator = '\u0019';
+      determined = true;
+    }
+
+    switch (syntaxLevel)
+    {
+      case 'A':
+      case 'B':
+      case 'C':
+      case 'D':
+      case 'E':
+      case 'F':
+      case 'G':
+      case 'H':
+      case 'I':
+      case 'J':
+      case 'K':
+        if (!determined)
+        {
+          delimiter = '+';
+          terminator = '\'';
+          subDelimiter = ':';
+          decimalMark = '.';
+          release = '?';
+        }
+        else if (!una)
+          // the UNOB characters do not include a decimal mark
+          decimalMark = '.';
+
+        if (buf[unb + 3] != delimiter)
+          throw new EDISyntaxException("Expected data element separator after UNB segment tag");
+        break;
+
+      default:
+        throw new EDISyntaxException("Unknown Syntax Identifier in UNB segment: "
+          + new String(buf, unb + 4, 4));
+    }
+
+    // The terminator suffix follows the first terminator of the UNB
+    for (int i = unb + 3; i < length; i++)
+    {
+      if (buf[i] == terminator)
+      {
+        int n = 0;
+        while (n < 2 && i + 1 + n < length && !Character.isLetter(buf[i + 1 + n]))
+          n++;
+        terminatorSuffix = suffix(buf, i + 1, n);
+        break;
+      }
+    }
+  }
+
+  /**
+   * Returns the terminator suffix at buf[offset], sharing the common ones.
+   */
+  private static String suffix(char[] buf, int offset, int n)
+  {
+    if (n == 0)
+      return "";
+    if (n == 1 && buf[offset] == '\n')
+      return "\n";
+    if (n == 2 && buf[offset] == '\r' && buf[offset + 1] == '\n')
+      return "\r\n";
+    return new String(buf, offset, n);
+  }
+
+  /**
+   * Sets the detected syntax characters on the reader.
+   *
+   * @param reader to be configured
+   */
+  public void applyTo(EDIAbstractReader reader)
+  {
+    reader.setDelimiter(delimiter);
+    reader.setSubDelimiter(subDelimiter);
+    reader.setDecimalMark(decimalMark);
+    reader.setRelease(release);
+    reader.setRepetitionSeparator(repetitionSeparator);
+    reader.setTerminator(terminator);
+    reader.setTerminatorSuffix(terminatorSuffix);
+  }
+
+  public boolean isUNA()
+  {
+    return una;
+  }
+
+  public char getDelimiter()
+  {
+    return delimiter;
+  }
+
+  public char getSubDelimiter()
+  {
+    return subDelimiter;
+  }
+
+  public char getDecimalMark()
+  {
+    return decimalMark;
+  }
+
+  public int getRelease()
+  {
+    return release;
+  }
+
+  public char getRepetitionSeparator()
+  {
+    return repetitionSeparator;
+  }
+
+  public char getTerminator()
+  {
+    return terminator;
+  }
+
+  public String getTerminatorSuffix()
+  {
+    return terminatorSuffix;
+  }
+
+  /**
+   * Gets the level of the syntax identifier in the UNB, the A of UNOA, or 0 if there was no
+   * UNB within the window.
+   *
+   * @return syntax level
+   */
+  public char getSyntaxLevel()
+  {
+    return syntaxLevel;
+  }
+
+  /**
+   * Gets the number of chars examined by the most recent detection.
+   *
+   * @return length
+   */
+  public int getLength()
+  {
+    return length;
+  }
+}
@@ -58,6 +58,8 @@ public interface XMLTags
 
   public abstract String getPackageTag();
 
+  public abstract String getErrorTag();
+
   public abstract String getIdAttribute();
 
   public abstract String getQualifierAttribute();
@@ -27,6 +27,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -45,9 +46,11 @@ import org.xml.sax.XMLReader;
 import com.berryworks.edireader.EDIReader;
 import com.berryworks.edireader.EDIReaderFactory;
 import com.berryworks.edireader.EDISyntaxException;
+import com.berryworks.edireader.Projection;
 import com.berryworks.edireader.error.EDISyntaxExceptionHandler;
 import com.berryworks.edireader.error.RecoverableSyntaxException;
 import com.berryworks.edireader.util.CommandLine;
+import com.berryworks.edireader.util.sax.IsolatedErrorFilter;
 
 /**
  * Converts EDI input to XML output using the default XSLT transformer.
@@ -70,6 +73,11 @@ public class EDItoXML {
 	private final Reader inputReader;
 	private boolean namespaceEnabled;
 	private boolean recover;
+	private boolean isolate;
+	private Projection projection;
+	private List<String> isolatedErrors;
+	private IsolatedErrorFilter isolatedErrorFilter;
+	private Exception failure;
 
 	public EDItoXML(Reader inputReader, Writer outputWriter) {
 		this.inputReader = inputReader;
@@ -82,6 +90,8 @@ public class EDItoXML {
 	 */
 	public void run() {
 
+		failure = null;
+		isolatedErrorFilter = null;
 		try {
 			XMLReader ediReader = new EDIReader();
 
@@ -97,6 +107,26 @@ public class EDItoXML {
 						.setSyntaxExceptionHandler(new IgnoreSyntaxExceptions());
 			}
 
+			// Tell the ediReader to replace a transaction having an error
+			// with an error element and go on with the next one
+			if (isolate) {
+				((EDIReader) ediReader).setTransactionIsolation(true);
+			}
+
+			// Tell the ediReader to emit only the declared loops, segments
+			// and elements of each transaction
+			if (projection != null) {
+				((EDIReader) ediReader).setProjection(projection);
+			}
+
+			// Report the replaced transactions to the caller instead of
+			// the output, when asked to
+			if (isolate && isolatedErrors != null) {
+				isolatedErrorFilter = new IsolatedErrorFilter(ediReader,
+						((EDIReader) ediReader).getXMLTags(), isolatedErrors);
+				ediReader = isolatedErrorFilter;
+			}
+
 			// Establish the SAXSource
 			SAXSource source = new SAXSource(ediReader, inputSource);
 
@@ -110,8 +140,10 @@ public class EDItoXML {
 			// Call the Transformer to generate XML output from the parsed input
 			transformer.transform(source, result);
 		} catch (TransformerConfigurationException e) {
+			failure = e;
 			System.err.println("\nUnable to create Transformer: " + e);
 		} catch (TransformerException e) {
+			failure = e;
 			System.err.println("\nFailure to transform: " + e);
 			System.err.println(e.getMessage());
 		}
@@ -225,6 +257,7 @@ public class EDItoXML {
 		theObject.setNamespaceEnabled(true);
 		theObject.setRecover(false);
 		theObject.run();
+		theObject.rethrowFailure();
 		
 		return res.getString();
 					 
@@ -253,9 +286,66 @@ public class EDItoXML {
 		theObject.setNamespaceEnabled(true);
 		theObject.setRecover(false);
 		theObject.run();
+		theObject.rethrowFailure();
 		return res.getString();
 	}
 
+	/**
+	 * Converts the parts of the transactions of an EDI message selected by a
+	 * projection.
+	 */
+	public static String convertToXML(String ediMsg, Projection projection) throws Exception {
+		return convertToXML(ediMsg, projection, null);
+	}
+
+	/**
+	 * Converts an EDI message, restricted to a projection when one is given.
+	 * With a list of isolated errors, a transaction with a syntax error is
+	 * left out of the XML and described in the list instead of failing the
+	 * conversion; null is returned when every transaction was left out.
+	 */
+	public static String convertToXML(String ediMsg, Projection projection, List<String> isolatedErrors)
+			throws Exception {
+		return convertToXML(ediMsg, projection, isolatedErrors, true);
+	}
+
+	/**
+	 * Converts an EDI message as above, with the elements in the edireader
+	 * namespace or, when namespaceEnabled is false, in no namespace.
+	 */
+	public static String convertToXML(String ediMsg, Projection projection, List<String> isolatedErrors,
+			boolean namespaceEnabled) throws Exception {
+		Reader inp = new InputStreamReader(
+				(new IOString(ediMsg)).getInputStream());
+		IOString res = new IOString();
+		Writer out = new OutputStreamWriter(res.getOutputStream());
+
+		EDItoXML theObject = new EDItoXML(inp, out);
+		theObject.setNamespaceEnabled(namespaceEnabled);
+		theObject.setRecover(false);
+		theObject.setProjection(projection);
+		if (isolatedErrors != null) {
+			theObject.setIsolate(true);
+			theObject.setIsolatedErrors(isolatedErrors);
+		}
+		int reported = isolatedErrors == null ? 0 : isolatedErrors.size();
+		theObject.run();
+		theObject.rethrowFailure();
+		if (isolatedErrors != null && isolatedErrors.size() > reported
+				&& theObject.isolatedErrorFilter.getDocuments() == 0)
+			return null;
+		return res.getString();
+	}
+
+	/**
+	 * Throws the error that ended the last run, which run() itself only
+	 * prints.
+	 */
+	public void rethrowFailure() throws Exception {
+		if (failure != null)
+			throw failure;
+	}
+
 	/**
 	 * Main for EDItoXML.
 	 * 
@@ -266,13 +356,15 @@ public class EDItoXML {
 		CommandLine commandLine = new CommandLine(args) {
 			@Override
 			public String usage() {
-				return "EDItoXML [inputfile] [-o outputfile] [-n true|false] [-r true|false] [-s ediMsgStr]";
+				return "EDItoXML [inputfile] [-o outputfile] [-n true|false] [-r true|false] [-i true|false] [-p projection] [-s ediMsgStr]";
 			}
 		};
 		String inputFileName = commandLine.getPosition(0);
 		String outputFileName = commandLine.getOption("o");
 		boolean namespaceEnabled = "true".equals(commandLine.getOption("n"));
 		boolean recover = "true".equals(commandLine.getOption("r"));
+		boolean isolate = "true".equals(commandLine.getOption("i"));
+		String projection = commandLine.getOption("p");
 
 		// Establish input
 		Reader inputReader;
@@ -306,6 +398,9 @@ public class EDItoXML {
 		EDItoXML theObject = new EDItoXML(inputReader, generatedOutput);
 		theObject.setNamespaceEnabled(namespaceEnabled);
 		theObject.setRecover(recover);
+		theObject.setIsolate(isolate);
+		if (projection != null)
+			theObject.setProjection(Projection.parse(projection));
 		theObject.run();
 		
 		String s = System.getProperty("line.separator");
@@ -324,6 +419,22 @@ public class EDItoXML {
 		this.recover = recover;
 	}
 
+	public void setIsolate(boolean isolate) {
+		this.isolate = isolate;
+	}
+
+	public void setProjection(Projection projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Sets the list to which, with isolation on, the transactions replaced by
+	 * an error element are reported instead of the output.
+	 */
+	public void setIsolatedErrors(List<String> isolatedErrors) {
+		this.isolatedErrors = isolatedErrors;
+	}
+
 	static class IgnoreSyntaxExceptions implements EDISyntaxExceptionHandler {
 
 		public boolean process(RecoverableSyntaxException syntaxException) {
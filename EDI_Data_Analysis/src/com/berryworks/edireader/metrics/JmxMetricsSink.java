@@ -0,0 +1,145 @@
+/*
+ * Copyright 2005-2011 by BerryWorks Software, LLC. All rights reserved.
+ *
+ * This file is part of EDIReader. You may obtain a license for its use directly from
+ * BerryWorks Software, and you may also choose to use this software under the terms of the
+ * GPL version 3. Other products in the EDIReader software suite are available only by licensing
+ * with BerryWorks. Only those files bearing the GPL statement below are available under the GPL.
+ *
+ * EDIReader is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDIReader is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with EDIReader.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package com.berryworks.edireader.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exposes published metrics as a platform MXBean. The sink may be shared by readers running
+ * on several threads: it keeps the latest snapshot of each ParserMetrics published to it and
+ * reports their sum.
+ */
+public class JmxMetricsSink implements MetricsSink, ParserMetricsMXBean
+{
+  public static final String DOMAIN = "com.berryworks.edireader";
+
+  private final ObjectName objectName;
+  private final Map<ParserMetrics, ParserMetrics> snapshots = new WeakHashMap<ParserMetrics, ParserMetrics>();
+
+  /**
+   * Registers the sink with the platform MBeanServer as
+   * com.berryworks.edireader:type=ParserMetrics,name=<i>name</i>.
+   *
+   * @param name distinguishing this sink from others in the same JVM
+   * @throws JMException if the name is invalid or already registered
+   */
+  public JmxMetricsSink(String name) throws JMException
+  {
+    objectName = new ObjectName(DOMAIN + ":type=ParserMetrics,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+  }
+
+  public void unregister() throws JMException
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(objectName))
+      server.unregisterMBean(objectName);
+  }
+
+  public synchronized void publish(ParserMetrics metrics)
+  {
+    snapshots.put(metrics, metrics.snapshot());
+  }
+
+  private synchronized ParserMetrics total()
+  {
+    ParserMetrics total = new ParserMetrics();
+    for (ParserMetrics snapshot : snapshots.values())
+      total.add(snapshot);
+    return total;
+  }
+
+  public long getParses()
+  {
+    return total().getParses();
+  }
+
+  public long getDocuments()
+  {
+    return total().getDocuments();
+  }
+
+  public long getSegments()
+  {
+    return total().getSegments();
+  }
+
+  public long getElements()
+  {
+    return total().getElements();
+  }
+
+  public long getCharacters()
+  {
+    return total().getCharacters();
+  }
+
+  public long getTransitions()
+  {
+    return total().getTransitions();
+  }
+
+  public double getSegmentsPerSecond()
+  {
+    return total().getSegmentsPerSecond();
+  }
+
+  public double getCharactersPerSecond()
+  {
+    return total().getCharactersPerSecond();
+  }
+
+  public long getParseMillis()
+  {
+    return total().getParseNanos() / 1000000;
+  }
+
+  public long getTokenizerMillis()
+  {
+    return total().getTokenizerNanos() / 1000000;
+  }
+
+  public long getTransitionMillis()
+  {
+    return total().getTransitionNanos() / 1000000;
+  }
+
+  public long getContentHandlerMillis()
+  {
+    return total().getContentHandlerNanos() / 1000000;
+  }
+
+  public long[] getLoopDepths()
+  {
+    return total().getLoopDepths();
+  }
+
+  public Map<String, Long> getDocumentTypes()
+  {
+    return total().getDocumentTypes();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2005-2011 by BerryWorks Software, LLC. All rights reserved.
+ *
+ * This file is part of EDIReader. You may obtain a license for its use directly from
+ * BerryWorks Software, and you may also choose to use this software under the terms of the
+ * GPL version 3. Other products in the EDIReader software suite are available only by licensing
+ * with BerryWorks. Only those files bearing the GPL statement below are available under the GPL.
+ *
+ * EDIReader is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDIReader is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with EDIReader.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package com.berryworks.edireader.metrics;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * Passes SAX events to a delegate ContentHandler, adding the time spent in each callback to a
+ * ParserMetrics.
+ */
+class MeteredContentHandler implements ContentHandler
+{
+  private final ContentHandler delegate;
+  private final ParserMetrics metrics;
+
+  MeteredContentHandler(ContentHandler delegate, ParserMetrics metrics)
+  {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  ParserMetrics getMetrics()
+  {
+    return metrics;
+  }
+
+  public void setDocumentLocator(Locator locator)
+  {
+    delegate.setDocumentLocator(locator);
+  }
+
+  public void startDocument() throws SAXException
+  {
+    long start = System.nanoTime();
+    delegate.startDocument();
+    metrics.handled(System.nanoTime() - start);
+  }
+
+  public void endDocument() throws SAXException
+  {
+    long start = System.nanoTime();
+    delegate.endDocument();
+    metrics.handled(System.nanoTime() - start);
+  }
+
+  public void startPrefixMapping(String prefix, String uri) throws SAXException
+  {
+    delegate.startPrefixMapping(prefix, uri);
+  }
+
+  public void endPrefixMapping(String prefix) throws SAXException
+  {
+    delegate.endPrefixMapping(prefix);
+  }
+
+  public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException
+  {
+    long start = System.nanoTime();
+    delegate.startElement(uri, localName, qName, atts);
+    metrics.handled(System.nanoTime() - start);
+  }
+
+  public void endElement(String uri, String localName, String qName) throws SAXException
+  {
+    long start = System.nanoTime();
+    delegate.endElement(uri, localName, qName);
+    metrics.handled(System.nanoTime() - start);
+  }
+
+  public void characters(char[] ch, int start, int length) throws SAXException
+  {
+    long begin = System.nanoTime();
+    delegate.characters(ch, start, length);
+    metrics.handled(System.nanoTime() - begin);
+  }
+
+  public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException
+  {
+    delegate.ignorableWhitespace(ch, start, length);
+  }
+
+  public void processingInstruction(String target, String data) throws SAXException
+  {
+    delegate.processingInstruction(target, data);
+  }
+
+  public void skippedEntity(String name) throws SAXException
+  {
+    delegate.skippedEntity(name);
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2005-2011 by BerryWorks Software, LLC. All rights reserved.
+ *
+ * This file is part of EDIReader. You may obtain a license for its use directly from
+ * BerryWorks Software, and you may also choose to use this software under the terms of the
+ * GPL version 3. Other products in the EDIReader software suite are available only by licensing
+ * with BerryWorks. Only those files bearing the GPL statement below are available under the GPL.
+ *
+ * EDIReader is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDIReader is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with EDIReader.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package com.berryworks.edireader.metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.xml.sax.ContentHandler;
+
+import com.berryworks.edireader.tokenizer.Token;
+
+/**
+ * Counts and times the work of an EDIReader: segments, elements and characters read by the
+ * tokenizer, the time spent in the tokenizer, in plugin loop transitions and in the
+ * ContentHandler callbacks, the number of segments seen at each loop depth, and the number of
+ * documents of each type.
+ * <p/>
+ * Metrics are collected only when a ParserMetrics is set on the reader with
+ * <code>setMetrics()</code>; without one the parser pays a null check per token. With one, every
+ * token, loop transition and SAX callback is timed with System.nanoTime, which is noticeable
+ * on small segments, so collection is meant to be turned on deliberately.
+ * <p/>
+ * The counts are cumulative. When a parse completes, they are handed to the MetricsSink, if
+ * any. A ParserMetrics is not thread-safe: give each reader its own and combine them with
+ * <code>add()</code> or through a shared sink.
+ */
+public class ParserMetrics
+{
+  /**
+   * Segments nested deeper than this are counted at this depth.
+   */
+  public static final int MAX_DEPTH = 15;
+
+  private long parses;
+  private long documents;
+  private long segments;
+  private long elements;
+  private long characters;
+  private long transitions;
+  private long callbacks;
+  private long parseNanos;
+  private long tokenizerNanos;
+  private long transitionNanos;
+  private long contentHandlerNanos;
+  private final long[] loopDepths = new long[MAX_DEPTH + 1];
+  private final Map<String, Long> documentTypes = new TreeMap<String, Long>();
+
+  private MetricsSink sink;
+
+  public ParserMetrics()
+  {
+  }
+
+  public ParserMetrics(MetricsSink sink)
+  {
+    this.sink = sink;
+  }
+
+  public MetricsSink getSink()
+  {
+    return sink;
+  }
+
+  public void setSink(MetricsSink sink)
+  {
+    this.sink = sink;
+  }
+
+  /**
+   * Returns a ContentHandler that times the callbacks of handler before passing them on.
+   * A handler that already reports to this ParserMetrics is returned as it is.
+   *
+   * @param handler receiving the SAX events
+   * @return timing ContentHandler
+   */
+  public ContentHandler meter(ContentHandler handler)
+  {
+    if (handler == null ||
+      (handler instanceof MeteredContentHandler && ((MeteredContentHandler) handler).getMetrics() == this))
+      return handler;
+    return new MeteredContentHandler(handler, this);
+  }
+
+  /**
+   * Called by the tokenizer for each token it advances to.
+   *
+   * @param token      the new current token
+   * @param characters read while advancing
+   * @param nanos      spent advancing
+   */
+  public void tokenized(Token token, int characters, long nanos)
+  {
+    switch (token.getType())
+    {
+      case SEGMENT_START:
+        segments++;
+        break;
+      case SIMPLE:
+      case EMPTY:
+        elements++;
+        break;
+      case SUB_ELEMENT:
+      case SUB_EMPTY:
+        if (token.isFirst())
+          elements++;
+        break;
+      default:
+    }
+    this.characters += characters;
+    tokenizerNanos += nanos;
+  }
+
+  /**
+   * Called by the reader after asking the plugin controller for the transition of a segment.
+   *
+   * @param entered true if the segment entered or resumed a loop
+   * @param depth   loop nesting level after the transition
+   * @param nanos   spent in the transition
+   */
+  public void transitioned(boolean entered, int depth, long nanos)
+  {
+    if (entered)
+      transitions++;
+    loopDepths[Math.min(depth, MAX_DEPTH)]++;
+    transitionNanos += nanos;
+  }
+
+  /**
+   * Called by the reader at the start of each document (ST or UNH).
+   *
+   * @param type transaction set or message type
+   */
+  public void document(String type)
+  {
+    documents++;
+    Long count = documentTypes.get(type);
+    documentTypes.put(type, count == null ? 1L : count + 1);
+  }
+
+  void handled(long nanos)
+  {
+    callbacks++;
+    contentHandlerNanos += nanos;
+  }
+
+  /**
+   * Called by the reader when a parse completes, successfully or not. Publishes to the sink.
+   *
+   * @param nanos elapsed in the parse
+   */
+  public void parsed(long nanos)
+  {
+    parses++;
+    parseNanos += nanos;
+    if (sink != null)
+      sink.publish(this);
+  }
+
+  /**
+   * Adds the counts of another ParserMetrics to this one.
+   *
+   * @param other ParserMetrics to add
+   */
+  public void add(ParserMetrics other)
+  {
+    parses += other.parses;
+    documents += other.documents;
+    segments += other.segments;
+    elements += other.elements;
+    characters += other.characters;
+    transitions += other.transitions;
+    callbacks += other.callbacks;
+    parseNanos += other.parseNanos;
+    tokenizerNanos += other.tokenizerNanos;
+    transitionNanos += other.transitionNanos;
+    contentHandlerNanos += other.contentHandlerNanos;
+    for (int i = 0; i <= MAX_DEPTH; i++)
+      loopDepths[i] += other.loopDepths[i];
+    for (Map.Entry<String, Long> entry : other.documentTypes.entrySet())
+    {
+      Long count = documentTypes.get(entry.getKey());
+      documentTypes.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+    }
+  }
+
+  /**
+   * Returns a copy of the current counts, without the sink.
+   *
+   * @return copy
+   */
+  public ParserMetrics snapshot()
+  {
+    ParserMetrics copy = new ParserMetrics();
+    copy.add(this);
+    return copy;
+  }
+
+  public void reset()
+  {
+    parses = documents = segments = elements = characters = transitions = callbacks = 0;
+    parseNanos = tokenizerNanos = transitionNanos = contentHandlerNanos = 0;
+    Arrays.fill(loopDepths, 0);
+    documentTypes.clear();
+  }
+
+  public long getParses()
+  {
+    return parses;
+  }
+
+  public long getDocuments()
+  {
+    return documents;
+  }
+
+  public long getSegments()
+  {
+    return segments;
+  }
+
+  public long getElements()
+  {
+    return elements;
+  }
+
+  /**
+   * Gets the number of characters read by the tokenizer, which are bytes for the single byte
+   * character sets of most EDI.
+   *
+   * @return characters
+   */
+  public long getCharacters()
+  {
+    return characters;
+  }
+
+  /**
+   * Gets the number of segments that entered or resumed a loop.
+   *
+   * @return transitions
+   */
+  public long getTransitions()
+  {
+    return transitions;
+  }
+
+  public long getContentHandlerCallbacks()
+  {
+    return callbacks;
+  }
+
+  public long getParseNanos()
+  {
+    return parseNanos;
+  }
+
+  public long getTokenizerNanos()
+  {
+    return tokenizerNanos;
+  }
+
+  public long getTransitionNanos()
+  {
+    return transitionNanos;
+  }
+
+  public long getContentHandlerNanos()
+  {
+    return contentHandlerNanos;
+  }
+
+  /**
+   * Gets the number of segments seen at each loop nesting level, the last entry counting
+   * MAX_DEPTH and deeper.
+   *
+   * @return copy of the histogram
+   */
+  public long[] getLoopDepths()
+  {
+    return loopDepths.clone();
+  }
+
+  public Map<String, Long> getDocumentTypes()
+  {
+    return Collections.unmodifiableMap(documentTypes);
+  }
+
+  public double getSegmentsPerSecond()
+  {
+    return parseNanos == 0 ? 0 : segments * 1e9 / parseNanos;
+  }
+
+  public double getCharactersPerSecond()
+  {
+    return parseNanos == 0 ? 0 : characters * 1e9 / parseNanos;
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder("EDIReader metrics:");
+    sb.append(" parses=").append(parses);
+    sb.append(" documents=").append(documents);
+    sb.append(" segments=").append(segments);
+    sb.append(" elements=").append(elements);
+    sb.append(" characters=").append(characters);
+    sb.append(" segments/s=").append(Math.round(getSegmentsPerSecond()));
+    sb.append(" characters/s=").append(Math.round(getCharactersPerSecond()));
+    sb.append(" parseMs=").append(parseNanos / 1000000);
+    sb.append(" tokenizerMs=").append(tokenizerNanos / 1000000);
+    sb.append(" transitionMs=").append(transitionNanos / 1000000);
+    sb.append(" contentHandlerMs=").append(contentHandlerNanos / 1000000);
+    sb.append(" transitions=").append(transitions);
+    sb.append(" loopDepths=[");
+    int deepest = MAX_DEPTH;
+    while (deepest > 0 && loopDepths[deepest] == 0)
+      deepest--;
+    for (int i = 0; i <= deepest; i++)
+      sb.append(i == 0 ? "" : ",").append(loopDepths[i]);
+    sb.append("] types=").append(documentTypes);
+    return sb.toString();
+  }
+}
@@ -20,8 +20,8 @@
 
 package com.berryworks.edireader.plugin;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.berryworks.edireader.EDIAbstractReader;
 import com.berryworks.edireader.EDISyntaxException;
@@ -55,9 +55,9 @@ import com.berryworks.edireader.tokenizer.Tokenizer;
 public class PluginControllerImpl extends PluginController {
 
 	public static final String DEFAULT_EDIREADER_PLUGIN_PACKAGE = "com.berryworks.edireader.plugin";
-	public static String plugginKey;
-	protected static final Map<String, Plugin> pluginCache = new HashMap<String, Plugin>();
-	protected static String lastPluginLoaded = null;
+	public static volatile String plugginKey;
+	protected static final Map<String, Plugin> pluginCache = new ConcurrentHashMap<String, Plugin>();
+	protected static volatile String lastPluginLoaded = null;
 
 	protected boolean enabled;
 	protected final String standard;
@@ -421,7 +421,8 @@ public class PluginControllerImpl extends PluginController {
 	 * given standard, document type, version, and release. If no matching
 	 * plugin is found, it returns null. Plugins are cached so that once a
 	 * plugin is loaded it can be quickly found again without using the class
-	 * loader.
+	 * loader. The cache may be used by parsers on several threads at once; two
+	 * threads loading the same plugin for the first time each cache their own.
 	 * 
 	 * @param standard
 	 * @param docType
@@ -435,11 +436,11 @@ public class PluginControllerImpl extends PluginController {
 		String key = standard + "_" + docType + "_" + docVersion + "_"
 				+ docRelease;
 		plugginKey = key;
-		if (pluginCache.containsKey(key)) {
+		result = pluginCache.get(key);
+		if (result != null) {
 			if (debug)
 				trace("plugin for " + key + " found in cache");
 			lastPluginLoaded = key;
-			result = pluginCache.get(key);
 		} else {
 			String suffix = System.getProperty("EDIREADER_PLUGIN_SUFFIX");
 			if (docVersion != null && docVersion.length() > 0
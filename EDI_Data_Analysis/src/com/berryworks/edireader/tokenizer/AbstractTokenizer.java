@@ -32,6 +32,7 @@ import com.berryworks.edireader.EDIAbstractReader;
 import com.berryworks.edireader.EDIReader;
 import com.berryworks.edireader.EDISyntaxException;
 import com.berryworks.edireader.error.ErrorMessages;
+import com.berryworks.edireader.metrics.ParserMetrics;
 
 public abstract class AbstractTokenizer implements Tokenizer, ErrorMessages
 {
@@ -80,6 +81,7 @@ public abstract class AbstractTokenizer implements Tokenizer, ErrorMessages
   protected final TokenImpl currentToken;
   protected char cChar;
   protected boolean unGot;
+  protected ParserMetrics metrics;
 
 
   /**
@@ -382,7 +384,10 @@ public abstract class AbstractTokenizer implements Tokenizer, ErrorMessages
   public Token nextToken() throws IOException, EDISyntaxException
   {
     if (!tokenReady)
-      advance();
+      if (metrics == null)
+        advance();
+      else
+        meteredAdvance();
     tokenReady = false;
     return currentToken;
   }
@@ -398,7 +403,10 @@ public abstract class AbstractTokenizer implements Tokenizer, ErrorMessages
   public boolean hasMoreTokens() throws IOException, EDISyntaxException
   {
     if (!tokenReady)
-      advance();
+      if (metrics == null)
+        advance();
+      else
+        meteredAdvance();
     return tokenReady;
   }
 
@@ -456,6 +464,49 @@ public abstract class AbstractTokenizer implements Tokenizer, ErrorMessages
     return t;
   }
 
+  /**
+   * Passes over the rest of the current segment like skipSegment(), but
+   * without building the tokens of its elements: the characters are read up to
+   * the segment terminator, honoring release characters, and nothing else is
+   * kept. Used when a Projection excludes the segment.
+   *
+   * @return token SEGMENT_END, or END_OF_DATA
+   * @throws org.xml.sax.SAXException for problem emitting SAX events
+   * @throws java.io.IOException      for problem reading EDI data
+   */
+  public Token scanSegment() throws SAXException, IOException
+  {
+    if (tokenReady || state == State.EXPECTING_SEGMENT)
+      return skipSegment();
+    int chars = charCount;
+    long start = metrics == null ? 0 : System.nanoTime();
+    loop:
+    while (true)
+    {
+      getChar();
+      switch (cClass)
+      {
+        case RELEASE:
+          getChar();
+          break;
+        case TERMINATOR:
+          currentToken.type = Token.TokenType.SEGMENT_END;
+          state = State.EXPECTING_SEGMENT;
+          scanTerminatorSuffix();
+          break loop;
+        case EOF:
+          currentToken.type = Token.TokenType.END_OF_DATA;
+          break loop;
+      }
+    }
+    currentToken.subElementIndex = 0;
+    currentToken.value.setLength(0);
+    repetition = false;
+    if (metrics != null)
+      metrics.tokenized(currentToken, charCount - chars, System.nanoTime() - start);
+    return currentToken;
+  }
+
   /**
    * Scans a series of data characters up to the first character other than a
    * data character.
@@ -600,17 +651,37 @@ public abstract class AbstractTokenizer implements Tokenizer, ErrorMessages
   }
 
   /**
-   * Turn the recorder on (true) or off (false).
+   * Turn the recorder on (true) or off (false). Turning it on starts a new
+   * recording with the current character.
    *
    * @param b The new recorder value
    */
   public void setRecorder(boolean b)
   {
+    if (b && !recorderOn)
+      recording.setLength(0);
     recorderOn = b;
     if (EDIReader.debug)
       trace("recorder turned " + (b ? "on" : "off"));
   }
 
+  public void setMetrics(ParserMetrics metrics)
+  {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Advances to the next token, reporting it to the metrics along with the characters read and
+   * the time taken.
+   */
+  private void meteredAdvance() throws IOException, EDISyntaxException
+  {
+    int chars = charCount;
+    long start = System.nanoTime();
+    advance();
+    metrics.tokenized(currentToken, charCount - chars, System.nanoTime() - start);
+  }
+
   public AbstractTokenizer(Reader source)
   {
     state = State.EXPECTING_SEGMENT;
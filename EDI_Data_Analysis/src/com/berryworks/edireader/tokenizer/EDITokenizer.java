@@ -183,11 +183,21 @@ public class EDITokenizer extends AbstractTokenizer
    *
    */
   public char[] lookahead(int n) throws IOException, EDISyntaxException
+  {
+    char[] rval = new char[n];
+
+    // If more lookahead chars were requested, fill
+    // them with '?'.
+    for (int j = lookahead(rval, n); j < n;) rval[j++] = '?';
+
+    return rval;
+  }
+
+  public int lookahead(char[] rval, int n) throws IOException, EDISyntaxException
   {
     if (EDIReader.debug)
       trace("EDITokenizer.lookahead(" + n + ")");
 
-    char[] rval = new char[n];
     // The 1st char is grabbed using the tokenizer's built-in
     // getChar() / ungetChar() mechanism. This allows things to work
     // properly whether or not the next char has already been gotten.
@@ -209,14 +219,11 @@ public class EDITokenizer extends AbstractTokenizer
     // Move chars from the buffer into the return value,
     // up to the length of the buffer
     int j = 1;
-    for (int i = bufferIndex; i < bufferIndex + n - 1; i++)
+    int end = Math.min(bufferIndex + n - 1, bufferUsed);
+    for (int i = bufferIndex; i < end; i++)
       rval[j++] = buffer[i];
 
-    // If more lookahead chars were requested, fill
-    // them with '?'.
-    for (; j < n;) rval[j++] = '?';
-
-    return rval;
+    return j;
   }
 
   private void shiftBuffer()
@@ -181,12 +181,21 @@ public class EDITokenizerNIO extends AbstractTokenizer
    *
    */
   public char[] lookahead(int n) throws IOException, EDISyntaxException
+  {
+    char[] rval = new char[n];
+
+    // If more lookahead chars were requested than were satisfied for any reason,
+    // then fill the return value with '?' to the requested length.
+    for (int j = lookahead(rval, n); j < n;) rval[j++] = '?';
+
+    return rval;
+  }
+
+  public int lookahead(char[] rval, int n) throws IOException, EDISyntaxException
   {
     if (EDIReader.debug)
       trace("EDITokenizer.lookahead(" + n + ")");
 
-    char[] rval = new char[n];
-
     // The 1st char is grabbed using the tokenizer's built-in
     // getChar() / ungetChar() mechanism. This allows things to work
     // properly whether or not the next char has already been gotten.
@@ -198,23 +207,18 @@ public class EDITokenizerNIO extends AbstractTokenizer
     if (charBuffer.remaining() < n - 1)
     {
       if (EDIReader.debug)
-        if (EDIReader.debug)
-          trace("buffering more data to satisfy lookahead(" + n + ")");
-      charBuffer.compact();
+        trace("buffering more data to satisfy lookahead(" + n + ")");
       readUntilBufferProvidesAtLeast(n - 1);
     }
 
     // Move chars from the buffer into the return value,
     // up to the length of the buffer
     int j = 1;
-    for (int i = charBuffer.position(); i < charBuffer.position() + n - 1; i++)
+    int end = Math.min(charBuffer.position() + n - 1, charBuffer.limit());
+    for (int i = charBuffer.position(); i < end; i++)
       rval[j++] = charBuffer.get(i);
 
-    // If more lookahead chars were requested than were satisfied for any reason,
-    // then fill the return value with '?' to the requested length.
-    for (; j < n;) rval[j++] = '?';
-
-    return rval;
+    return j;
   }
 
   private void readUntilBufferProvidesAtLeast(int needed) throws IOException
@@ -232,7 +236,9 @@ public class EDITokenizerNIO extends AbstractTokenizer
       if (n < 0)
       {
         if (EDIReader.debug) trace("hit end of file in readUntil...");
-        endOfFile = true;
+        // A lookahead near the end of input may leave chars to be read
+        charBuffer.flip();
+        endOfFile = !charBuffer.hasRemaining();
         break;
       }
       charBuffer.flip();
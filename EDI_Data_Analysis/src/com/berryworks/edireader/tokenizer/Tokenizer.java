@@ -28,6 +28,7 @@ import java.util.List;
 import org.xml.sax.SAXException;
 
 import com.berryworks.edireader.EDISyntaxException;
+import com.berryworks.edireader.metrics.ParserMetrics;
 
 public interface Tokenizer
 {
@@ -88,6 +89,19 @@ public interface Tokenizer
    */
   char[] lookahead(int n) throws IOException, EDISyntaxException;
 
+  /**
+   * Like lookahead(n), but copies the upcoming chars into buffer instead of allocating an
+   * array, and does not pad when fewer than n chars remain.
+   *
+   * @param buffer receiving at least n chars
+   * @param n      number of chars wanted
+   * @return number of chars copied into buffer
+   * @throws java.io.IOException for problem reading EDI data
+   * @throws com.berryworks.edireader.EDISyntaxException
+   *
+   */
+  int lookahead(char[] buffer, int n) throws IOException, EDISyntaxException;
+
   /**
    * Returns any chars that have been read from the input stream but not yet
    * returned by getChar(). The use of lookahead() is a typical reason for
@@ -105,6 +119,8 @@ public interface Tokenizer
 
   Token skipSegment() throws SAXException, IOException;
 
+  Token scanSegment() throws SAXException, IOException;
+
   void ungetToken();
 
   String nextSimpleValue(boolean required, boolean returnNullAtSegmentEnd) throws SAXException,
@@ -128,4 +144,11 @@ public interface Tokenizer
    * @throws java.io.IOException for problem reading EDI data
    */
   void getChar() throws IOException;
+
+  /**
+   * Sets the metrics to which each token is reported, or null to report none.
+   *
+   * @param metrics ParserMetrics or null
+   */
+  void setMetrics(ParserMetrics metrics);
 }
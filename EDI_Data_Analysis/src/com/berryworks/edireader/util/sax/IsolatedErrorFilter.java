@@ -0,0 +1,102 @@
+/*
+ * Copyright 2005-2011 by BerryWorks Software, LLC. All rights reserved.
+ *
+ * This file is part of EDIReader. You may obtain a license for its use directly from
+ * BerryWorks Software, and you may also choose to use this software under the terms of the
+ * GPL version 3. Other products in the EDIReader software suite are available only by licensing
+ * with BerryWorks. Only those files bearing the GPL statement below are available under the GPL.
+ *
+ * EDIReader is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDIReader is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with EDIReader.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package com.berryworks.edireader.util.sax;
+
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import com.berryworks.edireader.XMLTags;
+
+/**
+ * Takes the error elements that replace documents with a syntax error, when transaction
+ * isolation is on, out of the SAX events of an EDIReader and reports them to a list instead,
+ * one line per document giving the offsets, the segment and the message of its error. The
+ * documents that were parsed are counted, so a caller can tell whether anything is left.
+ */
+public class IsolatedErrorFilter extends XMLFilterImpl
+{
+  private final String errorTag;
+  private final String documentTag;
+  private final List<String> errors;
+  private int documents;
+  private int depth;
+
+  public IsolatedErrorFilter(XMLReader parent, XMLTags tags, List<String> errors)
+  {
+    super(parent);
+    errorTag = tags.getErrorTag();
+    documentTag = tags.getDocumentTag();
+    this.errors = errors;
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+  {
+    if (depth > 0)
+    {
+      depth++;
+      return;
+    }
+    String name = localName != null && localName.length() > 0 ? localName : qName;
+    if (errorTag.equals(name))
+    {
+      errors.add("Offset " + attributes.getValue("Offset") + " to " + attributes.getValue("ResumeOffset")
+        + ", segment " + attributes.getValue("ErrorSegment") + ": " + attributes.getValue("Message"));
+      depth = 1;
+      return;
+    }
+    if (documentTag.equals(name))
+      documents++;
+    super.startElement(uri, localName, qName, attributes);
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) throws SAXException
+  {
+    if (depth > 0)
+    {
+      depth--;
+      return;
+    }
+    super.endElement(uri, localName, qName);
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) throws SAXException
+  {
+    if (depth == 0)
+      super.characters(ch, start, length);
+  }
+
+  /**
+   * Returns the number of documents that were parsed without error.
+   *
+   * @return number of documents
+   */
+  public int getDocuments()
+  {
+    return documents;
+  }
+}
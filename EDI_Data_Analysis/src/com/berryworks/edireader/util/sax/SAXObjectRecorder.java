@@ -0,0 +1,80 @@
+/*
+ * Copyright 2005-2011 by BerryWorks Software, LLC. All rights reserved.
+ *
+ * This file is part of EDIReader. You may obtain a license for its use directly from
+ * BerryWorks Software, and you may also choose to use this software under the terms of the
+ * GPL version 3. Other products in the EDIReader software suite are available only by licensing
+ * with BerryWorks. Only those files bearing the GPL statement below are available under the GPL.
+ *
+ * EDIReader is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDIReader is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with EDIReader.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+
+package com.berryworks.edireader.util.sax;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This implementation of a SAX ContentHandler keeps the
+ * startElement, endElement and characters calls it receives
+ * as a list of SAXObjects in memory, so that they can later be
+ * replayed to another ContentHandler in the same order.
+ */
+public class SAXObjectRecorder extends DefaultHandler
+{
+  private final List<SAXObject> events = new ArrayList<SAXObject>();
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+  {
+    events.add(new SAXStartElement(uri, localName, qName, attributes));
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) throws SAXException
+  {
+    events.add(new SAXEndElement(uri, localName, qName));
+  }
+
+  @Override
+  public void characters(char ch[], int start, int length) throws SAXException
+  {
+    events.add(new SAXCharacters(ch, start, length));
+  }
+
+  /**
+   * Issues the recorded calls to a ContentHandler.
+   *
+   * @param contentHandler to receive the calls
+   * @throws SAXException thrown by the ContentHandler
+   */
+  public void replay(ContentHandler contentHandler) throws SAXException
+  {
+    for (SAXObject event : events)
+      event.saxCall(contentHandler);
+  }
+
+  public int size()
+  {
+    return events.size();
+  }
+
+  public void clear()
+  {
+    events.clear();
+  }
+}
@@ -0,0 +1,1050 @@
+package com.org.edi.util.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.berryworks.edireader.Plugin;
+import com.berryworks.edireader.plugin.LoopDescriptor;
+
+/**
+ * Generates synthetic interchanges for load tests, so that no claim file with patient data
+ * has to leave production.
+ *
+ * The structure of a transaction comes either from a specification (-spec), which gives the
+ * loops, the segments and the length, type and code list of every element, or, for types
+ * without one, from the loop descriptors of an EDIReader plugin (-plugin ANSI_835). A plugin
+ * only names the first segment of each loop, so those transactions are loop skeletons with
+ * generic elements: they parse like real ones but carry no meaningful content.
+ *
+ * Sizes are set per file: interchanges, groups per interchange, transactions per group and
+ * claims per transaction (the CLM, CLP, INS, PO1 or LIN loop). Other repeatable loops and
+ * segments occur up to -repeat times within their maximum use, optional ones appear with
+ * probability -optional and optional loops nested deeper than -depth are left out. With
+ * -errors that fraction of the transactions gets one error: a wrong segment count or control
+ * number in the trailer, a value outside the code list or a value over its maximum length.
+ * EDIFACT interchanges have no functional groups; every interchange holds groups times
+ * transactions messages.
+ *
+ * Every segment ends with a line break by default, as CFRecordReader reads segments by line.
+ * The output only depends on the options and the seed. Files are generated in parallel, each
+ * from its own seed, and written through a reused byte buffer.
+ */
+public class EdiGen {
+	public static final int ERROR_SEGMENT_COUNT = 0;
+	public static final int ERROR_CONTROL_NUMBER = 1;
+	public static final int ERROR_INVALID_CODE = 2;
+	public static final int ERROR_TOO_LONG = 3;
+
+	private static final int NO_ERROR = -1;
+	private static final int ERROR_KINDS = 4;
+	private static final int FLUSH_SIZE = 1 << 16;
+	private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+	private static final String EDIFACT = "EDIFACT";
+
+	private static final Set<String> ENVELOPE = new HashSet<String>(Arrays.asList("ISA", "TA1", "GS", "ST", "SE",
+			"GE", "IEA", "UNA", "UNB", "UNG", "UNH", "UNT", "UNE", "UNZ"));
+	private static final Map<String, String> CLAIM_SEGMENTS = new HashMap<String, String>();
+	private static final Map<String, String> FUNCTIONAL_IDS = new HashMap<String, String>();
+
+	static {
+		CLAIM_SEGMENTS.put("837", "CLM");
+		CLAIM_SEGMENTS.put("835", "CLP");
+		CLAIM_SEGMENTS.put("834", "INS");
+		CLAIM_SEGMENTS.put("850", "PO1");
+		CLAIM_SEGMENTS.put("ORDERS", "LIN");
+
+		FUNCTIONAL_IDS.put("210", "IM");
+		FUNCTIONAL_IDS.put("277", "HN");
+		FUNCTIONAL_IDS.put("810", "IN");
+		FUNCTIONAL_IDS.put("824", "AG");
+		FUNCTIONAL_IDS.put("834", "BE");
+		FUNCTIONAL_IDS.put("835", "HP");
+		FUNCTIONAL_IDS.put("837", "HC");
+		FUNCTIONAL_IDS.put("850", "PO");
+		FUNCTIONAL_IDS.put("856", "SH");
+		FUNCTIONAL_IDS.put("870", "RS");
+		FUNCTIONAL_IDS.put("997", "FA");
+	}
+
+	private final Node root;
+	private final String standard;
+	private final String type;
+	private String version = "00401";
+	private String functionalId;
+	private String groupVersion = "004010";
+
+	private int interchanges = 1;
+	private int groups = 1;
+	private int transactions = 1;
+	private int claims;
+	private int repeat = 3;
+	private int depth = Integer.MAX_VALUE;
+	private double optional = 0.5;
+	private double errors;
+	private long seed = 1;
+	private char terminator;
+	private char separator;
+	private char subSeparator;
+	private char release = '?';
+	private boolean lineBreaks = true;
+
+	/**
+	 * A generator with the loops, segments and element constraints of a specification.
+	 */
+	public EdiGen(EdiSpec spec) {
+		EdiSpecTree tree = spec.getTree();
+		this.standard = "ANSI";
+		this.root = compile(tree, tree.getRoot());
+		this.type = code(tree, "ST01", "837");
+		this.version = code(tree, "ISA12", version);
+		this.functionalId = code(tree, "GS01", null);
+		this.groupVersion = code(tree, "GS08", groupVersion);
+		init();
+	}
+
+	/**
+	 * A generator with the loop skeleton of a plugin, e.g. ANSI_835 or EDIFACT_ORDERS.
+	 */
+	public EdiGen(Plugin plugin) {
+		this.standard = plugin.getClass().getSimpleName().startsWith(EDIFACT) ? EDIFACT : "ANSI";
+		this.type = plugin.getDocumentType();
+		this.root = compile(plugin);
+		init();
+	}
+
+	private void init() {
+		if (functionalId == null)
+			functionalId = FUNCTIONAL_IDS.containsKey(type) ? FUNCTIONAL_IDS.get(type) : "ZZ";
+		if (isEdifact())
+			setDelimiters('\'', '+', ':');
+		else
+			setDelimiters('~', '*', ':');
+		mark(root, CLAIM_SEGMENTS.get(type));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!args[i].startsWith("-"))
+				usage("Unexpected argument " + args[i]);
+			options.put(args[i].substring(1), args[i + 1]);
+		}
+
+		EdiGen gen;
+		if (options.containsKey("spec"))
+			gen = new EdiGen(EdiSpec.load(options.remove("spec")));
+		else if (options.containsKey("plugin"))
+			gen = new EdiGen(plugin(options.remove("plugin")));
+		else {
+			usage("Either -spec or -plugin is required");
+			return;
+		}
+
+		String output = options.remove("o");
+		int files = parse(options.remove("files"), 1);
+		int threads = parse(options.remove("threads"), Runtime.getRuntime().availableProcessors());
+		gen.setInterchanges(parse(options.remove("interchanges"), gen.interchanges));
+		gen.setGroups(parse(options.remove("groups"), gen.groups));
+		gen.setTransactions(parse(options.remove("transactions"), gen.transactions));
+		gen.setClaims(parse(options.remove("claims"), gen.claims));
+		gen.setRepeat(parse(options.remove("repeat"), gen.repeat));
+		gen.setDepth(parse(options.remove("depth"), gen.depth));
+		if (options.containsKey("optional"))
+			gen.setOptional(Double.parseDouble(options.remove("optional")));
+		if (options.containsKey("errors"))
+			gen.setErrors(Double.parseDouble(options.remove("errors")));
+		if (options.containsKey("seed"))
+			gen.setSeed(Long.parseLong(options.remove("seed")));
+		if (options.containsKey("delimiters")) {
+			String delimiters = options.remove("delimiters");
+			if (delimiters.length() != 3)
+				usage("-delimiters takes the terminator, element and sub-element separator, e.g. ~*:");
+			gen.setDelimiters(delimiters.charAt(0), delimiters.charAt(1), delimiters.charAt(2));
+		}
+		if (options.containsKey("release"))
+			gen.setRelease(options.remove("release").charAt(0));
+		if (options.containsKey("lines"))
+			gen.setLineBreaks(Boolean.parseBoolean(options.remove("lines")));
+		if (!options.isEmpty())
+			usage("Unknown options " + options.keySet());
+
+		long start = System.currentTimeMillis();
+		Stats stats;
+		if (output == null) {
+			OutputStream out = new BufferedOutputStream(System.out, FLUSH_SIZE);
+			stats = gen.generate(out, 0);
+			out.flush();
+		} else if (files == 1) {
+			OutputStream out = new FileOutputStream(output);
+			try {
+				stats = gen.generate(out, 0);
+			} finally {
+				out.close();
+			}
+		} else
+			stats = gen.generate(new File(output), files, threads);
+
+		double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+		System.err.println(stats + String.format(" in %.1f s, %.1f MB/s", seconds, stats.bytes / seconds / (1 << 20)));
+	}
+
+	// an EDIReader plugin by its class name, e.g. ANSI_835
+	private static Plugin plugin(String name) {
+		try {
+			return (Plugin) Class.forName("com.berryworks.edireader.plugin." + name).getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			usage("Unknown plugin " + name);
+		} catch (ReflectiveOperationException e) {
+			usage("Cannot create plugin " + name + ": " + e);
+		}
+		return null;
+	}
+
+	private static void usage(String message) {
+		System.err.println(message);
+		System.err.println("usage: EdiGen (-spec <file> | -plugin ANSI_835|EDIFACT_ORDERS|...) [-o <file or directory>]"
+				+ " [-files n] [-threads n] [-interchanges n] [-groups n] [-transactions n] [-claims n]"
+				+ " [-repeat n] [-depth n] [-optional p] [-errors p] [-seed n] [-delimiters ~*:]"
+				+ " [-release ?] [-lines true|false]");
+		System.exit(1);
+	}
+
+	private static int parse(String value, int defaultValue) {
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	/**
+	 * Writes the interchanges of one file to out. The interchange control numbers of the n-th
+	 * file start after those of the files before it.
+	 */
+	public Stats generate(OutputStream out, int file) throws IOException {
+		Run run = new Run(out, seed * 0x9E3779B97F4A7C15L + file);
+		long first = (long) file * interchanges;
+		for (int i = 1; i <= interchanges; i++)
+			run.interchange((int) ((first + i) % 1000000000L));
+		run.flush();
+		return run.stats;
+	}
+
+	/**
+	 * Writes files part-00000.edi and following to dir, on the given number of threads.
+	 */
+	public Stats generate(final File dir, int files, int threads) throws Exception {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files)));
+		try {
+			List<Future<Stats>> results = new ArrayList<Future<Stats>>(files);
+			for (int i = 0; i < files; i++) {
+				final int file = i;
+				results.add(pool.submit(new Callable<Stats>() {
+					@Override
+					public Stats call() throws Exception {
+						OutputStream out = new FileOutputStream(new File(dir, String.format("part-%05d.edi", file)));
+						try {
+							return generate(out, file);
+						} finally {
+							out.close();
+						}
+					}
+				}));
+			}
+			Stats stats = new Stats();
+			for (Future<Stats> result : results)
+				stats.add(result.get());
+			return stats;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	public boolean isEdifact() {
+		return EDIFACT.equals(standard);
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setInterchanges(int interchanges) {
+		this.interchanges = interchanges;
+	}
+
+	public void setGroups(int groups) {
+		this.groups = groups;
+	}
+
+	public void setTransactions(int transactions) {
+		this.transactions = transactions;
+	}
+
+	/**
+	 * Sets the number of claims per transaction, 0 lets the claim loop repeat like any other.
+	 */
+	public void setClaims(int claims) {
+		this.claims = claims;
+	}
+
+	public void setRepeat(int repeat) {
+		this.repeat = Math.max(1, repeat);
+	}
+
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	public void setOptional(double optional) {
+		this.optional = optional;
+	}
+
+	public void setErrors(double errors) {
+		this.errors = errors;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public void setDelimiters(char terminator, char separator, char subSeparator) {
+		for (char c : new char[] { terminator, separator, subSeparator })
+			if (ALPHABET.indexOf(Character.toUpperCase(c)) >= 0)
+				throw new IllegalArgumentException("Delimiter " + c + " may occur in generated values");
+		if (terminator == separator || terminator == subSeparator || separator == subSeparator)
+			throw new IllegalArgumentException("Delimiters must differ");
+		this.terminator = terminator;
+		this.separator = separator;
+		this.subSeparator = subSeparator;
+	}
+
+	public void setRelease(char release) {
+		this.release = release;
+	}
+
+	public void setLineBreaks(boolean lineBreaks) {
+		this.lineBreaks = lineBreaks;
+	}
+
+	/**
+	 * Counts of one generator run.
+	 */
+	public static class Stats {
+		private long interchanges;
+		private long transactions;
+		private long claims;
+		private long bytes;
+		private final long[] errors = new long[ERROR_KINDS];
+
+		void add(Stats other) {
+			interchanges += other.interchanges;
+			transactions += other.transactions;
+			claims += other.claims;
+			bytes += other.bytes;
+			for (int i = 0; i < ERROR_KINDS; i++)
+				errors[i] += other.errors[i];
+		}
+
+		public long getInterchanges() {
+			return interchanges;
+		}
+
+		public long getTransactions() {
+			return transactions;
+		}
+
+		public long getClaims() {
+			return claims;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getErrors(int kind) {
+			return errors[kind];
+		}
+
+		@Override
+		public String toString() {
+			return interchanges + " interchanges, " + transactions + " transactions, " + claims + " claims, "
+					+ bytes + " bytes, errors [segment count=" + errors[ERROR_SEGMENT_COUNT] + ", control number="
+					+ errors[ERROR_CONTROL_NUMBER] + ", invalid code=" + errors[ERROR_INVALID_CODE] + ", too long="
+					+ errors[ERROR_TOO_LONG] + "]";
+		}
+	}
+
+	// ---- model
+
+	private static class Node {
+		final String name;
+		final boolean loop;
+		final boolean required;
+		final int maxOccurs;
+		final int depth;
+		final List<Node> children = new ArrayList<Node>();
+		// segments only, by position - 1; null where the segment has no element
+		Field[] fields;
+		boolean claim;
+		boolean claimPath;
+
+		Node(String name, boolean loop, boolean required, int maxOccurs, int depth) {
+			this.name = name;
+			this.loop = loop;
+			this.required = required;
+			this.maxOccurs = maxOccurs;
+			this.depth = depth;
+		}
+	}
+
+	private static class Field {
+		static final int ALPHANUMERIC = 0;
+		static final int IDENTIFIER = 1;
+		static final int NUMERIC = 2;
+		static final int DECIMAL = 3;
+		static final int DATE = 4;
+		static final int TIME = 5;
+
+		final boolean required;
+		final int minLength;
+		final int maxLength;
+		final int type;
+		final String[] codes;
+		final int formatLength;
+		Field[] subs;
+
+		Field(boolean required, int minLength, int maxLength, String type, String[] codes, int formatLength) {
+			this.required = required;
+			this.minLength = minLength;
+			this.maxLength = maxLength;
+			this.codes = codes;
+			this.formatLength = formatLength;
+			if (type.equals("N"))
+				this.type = NUMERIC;
+			else if (type.equals("R"))
+				this.type = DECIMAL;
+			else if (type.equals("DT"))
+				this.type = DATE;
+			else if (type.equals("TM"))
+				this.type = TIME;
+			else if (type.equals("AN"))
+				this.type = ALPHANUMERIC;
+			else
+				this.type = IDENTIFIER;
+		}
+	}
+
+	private static Node compile(EdiSpecTree tree, int loop) {
+		EdiMetaInfo row = tree.getRow(loop);
+		Node node = new Node(tree.getName(loop), true, row.isRequired(), row.getMaxOccurence(), tree.getDepth(loop));
+		String[] loopCond = row.getCondVals().isEmpty() ? null : new String[] { row.getConditionElement(),
+				row.getCondVals() };
+		for (int child = tree.getFirstChild(loop); child != EdiSpecTree.NONE; child = tree.getNextSibling(child)) {
+			if (tree.getKind(child) == EdiSpecTree.LOOP)
+				node.children.add(compile(tree, child));
+			else if (!(tree.getParent(loop) == EdiSpecTree.NONE && ENVELOPE.contains(tree.getName(child)))) {
+				node.children.add(compileSegment(tree, child, node.children.isEmpty() ? loopCond : null));
+			}
+		}
+		return node;
+	}
+
+	// the loop condition, e.g. NM1/NM101 41, applies to the first segment of the loop
+	private static Node compileSegment(EdiSpecTree tree, int segment, String[] loopCond) {
+		EdiMetaInfo row = tree.getRow(segment);
+		Node node = new Node(tree.getName(segment), false, row.isRequired(), row.getMaxOccurence(),
+				tree.getDepth(segment));
+		String condElement = null;
+		String[] condCodes = null;
+		if (!row.getCondVals().isEmpty()) {
+			condElement = row.getConditionElement();
+			condCodes = codes(row.getCondVals());
+		} else if (loopCond != null) {
+			condElement = loopCond[0];
+			condCodes = codes(loopCond[1]);
+		}
+
+		List<Field> fields = new ArrayList<Field>();
+		for (int element = tree.getFirstChild(segment); element != EdiSpecTree.NONE; element = tree
+				.getNextSibling(element)) {
+			EdiMetaInfo elementRow = tree.getRow(element);
+			Field field = compileField(elementRow, elementRow.getLseName().equals(condElement) ? condCodes : null);
+			if (tree.getFirstChild(element) != EdiSpecTree.NONE) {
+				List<Field> subs = new ArrayList<Field>();
+				for (int sub = tree.getFirstChild(element); sub != EdiSpecTree.NONE; sub = tree.getNextSibling(sub))
+					put(subs, position(tree.getRow(sub).getLseName(), elementRow.getLseName(), subs),
+							compileField(tree.getRow(sub), null));
+				field.subs = subs.toArray(new Field[subs.size()]);
+			}
+			put(fields, position(elementRow.getLseName(), row.getLseName(), fields), field);
+		}
+		node.fields = fields.toArray(new Field[fields.size()]);
+		return node;
+	}
+
+	private static Field compileField(EdiMetaInfo row, String[] codes) {
+		String type = row.getDataType().toUpperCase();
+		String[] formats = row.getPattern().isEmpty() ? null : codes(row.getPattern());
+		if (codes == null)
+			codes = codes(row.getValidVals());
+
+		// a pattern of plain literals that fit the element is a code list, e.g. GS01 HC
+		if (codes == null && formats != null && !type.equals("DT") && !type.equals("TM")) {
+			boolean literals = true;
+			for (String format : formats)
+				literals &= isAlphanumeric(format) && format.length() >= row.getMinLength()
+						&& (row.getMaxLength() == 0 || format.length() <= row.getMaxLength());
+			if (literals)
+				codes = formats;
+		}
+
+		int formatLength = 0;
+		if (type.equals("DT"))
+			formatLength = formats != null ? formats[0].length() : row.getMaxLength() == 6 ? 6 : 8;
+		else if (type.equals("TM"))
+			formatLength = formats != null ? formats[0].length() : Math.max(4, row.getMinLength());
+		return new Field(row.isRequired(), row.getMinLength(), row.getMaxLength(), type, codes, formatLength);
+	}
+
+	/**
+	 * Builds the loop skeleton of a plugin. A descriptor with a loop name opens that loop below
+	 * the loop named by its context, or below the root on nesting level 1; a descriptor without
+	 * one (null or ".") keeps its segment in the context loop, and a name starting with / puts
+	 * its segment at the end of the transaction, like UNS in EDIFACT. Descriptors whose parent
+	 * cannot be told from the context are skipped.
+	 */
+	private static Node compile(Plugin plugin) {
+		Node root = new Node("ediroot", true, true, 1, 0);
+		Map<String, Node> loops = new HashMap<String, Node>();
+		loops.put("", root);
+		List<Node> trailer = new ArrayList<Node>();
+
+		List<LoopDescriptor> descriptors = new ArrayList<LoopDescriptor>(Arrays.asList(plugin.getLoopDescriptors()));
+		Collections.sort(descriptors, new Comparator<LoopDescriptor>() {
+			@Override
+			public int compare(LoopDescriptor a, LoopDescriptor b) {
+				return a.getNestingLevel() - b.getNestingLevel();
+			}
+		});
+
+		List<LoopDescriptor> segments = new ArrayList<LoopDescriptor>();
+		for (LoopDescriptor descriptor : descriptors) {
+			String name = descriptor.getName();
+			String segment = descriptor.getFirstSegment();
+			if (ENVELOPE.contains(segment))
+				continue;
+			if (name != null && name.startsWith("/")) {
+				trailer.add(skeletonSegment(segment, true, 0));
+				continue;
+			}
+			if (name == null || name.equals(Plugin.CURRENT)) {
+				segments.add(descriptor);
+				continue;
+			}
+
+			int level = descriptor.getNestingLevel();
+			String context = context(descriptor);
+			String parentPath;
+			if (context == null)
+				parentPath = level == 1 ? "" : null;
+			else
+				parentPath = context.split("/").length - 1 == level - 1 ? context : null;
+			Node parent = parentPath == null ? null : loops.get(parentPath);
+			String path = parentPath + "/" + name;
+			if (parent == null || loops.containsKey(path))
+				continue;
+
+			Node loop = new Node(name, true, false, Integer.MAX_VALUE, level);
+			loop.children.add(skeletonSegment(segment, true, level));
+			parent.children.add(loop);
+			loops.put(path, loop);
+		}
+
+		Comparator<Node> byName = new Comparator<Node>() {
+			@Override
+			public int compare(Node a, Node b) {
+				return a.name.compareTo(b.name);
+			}
+		};
+		for (Node loop : loops.values())
+			Collections.sort(loop.children.subList(loop == root ? 0 : 1, loop.children.size()), byName);
+
+		// segments that stay in their loop follow its first segment, before the nested loops
+		for (LoopDescriptor descriptor : segments) {
+			String context = context(descriptor);
+			Node loop = descriptor.getNestingLevel() == 0 ? root : context == null ? null : loops.get(context);
+			if (loop == null || contains(loop, descriptor.getFirstSegment()))
+				continue;
+			int index = loop == root ? 0 : 1;
+			while (index < loop.children.size() && !loop.children.get(index).loop)
+				index++;
+			loop.children.add(index, skeletonSegment(descriptor.getFirstSegment(), false, loop.depth));
+		}
+		root.children.addAll(trailer);
+		return root;
+	}
+
+	// the context as an absolute loop path, null for any context
+	private static String context(LoopDescriptor descriptor) {
+		String context = descriptor.getLoopContext();
+		if (context == null || context.equals(Plugin.ANY_CONTEXT) || context.equals(Plugin.INITIAL_CONTEXT))
+			return null;
+		return context.startsWith("/") ? context : "/" + context;
+	}
+
+	private static boolean contains(Node loop, String segment) {
+		for (Node child : loop.children)
+			if (!child.loop && child.name.equals(segment))
+				return true;
+		return false;
+	}
+
+	private static Node skeletonSegment(String name, boolean required, int depth) {
+		Node node = new Node(name, false, required, 1, depth);
+		node.fields = new Field[] { new Field(true, 1, 10, "AN", null, 0), new Field(false, 1, 10, "AN", null, 0),
+				new Field(false, 1, 6, "N", null, 0) };
+		return node;
+	}
+
+	// marks the first loop that starts with the claim segment, and the loops around it
+	private static boolean mark(Node loop, String claimSegment) {
+		for (Node child : loop.children) {
+			if (!child.loop)
+				continue;
+			if (!child.children.isEmpty() && child.children.get(0).name.equals(claimSegment)) {
+				child.claim = true;
+				return true;
+			}
+			if (mark(child, claimSegment)) {
+				child.claimPath = true;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String code(EdiSpecTree tree, String element, String defaultValue) {
+		for (int id = 0; id < tree.size(); id++) {
+			EdiMetaInfo row = tree.getRow(id);
+			if (row.getLseName().equals(element)) {
+				String[] codes = codes(row.getValidVals());
+				if (codes == null)
+					codes = codes(row.getPattern());
+				return codes != null ? codes[0] : defaultValue;
+			}
+		}
+		return defaultValue;
+	}
+
+	private static String[] codes(String list) {
+		if (list.isEmpty())
+			return null;
+		String[] codes = list.split(",");
+		for (int i = 0; i < codes.length; i++)
+			codes[i] = codes[i].trim();
+		return codes;
+	}
+
+	// the position of NM108 in NM1 is 8, of CLM051 in CLM05 1; names without one come next
+	private static int position(String name, String parent, List<Field> fields) {
+		int position = 0;
+		for (int i = parent.length(); i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c < '0' || c > '9')
+				return fields.size() + 1;
+			position = position * 10 + c - '0';
+		}
+		return position > 0 ? position : fields.size() + 1;
+	}
+
+	private static void put(List<Field> fields, int position, Field field) {
+		while (fields.size() < position)
+			fields.add(null);
+		fields.set(position - 1, field);
+	}
+
+	private static boolean isAlphanumeric(String value) {
+		for (int i = 0; i < value.length(); i++)
+			if (ALPHABET.indexOf(Character.toUpperCase(value.charAt(i))) < 0)
+				return false;
+		return !value.isEmpty();
+	}
+
+	// ---- generation
+
+	/**
+	 * The state of one output: the random generator, the text of the current transaction and
+	 * the counts. Runs share nothing but the immutable model.
+	 */
+	private class Run {
+		private final OutputStream out;
+		private final StringBuilder sb = new StringBuilder(FLUSH_SIZE * 2);
+		private char[] chars = new char[FLUSH_SIZE * 2];
+		private byte[] bytes = new byte[FLUSH_SIZE * 2];
+		private final Stats stats = new Stats();
+		private long state;
+
+		private int segments;
+		private int hl;
+		private int remainingClaims;
+		private int errorKind;
+		private int errorCountdown;
+		private String date;
+		private int time;
+
+		Run(OutputStream out, long seed) {
+			this.out = out;
+			this.state = seed == 0 ? 1 : seed;
+		}
+
+		void interchange(int control) throws IOException {
+			date = date();
+			time = nextInt(24) * 100 + nextInt(60);
+			if (isEdifact())
+				edifactInterchange(control);
+			else
+				x12Interchange(control);
+			stats.interchanges++;
+		}
+
+		private void x12Interchange(int control) throws IOException {
+			sb.append("ISA").append(separator).append("00").append(separator).append("          ").append(separator)
+					.append("00").append(separator).append("          ").append(separator).append("ZZ")
+					.append(separator).append("SENDER         ").append(separator).append("ZZ").append(separator)
+					.append("RECEIVER       ").append(separator).append(date, 2, 8).append(separator);
+			pad(time, 4);
+			sb.append(separator).append('U').append(separator).append(version).append(separator);
+			pad(control, 9);
+			sb.append(separator).append('0').append(separator).append('P').append(separator).append(subSeparator);
+			end();
+
+			int transaction = 0;
+			for (int group = 1; group <= groups; group++) {
+				begin("GS");
+				element(functionalId);
+				element("SENDER");
+				element("RECEIVER");
+				element(date);
+				sb.append(separator);
+				pad(time, 4);
+				sb.append(separator).append(group);
+				element("X");
+				element(groupVersion);
+				end();
+				for (int i = 0; i < transactions; i++)
+					transaction(++transaction);
+				begin("GE");
+				sb.append(separator).append(transactions).append(separator).append(group);
+				end();
+			}
+			begin("IEA");
+			sb.append(separator).append(groups).append(separator);
+			pad(control, 9);
+			end();
+			flush();
+		}
+
+		private void edifactInterchange(int control) throws IOException {
+			sb.append("UNA").append(subSeparator).append(separator).append('.').append(release).append(' ')
+					.append(terminator);
+			if (lineBreaks)
+				sb.append('\n');
+			begin("UNB");
+			element("UNOA");
+			sb.append(subSeparator).append('2');
+			element("SENDER");
+			element("RECEIVER");
+			sb.append(separator).append(date, 2, 8).append(subSeparator);
+			pad(time, 4);
+			sb.append(separator).append(control);
+			end();
+			int messages = groups * transactions;
+			for (int i = 1; i <= messages; i++)
+				transaction(i);
+			begin("UNZ");
+			sb.append(separator).append(messages).append(separator).append(control);
+			end();
+			flush();
+		}
+
+		private void transaction(int control) throws IOException {
+			segments = 0;
+			hl = 0;
+			remainingClaims = claims > 0 ? claims : -1;
+			errorKind = NO_ERROR;
+			errorCountdown = 0;
+			if (errors > 0 && nextDouble() < errors) {
+				errorKind = nextInt(ERROR_KINDS);
+				if (errorKind == ERROR_INVALID_CODE || errorKind == ERROR_TOO_LONG)
+					errorCountdown = 1 + nextInt(16);
+			}
+
+			boolean edifact = isEdifact();
+			begin(edifact ? "UNH" : "ST");
+			if (edifact) {
+				sb.append(separator).append(control).append(separator).append(type).append(subSeparator).append('D')
+						.append(subSeparator).append("96A").append(subSeparator).append("UN");
+			} else {
+				element(type);
+				sb.append(separator);
+				pad(control, 4);
+			}
+			end();
+
+			children(root);
+
+			// an element error that found no element to go into becomes a count error
+			if (errorCountdown > 0)
+				errorKind = ERROR_SEGMENT_COUNT;
+			if (errorKind != NO_ERROR)
+				stats.errors[errorKind]++;
+
+			begin(edifact ? "UNT" : "SE");
+			sb.append(separator).append(segments + (errorKind == ERROR_SEGMENT_COUNT ? 2 : 1)).append(separator);
+			int trailerControl = errorKind == ERROR_CONTROL_NUMBER ? control + 1 : control;
+			if (edifact)
+				sb.append(trailerControl);
+			else
+				pad(trailerControl, 4);
+			end();
+			stats.transactions++;
+			if (sb.length() >= FLUSH_SIZE)
+				flush();
+		}
+
+		private void children(Node loop) {
+			List<Node> children = loop.children;
+			for (int i = 0; i < children.size(); i++) {
+				Node child = children.get(i);
+				if (!child.loop) {
+					int n = i == 0 && loop != root ? 1 : occurrences(child);
+					for (int j = 0; j < n; j++)
+						segment(child);
+				} else if (child.claim && remainingClaims >= 0) {
+					int n = Math.min(remainingClaims, child.maxOccurs);
+					remainingClaims -= n;
+					stats.claims += n;
+					for (int j = 0; j < n; j++)
+						children(child);
+				} else if (child.claimPath && remainingClaims >= 0) {
+					int n = 0;
+					do {
+						children(child);
+						n++;
+					} while (remainingClaims > 0 && n < child.maxOccurs);
+				} else {
+					int n = occurrences(child);
+					if (child.claim)
+						stats.claims += n;
+					for (int j = 0; j < n; j++)
+						children(child);
+				}
+			}
+		}
+
+		private int occurrences(Node node) {
+			if (!node.required && (node.loop && node.depth > depth || nextDouble() >= optional))
+				return 0;
+			int upper = Math.min(node.maxOccurs, repeat);
+			return upper <= 1 ? 1 : 1 + nextInt(upper);
+		}
+
+		private void segment(Node node) {
+			sb.append(node.name);
+			int keep = sb.length();
+			boolean hlSegment = node.name.equals("HL");
+			Field[] fields = node.fields;
+			for (int i = 0; i < fields.length; i++) {
+				sb.append(separator);
+				if (hlSegment && i == 0)
+					sb.append(++hl);
+				else if (hlSegment && i == 1) {
+					if (hl > 1)
+						sb.append(hl - 1);
+				} else if (fields[i] != null)
+					value(fields[i]);
+				if (sb.charAt(sb.length() - 1) != separator)
+					keep = sb.length();
+			}
+			sb.setLength(keep);
+			end();
+		}
+
+		private void value(Field field) {
+			if (!field.required && nextDouble() >= optional)
+				return;
+			if (field.subs != null) {
+				int keep = sb.length();
+				for (int i = 0; i < field.subs.length; i++) {
+					if (i > 0)
+						sb.append(subSeparator);
+					int start = sb.length();
+					if (field.subs[i] != null)
+						value(field.subs[i]);
+					if (sb.length() > start)
+						keep = sb.length();
+				}
+				sb.setLength(keep);
+				return;
+			}
+
+			if (errorCountdown > 0 && isEligible(field) && --errorCountdown == 0) {
+				if (errorKind == ERROR_TOO_LONG)
+					alphanumeric(field.maxLength + 1 + nextInt(5));
+				else
+					invalidCode(field.codes);
+				return;
+			}
+
+			if (field.codes != null) {
+				sb.append(field.codes[nextInt(field.codes.length)]);
+				return;
+			}
+			switch (field.type) {
+			case Field.DATE:
+				sb.append(date, field.formatLength == 6 ? 2 : 0, 8);
+				break;
+			case Field.TIME:
+				time(field.formatLength);
+				break;
+			case Field.NUMERIC:
+				digits(length(field, 6));
+				break;
+			case Field.DECIMAL:
+				decimal(length(field, 7));
+				break;
+			default:
+				alphanumeric(length(field, 12));
+			}
+		}
+
+		private boolean isEligible(Field field) {
+			if (errorKind == ERROR_INVALID_CODE)
+				return field.codes != null;
+			return field.codes == null && field.maxLength > 0 && field.type == Field.ALPHANUMERIC;
+		}
+
+		// a value of the length of the codes that is none of them
+		private void invalidCode(String[] codes) {
+			int start = sb.length();
+			while (true) {
+				alphanumeric(Math.max(1, codes[0].length()));
+				String value = sb.substring(start);
+				if (!Arrays.asList(codes).contains(value))
+					return;
+				sb.setLength(start);
+			}
+		}
+
+		private int length(Field field, int cap) {
+			int min = Math.max(1, field.minLength);
+			int max = field.maxLength > 0 ? Math.min(field.maxLength, min + cap) : min + cap;
+			return max <= min ? min : min + nextInt(max - min + 1);
+		}
+
+		private void alphanumeric(int length) {
+			for (int i = 0; i < length; i++)
+				sb.append(ALPHABET.charAt(nextInt(ALPHABET.length())));
+		}
+
+		private void digits(int length) {
+			sb.append((char) ('1' + nextInt(9)));
+			for (int i = 1; i < length; i++)
+				sb.append((char) ('0' + nextInt(10)));
+		}
+
+		private void decimal(int length) {
+			if (length < 3) {
+				digits(length);
+				return;
+			}
+			digits(length - 2);
+			sb.append('.');
+			sb.append((char) ('0' + nextInt(10))).append((char) ('0' + nextInt(10)));
+		}
+
+		// CCYYMMDD between 2015 and 2019, every day of a month valid in all months
+		private String date() {
+			return Integer.toString((2015 + nextInt(5)) * 10000 + (1 + nextInt(12)) * 100 + 1 + nextInt(28));
+		}
+
+		// HHMM followed by seconds and decimal seconds up to the length
+		private void time(int length) {
+			pad(nextInt(24) * 100 + nextInt(60), 4);
+			if (length >= 6)
+				pad(nextInt(60), 2);
+			for (int i = 6; i < length; i++)
+				sb.append((char) ('0' + nextInt(10)));
+		}
+
+		private void begin(String name) {
+			sb.append(name);
+		}
+
+		private void element(String value) {
+			sb.append(separator).append(value);
+		}
+
+		private void end() {
+			sb.append(terminator);
+			if (lineBreaks)
+				sb.append('\n');
+			segments++;
+		}
+
+		private void pad(int value, int width) {
+			int digits = 1;
+			for (int rest = value / 10; rest > 0; rest /= 10)
+				digits++;
+			for (int i = digits; i < width; i++)
+				sb.append('0');
+			sb.append(value);
+		}
+
+		void flush() throws IOException {
+			int length = sb.length();
+			if (length == 0)
+				return;
+			if (chars.length < length) {
+				chars = new char[length];
+				bytes = new byte[length];
+			}
+			sb.getChars(0, length, chars, 0);
+			for (int i = 0; i < length; i++)
+				bytes[i] = (byte) chars[i];
+			out.write(bytes, 0, length);
+			stats.bytes += length;
+			sb.setLength(0);
+		}
+
+		// xorshift64*, a fraction of the cost of java.util.Random and good enough for test data
+		private long next() {
+			state ^= state >>> 12;
+			state ^= state << 25;
+			state ^= state >>> 27;
+			return state * 0x2545F4914F6CDD1DL;
+		}
+
+		private int nextInt(int bound) {
+			return (int) (((next() >>> 32) * bound) >>> 32);
+		}
+
+		private double nextDouble() {
+			return (next() >>> 11) * 0x1.0p-53;
+		}
+	}
+}
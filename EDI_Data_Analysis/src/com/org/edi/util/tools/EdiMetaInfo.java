@@ -1,20 +1,21 @@
 package com.org.edi.util.tools;
 
 public class EdiMetaInfo {
-	private String category = "";
-	private String isStart = "";
-	private String lseName = "";
-	private String lseDesc = "";
-	private int minOccurence;
-	private int maxOccurence;
-	private int minLength;
-	private int maxLength;
-	private String dataType = "";
-	private int precission;
-	private String pattern = "";
-	private String validVals = "";
-	private String cond = "";
-	private String condVals = "";
+	private final String category;
+	private final String isStart;
+	private final String lseName;
+	private final String lseDesc;
+	private final boolean required;
+	private final int minOccurence;
+	private final int maxOccurence;
+	private final int minLength;
+	private final int maxLength;
+	private final String dataType;
+	private final int precission;
+	private final String pattern;
+	private final String validVals;
+	private final String cond;
+	private final String condVals;
 
 	public EdiMetaInfo(String category, String isStart, String lseName, String lseDesc, int minOccurence,
 			int maxOccurence, int minLength, int maxLength, String dataType, int precission, String pattern,
@@ -24,6 +25,7 @@ public class EdiMetaInfo {
 		this.isStart = isStart.trim();
 		this.lseName = lseName.trim();
 		this.lseDesc = lseDesc.trim();
+		this.required = minOccurence > 0;
 		this.minOccurence = minOccurence;
 		this.maxOccurence = maxOccurence;
 		this.minLength = minLength;
@@ -33,176 +35,103 @@ public class EdiMetaInfo {
 		this.pattern = pattern.trim();
 		this.validVals = validVals.trim();
 		this.cond = cond.trim();
-		this.setCondVals(condVals.trim());
+		this.condVals = condVals.trim();
 	}
 
 	public EdiMetaInfo(String str) {
-		if (!str.trim().isEmpty()) {
-			String[] strArr = str.split("\t", 14);
-
-			this.category = strArr[0].trim();
-			this.isStart = strArr[1].trim();
-			this.lseName = strArr[2].trim();
-			this.lseDesc = strArr[3].trim();
-
-			if (strArr[4].trim().equalsIgnoreCase("Required"))
-				this.minOccurence = 1;
-			if (strArr[4].trim().equalsIgnoreCase("Optional"))
-				this.minOccurence = 0;
-			else if (strArr[5].trim().isEmpty())
-				this.minOccurence = 0;
-
-			if (!strArr[5].trim().isEmpty() && !strArr[5].trim().equalsIgnoreCase("unbounded"))
-				this.maxOccurence = Integer.parseInt(strArr[5].trim());
-			else if (!strArr[5].trim().isEmpty() && strArr[5].trim().equalsIgnoreCase("unbounded"))
-				this.maxOccurence = 9999;
-			else if (strArr[5].trim().isEmpty())
-				this.maxOccurence = 1;
-
-			if (!strArr[6].trim().isEmpty())
-				this.minLength = Integer.parseInt(strArr[6].trim());
-
-			if (!strArr[7].trim().isEmpty())
-				this.maxLength = Integer.parseInt(strArr[7].trim());
-
-			this.dataType = strArr[8].trim();
-
-			if (!strArr[9].trim().isEmpty())
-				this.precission = Integer.parseInt(strArr[9].trim());
-
-			if (!strArr[10].trim().isEmpty())
-				this.pattern = strArr[10].trim();
-			else
-				this.pattern = "";
-			if (!strArr[11].trim().isEmpty())
-				this.validVals = strArr[11].trim();
-			else
-				this.validVals = "";
-
-			if (!strArr[12].trim().isEmpty())
-				this.cond = strArr[12].trim();
-			else
-				this.cond = "";
-
-			if (!strArr[13].trim().isEmpty())
-				this.setCondVals(strArr[13].trim());
-			else
-				this.setCondVals("");
-		}
+		this(EdiSpec.tokenize(str));
+	}
+
+	/**
+	 * Takes the 14 trimmed columns of a specification row, see EdiSpec.
+	 */
+	EdiMetaInfo(String[] fields) {
+		this.category = fields[0];
+		this.isStart = fields[1];
+		this.lseName = fields[2];
+		this.lseDesc = fields[3];
+
+		// rows without a max occurrence, i.e. elements, keep minOccurs 0 even when required
+		this.required = fields[4].equalsIgnoreCase("Required");
+		this.minOccurence = required && !fields[5].isEmpty() ? 1 : 0;
+
+		if (fields[5].isEmpty())
+			this.maxOccurence = 1;
+		else if (fields[5].equalsIgnoreCase("unbounded"))
+			this.maxOccurence = 9999;
+		else
+			this.maxOccurence = Integer.parseInt(fields[5]);
+
+		this.minLength = fields[6].isEmpty() ? 0 : Integer.parseInt(fields[6]);
+		this.maxLength = fields[7].isEmpty() ? 0 : Integer.parseInt(fields[7]);
+		this.dataType = fields[8];
+		this.precission = fields[9].isEmpty() ? 0 : Integer.parseInt(fields[9]);
+		this.pattern = fields[10];
+		this.validVals = fields[11];
+		this.cond = fields[12];
+		this.condVals = fields[13];
 	}
 
 	public String getCategory() {
 		return category;
 	}
 
-	public void setCategory(String category) {
-		this.category = category;
-	}
-
 	public String getIsStart() {
 		return isStart;
 	}
 
-	public void setIsStart(String isStart) {
-		this.isStart = isStart;
-	}
-
 	public String getLseName() {
 		return lseName;
 	}
 
-	public void setLseName(String lseName) {
-		this.lseName = lseName;
-	}
-
 	public String getLseDesc() {
 		return lseDesc;
 	}
 
-	public void setLseDesc(String lseDesc) {
-		this.lseDesc = lseDesc;
+	public boolean isRequired() {
+		return required;
 	}
 
 	public int getMinOccurence() {
 		return minOccurence;
 	}
 
-	public void setMinOccurence(int minOccurence) {
-		this.minOccurence = minOccurence;
-	}
-
 	public int getMaxOccurence() {
 		return maxOccurence;
 	}
 
-	public void setMaxOccurence(int maxOccurence) {
-		this.maxOccurence = maxOccurence;
-	}
-
 	public int getMinLength() {
 		return minLength;
 	}
 
-	public void setMinLength(int minLength) {
-		this.minLength = minLength;
-	}
-
 	public int getMaxLength() {
 		return maxLength;
 	}
 
-	public void setMaxLength(int maxLength) {
-		this.maxLength = maxLength;
-	}
-
 	public String getDataType() {
 		return dataType;
 	}
 
-	public void setDataType(String dataType) {
-		this.dataType = dataType;
-	}
-
 	public int getPrecission() {
 		return precission;
 	}
 
-	public void setPrecission(int precission) {
-		this.precission = precission;
-	}
-
 	public String getPattern() {
 		return pattern;
 	}
 
-	public void setPattern(String pattern) {
-		this.pattern = pattern;
-	}
-
 	public String getValidVals() {
 		return validVals;
 	}
 
-	public void setValidVals(String validVals) {
-		this.validVals = validVals;
-	}
-
 	public String getCond() {
 		return cond;
 	}
 
-	public void setCond(String cond) {
-		this.cond = cond;
-	}
-
 	public String getCondVals() {
 		return condVals;
 	}
 
-	public void setCondVals(String condVals) {
-		this.condVals = condVals;
-	}
-
 	@Override
 	public String toString() {
 		return "EdiMetaInfo [category=" + category + ", isStart=" + isStart + ", lseName=" + lseName + ", lseDesc="
@@ -243,6 +172,14 @@ public class EdiMetaInfo {
 		return result;
 	}
 
+	/**
+	 * Number of decimal places implied by an Nn element: its value is written without a
+	 * decimal point, so 12345 in an N2 element is 123.45. 0 for all other types.
+	 */
+	public int getImpliedDecimals() {
+		return dataType.equals("N") ? precission : 0;
+	}
+
 	public boolean isNull() {
 		return lseName.isEmpty();
 	}
@@ -1,32 +1,81 @@
 package com.org.edi.util.tools;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 
+/**
+ * A FIFO queue over a growable array. The items live between head and tail; the array is
+ * compacted or grown only when the tail reaches its end.
+ */
 public class EdiMetaQueue<E> {
-	private LinkedList<E> list;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Object[] items;
+	private int head;
+	private int tail;
 
 	public EdiMetaQueue() {
-		list = new LinkedList<E>();
+		items = new Object[INITIAL_CAPACITY];
 	}
 
 	public void enqueue(E item) {
-		list.addLast(item);
+		ensureCapacity(1);
+		items[tail++] = item;
 	}
 
 	public boolean hasItems() {
-		return !list.isEmpty();
+		return head < tail;
 	}
-	
+
+	@SuppressWarnings("unchecked")
 	public E dequeue() {
-		return list.poll();
+		if (head == tail)
+			return null;
+		E item = (E) items[head];
+		items[head++] = null;
+		if (head == tail)
+			head = tail = 0;
+		return item;
 	}
 
 	public int size() {
-		return list.size();
+		return tail - head;
 	}
 
+	/**
+	 * Moves all items of q to the end of this queue, leaving q empty. An empty queue takes
+	 * over the array of q, otherwise the items are copied in one block.
+	 */
 	public void addItems(EdiMetaQueue<? extends E> q) {
-		while (q.hasItems())
-			list.addLast(q.dequeue());
+		if (q == this || !q.hasItems())
+			return;
+		if (!hasItems()) {
+			Object[] swap = items;
+			items = q.items;
+			head = q.head;
+			tail = q.tail;
+			q.items = swap;
+		} else {
+			int count = q.size();
+			ensureCapacity(count);
+			System.arraycopy(q.items, q.head, items, tail, count);
+			tail += count;
+			Arrays.fill(q.items, q.head, q.tail, null);
+		}
+		q.head = q.tail = 0;
+	}
+
+	private void ensureCapacity(int count) {
+		if (tail + count <= items.length)
+			return;
+		int size = size();
+		Object[] target = items;
+		if (size + count > items.length / 2)
+			target = new Object[Math.max(items.length * 2, size + count)];
+		System.arraycopy(items, head, target, 0, size);
+		if (target == items)
+			Arrays.fill(items, size, tail, null);
+		items = target;
+		head = 0;
+		tail = size;
 	}
-}
\ No newline at end of file
+}
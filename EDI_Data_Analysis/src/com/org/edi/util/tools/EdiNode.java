@@ -68,4 +68,19 @@ public class EdiNode {
 		sb.append("</xsl:when>");
 		return sb.toString();
 	}
+
+	/**
+	 * Returns the node as a template matched by its absolute path, so the processor selects it
+	 * directly instead of comparing $xPath. The priority keeps the order of the xsl:when list.
+	 */
+	public String toTemplate(int priority) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<xsl:template match=\"").append(absPath);
+		if (!condition.trim().isEmpty())
+			sb.append("[").append(condition).append("]");
+		sb.append("\" priority=\"").append(priority).append("\">");
+		sb.append(nodeInfo);
+		sb.append("</xsl:template>");
+		return sb.toString();
+	}
 }
@@ -0,0 +1,141 @@
+package com.org.edi.util.tools;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows of a tab separated specification file, loaded once and shared by the generators.
+ *
+ * The file is read in bulk through a channel and tokenized in a single pass: every field is
+ * cut out and trimmed once, and equal field values share one String instance. Lines may end
+ * with CR, LF or CRLF. Blank rows are dropped, the list and its rows are immutable.
+ */
+public final class EdiSpec {
+	public static final int FIELDS = 14;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final List<EdiMetaInfo> rows;
+	private volatile EdiSpecTree tree;
+
+	private EdiSpec(List<EdiMetaInfo> rows) {
+		this.rows = Collections.unmodifiableList(rows);
+	}
+
+	public static EdiSpec load(String file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) != -1)
+				;
+			return parse(buffer.array(), buffer.position());
+		} finally {
+			in.close();
+		}
+	}
+
+	public static EdiSpec load(InputStream in) throws IOException {
+		ReadableByteChannel channel = Channels.newChannel(in);
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		while (channel.read(buffer) != -1) {
+			if (!buffer.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			}
+		}
+		return parse(buffer.array(), buffer.position());
+	}
+
+	// the specification files are single byte text
+	private static EdiSpec parse(byte[] bytes, int length) {
+		List<EdiMetaInfo> rows = new ArrayList<EdiMetaInfo>();
+		Map<String, String> pool = new HashMap<String, String>();
+		String[] fields = new String[FIELDS];
+
+		int field = 0, start = 0;
+		for (int i = 0; i <= length; i++) {
+			int c = i < length ? bytes[i] & 0xff : '\n';
+			if (c != '\t' && c != '\r' && c != '\n')
+				continue;
+
+			if (field < FIELDS)
+				fields[field++] = token(bytes, start, i, pool);
+			start = i + 1;
+
+			if (c != '\t') {
+				if (field > 1 || !fields[0].isEmpty()) {
+					while (field < FIELDS)
+						fields[field++] = "";
+					EdiMetaInfo row = new EdiMetaInfo(fields);
+					if (!row.isNull())
+						rows.add(row);
+				}
+				field = 0;
+				fields[0] = "";
+			}
+		}
+		return new EdiSpec(rows);
+	}
+
+	private static String token(byte[] bytes, int start, int end, Map<String, String> pool) {
+		while (start < end && bytes[start] <= ' ')
+			start++;
+		while (end > start && bytes[end - 1] <= ' ')
+			end--;
+		if (start == end)
+			return "";
+
+		char[] chars = new char[end - start];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = (char) (bytes[start + i] & 0xff);
+		String token = new String(chars);
+		String pooled = pool.get(token);
+		if (pooled == null) {
+			pool.put(token, token);
+			pooled = token;
+		}
+		return pooled;
+	}
+
+	/**
+	 * Splits one line the way the loader does, for callers that still build rows from strings.
+	 */
+	static String[] tokenize(String line) {
+		String[] fields = new String[FIELDS];
+		int field = 0, start = 0;
+		for (int i = 0; i <= line.length() && field < FIELDS; i++) {
+			if (i < line.length() && (line.charAt(i) != '\t' || field == FIELDS - 1))
+				continue;
+			fields[field++] = line.substring(start, i).trim();
+			start = i + 1;
+		}
+		while (field < FIELDS)
+			fields[field++] = "";
+		return fields;
+	}
+
+	public List<EdiMetaInfo> getRows() {
+		return rows;
+	}
+
+	// built on first use; the tree is immutable, so a duplicate built by a racing thread is harmless
+	public EdiSpecTree getTree() {
+		EdiSpecTree result = tree;
+		if (result == null)
+			tree = result = EdiSpecTree.build(rows);
+		return result;
+	}
+}
@@ -0,0 +1,213 @@
+package com.org.edi.util.tools;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The specification rows as a tree of loops, segments, elements and sub-elements.
+ *
+ * Nodes are numbered in row order, which is also the document order of the tree, and all
+ * links are int arrays indexed by node id: parent, first child and next sibling. Every node
+ * has the absolute path of its element names, e.g. /ediroot/L2000/L2300/CLM. Equal paths
+ * share one path id, so generators can group and compare nodes by int instead of by string.
+ * The tree is immutable, EdiSpec builds it once and hands the same instance to every
+ * generator.
+ */
+public final class EdiSpecTree {
+	public static final int NONE = -1;
+
+	public static final int LOOP = 0;
+	public static final int SEGMENT = 1;
+	public static final int ELEMENT = 2;
+	public static final int SUB_ELEMENT = 3;
+
+	private final int size;
+	private final EdiMetaInfo[] rows;
+	private final int[] kinds;
+	private final int[] parents;
+	private final int[] depths;
+	private final int[] firstChildren;
+	private final int[] nextSiblings;
+	private final int[] pathIds;
+	private final String[] names;
+	private final String[] paths;
+	private final Map<String, Integer> pathIndex;
+
+	private EdiSpecTree(Builder builder) {
+		this.size = builder.size;
+		this.rows = builder.rows;
+		this.kinds = builder.kinds;
+		this.parents = builder.parents;
+		this.depths = builder.depths;
+		this.firstChildren = builder.firstChildren;
+		this.nextSiblings = builder.nextSiblings;
+		this.pathIds = builder.pathIds;
+		this.names = builder.names;
+		this.paths = builder.paths;
+		this.pathIndex = builder.pathIndex;
+	}
+
+	/**
+	 * Builds the tree the way the generators read the rows: loops nest between their start and
+	 * end rows, a segment belongs to the innermost open loop, an element to the last segment
+	 * and a sub-element to the last element. Rows outside of those are not part of the tree.
+	 */
+	public static EdiSpecTree build(List<EdiMetaInfo> rows) {
+		Builder builder = new Builder(rows.size());
+		int[] loops = new int[rows.size()];
+		int top = -1;
+		int segment = NONE;
+		int element = NONE;
+
+		for (EdiMetaInfo row : rows) {
+			String category = row.getCategory();
+			if (category.equalsIgnoreCase("loop")) {
+				if (row.getIsStart().equalsIgnoreCase("start")) {
+					int loop = builder.add(row, LOOP, top < 0 ? NONE : loops[top]);
+					loops[++top] = loop;
+				} else if (row.getIsStart().equalsIgnoreCase("end") && top >= 0)
+					top--;
+				segment = NONE;
+				element = NONE;
+			} else if (category.equalsIgnoreCase("segment") && top >= 0) {
+				segment = builder.add(row, SEGMENT, loops[top]);
+				element = NONE;
+			} else if (category.equalsIgnoreCase("element") && segment != NONE)
+				element = builder.add(row, ELEMENT, segment);
+			else if (category.equalsIgnoreCase("sub-element") && element != NONE)
+				builder.add(row, SUB_ELEMENT, element);
+		}
+		return new EdiSpecTree(builder);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// the first loop of the specification, normally ediroot
+	public int getRoot() {
+		return size > 0 ? 0 : NONE;
+	}
+
+	public EdiMetaInfo getRow(int id) {
+		return rows[id];
+	}
+
+	public int getKind(int id) {
+		return kinds[id];
+	}
+
+	public int getParent(int id) {
+		return parents[id];
+	}
+
+	public int getDepth(int id) {
+		return depths[id];
+	}
+
+	public int getFirstChild(int id) {
+		return firstChildren[id];
+	}
+
+	public int getNextSibling(int id) {
+		return nextSiblings[id];
+	}
+
+	/**
+	 * Returns the element name of the node as it appears in a path.
+	 */
+	public String getName(int id) {
+		return names[id];
+	}
+
+	public int getPathId(int id) {
+		return pathIds[id];
+	}
+
+	public String getPath(int id) {
+		return paths[pathIds[id]];
+	}
+
+	public int getPathCount() {
+		return pathIndex.size();
+	}
+
+	public String getPathById(int pathId) {
+		return paths[pathId];
+	}
+
+	/**
+	 * Returns the id of an absolute path, or NONE if no node has that path.
+	 */
+	public int findPath(String path) {
+		Integer pathId = pathIndex.get(path);
+		return pathId != null ? pathId : NONE;
+	}
+
+	private static class Builder {
+		int size;
+		final EdiMetaInfo[] rows;
+		final int[] kinds;
+		final int[] parents;
+		final int[] depths;
+		final int[] firstChildren;
+		final int[] nextSiblings;
+		final int[] lastChildren;
+		final int[] pathIds;
+		final String[] names;
+		final String[] paths;
+		final Map<String, Integer> pathIndex = new HashMap<String, Integer>();
+
+		Builder(int capacity) {
+			rows = new EdiMetaInfo[capacity];
+			kinds = new int[capacity];
+			parents = new int[capacity];
+			depths = new int[capacity];
+			firstChildren = new int[capacity];
+			nextSiblings = new int[capacity];
+			lastChildren = new int[capacity];
+			pathIds = new int[capacity];
+			names = new String[capacity];
+			paths = new String[capacity];
+		}
+
+		int add(EdiMetaInfo row, int kind, int parent) {
+			int id = size++;
+			rows[id] = row;
+			kinds[id] = kind;
+			parents[id] = parent;
+			firstChildren[id] = NONE;
+			nextSiblings[id] = NONE;
+			lastChildren[id] = NONE;
+			names[id] = clean(row.getElementName());
+
+			String path;
+			if (parent == NONE) {
+				depths[id] = 0;
+				path = "/" + names[id];
+			} else {
+				depths[id] = depths[parent] + 1;
+				path = paths[pathIds[parent]] + "/" + names[id];
+				if (lastChildren[parent] == NONE)
+					firstChildren[parent] = id;
+				else
+					nextSiblings[lastChildren[parent]] = id;
+				lastChildren[parent] = id;
+			}
+
+			Integer pathId = pathIndex.get(path);
+			if (pathId == null) {
+				pathId = pathIndex.size();
+				pathIndex.put(path, pathId);
+				paths[pathId] = path;
+			}
+			pathIds[id] = pathId;
+			return id;
+		}
+
+		private static String clean(String elementName) {
+			return elementName.replace("  ", " ").trim().replace(" ", "_");
+		}
+	}
+}
@@ -0,0 +1,493 @@
+package com.org.edi.util.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Table driven replacement for the stylesheet generated by XslGen.
+ *
+ * XslGen.tableGen writes the same renames and conditions the stylesheet holds as a rule
+ * table. The rules are compiled into a trie keyed by element name, so the path of every
+ * element is tracked by a state stack instead of walking its ancestors, and only the rules
+ * registered for that exact path are tested. Loop rules rename the loop element, segment
+ * rules replace the segment by its described elements, everything else is copied.
+ *
+ * Loop conditions look at the first segments of the loop, so each document is read into a
+ * light node tree before the single output pass. An instance is immutable and thread-safe.
+ */
+public class EdiTransformer {
+	public static final String LOOP = "L";
+	public static final String SEGMENT = "S";
+	public static final String ELEMENT = "E";
+	public static final String COMPOSITE = "C";
+	public static final String SUB_ELEMENT = "U";
+
+	private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+	private static final String XMLNS = "xmlns";
+
+	private final PathState root = new PathState();
+
+	private static final ThreadLocal<XMLReader> readers = new ThreadLocal<XMLReader>();
+
+	public EdiTransformer(Collection<Rule> rules) {
+		for (Rule rule : rules)
+			addRule(rule);
+	}
+
+	public EdiTransformer(InputStream table) throws IOException {
+		this(readTable(table));
+	}
+
+	private void addRule(Rule rule) {
+		PathState state = root;
+		for (String step : rule.getPath().substring(1).split("/")) {
+			PathState next = state.children.get(step);
+			if (next == null) {
+				next = new PathState();
+				state.children.put(step, next);
+			}
+			state = next;
+		}
+		state.rules.add(rule);
+	}
+
+	public String transform(String xml) throws SAXException, IOException {
+		StringWriter out = new StringWriter(xml.length());
+		transform(new InputSource(new StringReader(xml)), out);
+		return out.toString();
+	}
+
+	public void transform(InputSource source, Writer out) throws SAXException, IOException {
+		TreeBuilder builder = new TreeBuilder();
+		XMLReader reader = getReader();
+		reader.setContentHandler(builder);
+		reader.parse(source);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(XML_HEADER);
+		if (builder.document != null)
+			apply(builder.document, root, "", sb);
+		out.write(sb.toString());
+		out.flush();
+	}
+
+	private static XMLReader getReader() throws SAXException {
+		XMLReader reader = readers.get();
+		if (reader == null) {
+			try {
+				reader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+			} catch (ParserConfigurationException e) {
+				throw new SAXException(e);
+			}
+			readers.set(reader);
+		}
+		return reader;
+	}
+
+	// scope is the default namespace in effect for the output; like the literal result
+	// elements of the stylesheet, renamed and segment elements are in no namespace
+	private void apply(Node node, PathState parent, String scope, StringBuilder sb) {
+		PathState state = parent != null ? parent.children.get(node.name) : null;
+		Rule rule = null;
+		if (state != null)
+			for (Rule candidate : state.rules)
+				if (candidate.matches(node)) {
+					rule = candidate;
+					break;
+				}
+
+		if (rule != null && rule.getKind().equals(SEGMENT)) {
+			sb.append('<').append(rule.getOutputName());
+			declare("", scope, sb);
+			sb.append('>');
+			for (Field field : rule.getFields())
+				field.apply(node, sb);
+			sb.append("</").append(rule.getOutputName()).append('>');
+			return;
+		}
+
+		String name = rule != null ? rule.getOutputName() : node.name;
+		String namespace = rule != null ? "" : node.namespace;
+		sb.append('<').append(name);
+		declare(namespace, scope, sb);
+		if (node.attributes != null)
+			for (int i = 0; i < node.attributes.length; i += 2) {
+				if (node.attributes[i].equals(XMLNS))
+					continue;
+				sb.append(' ').append(node.attributes[i]).append("=\"");
+				escape(node.attributes[i + 1], true, sb);
+				sb.append('"');
+			}
+		sb.append('>');
+		for (Object child : node.children) {
+			if (child instanceof Node)
+				apply((Node) child, state, namespace, sb);
+			else
+				escape((String) child, false, sb);
+		}
+		sb.append("</").append(name).append('>');
+	}
+
+	private static void declare(String namespace, String scope, StringBuilder sb) {
+		if (!namespace.equals(scope)) {
+			sb.append(' ').append(XMLNS).append("=\"");
+			escape(namespace, true, sb);
+			sb.append('"');
+		}
+	}
+
+	private static void escape(String text, boolean attribute, StringBuilder sb) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '"':
+				sb.append(attribute ? "&quot;" : "\"");
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Reads a rule table: one line per rule, followed by the element lines of a segment rule.
+	 */
+	public static List<Rule> readTable(InputStream table) throws IOException {
+		List<Rule> rules = new ArrayList<Rule>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(table, "UTF-8"));
+		Rule rule = null;
+		Field composite = null;
+		String line;
+
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty())
+				continue;
+			String[] cols = line.split("\t", -1);
+
+			if (cols[0].equals(LOOP) || cols[0].equals(SEGMENT)) {
+				rule = new Rule(cols[0], cols[1], cols[2], Clause.parse(cols[3]));
+				rules.add(rule);
+				composite = null;
+			} else if (rule == null) {
+				throw new IOException("Element line outside of a rule: " + line);
+			} else if (cols[0].equals(SUB_ELEMENT)) {
+				if (composite == null)
+					throw new IOException("Sub-element line outside of a composite: " + line);
+				composite.add(new Field(cols[1], cols[2]));
+			} else {
+				Field field = new Field(cols[1], cols[2]);
+				rule.add(field);
+				composite = cols[0].equals(COMPOSITE) ? field : null;
+			}
+		}
+		return rules;
+	}
+
+	public static void writeTable(Collection<Rule> rules, Writer out) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (Rule rule : rules) {
+			sb.setLength(0);
+			sb.append(rule.getKind()).append('\t').append(rule.getPath()).append('\t');
+			sb.append(rule.getOutputName()).append('\t').append(Clause.format(rule.getClauses())).append('\n');
+			for (Field field : rule.getFields()) {
+				sb.append(field.children.isEmpty() ? ELEMENT : COMPOSITE).append('\t');
+				sb.append(field.getInputName()).append('\t').append(field.getOutputName()).append('\n');
+				for (Field sub : field.children)
+					sb.append(SUB_ELEMENT).append('\t').append(sub.getInputName()).append('\t')
+							.append(sub.getOutputName()).append('\n');
+			}
+			out.write(sb.toString());
+		}
+		out.flush();
+	}
+
+	public static class Rule {
+		private final String kind;
+		private final String path;
+		private final String outputName;
+		private final List<Clause> clauses;
+		private final List<Field> fields = new ArrayList<Field>();
+
+		public Rule(String kind, String path, String outputName, List<Clause> clauses) {
+			this.kind = kind;
+			this.path = path;
+			this.outputName = outputName;
+			this.clauses = clauses;
+		}
+
+		public String getKind() {
+			return kind;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public String getOutputName() {
+			return outputName;
+		}
+
+		public List<Clause> getClauses() {
+			return clauses;
+		}
+
+		public List<Field> getFields() {
+			return fields;
+		}
+
+		public void add(Field field) {
+			fields.add(field);
+		}
+
+		boolean matches(Node node) {
+			for (Clause clause : clauses)
+				if (!clause.matches(node))
+					return false;
+			return true;
+		}
+	}
+
+	/**
+	 * One element of a segment rule; composites hold their sub-elements.
+	 */
+	public static class Field {
+		private final String inputName;
+		private final String outputName;
+		private final List<Field> children = new ArrayList<Field>();
+
+		public Field(String inputName, String outputName) {
+			this.inputName = inputName;
+			this.outputName = outputName;
+		}
+
+		public String getInputName() {
+			return inputName;
+		}
+
+		public String getOutputName() {
+			return outputName;
+		}
+
+		public List<Field> getChildren() {
+			return children;
+		}
+
+		public void add(Field child) {
+			children.add(child);
+		}
+
+		void apply(Node segment, StringBuilder sb) {
+			Node element = segment.child(inputName);
+			if (element == null)
+				return;
+
+			sb.append('<').append(outputName).append('>');
+			if (children.isEmpty())
+				escape(element.text(), false, sb);
+			else
+				for (Field sub : children) {
+					Node value = null;
+					for (Object child : segment.children)
+						if (child instanceof Node && ((Node) child).name.equals(inputName)
+								&& (value = ((Node) child).child(sub.inputName)) != null)
+							break;
+					if (value != null) {
+						sb.append('<').append(sub.outputName).append('>');
+						escape(value.text(), false, sb);
+						sb.append("</").append(sub.outputName).append('>');
+					}
+				}
+			sb.append("</").append(outputName).append('>');
+		}
+	}
+
+	/**
+	 * A relative path compared against a list of values, e.g. ../NM1/NM101 = 85.
+	 */
+	public static class Clause {
+		private final String[] steps;
+		private final String[] values;
+
+		public Clause(String path, String[] values) {
+			this.steps = path.split("/");
+			this.values = values;
+		}
+
+		public static Clause create(String path, String values) {
+			String[] vals = values.split(",");
+			for (int i = 0; i < vals.length; i++)
+				vals[i] = vals[i].trim();
+			return new Clause(path.trim(), vals);
+		}
+
+		static List<Clause> parse(String text) {
+			List<Clause> clauses = new ArrayList<Clause>();
+			if (text.isEmpty())
+				return clauses;
+			for (String clause : text.split(";")) {
+				int eq = clause.indexOf('=');
+				clauses.add(new Clause(clause.substring(0, eq), clause.substring(eq + 1).split("\\|", -1)));
+			}
+			return clauses;
+		}
+
+		static String format(List<Clause> clauses) {
+			StringBuilder sb = new StringBuilder();
+			for (Clause clause : clauses) {
+				if (sb.length() > 0)
+					sb.append(';');
+				for (int i = 0; i < clause.steps.length; i++)
+					sb.append(i > 0 ? "/" : "").append(clause.steps[i]);
+				sb.append('=');
+				for (int i = 0; i < clause.values.length; i++)
+					sb.append(i > 0 ? "|" : "").append(clause.values[i]);
+			}
+			return sb.toString();
+		}
+
+		boolean matches(Node node) {
+			return matches(node, 0);
+		}
+
+		// XPath node-set comparison: true if any selected node has one of the values
+		private boolean matches(Node node, int step) {
+			if (step == steps.length) {
+				String text = node.text();
+				for (String value : values)
+					if (value.equals(text))
+						return true;
+				return false;
+			}
+			if (steps[step].equals(".."))
+				return node.parent != null && matches(node.parent, step + 1);
+
+			for (Object child : node.children)
+				if (child instanceof Node && ((Node) child).name.equals(steps[step])
+						&& matches((Node) child, step + 1))
+					return true;
+			return false;
+		}
+	}
+
+	private static class PathState {
+		final Map<String, PathState> children = new HashMap<String, PathState>();
+		final List<Rule> rules = new ArrayList<Rule>(1);
+	}
+
+	private static class Node {
+		final String name;
+		final Node parent;
+		final String[] attributes;
+		final String namespace;
+		final List<Object> children = new ArrayList<Object>();
+
+		Node(String name, Node parent, String[] attributes) {
+			this.name = name;
+			this.parent = parent;
+			this.attributes = attributes;
+
+			String namespace = parent != null ? parent.namespace : "";
+			if (attributes != null)
+				for (int i = 0; i < attributes.length; i += 2)
+					if (attributes[i].equals(XMLNS))
+						namespace = attributes[i + 1];
+			this.namespace = namespace;
+		}
+
+		Node child(String name) {
+			for (Object child : children)
+				if (child instanceof Node && ((Node) child).name.equals(name))
+					return (Node) child;
+			return null;
+		}
+
+		String text() {
+			if (children.size() == 1 && children.get(0) instanceof String)
+				return (String) children.get(0);
+			StringBuilder sb = new StringBuilder();
+			text(sb);
+			return sb.toString();
+		}
+
+		private void text(StringBuilder sb) {
+			for (Object child : children) {
+				if (child instanceof Node)
+					((Node) child).text(sb);
+				else
+					sb.append((String) child);
+			}
+		}
+	}
+
+	private static class TreeBuilder extends DefaultHandler {
+		Node document;
+		Node current;
+		StringBuilder text = new StringBuilder();
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			flushText();
+			String[] attrs = null;
+			if (attributes.getLength() > 0) {
+				attrs = new String[attributes.getLength() * 2];
+				for (int i = 0; i < attributes.getLength(); i++) {
+					attrs[i * 2] = attributes.getQName(i);
+					attrs[i * 2 + 1] = attributes.getValue(i);
+				}
+			}
+			Node node = new Node(qName, current, attrs);
+			if (current != null)
+				current.children.add(node);
+			else
+				document = node;
+			current = node;
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			flushText();
+			current = current.parent;
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (current != null)
+				text.append(ch, start, length);
+		}
+
+		private void flushText() {
+			if (text.length() > 0) {
+				current.children.add(text.toString());
+				text.setLength(0);
+			}
+		}
+	}
+}
@@ -0,0 +1,645 @@
+package com.org.edi.util.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.regex.Pattern;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Validates EDI directly against the EdiMetaInfo rows of a specification, without going
+ * through the generated XSD and the XML rendering of the message.
+ *
+ * The rows are compiled once into a tree of loop and segment specs with per-element check
+ * tables: code lists are hash sets, patterns are compiled, date and time formats become the
+ * lengths they allow. The checks run on the events of the EDIReader as it tokenizes the
+ * message. Loop and segment variants that share a name, e.g. the NM1 of L2010AA and L2010AB,
+ * are told apart by their conditions once the segment has been read.
+ *
+ * Problems are reported with a SNIP type and the location of an IK3/IK4 error: loop id,
+ * segment id, segment position in the transaction set, element and component position.
+ * The compiled specification is shared between threads; each document gets its own filter.
+ */
+public class EdiValidator {
+	public static final int DEFAULT_MAX_ERRORS = 100;
+
+	// IK3 segment syntax error codes
+	public static final int UNRECOGNIZED_SEGMENT = 1;
+	public static final int UNEXPECTED_SEGMENT = 2;
+	public static final int MISSING_SEGMENT = 3;
+	public static final int LOOP_OCCURS_OVER_MAX = 4;
+	public static final int SEGMENT_EXCEEDS_MAX_USE = 5;
+
+	// IK4 element syntax error codes
+	public static final int MISSING_ELEMENT = 1;
+	public static final int INVALID_CHARACTER = 6;
+	public static final int TOO_SHORT = 4;
+	public static final int TOO_LONG = 5;
+	public static final int INVALID_CODE = 7;
+	public static final int INVALID_DATE = 8;
+	public static final int INVALID_TIME = 9;
+
+	private static final String TRANSACTION_START = "ST";
+	// consumed by EDIReader, they never show up as segments
+	private static final Set<String> TRAILERS = new HashSet<String>(Arrays.asList("SE", "GE", "IEA"));
+
+	private final Spec root;
+	private int maxErrors = DEFAULT_MAX_ERRORS;
+
+	public EdiValidator(InputStream spec) throws IOException {
+		this(EdiSpec.load(spec));
+	}
+
+	public EdiValidator(EdiSpec spec) {
+		this(spec.getTree());
+	}
+
+	public EdiValidator(List<EdiMetaInfo> rows) {
+		this(EdiSpecTree.build(rows));
+	}
+
+	public EdiValidator(EdiSpecTree tree) {
+		if (tree.getRoot() == EdiSpecTree.NONE)
+			throw new IllegalArgumentException("Specification has no root loop");
+		this.root = compile(tree, tree.getRoot());
+	}
+
+	private static Spec compile(EdiSpecTree tree, int id) {
+		Spec spec = new Spec(tree.getRow(id), tree.getKind(id) == EdiSpecTree.LOOP);
+		for (int child = tree.getFirstChild(id); child != EdiSpecTree.NONE; child = tree.getNextSibling(child)) {
+			if (!spec.loop) {
+				Check check = new Check(tree.getRow(child), spec.id, 0);
+				for (int sub = tree.getFirstChild(child); sub != EdiSpecTree.NONE; sub = tree.getNextSibling(sub))
+					check.subs.add(new Check(tree.getRow(sub), check.name, check.position));
+				spec.checks.add(check);
+			} else
+				spec.add(compile(tree, child));
+		}
+		return spec;
+	}
+
+	public int getMaxErrors() {
+		return maxErrors;
+	}
+
+	public void setMaxErrors(int maxErrors) {
+		this.maxErrors = maxErrors;
+	}
+
+	public Result newResult() {
+		return new Result(maxErrors);
+	}
+
+	/**
+	 * Returns a reader that passes the events of the EDI reader on unchanged and reports every
+	 * problem it finds in them to result. The filter can be given to Stylizer like the EDI
+	 * reader itself, so the message is validated and styled in one parse.
+	 */
+	public XMLReader newFilter(XMLReader ediReader, Result result) {
+		return new Session(ediReader, result);
+	}
+
+	public Result validate(XMLReader ediReader, InputSource edi) throws IOException, SAXException {
+		Result result = newResult();
+		newFilter(ediReader, result).parse(edi);
+		return result;
+	}
+
+	/**
+	 * A loop or a segment of the specification.
+	 */
+	private static class Spec {
+		final String id;
+		final String name;
+		final boolean loop;
+		final int minOccurs;
+		final int maxOccurs;
+		final String condElement;
+		final Set<String> condValues;
+		final List<Spec> children = new ArrayList<Spec>();
+		final Map<String, List<Spec>> byName = new HashMap<String, List<Spec>>();
+		final List<Check> checks = new ArrayList<Check>();
+
+		Spec(EdiMetaInfo row, boolean loop) {
+			this.id = row.getLseName();
+			this.name = row.getElementName();
+			this.loop = loop;
+			this.minOccurs = row.getMinOccurence();
+			this.maxOccurs = row.getMaxOccurence();
+			this.condElement = row.getCondVals().isEmpty() ? null : row.getConditionElement();
+			this.condValues = codes(row.getCondVals());
+		}
+
+		void add(Spec child) {
+			children.add(child);
+			List<Spec> named = byName.get(child.name);
+			if (named == null) {
+				named = new ArrayList<Spec>(1);
+				byName.put(child.name, named);
+			}
+			named.add(child);
+		}
+
+		// a variant with a matching condition wins over an unconditional one
+		Spec select(String name, Map<String, String> values) {
+			List<Spec> named = byName.get(name);
+			if (named == null)
+				return null;
+			Spec fallback = null;
+			for (Spec spec : named) {
+				if (spec.condElement == null) {
+					if (fallback == null)
+						fallback = spec;
+				} else if (spec.condValues.contains(values.get(spec.condElement)))
+					return spec;
+			}
+			return fallback != null ? fallback : named.size() == 1 ? named.get(0) : null;
+		}
+	}
+
+	/**
+	 * The check table entry of one element or component.
+	 */
+	private static class Check {
+		final String name;
+		final int position;
+		final int component;
+		final boolean required;
+		final int minLength;
+		final int maxLength;
+		final String type;
+		final Set<String> codes;
+		final Pattern pattern;
+		final Set<Integer> formatLengths;
+		final List<Check> subs = new ArrayList<Check>();
+
+		Check(EdiMetaInfo row, String parent, int parentPosition) {
+			this.name = row.getLseName();
+			int position = parseInt(name.substring(Math.min(parent.length(), name.length())));
+			this.position = parentPosition > 0 ? parentPosition : position;
+			this.component = parentPosition > 0 ? position : 0;
+			this.required = row.isRequired();
+			this.minLength = row.getMinLength();
+			this.maxLength = row.getMaxLength();
+			this.type = row.getDataType().toUpperCase();
+			this.codes = codes(row.getValidVals());
+
+			Set<Integer> formatLengths = null;
+			Pattern pattern = null;
+			if (!row.getPattern().isEmpty()) {
+				if (type.equals("DT") || type.equals("TM")) {
+					formatLengths = new HashSet<Integer>();
+					for (String format : row.getPattern().split(","))
+						formatLengths.add(format.trim().length());
+				} else {
+					StringBuilder sb = new StringBuilder();
+					for (String alternative : row.getPattern().split(","))
+						sb.append(sb.length() > 0 ? "|" : "").append("(?:").append(alternative.trim()).append(")");
+					pattern = Pattern.compile(sb.toString());
+				}
+			}
+			this.formatLengths = formatLengths;
+			this.pattern = pattern;
+		}
+
+		boolean isComposite() {
+			return !subs.isEmpty();
+		}
+
+		// returns the IK4 error code of the value, 0 if it is valid
+		int check(String value) {
+			int length = value.length();
+			if (type.equals("N") || type.equals("R")) {
+				length = 0;
+				boolean point = false;
+				for (int i = 0; i < value.length(); i++) {
+					char c = value.charAt(i);
+					if (c >= '0' && c <= '9')
+						length++;
+					else if (c == '-' && i == 0)
+						continue;
+					else if (c == '.' && type.equals("R") && !point)
+						point = true;
+					else
+						return INVALID_CHARACTER;
+				}
+			} else if (type.equals("DT")) {
+				if (!isDigits(value) || formatLengths != null && !formatLengths.contains(length)
+						|| !isDate(value))
+					return INVALID_DATE;
+			} else if (type.equals("TM")) {
+				if (!isDigits(value) || length < 4 || length > 8 || formatLengths != null
+						&& !formatLengths.contains(length) || !isTime(value))
+					return INVALID_TIME;
+			}
+
+			if (length < minLength)
+				return TOO_SHORT;
+			if (maxLength > 0 && length > maxLength)
+				return TOO_LONG;
+			if (!codes.isEmpty() && !codes.contains(value))
+				return INVALID_CODE;
+			if (pattern != null && !pattern.matcher(value).matches())
+				return INVALID_CODE;
+			return 0;
+		}
+	}
+
+	/**
+	 * Validation state of one document.
+	 */
+	private class Session extends XMLFilterImpl {
+		private final Result result;
+		private final Stack<Frame> frames = new Stack<Frame>();
+		private final Map<String, String> values = new HashMap<String, String>();
+		private final StringBuilder text = new StringBuilder();
+		private String segment;
+		private String composite;
+		private String element;
+		private int segmentPosition;
+		private boolean transaction;
+
+		Session(XMLReader parent, Result result) {
+			super(parent);
+			this.result = result;
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			frames.clear();
+			segmentPosition = 0;
+			transaction = false;
+			super.startDocument();
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			if (segment != null) {
+				// elements and components of the current segment
+				if (element != null)
+					composite = element;
+				element = qName;
+				text.setLength(0);
+			} else if (frames.isEmpty()) {
+				frames.push(new Frame(root));
+			} else {
+				Frame parent = frames.peek();
+				List<Spec> loops = parent.spec != null ? parent.spec.byName.get(qName) : null;
+				if (loops != null && loops.get(0).loop) {
+					frames.push(new Frame(qName, loops));
+				} else {
+					segment = qName;
+					values.clear();
+					if (segment.equals(TRANSACTION_START))
+						segmentPosition = 0;
+					segmentPosition++;
+				}
+			}
+			super.startElement(uri, localName, qName, atts);
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (element != null)
+				text.append(ch, start, length);
+			super.characters(ch, start, length);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (element != null && qName.equals(element)) {
+				values.put(element, text.toString());
+				element = null;
+			} else if (composite != null && qName.equals(composite)) {
+				composite = null;
+			} else if (segment != null && qName.equals(segment)) {
+				endSegment();
+				segment = null;
+			} else if (!frames.isEmpty()) {
+				endLoop(frames.peek());
+				frames.pop();
+			}
+			super.endElement(uri, localName, qName);
+		}
+
+		private void endSegment() {
+			Frame frame = frames.peek();
+			if (frame.spec == null && frame.candidates != null)
+				resolve(frame);
+			if (frame.spec == null)
+				return;
+
+			if (segment.equals(TRANSACTION_START) && frame.spec == root) {
+				// every transaction set starts over from ST, the envelope stays
+				int start = root.children.indexOf(root.byName.get(TRANSACTION_START).get(0));
+				if (transaction)
+					missing(frame, start);
+				for (int i = start; i < root.children.size(); i++)
+					frame.counts.remove(root.children.get(i));
+				transaction = true;
+			}
+
+			Spec spec = frame.spec.select(segment, values);
+			if (spec == null || spec.loop) {
+				report(2, UNEXPECTED_SEGMENT, 0, 0, null, "Segment " + segment + " is not expected in "
+						+ frame.spec.id);
+				return;
+			}
+			if (frame.count(spec) > spec.maxOccurs)
+				report(2, SEGMENT_EXCEEDS_MAX_USE, 0, 0, null, "Segment " + spec.id + " exceeds max use "
+						+ spec.maxOccurs + " in " + frame.spec.id);
+
+			for (Check check : spec.checks) {
+				if (check.isComposite()) {
+					boolean present = false;
+					for (Check sub : check.subs)
+						present |= values.containsKey(sub.name);
+					if (!present) {
+						if (check.required)
+							report(2, MISSING_ELEMENT, check.position, 0, null, "Required element " + check.name
+									+ " is missing");
+						continue;
+					}
+					for (Check sub : check.subs)
+						check(sub);
+				} else
+					check(check);
+			}
+		}
+
+		private void check(Check check) {
+			String value = values.get(check.name);
+			if (value == null || value.isEmpty()) {
+				if (check.required)
+					report(2, MISSING_ELEMENT, check.position, check.component, null, "Required element "
+							+ check.name + " is missing");
+				return;
+			}
+			int code = check.check(value);
+			if (code != 0)
+				report(code == INVALID_CODE ? 2 : 1, code, check.position, check.component, value,
+						"Element " + check.name + " is invalid");
+		}
+
+		// the first segment of a loop decides which of the loops with its name it is
+		private void resolve(Frame frame) {
+			Spec spec = null;
+			Spec fallback = null;
+			for (Spec candidate : frame.candidates) {
+				if (candidate.condElement == null) {
+					if (fallback == null)
+						fallback = candidate;
+				} else if (candidate.condValues.contains(values.get(candidate.condElement))) {
+					spec = candidate;
+					break;
+				}
+			}
+			if (spec == null)
+				spec = fallback != null ? fallback : frame.candidates.size() == 1 ? frame.candidates.get(0) : null;
+			frame.candidates = null;
+
+			Frame parent = frames.get(frames.size() - 2);
+			if (spec == null) {
+				report(2, UNEXPECTED_SEGMENT, 0, 0, null, "Loop " + frame.name + " starting with " + segment
+						+ " is not expected in " + parent.spec.id);
+				return;
+			}
+			frame.spec = spec;
+			if (parent.count(spec) > spec.maxOccurs)
+				report(2, LOOP_OCCURS_OVER_MAX, 0, 0, null, "Loop " + spec.id + " exceeds max use " + spec.maxOccurs);
+		}
+
+		private void endLoop(Frame frame) {
+			if (frame.spec == null && frame.candidates != null && frames.size() > 1) {
+				// a loop without segments of its own
+				values.clear();
+				resolve(frame);
+			}
+			if (frame.spec != null)
+				missing(frame, 0);
+		}
+
+		private void missing(Frame frame, int start) {
+			for (int i = start; i < frame.spec.children.size(); i++) {
+				Spec child = frame.spec.children.get(i);
+				if (child.minOccurs == 0 || frame.counts.containsKey(child) || TRAILERS.contains(child.name))
+					continue;
+				report(2, MISSING_SEGMENT, 0, 0, null, (child.loop ? "Loop " : "Segment ") + child.id
+						+ " is missing in " + frame.spec.id);
+			}
+		}
+
+		private void report(int snipType, int code, int position, int component, String value, String message) {
+			String loop = null;
+			for (int i = frames.size() - 1; i >= 0 && loop == null; i--)
+				loop = frames.get(i).spec != null ? frames.get(i).spec.id : frames.get(i).name;
+			result.add(new Problem(snipType, code, loop, segment, segmentPosition, position, component, value,
+					message));
+		}
+	}
+
+	private static class Frame {
+		final String name;
+		Spec spec;
+		List<Spec> candidates;
+		final Map<Spec, Integer> counts = new HashMap<Spec, Integer>();
+
+		Frame(Spec spec) {
+			this.name = spec.name;
+			this.spec = spec;
+		}
+
+		Frame(String name, List<Spec> candidates) {
+			this.name = name;
+			this.candidates = candidates;
+		}
+
+		int count(Spec child) {
+			Integer count = counts.get(child);
+			count = count == null ? 1 : count + 1;
+			counts.put(child, count);
+			return count;
+		}
+	}
+
+	/**
+	 * Problems found in one document. Only the first maxErrors are kept, all are counted.
+	 */
+	public static class Result {
+		private final int maxErrors;
+		private final List<Problem> problems = new ArrayList<Problem>();
+		private int errorCount;
+
+		public Result(int maxErrors) {
+			this.maxErrors = maxErrors;
+		}
+
+		public boolean isValid() {
+			return errorCount == 0;
+		}
+
+		public int getErrorCount() {
+			return errorCount;
+		}
+
+		public boolean isTruncated() {
+			return errorCount > problems.size();
+		}
+
+		public List<Problem> getProblems() {
+			return Collections.unmodifiableList(problems);
+		}
+
+		void add(Problem problem) {
+			errorCount++;
+			if (problems.size() < maxErrors)
+				problems.add(problem);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (Problem problem : problems)
+				sb.append(problem).append('\n');
+			if (isTruncated())
+				sb.append(errorCount - problems.size()).append(" more errors\n");
+			return sb.toString();
+		}
+	}
+
+	public static class Problem {
+		private final int snipType;
+		private final int code;
+		private final String loopId;
+		private final String segmentId;
+		private final int segmentPosition;
+		private final int elementPosition;
+		private final int componentPosition;
+		private final String value;
+		private final String message;
+
+		public Problem(int snipType, int code, String loopId, String segmentId, int segmentPosition,
+				int elementPosition, int componentPosition, String value, String message) {
+			this.snipType = snipType;
+			this.code = code;
+			this.loopId = loopId;
+			this.segmentId = segmentId;
+			this.segmentPosition = segmentPosition;
+			this.elementPosition = elementPosition;
+			this.componentPosition = componentPosition;
+			this.value = value;
+			this.message = message;
+		}
+
+		public int getSnipType() {
+			return snipType;
+		}
+
+		// IK4 element error code when the element position is set, IK3 segment error code otherwise
+		public int getCode() {
+			return code;
+		}
+
+		public String getLoopId() {
+			return loopId;
+		}
+
+		public String getSegmentId() {
+			return segmentId;
+		}
+
+		public int getSegmentPosition() {
+			return segmentPosition;
+		}
+
+		public int getElementPosition() {
+			return elementPosition;
+		}
+
+		public int getComponentPosition() {
+			return componentPosition;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("SNIP ").append(snipType).append(elementPosition > 0 ? " IK4 " : " IK3 ").append(code);
+			sb.append(" loop ").append(loopId);
+			if (segmentId != null)
+				sb.append(" segment ").append(segmentId).append(" at ").append(segmentPosition);
+			if (elementPosition > 0) {
+				sb.append(" element ").append(elementPosition);
+				if (componentPosition > 0)
+					sb.append('-').append(componentPosition);
+			}
+			if (value != null)
+				sb.append(" value '").append(value).append('\'');
+			return sb.append(": ").append(message).toString();
+		}
+	}
+
+	private static Set<String> codes(String list) {
+		Set<String> codes = new HashSet<String>();
+		if (!list.isEmpty())
+			for (String code : list.split(","))
+				codes.add(code.trim());
+		return codes;
+	}
+
+	private static int parseInt(String digits) {
+		int value = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			char c = digits.charAt(i);
+			if (c < '0' || c > '9')
+				return 0;
+			value = value * 10 + c - '0';
+		}
+		return value;
+	}
+
+	private static boolean isDigits(String value) {
+		for (int i = 0; i < value.length(); i++)
+			if (value.charAt(i) < '0' || value.charAt(i) > '9')
+				return false;
+		return true;
+	}
+
+	// CCYYMMDD or YYMMDD
+	private static boolean isDate(String value) {
+		int offset = value.length() - 4;
+		if (offset < 2)
+			return false;
+		int month = (value.charAt(offset) - '0') * 10 + value.charAt(offset + 1) - '0';
+		int day = (value.charAt(offset + 2) - '0') * 10 + value.charAt(offset + 3) - '0';
+		return month >= 1 && month <= 12 && day >= 1 && day <= 31;
+	}
+
+	// HHMM[SS[D[D]]]
+	private static boolean isTime(String value) {
+		int hours = (value.charAt(0) - '0') * 10 + value.charAt(1) - '0';
+		int minutes = (value.charAt(2) - '0') * 10 + value.charAt(3) - '0';
+		int seconds = value.length() >= 6 ? (value.charAt(4) - '0') * 10 + value.charAt(5) - '0' : 0;
+		return hours < 24 && minutes < 60 && seconds < 60;
+	}
+}
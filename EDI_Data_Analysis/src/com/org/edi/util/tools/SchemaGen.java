@@ -1,13 +1,89 @@
 package com.org.edi.util.tools;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.avro.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import com.org.util.tools.xmltoavro.Converter;
+import com.org.util.tools.xmltoavro.EncodingPlan;
+import com.org.util.tools.xmltoavro.SchemaCache;
+
+/**
+ * Generates every artifact of a specification in one run: the XSD, the XSL, the rule table
+ * read by EdiTransformer, the Avro schema and the encoding plan of the direct encoder.
+ *
+ * The specification is read once and the XSD is converted to Avro from memory, so the .avsc
+ * always matches the .xsd it ships with and the job never has to compile a schema itself.
+ *
+ * An optional argument "logical" maps decimals, dates and times to Avro logical types; the job
+ * must then run with edi.avro.logicalTypes set. With "-cache &lt;dir&gt;" the schema and plan are
+ * taken from the SchemaCache in that directory, the one the job uses with edi.schema.cache.dir,
+ * and compiled only when the XSD changed.
+ */
 public class SchemaGen {
 	public static void main(String[] args) throws Exception {
+		boolean logicalTypes = false;
+		for (int i = 2; i < args.length; i++) {
+			if ("logical".equalsIgnoreCase(args[i]))
+				logicalTypes = true;
+			else if ("-cache".equals(args[i]) && i + 1 < args.length)
+				Converter.setCacheDir(new Path(args[++i]), new Configuration());
+			else
+				throw new IllegalArgumentException("Unknown argument " + args[i]);
+		}
+		generate(EdiSpec.load(args[0]), args[0], args[1], logicalTypes);
+	}
+
+	public static void generate(EdiSpec spec, String input, String output) throws Exception {
+		generate(spec, input, output, false);
+	}
 
-		XsdGen xg = new XsdGen(args[0], args[1]+".xsd");
-		xg.schemaGen(); 
-	
-		XslGen xs = new XslGen(args[0], args[1]+".xsl");
+	public static void generate(EdiSpec spec, String input, String output, boolean logicalTypes) throws Exception {
+		ByteArrayOutputStream xsd = new ByteArrayOutputStream();
+		XsdGen xg = new XsdGen(input, output + ".xsd");
+		xg.setSpec(spec);
+		xg.schemaGen(xsd);
+		write(xsd, output + ".xsd");
+
+		XslGen xs = new XslGen(input, output + ".xsl");
+		xs.setSpec(spec);
+		xs.setPathTemplates(true);
 		xs.styleGen();
-	
+
+		xs.setOutput(output + ".xtab");
+		xs.tableGen();
+
+		SchemaCache cache = logicalTypes ? Converter.getLogicalSchemaCache() : Converter.getSchemaCache();
+		Schema schema = cache.getSchema(new ByteArrayInputStream(xsd.toByteArray()));
+		Writer avsc = new OutputStreamWriter(new FileOutputStream(output + ".avsc"), "UTF-8");
+		try {
+			avsc.write(schema.toString(true));
+		} finally {
+			avsc.close();
+		}
+
+		Writer plan = new OutputStreamWriter(new FileOutputStream(output + EncodingPlan.EXTENSION), "UTF-8");
+		try {
+			cache.getPlan(schema).write(plan);
+		} finally {
+			plan.close();
+		}
+	}
+
+	private static void write(ByteArrayOutputStream bytes, String file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			bytes.writeTo(out);
+		} finally {
+			out.close();
+		}
 	}
 }
@@ -1,17 +1,15 @@
 package com.org.edi.util.tools;
 
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Stack;
+
+import com.org.util.tools.xmltoavro.LogicalValues;
 
 public class XsdGen {
-	private Stack<String> loops;
 	private String input;
 	private String output;
-	private InputStream inputStream;
+	private EdiSpec spec;
 	private OutputStream outputStream;
 	StringBuilder sb = new StringBuilder();
 
@@ -23,7 +21,6 @@ public class XsdGen {
 	public XsdGen(String input, String output) {
 		this.setInput(input);
 		this.setOutput(output);
-		loops = new Stack<String>();
 	}
 
 	public String getInput() {
@@ -42,115 +39,66 @@ public class XsdGen {
 		this.output = output;
 	}
 
+	public EdiSpec getSpec() {
+		return spec;
+	}
+
+	// a specification loaded once can be shared with the other generators
+	public void setSpec(EdiSpec spec) {
+		this.spec = spec;
+	}
+
 	public void schemaGen() throws Exception {
-		InputStream inputFile = null;
 		OutputStream outputFile = null;
 		try {
-			inputFile = new FileInputStream(input);
+			if (spec == null)
+				spec = EdiSpec.load(input);
 			outputFile = new FileOutputStream(output);
 
-			schemaGen(inputFile, outputFile);
+			schemaGen(spec, outputFile);
 		} finally {
-			if (inputFile != null)
-				inputFile.close();
 			if (outputFile != null)
 				outputFile.close();
 		}
 	}
 
-	private String readLine() {
-		String str = "";
-		int i;
-		char c;
-
-		try {
-			do {
-				i = inputStream.read();
-				c = (char) i;
-				if (i != -1)
-					str = str + c;
-			} while (i != -1 && c != '\r');
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return str;
+	/**
+	 * Writes the schema to a caller supplied stream, which is left open.
+	 */
+	public void schemaGen(OutputStream outputStream) throws IOException {
+		if (spec == null)
+			spec = EdiSpec.load(input);
+		schemaGen(spec, outputStream);
+		outputStream.flush();
 	}
 
-	private void schemaGen(InputStream inputStream, OutputStream outputStream) throws IOException {
-		this.inputStream = inputStream;
+	private void schemaGen(EdiSpec spec, OutputStream outputStream) throws IOException {
 		this.outputStream = outputStream;
-		String str;
-		EdiMetaInfo ediMeta = null;
-		EdiMetaInfo prevEdiMeta = null;
+		EdiSpecTree tree = spec.getTree();
 
 		schemaHeader();
-		str = this.readLine();
-		while (!str.isEmpty()) {
-			ediMeta = new EdiMetaInfo(str);
-			if (!ediMeta.isNull()) {
-
-				if (ediMeta.getCategory().toLowerCase().equals("loop")) {
-					if (prevEdiMeta != null && prevEdiMeta.getCategory().equalsIgnoreCase("element")) {
-						endSegment();
-					}
-					if (prevEdiMeta != null && prevEdiMeta.getCategory().equalsIgnoreCase("sub-element")) {
-						endElement(true);
-						endSegment();
-					}
-					if (ediMeta.getIsStart().equalsIgnoreCase("start")) {
-						startLoop(ediMeta.getLseName(), ediMeta);
-					} else if (ediMeta.getIsStart().equalsIgnoreCase("end")) {
-						endLoop(ediMeta.getLseName());
-					}
-				}
-
-				if (ediMeta.getCategory().toLowerCase().equals("segment")) {
-					if (prevEdiMeta != null && prevEdiMeta.getCategory().equalsIgnoreCase("element")) {
-						endSegment();
-					}
-					if (prevEdiMeta != null && prevEdiMeta.getCategory().equalsIgnoreCase("sub-element")) {
-						endElement(true);
-						endSegment();
-					}
-					startSegment(ediMeta.getLseDesc(), ediMeta);
-				}
-
-				if (ediMeta.getCategory().toLowerCase().equals("element")) {
-					if (prevEdiMeta != null && prevEdiMeta.getCategory().equalsIgnoreCase("sub-element")) {
-						endElement(true);
-					}
-
-					if (!ediMeta.getDataType().equalsIgnoreCase("comp")) {
-						startElement(/* ediMeta.getLseName() + "_" + */ediMeta.getLseDesc(), ediMeta);
-						endElement();
-					} else if (ediMeta.getDataType().equalsIgnoreCase("comp")) {
-						startElement(/* ediMeta.getLseName() + "_" + */ediMeta.getLseDesc(), true, ediMeta);
-					}
-
-				}
-
-				if (ediMeta.getCategory().toLowerCase().equals("sub-element")) {
-					startElement(ediMeta.getLseName() + "_" + ediMeta.getLseDesc(), ediMeta);
-					endElement();
-				}
-
-				prevEdiMeta = ediMeta;
-			}
-			str = this.readLine();
-		}
+		if (tree.getRoot() != EdiSpecTree.NONE)
+			emit(tree, tree.getRoot());
 		schemaFooter();
 	}
 
-	private void startLoop(String loopName, EdiMetaInfo ediMeta) throws IOException {
-		startElement(loopName, true, ediMeta);
-	}
+	// loops, segments and composites are complex types holding their children in spec order
+	private void emit(EdiSpecTree tree, int node) throws IOException {
+		EdiMetaInfo ediMeta = tree.getRow(node);
+		int kind = tree.getKind(node);
+		boolean complex = kind == EdiSpecTree.LOOP || kind == EdiSpecTree.SEGMENT
+				|| (kind == EdiSpecTree.ELEMENT && ediMeta.getDataType().equalsIgnoreCase("comp"));
 
-	private void startSegment(String segName, EdiMetaInfo ediMeta) throws IOException {
-		startElement(segName, true, ediMeta);
-	}
+		if (kind == EdiSpecTree.LOOP)
+			startElement(ediMeta.getLseName(), complex, ediMeta);
+		else if (kind == EdiSpecTree.SUB_ELEMENT)
+			startElement(ediMeta.getLseName() + "_" + ediMeta.getLseDesc(), complex, ediMeta);
+		else
+			startElement(ediMeta.getLseDesc(), complex, ediMeta);
 
-	private void startElement(String elementName, EdiMetaInfo ediMeta) throws IOException {
-		startElement(elementName, false, ediMeta);
+		for (int child = tree.getFirstChild(node); child != EdiSpecTree.NONE; child = tree.getNextSibling(child))
+			emit(tree, child);
+		endElement(complex);
 	}
 
 	private void startElement(String elementName, boolean isComplex, EdiMetaInfo ediMeta) throws IOException {
@@ -190,26 +138,20 @@ public class XsdGen {
 			}
 			if (ediMeta.getDataType().equalsIgnoreCase("N") || ediMeta.getDataType().equalsIgnoreCase("R")) {
 				sb.append("<xs:simpleType>");
+				// Nn digits are the unscaled value, fractionDigits would read them as literal
+				if (ediMeta.getImpliedDecimals() > 0)
+					sb.append("<xs:annotation><xs:appinfo source=\"").append(LogicalValues.IMPLIED_SCALE).append("\">")
+							.append(ediMeta.getImpliedDecimals()).append("</xs:appinfo></xs:annotation>");
 				sb.append("<xs:restriction base=\"").append(ediMeta.getSchemaDataType()).append("\">");
 				sb.append("<xs:totalDigits value=\"").append(ediMeta.getMaxLength()).append("\" />");
+				if (ediMeta.getPrecission() > 0 && ediMeta.getImpliedDecimals() == 0)
+					sb.append("<xs:fractionDigits value=\"").append(ediMeta.getPrecission()).append("\" />");
 				sb.append("</xs:restriction> </xs:simpleType>");
 			}
 		}
 		outputStream.write(sb.toString().getBytes());
 	}
 
-	private void endLoop(String loopName) throws IOException {
-		endElement(true);
-	}
-
-	private void endSegment() throws IOException {
-		endElement(true);
-	}
-
-	private void endElement() throws IOException {
-		endElement(false);
-	}
-
 	private void endElement(boolean isComplex) throws IOException {
 		sb.setLength(0);
 		if (isComplex)
@@ -1,29 +1,32 @@
 package com.org.edi.util.tools;
 
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
 public class XslGen {
-	private Stack<EdiMetaInfo> loops;
 	private String input;
 	private String output;
-	private InputStream inputStream;
+	private EdiSpec spec;
+	private EdiSpecTree tree;
+	private boolean processed;
 	private OutputStream outputStream;
 	private StringBuilder sb = new StringBuilder();
-	private EdiMetaInfo prevEdiMeta = null;
-	private HashMap<String, LinkedHashMap<String, EdiNode>> xslTemplates;
 	private String xPathVar = "<xsl:variable name=\"xPath\"> <xsl:call-template name=\"getXPath\" /> </xsl:variable>";
 
-	private String absPath;
-	private String cond;
-	private EdiMetaInfo prevCompEdi;
+	private boolean pathTemplates;
+	private boolean indent;
+
+	// the templates and the matching EdiTransformer rules, grouped by element name; the
+	// stylesheet is written in hash order of the names, the table in spec order
+	private HashMap<String, TemplateGroup> xslTemplates;
+	private List<TemplateGroup> tableOrder;
 
 	@SuppressWarnings("unused")
 	private XslGen() {
@@ -33,8 +36,8 @@ public class XslGen {
 	public XslGen(String input, String output) {
 		this.setInput(input);
 		this.setOutput(output);
-		loops = new Stack<EdiMetaInfo>();
-		xslTemplates = new HashMap<String, LinkedHashMap<String, EdiNode>>();
+		xslTemplates = new HashMap<String, TemplateGroup>();
+		tableOrder = new ArrayList<TemplateGroup>();
 	}
 
 	public String getInput() {
@@ -53,116 +56,133 @@ public class XslGen {
 		this.output = output;
 	}
 
+	public boolean isPathTemplates() {
+		return pathTemplates;
+	}
+
+	/**
+	 * Emits one template per path and condition with a full match pattern, e.g.
+	 * match="/ediroot/L2000/L2300/L2400/SV5", instead of one template per element name that
+	 * computes $xPath through the ancestors and compares it in an xsl:choose.
+	 */
+	public void setPathTemplates(boolean pathTemplates) {
+		this.pathTemplates = pathTemplates;
+	}
+
+	public boolean isIndent() {
+		return indent;
+	}
+
+	// indented output is for reading the result only, it is off by default
+	public void setIndent(boolean indent) {
+		this.indent = indent;
+	}
+
+	public EdiSpec getSpec() {
+		return spec;
+	}
+
+	// a specification loaded once can be shared with the other generators
+	public void setSpec(EdiSpec spec) {
+		this.spec = spec;
+	}
+
 	public void styleGen() throws Exception {
-		InputStream inputFile = null;
 		OutputStream outputFile = null;
 		try {
-			inputFile = new FileInputStream(input);
 			outputFile = new FileOutputStream(output);
-			styleGen(inputFile, outputFile);
+			styleGen(outputFile);
 		} finally {
-			if (inputFile != null)
-				inputFile.close();
 			if (outputFile != null)
 				outputFile.close();
 		}
 	}
 
-	private String readLine() {
-		String str = "";
-		int i;
-		char c;
-
+	/**
+	 * Writes the rule table read by EdiTransformer instead of the stylesheet.
+	 */
+	public void tableGen() throws Exception {
+		OutputStream outputFile = null;
 		try {
-			do {
-				i = inputStream.read();
-				c = (char) i;
-				if (i != -1)
-					str = str + c;
-			} while (i != -1 && c != '\r');
-		} catch (IOException e) {
-			e.printStackTrace();
+			outputFile = new FileOutputStream(output);
+			tableGen(outputFile);
+		} finally {
+			if (outputFile != null)
+				outputFile.close();
 		}
-		return str;
 	}
 
-	private void processNode(EdiMetaInfo ediMeta) throws IOException {
-		if (!ediMeta.isNull()) {
-			if (ediMeta.getCategory().toLowerCase().equals("loop")) {
-				if (prevEdiMeta != null && prevEdiMeta.getCategory().equalsIgnoreCase("element")) {
-					endSegment();
-				}
-				if (prevEdiMeta != null && prevEdiMeta.getCategory().equalsIgnoreCase("sub-element")) {
-					endElement();
-					endSegment();
-				}
-				if (ediMeta.getIsStart().equalsIgnoreCase("start")) {
-					startLoop(ediMeta);
-				} else if (ediMeta.getIsStart().equalsIgnoreCase("end")) {
-					endLoop(ediMeta.getLseName());
-				}
-			}
-
-			if (ediMeta.getCategory().toLowerCase().equals("segment")) {
-				if (prevEdiMeta != null && prevEdiMeta.getCategory().equalsIgnoreCase("element")) {
-					endSegment();
-				}
-				if (prevEdiMeta != null && prevEdiMeta.getCategory().equalsIgnoreCase("sub-element")) {
-					endElement();
-					endSegment();
-				}
-				startSegment(ediMeta);
-			}
-
-			if (ediMeta.getCategory().toLowerCase().equals("element")) {
-				if (prevEdiMeta != null && prevEdiMeta.getCategory().equalsIgnoreCase("sub-element")) {
-					endElement();
-				}
-
-				if (!ediMeta.getDataType().equalsIgnoreCase("comp")) {
-					startElement(ediMeta);
-					endElement();
-				} else if (ediMeta.getDataType().equalsIgnoreCase("comp")) {
-					startElement(ediMeta);
-					prevCompEdi = ediMeta;
-				}
-			}
+	private void tableGen(OutputStream outputStream) throws IOException {
+		processSpec();
+		EdiTransformer.writeTable(getRules(), new OutputStreamWriter(outputStream, "UTF-8"));
+	}
 
-			if (ediMeta.getCategory().toLowerCase().equals("sub-element")) {
-				startSubElement(ediMeta);
-				endSubElement();
-			}
-			prevEdiMeta = ediMeta;
-		}
+	/**
+	 * Builds the table driven transformer for the specification without writing any file.
+	 */
+	public EdiTransformer createTransformer() throws IOException {
+		processSpec();
+		return new EdiTransformer(getRules());
 	}
 
-	private void styleGen(InputStream inputStream, OutputStream outputStream) throws IOException {
-		this.inputStream = inputStream;
+	private void styleGen(OutputStream outputStream) throws IOException {
 		this.outputStream = outputStream;
-		String str;
-		EdiMetaInfo ediMeta = null;
 
 		styleHeader();
-		str = this.readLine();
-		while (!str.isEmpty()) {
-			ediMeta = new EdiMetaInfo(str);
-			if (!ediMeta.isNull()) {
-				processNode(ediMeta);
-			}
-			str = this.readLine();
-		}
+		processSpec();
 		emitContent();
 		styleFooter();
 		outputStream.flush();
 	}
 
+	// the templates and rules are collected once, whichever output is written first
+	private void processSpec() throws IOException {
+		if (processed)
+			return;
+		if (spec == null)
+			spec = EdiSpec.load(input);
+		tree = spec.getTree();
+		int root = tree.getRoot();
+		if (root != EdiSpecTree.NONE) {
+			processLoop(root);
+			processChildren(root);
+		}
+		processed = true;
+	}
+
+	private void processChildren(int loop) {
+		for (int child = tree.getFirstChild(loop); child != EdiSpecTree.NONE; child = tree.getNextSibling(child)) {
+			if (tree.getKind(child) == EdiSpecTree.LOOP) {
+				processLoop(child);
+				processChildren(child);
+			} else
+				processSegment(child);
+		}
+	}
+
+	private List<EdiTransformer.Rule> getRules() {
+		List<EdiTransformer.Rule> rules = new ArrayList<EdiTransformer.Rule>();
+		for (TemplateGroup group : tableOrder)
+			rules.addAll(group.rules);
+		return rules;
+	}
+
 	private void emitContent() throws IOException {
 		sb.setLength(0);
-		for (Map.Entry<String, LinkedHashMap<String, EdiNode>> entry : xslTemplates.entrySet()) {
+		if (pathTemplates) {
+			for (TemplateGroup group : xslTemplates.values()) {
+				int priority = group.nodes.size();
+				for (EdiNode node : group.nodes)
+					sb.append(node.toTemplate(priority--));
+			}
+			outputStream.write(sb.toString().getBytes());
+			return;
+		}
+		for (Map.Entry<String, TemplateGroup> entry : xslTemplates.entrySet()) {
 			sb.append("<xsl:template match=\"").append(entry.getKey()).append("\">");
 			sb.append(xPathVar).append("<xsl:choose>");
-			for (Map.Entry<String, EdiNode> subEntry : entry.getValue().entrySet())
-				sb.append(subEntry.getValue().toString());
+			for (EdiNode node : entry.getValue().nodes)
+				sb.append(node.toString());
 			sb.append("<xsl:otherwise> ");
 			sb.append("<xsl:copy> <xsl:apply-templates select=\"node()|@*\" /></xsl:copy> ");
 			sb.append("</xsl:otherwise>");
@@ -171,103 +191,89 @@ public class XslGen {
 		outputStream.write(sb.toString().getBytes());
 	}
 
-	private void startLoop(EdiMetaInfo ediMeta) throws IOException {
-		LinkedHashMap<String, EdiNode> entry;
-		String key = null;
-		loops.push(ediMeta);
-		if (!ediMeta.getLseName().equalsIgnoreCase("ediroot")) {
-			absPath = getXPath();
-			cond = ediMeta.getConditions();
-			sb.append("<").append(ediMeta.getLseName()).append(">");
-			sb.append("<xsl:apply-templates select=\"node()|@*\" />");
-			sb.append("</").append(ediMeta.getLseName()).append(">");
-
-			EdiNode ein = new EdiNode(absPath, cond, sb.toString());
-			if (xslTemplates.containsKey(ediMeta.getElementName()))
-				entry = xslTemplates.get(ediMeta.getElementName());
-			else
-				entry = new LinkedHashMap<String, EdiNode>();
-			key = absPath + (cond.isEmpty() ? "" : "$" + cond);
-			entry.put(key, ein);
-			xslTemplates.put(ediMeta.getElementName(), entry);
-		}
+	private void processLoop(int loop) {
+		EdiMetaInfo ediMeta = tree.getRow(loop);
+		if (ediMeta.isEdiRoot())
+			return;
+		String absPath = tree.getPath(loop);
+		String cond = ediMeta.getConditions();
+		sb.setLength(0);
+		sb.append("<").append(ediMeta.getLseName()).append(">");
+		sb.append("<xsl:apply-templates select=\"node()|@*\" />");
+		sb.append("</").append(ediMeta.getLseName()).append(">");
+
+		EdiTransformer.Rule rule = new EdiTransformer.Rule(EdiTransformer.LOOP, absPath, ediMeta.getLseName(),
+				getClauses(ediMeta, ""));
+		putTemplate(ediMeta.getElementName(), tree.getPathId(loop), cond, new EdiNode(absPath, cond, sb.toString()), rule);
 	}
 
-	private String getLoopCondition() {
-		EdiMetaInfo emi = loops.peek();
-		return emi.getLoopConditions();
+	private List<EdiTransformer.Clause> getClauses(EdiMetaInfo ediMeta, String prefix) {
+		List<EdiTransformer.Clause> clauses = new ArrayList<EdiTransformer.Clause>();
+		if (!ediMeta.getCondVals().isEmpty())
+			clauses.add(EdiTransformer.Clause.create(prefix + ediMeta.getCond(), ediMeta.getCondVals()));
+		return clauses;
 	}
 
-	private void startSegment(EdiMetaInfo ediMeta) throws IOException {
-		sb.setLength(0);
-		String loopCond = getLoopCondition();
-		loops.push(ediMeta);
-		absPath = getXPath();
-		cond = ediMeta.getConditions();
+	private void putTemplate(String elementName, int pathId, String cond, EdiNode node, EdiTransformer.Rule rule) {
+		TemplateGroup group = xslTemplates.get(elementName);
+		if (group == null) {
+			group = new TemplateGroup();
+			xslTemplates.put(elementName, group);
+			tableOrder.add(group);
+		}
+		group.put(pathId, cond, node, rule);
+	}
+
+	private void processSegment(int segment) {
+		EdiMetaInfo ediMeta = tree.getRow(segment);
+		EdiMetaInfo loop = tree.getRow(tree.getParent(segment));
+		String loopCond = loop.getLoopConditions();
+		List<EdiTransformer.Clause> clauses = getClauses(ediMeta, "");
+		clauses.addAll(getClauses(loop, "../"));
+		String absPath = tree.getPath(segment);
+		String cond = ediMeta.getConditions();
 		if (!loopCond.trim().isEmpty()) {
 			if (!cond.isEmpty())
 				cond = cond + " and " + loopCond;
 			else
 				cond = loopCond;
 		}
-		sb.append("<" + styleElementClean(ediMeta.getLseDesc().trim()) + ">");
-	}
-
-	private void startElement(EdiMetaInfo ediMeta) throws IOException {
-		loops.push(ediMeta);
-		sb.append("<xsl:if test=\"").append(ediMeta.getLseName().trim()).append("\">");
-		if (ediMeta.getDataType().trim().equalsIgnoreCase("comp")) {
-			sb.append("<" + styleElementClean(ediMeta.getLseDesc().trim()) + ">");
-		} else {
-			sb.append("<" + styleElementClean(ediMeta.getLseDesc().trim()) + ">");
-			sb.append("<xsl:value-of select=\"").append(ediMeta.getLseName()).append("\"/>");
-		}
-	}
-
-	private void startSubElement(EdiMetaInfo ediMeta) throws IOException {
-		loops.push(ediMeta);
-		sb.append("<xsl:if test=\"");
-		sb.append(prevCompEdi.getLseName()).append("/").append(ediMeta.getLseName().trim());
-		sb.append("\">");
-		sb.append("<" + styleElementClean(ediMeta.getLseDesc().trim()) + ">");
-		sb.append("<xsl:value-of select=\"");
-		sb.append(prevCompEdi.getLseName()).append("/").append(ediMeta.getLseName());
-		sb.append("\"/>");
-	}
+		String name = styleElementClean(ediMeta.getLseDesc());
+		EdiTransformer.Rule rule = new EdiTransformer.Rule(EdiTransformer.SEGMENT, absPath, name, clauses);
 
-	private void endLoop(String loopName) throws IOException {
-		EdiMetaInfo ediMeta = (EdiMetaInfo) loops.pop();
-	}
-
-	private void endSegment() throws IOException {
-		LinkedHashMap<String, EdiNode> entry;
-		String key = null;
-		EdiMetaInfo ediMeta = (EdiMetaInfo) loops.pop();
-
-		sb.append("</" + styleElementClean(ediMeta.getLseDesc().trim()) + ">");
-		EdiNode ein = new EdiNode(absPath, cond, sb.toString());
-		if (xslTemplates.containsKey(ediMeta.getElementName()))
-			entry = xslTemplates.get(ediMeta.getElementName());
-		else
-			entry = new LinkedHashMap<String, EdiNode>();
-		key = absPath + (cond.isEmpty() ? "" : "$" + cond);
-		entry.put(key, ein);
-		xslTemplates.put(ediMeta.getElementName(), entry);
-
-		absPath = "";
-		cond = "";
 		sb.setLength(0);
+		sb.append("<").append(name).append(">");
+		for (int element = tree.getFirstChild(segment); element != EdiSpecTree.NONE; element = tree.getNextSibling(element))
+			processElement(element, rule);
+		sb.append("</").append(name).append(">");
+		putTemplate(ediMeta.getElementName(), tree.getPathId(segment), cond, new EdiNode(absPath, cond, sb.toString()), rule);
 	}
 
-	private void endElement() throws IOException {
-		EdiMetaInfo ediMeta = (EdiMetaInfo) loops.pop();
-		sb.append("</" + styleElementClean(ediMeta.getLseDesc().trim()) + ">");
+	private void processElement(int element, EdiTransformer.Rule rule) {
+		EdiMetaInfo ediMeta = tree.getRow(element);
+		String name = styleElementClean(ediMeta.getLseDesc());
+		EdiTransformer.Field field = new EdiTransformer.Field(ediMeta.getLseName(), name);
+		rule.add(field);
+		sb.append("<xsl:if test=\"").append(ediMeta.getLseName()).append("\">");
+		sb.append("<").append(name).append(">");
+		if (ediMeta.getDataType().equalsIgnoreCase("comp")) {
+			for (int sub = tree.getFirstChild(element); sub != EdiSpecTree.NONE; sub = tree.getNextSibling(sub))
+				processSubElement(tree.getRow(sub), ediMeta, field);
+		} else
+			sb.append("<xsl:value-of select=\"").append(ediMeta.getLseName()).append("\"/>");
+		sb.append("</").append(name).append(">");
 		sb.append("</xsl:if>");
 	}
 
-	private void endSubElement() throws IOException {
-		EdiMetaInfo ediMeta = (EdiMetaInfo) loops.pop();
-		sb.append("</" + styleElementClean(ediMeta.getLseDesc().trim()) + ">");
+	private void processSubElement(EdiMetaInfo ediMeta, EdiMetaInfo composite, EdiTransformer.Field field) {
+		// named like XsdGen names sub-elements, e.g. CLM051_Facility_Code_Value
+		String name = styleElementClean(ediMeta.getLseName() + "_" + ediMeta.getLseDesc());
+		String select = composite.getLseName() + "/" + ediMeta.getLseName();
+		field.add(new EdiTransformer.Field(ediMeta.getLseName(), name));
+		sb.append("<xsl:if test=\"").append(select).append("\">");
+		sb.append("<").append(name).append(">");
+		sb.append("<xsl:value-of select=\"").append(select).append("\"/>");
+		sb.append("</").append(name).append(">");
 		sb.append("</xsl:if>");
 	}
 
@@ -275,13 +281,15 @@ public class XslGen {
 		sb.setLength(0);
 		sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
 		sb.append("<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">");
-		sb.append("<xsl:output method=\"xml\" indent=\"yes\" />");
-		sb.append("<xsl:template name=\"getXPath\">");
-		sb.append("<xsl:for-each select=\"parent::*\">");
-		sb.append("<xsl:call-template name=\"getXPath\" />");
-		sb.append("</xsl:for-each>");
-		sb.append("<xsl:value-of select=\"concat('/',name())\" />");
-		sb.append("</xsl:template>");
+		sb.append("<xsl:output method=\"xml\" indent=\"").append(indent ? "yes" : "no").append("\" />");
+		if (!pathTemplates) {
+			sb.append("<xsl:template name=\"getXPath\">");
+			sb.append("<xsl:for-each select=\"parent::*\">");
+			sb.append("<xsl:call-template name=\"getXPath\" />");
+			sb.append("</xsl:for-each>");
+			sb.append("<xsl:value-of select=\"concat('/',name())\" />");
+			sb.append("</xsl:template>");
+		}
 		sb.append("<xsl:template match=\"node()|@*\">");
 		sb.append("<xsl:copy>").append("<xsl:apply-templates select=\"node()|@*\" />").append("</xsl:copy>");
 		sb.append("</xsl:template>");
@@ -298,14 +306,30 @@ public class XslGen {
 		return elementName.replace("  ", " ").trim().replace(" ", "_");
 	}
 
-	private String getXPath() {
-		EdiMetaInfo stEntry;
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < loops.size(); i++) {
-			stEntry = (EdiMetaInfo) loops.get(i);
-			sb.append("/").append(styleElementClean(stEntry.getElementName()));
+	/**
+	 * The templates of one element name in spec order. A later node with the same path and
+	 * condition replaces the earlier one in its place.
+	 */
+	private static class TemplateGroup {
+		final List<EdiNode> nodes = new ArrayList<EdiNode>();
+		final List<EdiTransformer.Rule> rules = new ArrayList<EdiTransformer.Rule>();
+		private int[] pathIds = new int[4];
+		private final List<String> conds = new ArrayList<String>();
+
+		void put(int pathId, String cond, EdiNode node, EdiTransformer.Rule rule) {
+			for (int i = 0; i < conds.size(); i++) {
+				if (pathIds[i] == pathId && conds.get(i).equals(cond)) {
+					nodes.set(i, node);
+					rules.set(i, rule);
+					return;
+				}
+			}
+			if (conds.size() == pathIds.length)
+				pathIds = Arrays.copyOf(pathIds, pathIds.length * 2);
+			pathIds[conds.size()] = pathId;
+			conds.add(cond);
+			nodes.add(node);
+			rules.add(rule);
 		}
-		return sb.toString();
 	}
-
 }
@@ -0,0 +1,209 @@
+package com.org.util.tools.mainjob;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.transform.Templates;
+
+import org.apache.avro.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.xml.sax.SAXException;
+
+import com.berryworks.edireader.demo.IOString;
+import com.org.edi.util.tools.EdiTransformer;
+import com.org.util.tools.xmltoavro.Converter;
+
+/**
+ * The avsc, XSD and XSL of one transaction type and version, named as SchemaGen, XsdGen and
+ * XslGen name them: ANSI_&lt;ST01&gt;_&lt;version&gt;, the version being the five digits after
+ * the first of GS08, so 005010X222A1 gives ANSI_837_05010.
+ *
+ * The driver registers an Avro named output for every bundle whose avsc it finds among the
+ * resource files, and CFMapper loads a bundle when the first transaction of its type arrives.
+ * ANSI_837_05010 writes to AvroData as before, the others to AvroData followed by the digits
+ * of their name.
+ *
+ * With logical types on, the schema is compiled from the XSD instead of read from the avsc, with
+ * decimals, dates and times mapped to Avro logical types. With edi.schema.cache.dir set, the
+ * compiled schemas and their encoding plans are kept in that directory for the next launches.
+ */
+public class ArtifactBundle {
+	public static final String DEFAULT = "ANSI_837_05010";
+	public static final String PREFIX = "ANSI_";
+	public static final String SCHEMA_SUFFIX = ".avsc";
+	public static final String DEFAULT_OUTPUT = "AvroData";
+
+	private static String schemaCacheDir;
+
+	private final String name;
+	private final Schema schema;
+	private final String xsl;
+	private final String xsd;
+	private final XmlValidator xmlValidator;
+	private EdiTransformer transformer;
+	private Templates templates;
+
+	private ArtifactBundle(String name, Schema schema, String xsl, String xsd, XmlValidator xmlValidator) {
+		this.name = name;
+		this.schema = schema;
+		this.xsl = xsl;
+		this.xsd = xsd;
+		this.xmlValidator = xmlValidator;
+	}
+
+	/**
+	 * Returns the bundle name of a transaction, or the default one when the type or version
+	 * is unknown.
+	 */
+	public static String name(String type, String version) {
+		if (type == null || type.length() == 0 || version == null || version.length() < 6)
+			return DEFAULT;
+		return PREFIX + type + "_" + version.substring(1, 6);
+	}
+
+	public static String outputName(String name) {
+		if (DEFAULT.equals(name))
+			return DEFAULT_OUTPUT;
+		return DEFAULT_OUTPUT + name.substring(PREFIX.length()).replace("_", "");
+	}
+
+	/**
+	 * Returns the names of the bundles in a resource directory, those with an avsc.
+	 */
+	public static List<String> find(FileSystem fs, Path resources) throws IOException {
+		List<String> names = new ArrayList<String>();
+		for (FileStatus status : fs.listStatus(resources)) {
+			String file = status.getPath().getName();
+			if (file.startsWith(PREFIX) && file.endsWith(SCHEMA_SUFFIX))
+				names.add(file.substring(0, file.length() - SCHEMA_SUFFIX.length()));
+		}
+		return names;
+	}
+
+	/**
+	 * Reads and compiles a bundle from the resource directory: the XSD into a validator and,
+	 * depending on the transform options, the rule table or the stylesheet.
+	 */
+	public static ArtifactBundle load(Configuration conf, String name) throws IOException {
+		FileSystem fs = FileSystem.get(conf);
+		String resources = conf.get("InputFiles") + "/" + name;
+		String xsl = read(fs, new Path(resources + ".xsl"));
+		String xsd = read(fs, new Path(resources + ".xsd"));
+		Schema schema = conf.getBoolean(Constants.LOGICAL_TYPES, false) ? logicalSchema(conf, xsd)
+				: new Schema.Parser().parse(read(fs, new Path(resources + SCHEMA_SUFFIX)));
+
+		// The XSD is compiled once per task; validators are pooled per thread
+		XmlValidator xmlValidator;
+		try {
+			xmlValidator = new XmlValidator(new IOString(xsd).getInputStream());
+		} catch (SAXException e) {
+			throw new IOException("Cannot compile " + resources + ".xsd", e);
+		}
+		ArtifactBundle bundle = new ArtifactBundle(name, schema, xsl, xsd, xmlValidator);
+
+		// The rule table generated next to the stylesheet replaces the per record XSLT
+		Path table = new Path(resources + ".xtab");
+		if (conf.getBoolean(Constants.TABLE_TRANSFORM, false) && (DEFAULT.equals(name) || fs.exists(table))) {
+			InputStream is = fs.open(table);
+			try {
+				bundle.transformer = new EdiTransformer(is);
+			} finally {
+				is.close();
+			}
+		}
+
+		// Streaming mode compiles the stylesheet once and feeds it the EDIReader events
+		// directly, without the intermediate XML string and DOM
+		if (bundle.transformer == null && conf.getBoolean(Constants.STREAMING_TRANSFORM, false)) {
+			try {
+				bundle.templates = Stylizer.compile(new IOString(xsl).getInputStream());
+			} catch (Exception e) {
+				throw new IOException("Cannot compile " + resources + ".xsl", e);
+			}
+		}
+		return bundle;
+	}
+
+	/**
+	 * Returns the schema of a bundle in a resource directory, as load does.
+	 */
+	public static Schema schema(Configuration conf, FileSystem fs, Path resources, String name) throws IOException {
+		if (conf.getBoolean(Constants.LOGICAL_TYPES, false))
+			return logicalSchema(conf, read(fs, new Path(resources, name + ".xsd")));
+		return new Schema.Parser().parse(read(fs, new Path(resources, name + SCHEMA_SUFFIX)));
+	}
+
+	// compiled once per JVM through the logical SchemaCache, or once per cache directory
+	private static Schema logicalSchema(Configuration conf, String xsd) throws IOException {
+		useSchemaCache(conf);
+		return Converter.createLogicalSchema(xsd);
+	}
+
+	// the driver and every task point the caches at the configured directory once
+	private static synchronized void useSchemaCache(Configuration conf) throws IOException {
+		String dir = conf.get(Constants.SCHEMA_CACHE_DIR);
+		if (dir == null || dir.equals(schemaCacheDir))
+			return;
+		Converter.setCacheDir(new Path(dir), conf);
+		schemaCacheDir = dir;
+	}
+
+	// the lines of a resource file, joined without line breaks
+	private static String read(FileSystem fs, Path file) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(file)));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				sb.append(line);
+		} finally {
+			reader.close();
+		}
+		return sb.toString();
+	}
+
+	public static List<String> split(String names) {
+		return names == null || names.length() == 0 ? new ArrayList<String>()
+				: new ArrayList<String>(Arrays.asList(names.split(",")));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getOutput() {
+		return outputName(name);
+	}
+
+	public Schema getSchema() {
+		return schema;
+	}
+
+	public String getXsl() {
+		return xsl;
+	}
+
+	public String getXsd() {
+		return xsd;
+	}
+
+	public XmlValidator getXmlValidator() {
+		return xmlValidator;
+	}
+
+	public EdiTransformer getTransformer() {
+		return transformer;
+	}
+
+	public Templates getTemplates() {
+		return templates;
+	}
+}
@@ -4,12 +4,17 @@ import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Scanner;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobConf;
@@ -20,6 +25,7 @@ import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.avro.Schema;
@@ -28,20 +34,38 @@ import org.apache.avro.mapred.AvroOutputFormat;
 import org.apache.avro.mapreduce.AvroKeyOutputFormat;
 import org.apache.avro.mapreduce.AvroKeyValueOutputFormat;
 import org.apache.avro.mapreduce.AvroMultipleOutputs;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.avro.AvroParquetOutputFormat;
+import org.apache.parquet.hadoop.ParquetOutputFormat;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 
-import com.cts.util.tools.mainjob.CFMapper.ediCounters;
+import com.berryworks.edireader.plugin.ANSI_837;
+import com.org.util.tools.mainjob.CFMapper.ediCounters;
 
 public class CFDriver implements Tool {
 	
+	 private Configuration baseConf;
+	
 	 public int run(String[] args) throws Exception {
-		 Configuration conf = new Configuration();
+		 // start from the ToolRunner configuration so -D options reach the job
+		 Configuration conf = baseConf != null ? new Configuration(baseConf) : new Configuration();
 		 conf.set("resourceFiles", args[2]);
 		 conf.set("InputFiles",args[3]);
+		 // optional fifth argument "direct" switches the Avro output to the direct binary encoder
+		 if (args.length > 4 && "direct".equalsIgnoreCase(args[4]))
+			 conf.setBoolean(Constants.AVRO_DIRECT_ENCODING, true);
+		 // claims and Parquet are exploded from the generic datum the direct encoder replaces,
+		 // building both for every record would cost more than either
+		 if (conf.getBoolean(Constants.AVRO_DIRECT_ENCODING, false)
+				 && (conf.getBoolean(Constants.CLAIMS_ENABLED, false) || conf.getBoolean(Constants.PARQUET_ENABLED, false))) {
+			 System.out.println("    => Direct Avro encoding not used, claims and Parquet need the generic datum");
+			 conf.setBoolean(Constants.AVRO_DIRECT_ENCODING, false);
+		 }
 		 List filenames =new ArrayList<String>();
 		 Schema schema=null;
 		 
-		 File schemafile=new File(conf.get("resourceFiles")+"/ANSI_837_05010.avsc");
-		 schema = new Schema.Parser().parse(schemafile);
+		 // the avsc, or with logical types the schema compiled from the XSD
+		 schema = ArtifactBundle.schema(conf, FileSystem.getLocal(conf), new Path(conf.get("resourceFiles")), ArtifactBundle.DEFAULT);
 		  
 		    conf.set("mapred.max.split.size", "536870912"); // for 512 mb
 			conf.set("InputType",args[0]);
@@ -58,6 +82,23 @@ public class CFDriver implements Tool {
 			}
 			
 			
+			// with a result cache only the files not seen with the same resources are processed
+			ResultCache cache = null;
+			Map<Path, String> pending = new LinkedHashMap<Path, String>();
+			Map<Path, String> cached = new LinkedHashMap<Path, String>();
+			if (conf.get(Constants.RESULT_CACHE) != null) {
+				if (conf.getBoolean(Constants.REPROCESS_FAILURES, false) || conf.getBoolean(Constants.AVRO_DIRECT_ENCODING, false)
+						|| conf.getBoolean(Constants.CLAIMS_ENABLED, false) || conf.getBoolean(Constants.PARQUET_ENABLED, false)
+						|| conf.get(Constants.PROJECTION) != null || conf.get(Constants.DEDUP_INDEX) != null) {
+					System.out.println("    => Result cache not used, it keeps the AvroData of whole EDI files only");
+					conf.unset(Constants.RESULT_CACHE);
+				} else {
+					cache = new ResultCache(conf, new Path(conf.get(Constants.RESULT_CACHE)));
+					lookup(cache, new Path(args[0]), conf, pending, cached);
+					System.out.println("    => Cached Files: " + cached.size() + " of " + (cached.size() + pending.size()));
+				}
+			}
+			
 			Job job = new Job(conf, "EDI Processer");
 			 
 			job.setJarByClass(CFDriver.class);
@@ -66,44 +107,128 @@ public class CFDriver implements Tool {
 			job.setMapOutputKeyClass(Text.class);
 			job.setMapOutputValueClass(Text.class);
 			
-			job.setInputFormatClass(CFInputFormat.class);
+			// a rerun reads the failure manifests in the output of an earlier run instead of the EDI files
+			if (conf.getBoolean(Constants.REPROCESS_FAILURES, false))
+				job.setInputFormatClass(FailureInputFormat.class);
+			else
+				job.setInputFormatClass(CFInputFormat.class);
 			
 			 
-			FileInputFormat.addInputPath(job, new Path(args[0]));
+			if (cache == null)
+				FileInputFormat.addInputPath(job, new Path(args[0]));
+			else
+				for (Path file : pending.keySet())
+					FileInputFormat.addInputPath(job, file);
 			FileOutputFormat.setOutputPath(job, new Path(args[1]));
 			
-			MultipleOutputs.addNamedOutput(job, "XMLConvFailed", TextOutputFormat.class, Text.class, Text.class);
 			MultipleOutputs.addNamedOutput(job, "XMLTransformationFailed", TextOutputFormat.class, Text.class, Text.class);
-			MultipleOutputs.addNamedOutput(job, "XMLValidationFailed", TextOutputFormat.class, Text.class, Text.class);
+			MultipleOutputs.addNamedOutput(job, Constants.FAILURE_MANIFEST_OUTPUT, TextOutputFormat.class, NullWritable.class, Text.class);
 			MultipleOutputs.addNamedOutput(job, "XMLAvroConvFailed", TextOutputFormat.class, Text.class, Text.class);
 			MultipleOutputs.addNamedOutput(job, "XMLInvalid", TextOutputFormat.class, Text.class, Text.class);
 			MultipleOutputs.addNamedOutput(job, "EDISummary", TextOutputFormat.class, NullWritable.class, Text.class);
+			
+			// the XML of the projected parts, when the job declares a projection
+			if (conf.get(Constants.PROJECTION) != null)
+				MultipleOutputs.addNamedOutput(job, Constants.PROJECTION_OUTPUT, TextOutputFormat.class, Text.class, Text.class);
 						
 			String fname=filenames.iterator().next().toString().replace("_","");
 			AvroMultipleOutputs.addNamedOutput(job,"AvroData",AvroKeyOutputFormat.class,schema);
 			
+			// every other transaction type with an avsc among the resources gets its own output
+			List<String> bundles = ArtifactBundle.find(FileSystem.getLocal(conf), new Path(conf.get("resourceFiles")));
+			for (String bundle : bundles)
+				if (!ArtifactBundle.DEFAULT.equals(bundle))
+					AvroMultipleOutputs.addNamedOutput(job, ArtifactBundle.outputName(bundle), AvroKeyOutputFormat.class,
+							ArtifactBundle.schema(conf, FileSystem.getLocal(conf), new Path(conf.get("resourceFiles")), bundle));
+			job.getConfiguration().set(Constants.ROUTING_BUNDLES, StringUtils.join(",", bundles));
+			
+			// optional per-claim records, see ClaimFlattenDriver for running this as a separate stage
+			if (conf.getBoolean(Constants.CLAIMS_ENABLED, false))
+				AvroMultipleOutputs.addNamedOutput(job, Constants.CLAIM_OUTPUT, AvroKeyOutputFormat.class, ClaimSchema.forPlugin(schema, new ANSI_837()).getSchema());
+			
+			// optional columnar copy of the data, one flattened row per claim
+			if (conf.getBoolean(Constants.PARQUET_ENABLED, false)) {
+				MultipleOutputs.addNamedOutput(job, Constants.PARQUET_OUTPUT, AvroParquetOutputFormat.class, Void.class, GenericRecord.class);
+				AvroParquetOutputFormat.setSchema(job, ClaimSchema.forPlugin(schema, new ANSI_837()).getSchema());
+				ParquetOutputFormat.setBlockSize(job, conf.getInt(Constants.PARQUET_ROW_GROUP_SIZE, Constants.DEFAULT_ROW_GROUP_SIZE));
+				ParquetOutputFormat.setEnableDictionary(job, conf.getBoolean(Constants.PARQUET_DICTIONARY, true));
+				if (!ParquetOutputFormat.isCompressionSet(job))
+					ParquetOutputFormat.setCompression(job, CompressionCodecName.SNAPPY);
+			}
+			
+			// transactions processed by earlier runs are skipped, the new ones added to the index afterwards
+			if (conf.get(Constants.DEDUP_INDEX) != null) {
+				MultipleOutputs.addNamedOutput(job, Constants.DEDUP_OUTPUT, TextOutputFormat.class, NullWritable.class, Text.class);
+				DuplicateIndex.distribute(job, new Path(conf.get(Constants.DEDUP_INDEX)));
+			}
+			
 			LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+			if (cache != null && pending.isEmpty()) {
+				restore(cache, new Path(args[1]), conf, pending, cached);
+				return 0;
+			}
 			Integer returnVal = job.waitForCompletion(true) ? 0 : 1;
 			Counters counters =job.getCounters();
 			System.out.println("    => ST Count Failed: " + counters.findCounter(ediCounters.stCountFailed).getValue());
 			System.out.println("    => GS Count Failed: " + counters.findCounter(ediCounters.gsCountFailed).getValue());
 			System.out.println("    => EDI To XML Failed: " + counters.findCounter(ediCounters.ediToXMLFailed).getValue());
 			System.out.println("    => XML To Avro Failed: " + counters.findCounter(ediCounters.xmlToAvroFailed).getValue());
+			System.out.println("    => Duplicates Skipped: " + counters.findCounter(ediCounters.duplicateSkipped).getValue());
+			System.out.println("    => Without Artifacts: " + counters.findCounter(ediCounters.unroutedSkipped).getValue());
+			StageMetrics.printTable(counters, System.out);
+			if (cache != null && returnVal == 0)
+				restore(cache, new Path(args[1]), conf, pending, cached);
+			if (conf.get(Constants.DEDUP_INDEX) != null && returnVal == 0)
+				DuplicateIndex.update(conf, new Path(conf.get(Constants.DEDUP_INDEX)), new Path(args[1]));
 			
 			return returnVal;
 	 }
 	
+	// splits the input files, hidden ones left out as FileInputFormat does, into cached and pending
+	private static void lookup(ResultCache cache, Path input, Configuration conf, Map<Path, String> pending,
+			Map<Path, String> cached) throws Exception {
+		FileSystem fs = input.getFileSystem(conf);
+		FileStatus[] files = fs.listStatus(input, new PathFilter() {
+			public boolean accept(Path path) {
+				return !path.getName().startsWith("_") && !path.getName().startsWith(".");
+			}
+		});
+		for (FileStatus status : files) {
+			if (!status.isFile())
+				continue;
+			Path file = fs.makeQualified(status.getPath());
+			String fingerprint = cache.fingerprint(file);
+			if (cache.contains(fingerprint))
+				cached.put(file, fingerprint);
+			else
+				pending.put(file, fingerprint);
+		}
+	}
+
+	// caches the outputs of the processed files without failures and copies in those of the cached ones
+	private static void restore(ResultCache cache, Path output, Configuration conf, Map<Path, String> pending,
+			Map<Path, String> cached) throws Exception {
+		Path files = new Path(output, ResultCache.FILES);
+		for (Map.Entry<Path, String> file : pending.entrySet()) {
+			Path outputs = new Path(files, ResultCache.fileId(file.getKey().toString()));
+			if (!cache.hasFailed(outputs))
+				cache.store(file.getValue(), outputs);
+		}
+		for (Map.Entry<Path, String> file : cached.entrySet())
+			cache.restore(file.getValue(), new Path(files, ResultCache.fileId(file.getKey().toString())));
+		output.getFileSystem(conf).mkdirs(output);
+	}
+
 	public static void main(String[] args) throws Exception {
 		int res = ToolRunner.run(new Configuration(), new CFDriver(), args);
 	    System.exit(res);
 	}
 
 	public Configuration getConf() {
-		// TODO Auto-generated method stub
-		return null;
+		return baseConf;
 	}
 
 	public void setConf(Configuration arg0) {
-		// TODO Auto-generated method stub
+		baseConf = arg0;
 	}
 }
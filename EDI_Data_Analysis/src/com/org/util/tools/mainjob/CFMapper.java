@@ -1,16 +1,30 @@
 package com.org.util.tools.mainjob;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.stream.StreamResult;
 
 import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.mapred.AvroKey;
 import org.apache.avro.mapreduce.AvroMultipleOutputs;
 import org.apache.hadoop.conf.Configuration;
@@ -20,12 +34,28 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import com.berryworks.edireader.EDIReader;
+import com.berryworks.edireader.EDISyntaxException;
+import com.berryworks.edireader.Projection;
 import com.berryworks.edireader.demo.EDItoXML;
 import com.berryworks.edireader.demo.IOString;
+import com.berryworks.edireader.plugin.ANSI_837;
 import com.berryworks.edireader.plugin.PluginControllerImpl;
-import com.cts.util.tools.xmltoavro.Converter;
+import com.berryworks.edireader.util.sax.IsolatedErrorFilter;
+import com.org.edi.util.tools.EdiTransformer;
+import com.org.edi.util.tools.EdiValidator;
+import com.org.util.tools.xmltoavro.Converter;
+import com.org.util.tools.xmltoavro.DirectDatumEncoder;
+import com.org.util.tools.xmltoavro.EncodingPlan;
+import com.org.util.tools.mainjob.StageMetrics.Stage;
  
 
 public class CFMapper extends Mapper<Text, Text, Text, Text>
@@ -37,60 +67,166 @@ public class CFMapper extends Mapper<Text, Text, Text, Text>
 	 Schema schema;
 	 Configuration conf;
 	 FSDataInputStream fdis;
-	 Path schemaPath, xsdPath, xslPath;
 	 FileSystem fs;
 	 String ediMsgStyled=null;
 	 String xmlEdiData=null;
-	 HashMap<String,String> cachedFiles;
+	 ArtifactBundle defaultBundle;
+	 HashMap<String, ArtifactBundle> bundles;
+	 Set<String> routes;
+	 DirectDatumEncoder directEncoder;
+	 EdiValidator ediValidator;
+	 DataFileWriter<Object> directWriter;
+	 ClaimSchema claimSchema;
+	 boolean claimsEnabled, parquetEnabled;
+	 StageMetrics metrics;
+	 Text failure = new Text();
+	 boolean failed;
+	 Set<String> failedFiles;
+	 DuplicateIndex duplicates;
+	 boolean dedup;
+	 Projection projection;
+	 boolean isolation;
+	 List<String> isolated = new ArrayList<String>();
 	
 	
 	public enum ediCounters {
-		gsCountFailed, stCountFailed, ediToXMLFailed, xslTransformationFailed, xmlValidationFailed, xmlToAvroFailed;
+		gsCountFailed, stCountFailed, ediToXMLFailed, xslTransformationFailed, xmlValidationFailed, xmlToAvroFailed, duplicateSkipped, unroutedSkipped;
 	};
 	
 
-	private String readSchemaOrTransformFile(Path uri) throws IOException {
-		StringBuilder sb = new StringBuilder();
-		  FileSystem fs = FileSystem.get(conf);
-	        InputStream is = fs.open(uri);
-		try {
-			BufferedReader readBuffer1 = new BufferedReader(new InputStreamReader(is));
-			String line;
-			while ((line = readBuffer1.readLine()) != null) {
-				sb.append(line);
-
-			}
-			readBuffer1.close();
-		} catch (IOException e) {
-			throw e;
-		}
-		return sb.toString();
-	}
-
 	@Override
 	protected void setup(Mapper<Text, Text, Text, Text>.Context context)
 			throws IOException, InterruptedException {
 		multipleOutputs = new MultipleOutputs(context);
 		avroOutput = new AvroMultipleOutputs(context);
 		conf = context.getConfiguration();
-		schemaPath = new Path(conf.get("InputFiles")+"/ANSI_837_05010.avsc");
-		xsdPath = new Path(conf.get("InputFiles")+"/ANSI_837_05010.xsd");
-		xslPath = new Path(conf.get("InputFiles")+"/ANSI_837_05010.xsl");
-		
+		metrics = new StageMetrics(conf.getBoolean(Constants.STAGE_HISTOGRAMS, false));
 		fs = FileSystem.get(conf);
-		 
-		
-		cachedFiles = new HashMap<String, String>();
-		
+
+		// Transactions are routed by type and version to the bundles the driver found, each
+		// loaded when its first transaction arrives; the 837 one is always there and takes
+		// every transaction when the job was not set up for routing
+		bundles = new HashMap<String, ArtifactBundle>();
+		if (conf.get(Constants.ROUTING_BUNDLES) != null)
+			routes = new HashSet<String>(ArtifactBundle.split(conf.get(Constants.ROUTING_BUNDLES)));
+		defaultBundle = ArtifactBundle.load(conf, ArtifactBundle.DEFAULT);
+		bundles.put(ArtifactBundle.DEFAULT, defaultBundle);
+
+		// Native validation checks the EDI against the specification rows instead of the XSD
+		if (conf.getBoolean(Constants.NATIVE_VALIDATION, false)) {
+			InputStream spec = fs.open(new Path(conf.get("InputFiles") + "/" + Constants.SPEC_FILE));
+			try {
+				ediValidator = new EdiValidator(spec);
+			} finally {
+				spec.close();
+			}
+		}
+
+		// The generated .avsc is parsed once per task, never derived from the XSD here
+		schema = defaultBundle.getSchema();
+
+		// Direct mode encodes the styled XML straight to Avro binary and appends it to
+		// a per-task container file instead of going through GenericData.Record
+		if (conf.getBoolean(Constants.AVRO_DIRECT_ENCODING, false)) {
+			directEncoder = new DirectDatumEncoder(openEncodingPlan(new Path(conf.get("InputFiles") + "/" + Constants.ENCODING_PLAN_FILE)));
+			directWriter = openDirectWriter(context);
+		}
+
+		// transactions sent before are skipped before conversion, see DuplicateIndex
+		if (conf.get(Constants.DEDUP_INDEX) != null) {
+			dedup = true;
+			duplicates = DuplicateIndex.open(conf, context.getCacheFiles(), new Path(conf.get(Constants.DEDUP_INDEX)));
+		}
+
+		// a projected run parses only the declared loops, segments and elements
+		if (conf.get(Constants.PROJECTION) != null)
+			projection = Projection.parse(conf.get(Constants.PROJECTION));
+
+		// with isolation a transaction with a syntax error is left out of the XML and
+		// reported to the failure manifest, the others in its record go on
+		isolation = conf.getBoolean(Constants.TRANSACTION_ISOLATION, false);
+
+		// in cache mode the AvroData of every input file is kept apart, see ResultCache
+		if (conf.get(Constants.RESULT_CACHE) != null)
+			failedFiles = new HashSet<String>();
+
+		claimsEnabled = conf.getBoolean(Constants.CLAIMS_ENABLED, false);
+		parquetEnabled = conf.getBoolean(Constants.PARQUET_ENABLED, false);
+		if (claimsEnabled || parquetEnabled) {
+			claimSchema = ClaimSchema.forPlugin(schema, new ANSI_837());
+		}
+	}
+
+	private void writeClaims(Object datum) throws IOException, InterruptedException {
+		for (GenericRecord claim : claimSchema.explode((GenericRecord) datum)) {
+			if (claimsEnabled)
+				writeAvro(Constants.CLAIM_OUTPUT, claim);
+			if (parquetEnabled) {
+				long start = metrics.start();
+				multipleOutputs.write(Constants.PARQUET_OUTPUT, null, claim);
+				metrics.stop(Stage.OUTPUT, start, 0, 0);
+			}
+		}
+	}
+
+	// the bundle of a transaction, null when there is none for its type and version
+	private ArtifactBundle route(Text key) throws IOException {
+		if (routes == null || !(key instanceof EdiRecordKey))
+			return defaultBundle;
+		EdiRecordKey document = (EdiRecordKey) key;
+		String name = ArtifactBundle.name(document.getType(), document.getVersion());
+		ArtifactBundle bundle = bundles.get(name);
+		if (bundle == null && routes.contains(name)) {
+			bundle = ArtifactBundle.load(conf, name);
+			bundles.put(name, bundle);
+		}
+		return bundle;
+	}
+
+	// the plan written by SchemaGen next to the .avsc, compiled from the schema when absent;
+	// a logical schema is compiled in the task, its plan comes from the same SchemaCache
+	private EncodingPlan openEncodingPlan(Path plan) throws IOException {
+		if (conf.getBoolean(Constants.LOGICAL_TYPES, false))
+			return Converter.getLogicalSchemaCache().getPlan(schema);
+		if (!fs.exists(plan))
+			return Converter.createEncodingPlan(schema);
+		Reader reader = new InputStreamReader(fs.open(plan), "UTF-8");
 		try {
-			cachedFiles.put(xsdPath.toString() , readSchemaOrTransformFile(xsdPath));
-			cachedFiles.put(xslPath.toString() , readSchemaOrTransformFile(xslPath));
-			cachedFiles.put(schemaPath.toString() , readSchemaOrTransformFile(schemaPath));
-			
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			throw e;
+			return Converter.createEncodingPlan(schema, reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	// an EDIReader that, with isolation on, reports the transactions it leaves out to errors
+	private XMLReader newEDIReader(List<String> errors) {
+		EDIReader ediReader = new EDIReader();
+		if (!isolation)
+			return ediReader;
+		ediReader.setTransactionIsolation(true);
+		return new IsolatedErrorFilter(ediReader, ediReader.getXMLTags(), errors);
+	}
+
+	// the transactions left out by isolation are one manifest entry for their record
+	private void writeIsolated(Text key, Context context) throws IOException, InterruptedException {
+		if (isolated.isEmpty())
+			return;
+		context.getCounter(ediCounters.ediToXMLFailed).increment(isolated.size());
+		StringBuilder message = new StringBuilder();
+		for (String error : isolated) {
+			if (message.length() > 0)
+				message.append("; ");
+			message.append(error);
 		}
+		writeFailure(key, Stage.EDI_TO_XML, message.toString());
+	}
+
+	private DataFileWriter<Object> openDirectWriter(Context context) throws IOException, InterruptedException {
+		Path file = new Path(FileOutputFormat.getWorkOutputPath(context),
+				FileOutputFormat.getUniqueFile(context, Constants.AVRO_DIRECT_OUTPUT, ".avro"));
+		DataFileWriter<Object> writer = new DataFileWriter<Object>(new GenericDatumWriter<Object>(schema));
+		writer.create(schema, file.getFileSystem(conf).create(file, false));
+		return writer;
 	}
 
 	public void map(Text key, Text value, Context context) throws IOException,
@@ -100,97 +236,203 @@ public class CFMapper extends Mapper<Text, Text, Text, Text>
 		 
 		ediMsg = value.toString();
 		OutputVal.set("");
-        IOString xslStirng=new IOString(cachedFiles.get(xslPath.toString()));
-        IOString xsdString=new IOString(cachedFiles.get(xsdPath.toString()));
+		failed = false;
+		isolated.clear();
 		IOString xmlString=null;
-		IOString avscString=new IOString(cachedFiles.get(schemaPath.toString()));
+		XmlValidator.Errors validationErrors = null;
+		EdiValidator.Result ediErrors = null;
+		long start;
 		
 		if (ediMsg.contains(Constants.INCORRECT_TC_CNT_MSG)) { // If ST count in
 																// GE is
 																// incorrect
 			OutputVal.set(Constants.FAILED_TEXT);
-			multipleOutputs.write("EDISummary", key, OutputVal);
+			write("EDISummary", key, OutputVal);
 			context.getCounter(ediCounters.stCountFailed).increment(1);
+			markFailed(key);
 		}
 
 		if (ediMsg.contains(Constants.INCORRECT_GS_CNT_MSG)) {// If GE count in
 																// ISA is
 																// incorrect
 			OutputVal.set(Constants.FAILED_TEXT);
-			multipleOutputs.write("EDISummary", key, OutputVal);
+			write("EDISummary", key, OutputVal);
 			context.getCounter(ediCounters.gsCountFailed).increment(1);
+			markFailed(key);
 		}
 
 		if (!"".equals(ediMsg) && OutputVal.toString().equals("")) { // If EDI
 																		// message
 																		// is
 																		// Valid
-			try { // Convert EDI to XML
-				xmlEdiData = EDItoXML.convertToXML(ediMsg);
-               
-                
-				//context.write(key,new Text(ediMsg));
-			} catch (Exception e) { // TODO Auto-generated catch block
-				context.getCounter(ediCounters.ediToXMLFailed).increment(1);
-				multipleOutputs
-						.write("XMLConvFailed", key, new Text("Failed1"));
+			String fingerprint = dedup && key instanceof EdiRecordKey ? ((EdiRecordKey) key).getFingerprint() : null;
+			if (fingerprint != null && duplicates != null && duplicates.contains(fingerprint)) {
+				context.getCounter(ediCounters.duplicateSkipped).increment(1);
+				return;
+			}
+
+			// the projected XML is the output, no artifacts are applied and the transaction
+			// is not added to the duplicate index as it was not fully processed
+			if (projection != null) {
+				start = metrics.start();
+				xmlEdiData = null;
+				try {
+					xmlEdiData = EDItoXML.convertToXML(ediMsg, projection, isolation ? isolated : null);
+				} catch (Exception e) {
+					context.getCounter(ediCounters.ediToXMLFailed).increment(1);
+					writeFailure(key, Stage.EDI_TO_XML, e.toString());
+				} finally {
+					metrics.stop(Stage.EDI_TO_XML, start, ediMsg.length(), xmlEdiData == null ? 0 : xmlEdiData.length());
+				}
+				writeIsolated(key, context);
+				if (xmlEdiData != null)
+					write(Constants.PROJECTION_OUTPUT, key, new Text(xmlEdiData));
+				return;
 			}
 
+			// a type without artifacts fails here, before it is parsed
+			ArtifactBundle bundle = route(key);
+			if (bundle == null) {
+				context.getCounter(ediCounters.unroutedSkipped).increment(1);
+				EdiRecordKey document = (EdiRecordKey) key;
+				writeFailure(key, Stage.FRAMING, "No artifacts for "
+						+ ArtifactBundle.name(document.getType(), document.getVersion()));
+				return;
+			}
+	        IOString xslStirng=new IOString(bundle.getXsl());
+	        IOString xsdString=new IOString(bundle.getXsd());
+			Templates templates = bundle.getTemplates();
+			EdiTransformer transformer = bundle.getTransformer();
+			XmlValidator xmlValidator = bundle.getXmlValidator();
+			// native validation, direct encoding and claims know the 837 only
+			boolean native837 = bundle == defaultBundle;
+			EdiValidator ediValidator = native837 ? this.ediValidator : null;
+
+			if (templates == null) {
+				start = metrics.start();
+				xmlEdiData = null;
+				try { // Convert EDI to XML
+					// in no namespace, as Stylizer passes the events of the streaming path, so
+					// every mode styles and validates the same elements
+					xmlEdiData = EDItoXML.convertToXML(ediMsg, null, isolation ? isolated : null, false);
+					//context.write(key,new Text(ediMsg));
+				} catch (Exception e) { // TODO Auto-generated catch block
+					context.getCounter(ediCounters.ediToXMLFailed).increment(1);
+					writeFailure(key, Stage.EDI_TO_XML, e.toString());
+				} finally {
+					metrics.stop(Stage.EDI_TO_XML, start, ediMsg.length(), xmlEdiData == null ? 0 : xmlEdiData.length());
+				}
+				writeIsolated(key, context);
+				// nothing to transform, the failure is already recorded
+				if (xmlEdiData == null)
+					return;
+			}
+
+			// in streaming mode the XSL stage includes parsing and, as a filter, validation
+			start = metrics.start();
 			try {
 				// Applying XSL
 				 
-				context.write(key,new Text(ediMsg));
+				write(context, key, new Text(ediMsg));
 				
-				ediMsgStyled = Stylizer.applyXMLStyle(xslStirng.getInputStream(), xmlEdiData);
+				if (templates != null) {
+					// validated as the events pass, before they are serialized
+					StringWriter styled = new StringWriter();
+					XMLReader ediReader = newEDIReader(isolated);
+					ContentHandler output = Stylizer.newSerializer(new StreamResult(styled));
+					IsolatedErrorFilter isolatedFilter = isolation ? (IsolatedErrorFilter) ediReader : null;
+					if (ediValidator != null) {
+						ediErrors = ediValidator.newResult();
+						ediReader = ediValidator.newFilter(ediReader, ediErrors);
+					} else {
+						validationErrors = xmlValidator.newErrors();
+						output = xmlValidator.newFilter(output, validationErrors);
+					}
+					Stylizer.applyXMLStyle(templates, ediReader, new InputSource(new StringReader(ediMsg)), output);
+					if (isolatedFilter != null) {
+						writeIsolated(key, context);
+						// every transaction of the record was left out
+						if (isolatedFilter.getDocuments() == 0)
+							return;
+					}
+					ediMsgStyled = styled.toString();
+				} else if (transformer != null)
+					ediMsgStyled = transformer.transform(xmlEdiData);
+				else
+					ediMsgStyled = Stylizer.applyXMLStyle(xslStirng.getInputStream(), xmlEdiData);
 				
 				 xmlString=new IOString(ediMsgStyled);
 				 
 				 
-				 multipleOutputs.write("XMLTransformationFailed", key,new Text(ediMsgStyled));
+				 write("XMLTransformationFailed", key,new Text(ediMsgStyled));
 				 
 
 			} catch (Exception e) { // TODO Auto-generated catch block
-				context.getCounter(ediCounters.xslTransformationFailed)
-						.increment(1);
-				multipleOutputs.write("XMLTransformationFailed", key,
+				// in streaming mode EDI syntax errors surface here
+				if (templates != null && e instanceof EDISyntaxException) {
+					context.getCounter(ediCounters.ediToXMLFailed).increment(1);
+					writeFailure(key, Stage.EDI_TO_XML, e.toString());
+				} else {
+					context.getCounter(ediCounters.xslTransformationFailed)
+							.increment(1);
+					writeFailure(key, Stage.XSL, e.toString());
+				}
+				write("XMLTransformationFailed", key,
 						new Text(e.toString()));
 
+			} finally {
+				metrics.stop(Stage.XSL, start, templates != null ? ediMsg.length() : xmlEdiData == null ? 0
+						: xmlEdiData.length(), xmlString == null ? 0 : xmlString.getString().length());
 			}
 
+			start = metrics.start();
 			try {
 				 
 				 
 
-				XmlValidator.xmlValidate(xsdString.getInputStream(), xmlString.getInputStream());
+				if (ediValidator != null) {
+					if (ediErrors == null)
+						// the transactions left out are already in the manifest
+						ediErrors = ediValidator.validate(newEDIReader(new ArrayList<String>()),
+								new InputSource(new StringReader(ediMsg)));
+					if (!ediErrors.isValid())
+						throw new SAXException(ediErrors.toString());
+				} else {
+					if (validationErrors == null)
+						validationErrors = xmlValidator.validate(xmlString.getString());
+					if (!validationErrors.isValid())
+						throw new SAXException(validationErrors.toString());
+				}
 				
 			} catch (Exception e) {
 
 				context.getCounter(ediCounters.xmlValidationFailed)
 						.increment(1);
-				multipleOutputs.write("XMLValidationFailed", key,
-						new Text(e.toString()));
+				writeFailure(key, Stage.VALIDATION, e.toString());
+			} finally {
+				metrics.stop(Stage.VALIDATION, start, ediValidator != null ? ediMsg.length()
+						: xmlString == null ? 0 : xmlString.getString().length(), 0);
 			}
 
+			start = metrics.start();
+			long encoded = 0;
 			try {
 
-				if (xsdString != null && xmlString != null) {
-					 
+				if (xsdString != null && xmlString != null && directWriter != null && native837) {
+					ByteBuffer datum = directEncoder.encode(xmlString.getString());
+					encoded = datum.remaining();
+					long written = metrics.start();
+					directWriter.appendEncoded(datum);
+					metrics.stop(Stage.OUTPUT, written, 0, encoded);
+				} else if (xsdString != null && xmlString != null) {
 					 
 					 
-					Schema schema1 = new Schema.Parser().parse(avscString.getString());
 					 
-					 
-
-					Object datum = Converter.createDatum(schema1, xmlString.getString());
+					Object datum = Converter.createDatum(bundle.getSchema(), xmlString.getString());
 
-					 					 					
-					context.getCounter(ediCounters.xmlToAvroFailed)
-							.increment(1);
-				 
-					avroOutput.write("AvroData", new AvroKey(datum));
-					
-					context.getCounter(ediCounters.xmlToAvroFailed)
-							.increment(1);
+					writeAvro(bundle.getOutput(), key, datum);
+					if (claimSchema != null && native837)
+						writeClaims(datum);
 				}
 			}
 
@@ -198,8 +440,12 @@ public class CFMapper extends Mapper<Text, Text, Text, Text>
 
 				e.printStackTrace();
 				context.getCounter(ediCounters.xmlToAvroFailed).increment(1);
-				multipleOutputs.write("XMLAvroConvFailed", key,
+				writeFailure(key, Stage.AVRO, e.toString());
+				write("XMLAvroConvFailed", key,
 						new Text(e.toString()+"  "+xmlString.getString().length()+" "+ediMsgStyled.length()+" "+ediMsg.length()+" "+xslStirng.getString().length()+" "+xsdString.getString().length()));
+			} finally {
+				if (xmlString != null)
+					metrics.stop(Stage.AVRO, start, xmlString.getString().length(), encoded);
 			}
 
 			// DO XML Transformation
@@ -207,7 +453,61 @@ public class CFMapper extends Mapper<Text, Text, Text, Text>
 			// Do XML Validation Against XSD
 
 			// Write To AVRO
+
+			// only a transaction that went through is known to the next runs
+			if (fingerprint != null && !failed)
+				write(Constants.DEDUP_OUTPUT, NullWritable.get(), new Text(fingerprint));
+		}
+	}
+
+	// the writes of all stages are timed as OUTPUT
+	private void write(String namedOutput, Object key, Text value) throws IOException, InterruptedException {
+		long start = metrics.start();
+		multipleOutputs.write(namedOutput, key, value);
+		metrics.stop(Stage.OUTPUT, start, 0, value.getLength());
+	}
+
+	// one manifest line per record, for the first stage that failed
+	private void writeFailure(Text key, Stage stage, String message) throws IOException, InterruptedException {
+		if (failed)
+			return;
+		failed = true;
+		markFailed(key);
+		EdiRecordKey location = key instanceof EdiRecordKey ? (EdiRecordKey) key : FailureManifest.unlocated(key);
+		failure.set(FailureManifest.format(location, stage, message));
+		long start = metrics.start();
+		multipleOutputs.write(Constants.FAILURE_MANIFEST_OUTPUT, NullWritable.get(), failure);
+		metrics.stop(Stage.OUTPUT, start, 0, failure.getLength());
+	}
+
+	// a file with a failed record is not cached
+	private void markFailed(Text key) {
+		if (failedFiles != null && key instanceof EdiRecordKey && ((EdiRecordKey) key).hasLocation())
+			failedFiles.add(((EdiRecordKey) key).getPath());
+	}
+
+	private void write(Context context, Text key, Text value) throws IOException, InterruptedException {
+		long start = metrics.start();
+		context.write(key, value);
+		metrics.stop(Stage.OUTPUT, start, 0, value.getLength());
+	}
+
+	private void writeAvro(String namedOutput, Text key, Object datum) throws IOException, InterruptedException {
+		if (failedFiles == null || !(key instanceof EdiRecordKey) || !((EdiRecordKey) key).hasLocation()) {
+			writeAvro(namedOutput, datum);
+			return;
 		}
+		long start = metrics.start();
+		String file = ResultCache.fileId(((EdiRecordKey) key).getPath());
+		avroOutput.write(namedOutput, new AvroKey<Object>(datum), NullWritable.get(),
+				ResultCache.FILES + "/" + file + "/" + namedOutput);
+		metrics.stop(Stage.OUTPUT, start, 0, 0);
+	}
+
+	private void writeAvro(String namedOutput, Object datum) throws IOException, InterruptedException {
+		long start = metrics.start();
+		avroOutput.write(namedOutput, new AvroKey<Object>(datum));
+		metrics.stop(Stage.OUTPUT, start, 0, 0);
 	}
 
 	@Override
@@ -216,7 +516,33 @@ public class CFMapper extends Mapper<Text, Text, Text, Text>
 		// TODO Auto-generated method stub
 		multipleOutputs.close();
 		avroOutput.close();
+		if (duplicates != null)
+			duplicates.close();
+		if (directWriter != null)
+			directWriter.close();
+
+		metrics.report(context);
+		if (metrics.hasHistograms())
+			writeHistograms(context);
+		if (failedFiles != null)
+			writeFailedMarkers(context);
+	}
+
+	private void writeFailedMarkers(Context context) throws IOException, InterruptedException {
+		Path files = new Path(FileOutputFormat.getWorkOutputPath(context), ResultCache.FILES);
+		for (String file : failedFiles)
+			fs.create(new Path(new Path(files, ResultCache.fileId(file)), ResultCache.FAILED_MARKER), true).close();
+	}
 
+	private void writeHistograms(Context context) throws IOException, InterruptedException {
+		Path file = new Path(FileOutputFormat.getWorkOutputPath(context),
+				FileOutputFormat.getUniqueFile(context, Constants.STAGE_HISTOGRAM_OUTPUT, ".tsv"));
+		OutputStream out = file.getFileSystem(conf).create(file, false);
+		try {
+			metrics.writeHistograms(out);
+		} finally {
+			out.close();
+		}
 	}
 
-}
\ No newline at end of file
+}
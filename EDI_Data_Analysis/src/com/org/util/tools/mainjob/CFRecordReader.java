@@ -20,7 +20,7 @@ public class CFRecordReader extends RecordReader<Text, Text> {
 	private FileSystem fs;
 	private Path path;
 	//private LongWritable key;
-	private Text key;
+	private EdiRecordKey key;
 	private Text value;
 	// private Text fileEndValue;
 	private StringBuffer sb = new StringBuffer();
@@ -33,6 +33,16 @@ public class CFRecordReader extends RecordReader<Text, Text> {
 	private String gsTailer;
 	private Integer geCount = 0;
 	private Integer stCount = 0;
+	private String isaControl;
+	private String gsControl;
+	private String stControl;
+	private String stType;
+	private String gsVersion;
+	private long isaOffset;
+	private long gsOffset;
+	private TaskAttemptContext context;
+	private StageMetrics metrics;
+	private boolean fingerprints;
 	
 	//Constants
 	
@@ -46,6 +56,9 @@ public class CFRecordReader extends RecordReader<Text, Text> {
 		fileIn = fs.open(path);
 		reader = new LineReader(fileIn);
 		this.pos = startOffset;
+		this.context = context;
+		metrics = new StageMetrics(false);
+		fingerprints = context.getConfiguration().get(Constants.DEDUP_INDEX) != null;
 	}
 
 	@Override
@@ -63,7 +76,8 @@ public class CFRecordReader extends RecordReader<Text, Text> {
 
 	@Override
 	public void close() throws IOException {
-
+		// one reader per file of the split, each adds its framing totals
+		metrics.report(context);
 	}
 
 	@Override
@@ -89,7 +103,7 @@ public class CFRecordReader extends RecordReader<Text, Text> {
 	@Override
 	public boolean nextKeyValue() throws IOException {
 		if (key == null) {
-			key = new Text();
+			key = new EdiRecordKey();
 			// key.fileName = path.getName();
 		}
 
@@ -100,11 +114,14 @@ public class CFRecordReader extends RecordReader<Text, Text> {
 
 		int newSize = 0;
 		int ediRecSize = 0;
+		long recordStart = -1;
+		long start = metrics.start();
 
 		// ================================================ Modified
 		sb.setLength(0);
 		value.set("");
 		while ((pos < end) && !value.toString().contains("SE*")) {
+			long linePos = pos;
 			newSize = reader.readLine(value);
 			pos += newSize;
 			ediRecSize += newSize;
@@ -112,27 +129,18 @@ public class CFRecordReader extends RecordReader<Text, Text> {
 
 			if (strValue.startsWith(Constants.ISA_START)) {// ----> Getting ISA Header
 				isaHeader = strValue;
-				isaTailer = strValue.split(Constants.ISA_VAL_DELIM)[Constants.ISA_NUM_INDEX];
-				key.set(isaTailer);
-				
-				if(strValue.endsWith("~")){
-					isaTailer = Constants.ISA_TAILER_PREFIX + isaTailer + "~";
-				} else{
-					isaTailer = Constants.ISA_TAILER_PREFIX + isaTailer;
-				}
-								
+				isaControl = element(strValue, Constants.ISA_NUM_INDEX);
+				isaTailer = isaTailer(strValue);
+				isaOffset = linePos;
+				key.set(isaControl);
 				geCount = 0;
 			} else if (strValue.startsWith(Constants.GS_START)) { // ----> Getting GS Header
 				gsHeader = strValue;
-				gsTailer = strValue.split(Constants.GS_VAL_DELIM)[Constants.GS_NUM_INDEX];
-				key.set(key.toString() + gsTailer);
-				
-				if(strValue.endsWith("~")){
-					gsTailer = Constants.GS_TAILER_PREFIX + gsTailer + "~";
-				} else{
-					gsTailer = Constants.GS_TAILER_PREFIX + gsTailer;
-				}
-								
+				gsControl = element(strValue, Constants.GS_NUM_INDEX);
+				gsVersion = element(strValue, Constants.GS_VERSION_INDEX);
+				gsTailer = gsTailer(strValue);
+				gsOffset = linePos;
+				key.set(key.toString() + gsControl);
 				geCount += 1;
 				stCount = 0;
 			} else if (strValue.startsWith(Constants.GS_END)) {// ----> Validating ST count
@@ -146,15 +154,32 @@ public class CFRecordReader extends RecordReader<Text, Text> {
 					sb.append("*#Incorrect Group Count. Details: File Name - " + path.getName() + ", " + isaHeader);
 				}
 			} else {
+				if (recordStart < 0)
+					recordStart = linePos;
+				if (strValue.startsWith(Constants.ST_START)) {
+					stControl = element(strValue, Constants.ST_NUM_INDEX);
+					stType = element(strValue, Constants.ST_TYPE_INDEX);
+				}
 				sb.append(strValue);
 			}
 		}
-
+		// where the transaction lies, for the failure manifest; a record of envelope count
+		// errors only has no transaction and an empty range
+		if (recordStart < 0)
+			recordStart = pos;
+		key.setLocation(path.toString(), recordStart, pos - recordStart, isaOffset, gsOffset);
+		key.setControls(isaControl, gsControl, stControl);
+		key.setDocument(stType, gsVersion);
+
+		key.setFingerprint(null);
 		if (sb.toString().startsWith(Constants.CHECK_TEXT)) {
 			value.set(sb.toString());
 		} else if (sb.length() > 0) {
 			value.set(isaHeader + gsHeader + sb.toString() + gsTailer
 					+ isaTailer);
+			if (fingerprints)
+				key.setFingerprint(DuplicateIndex.fingerprint(element(isaHeader, Constants.ISA_SENDER_INDEX),
+						isaControl, gsControl, stControl, sb));
 		} else {
 			value.set("");
 		}
@@ -166,7 +191,33 @@ public class CFRecordReader extends RecordReader<Text, Text> {
 			value = null;
 			return false;
 		} else {
+			metrics.stop(StageMetrics.Stage.FRAMING, start, ediRecSize, value.getLength());
 			return true;
 		}
 	}
+
+	/**
+	 * Returns the IEA segment closing the interchange of an ISA segment.
+	 */
+	static String isaTailer(String isaHeader) {
+		String tailer = Constants.ISA_TAILER_PREFIX + element(isaHeader, Constants.ISA_NUM_INDEX);
+		return isaHeader.endsWith("~") ? tailer + "~" : tailer;
+	}
+
+	/**
+	 * Returns the GE segment closing the group of a GS segment.
+	 */
+	static String gsTailer(String gsHeader) {
+		String tailer = Constants.GS_TAILER_PREFIX + element(gsHeader, Constants.GS_NUM_INDEX);
+		return gsHeader.endsWith("~") ? tailer + "~" : tailer;
+	}
+
+	// the element of a segment line, without the segment terminator
+	static String element(String segment, int index) {
+		String[] elements = segment.split(Constants.ISA_VAL_DELIM);
+		if (index >= elements.length)
+			return "";
+		String element = elements[index];
+		return element.endsWith("~") ? element.substring(0, element.length() - 1) : element;
+	}
 }
@@ -0,0 +1,76 @@
+package com.org.util.tools.mainjob;
+
+import java.io.File;
+
+import org.apache.avro.Schema;
+import org.apache.avro.mapreduce.AvroJob;
+import org.apache.avro.mapreduce.AvroKeyInputFormat;
+import org.apache.avro.mapreduce.AvroKeyOutputFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import com.berryworks.edireader.plugin.ANSI_837;
+import com.org.util.tools.mainjob.ClaimFlattenMapper.claimCounters;
+
+/**
+ * Map-only stage that turns the AvroData output of CFDriver into per-claim records.
+ *
+ * Arguments: input path (the AvroData files), output path, resource directory holding
+ * ANSI_837_05010.avsc.
+ */
+public class ClaimFlattenDriver implements Tool {
+
+	private Configuration baseConf;
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = baseConf != null ? new Configuration(baseConf) : new Configuration();
+		conf.set("resourceFiles", args[2]);
+
+		File schemafile = new File(conf.get("resourceFiles") + "/ANSI_837_05010.avsc");
+		Schema schema = new Schema.Parser().parse(schemafile);
+		Schema claimSchema = ClaimSchema.forPlugin(schema, new ANSI_837()).getSchema();
+
+		Job job = Job.getInstance(conf, "EDI Claim Flattener");
+
+		job.setJarByClass(ClaimFlattenDriver.class);
+		job.setMapperClass(ClaimFlattenMapper.class);
+		job.setNumReduceTasks(0);
+
+		job.setInputFormatClass(AvroKeyInputFormat.class);
+		AvroJob.setInputKeySchema(job, schema);
+
+		job.setOutputFormatClass(AvroKeyOutputFormat.class);
+		AvroJob.setOutputKeySchema(job, claimSchema);
+		job.setOutputValueClass(NullWritable.class);
+
+		FileInputFormat.addInputPath(job, new Path(args[0]));
+		FileOutputFormat.setOutputPath(job, new Path(args[1]));
+
+		Integer returnVal = job.waitForCompletion(true) ? 0 : 1;
+		Counters counters = job.getCounters();
+		System.out.println("    => Transactions: " + counters.findCounter(claimCounters.transactions).getValue());
+		System.out.println("    => Claims: " + counters.findCounter(claimCounters.claims).getValue());
+
+		return returnVal;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int res = ToolRunner.run(new Configuration(), new ClaimFlattenDriver(), args);
+		System.exit(res);
+	}
+
+	public Configuration getConf() {
+		return baseConf;
+	}
+
+	public void setConf(Configuration arg0) {
+		baseConf = arg0;
+	}
+}
@@ -0,0 +1,41 @@
+package com.org.util.tools.mainjob;
+
+import java.io.IOException;
+
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.mapred.AvroKey;
+import org.apache.avro.mapreduce.AvroJob;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import com.berryworks.edireader.plugin.ANSI_837;
+
+/**
+ * Explodes the transaction records written by CFMapper into one record per claim.
+ */
+public class ClaimFlattenMapper
+		extends Mapper<AvroKey<GenericRecord>, NullWritable, AvroKey<GenericRecord>, NullWritable> {
+	ClaimSchema claimSchema;
+	AvroKey<GenericRecord> outputKey = new AvroKey<GenericRecord>();
+
+	public enum claimCounters {
+		transactions, claims;
+	};
+
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+		claimSchema = ClaimSchema.forPlugin(AvroJob.getInputKeySchema(context.getConfiguration()), new ANSI_837());
+	}
+
+	@Override
+	public void map(AvroKey<GenericRecord> key, NullWritable value, Context context)
+			throws IOException, InterruptedException {
+		context.getCounter(claimCounters.transactions).increment(1);
+
+		for (GenericRecord claim : claimSchema.explode(key.datum())) {
+			outputKey.datum(claim);
+			context.write(outputKey, NullWritable.get());
+			context.getCounter(claimCounters.claims).increment(1);
+		}
+	}
+}
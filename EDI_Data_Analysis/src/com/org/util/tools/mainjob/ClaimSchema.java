@@ -0,0 +1,315 @@
+package com.org.util.tools.mainjob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import com.berryworks.edireader.Plugin;
+import com.berryworks.edireader.plugin.LoopDescriptor;
+
+/**
+ * Flattened one-row-per-claim view of the transaction schema written by CFMapper.
+ *
+ * The claim record holds the envelope fields of the transaction, the fields of every
+ * hierarchical loop (L2000A billing provider, L2000B subscriber, L2000C patient) the
+ * claim belongs to and the fields of the claim loop (L2300) itself. Nested records are
+ * flattened into columns named by their path, repeating structures stay arrays of
+ * flattened records. The hierarchical loops are sibling arrays in the transaction, so a
+ * claim is linked to its ancestors through the HL parent id.
+ */
+public class ClaimSchema {
+	public static final String DEFAULT_HIERARCHY_LOOP = "L2000";
+	public static final String DEFAULT_CLAIM_LOOP = "L2300";
+	public static final String CLAIM_RECORD = "Claim";
+	public static final String LOOP_PREFIX = "L";
+
+	private static final String HL_ID = "Hierarchical_ID_Number";
+	private static final String HL_PARENT_ID = "Hierarchical_Parent_ID_Number";
+
+	private final Schema transaction;
+	private final Schema schema;
+	private final List<Column> headerColumns = new ArrayList<Column>();
+	private final List<LoopPlan> loops = new ArrayList<LoopPlan>();
+	private final List<Column> claimColumns = new ArrayList<Column>();
+	private Schema claimSource;
+
+	public ClaimSchema(Schema transaction) {
+		this(transaction, DEFAULT_HIERARCHY_LOOP, DEFAULT_CLAIM_LOOP);
+	}
+
+	public ClaimSchema(Schema transaction, String hierarchyLoop, String claimLoop) {
+		this.transaction = transaction;
+
+		List<Schema.Field> fields = new ArrayList<Schema.Field>();
+		Set<String> names = new HashSet<String>();
+		Set<String> loopFields = new HashSet<String>();
+
+		for (Schema.Field field : transaction.getFields())
+			if (field.name().startsWith(hierarchyLoop))
+				loopFields.add(field.name());
+
+		flatten(transaction, "", new int[0], loopFields, fields, names, headerColumns);
+
+		for (Schema.Field field : transaction.getFields()) {
+			if (!loopFields.contains(field.name()))
+				continue;
+
+			Schema item = itemSchema(field.schema());
+			if (item.getType() != Schema.Type.RECORD)
+				continue;
+
+			LoopPlan loop = new LoopPlan(field.pos());
+			loop.idPath = findHierarchyField(item, HL_ID);
+			loop.parentPath = findHierarchyField(item, HL_PARENT_ID);
+			flatten(item, field.name() + "_", new int[0], Collections.singleton(claimLoop), fields, names,
+					loop.columns);
+
+			Schema.Field claimField = item.getField(claimLoop);
+			if (claimField != null) {
+				Schema claim = itemSchema(claimField.schema());
+				if (claimSource == null) {
+					claimSource = claim;
+					flatten(claim, claimLoop + "_", new int[0], Collections.<String> emptySet(), fields, names,
+							claimColumns);
+				} else if (!claimSource.equals(claim))
+					throw new IllegalArgumentException("Loop " + field.name() + " declares a different " + claimLoop
+							+ " record than the other hierarchical loops");
+				loop.claimPos = claimField.pos();
+			}
+			loops.add(loop);
+		}
+
+		if (claimSource == null)
+			throw new IllegalArgumentException("No " + claimLoop + " loop below the " + hierarchyLoop + " loops of "
+					+ transaction.getName());
+
+		schema = Schema.createRecord(CLAIM_RECORD, null, null, false);
+		schema.setFields(fields);
+	}
+
+	/**
+	 * Takes the loop structure from the EDIReader plugin of the transaction set: the loop
+	 * started by HL is the hierarchical loop and the loop started by CLM is the claim loop.
+	 * Loops nested in the claim loop, such as the 2400 service lines, stay with their claim.
+	 */
+	public static ClaimSchema forPlugin(Schema transaction, Plugin plugin) {
+		String hierarchyLoop = loopStartedBy(plugin, "HL");
+		String claimLoop = loopStartedBy(plugin, "CLM");
+		if (hierarchyLoop == null || claimLoop == null)
+			throw new IllegalArgumentException("Plugin " + plugin.getDocumentType() + " has no HL and CLM loops");
+
+		return new ClaimSchema(transaction, LOOP_PREFIX + hierarchyLoop, LOOP_PREFIX + claimLoop);
+	}
+
+	private static String loopStartedBy(Plugin plugin, String segment) {
+		LoopDescriptor[] descriptors = plugin.getLoopDescriptors();
+		if (descriptors == null)
+			return null;
+
+		for (LoopDescriptor descriptor : descriptors) {
+			String name = descriptor.getName();
+			if (segment.equals(descriptor.getFirstSegment()) && name != null && !Plugin.CURRENT.equals(name))
+				return name;
+		}
+		return null;
+	}
+
+	public Schema getTransactionSchema() {
+		return transaction;
+	}
+
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Returns one flattened record per claim loop of the transaction.
+	 */
+	public List<GenericRecord> explode(GenericRecord transaction) {
+		List<GenericRecord> claims = new ArrayList<GenericRecord>();
+
+		Map<String, Object[]> hierarchy = new HashMap<String, Object[]>();
+		for (LoopPlan loop : loops) {
+			if (loop.idPath == null)
+				continue;
+			for (Object item : items(transaction.get(loop.pos))) {
+				Object id = resolve((GenericRecord) item, loop.idPath);
+				if (id != null)
+					hierarchy.put(id.toString(), new Object[] { loop, item });
+			}
+		}
+
+		for (LoopPlan loop : loops) {
+			if (loop.claimPos < 0)
+				continue;
+
+			for (Object item : items(transaction.get(loop.pos))) {
+				for (Object claim : items(((GenericRecord) item).get(loop.claimPos))) {
+					GenericData.Record flat = new GenericData.Record(schema);
+					copy(transaction, flat, headerColumns);
+					copyHierarchy((GenericRecord) item, loop, flat, hierarchy);
+					copy((GenericRecord) claim, flat, claimColumns);
+					claims.add(flat);
+				}
+			}
+		}
+		return claims;
+	}
+
+	private void copyHierarchy(GenericRecord item, LoopPlan loop, GenericData.Record flat,
+			Map<String, Object[]> hierarchy) {
+		// the guard stops at malformed HL chains that point back to themselves
+		for (int level = 0; item != null && level < loops.size(); level++) {
+			copy(item, flat, loop.columns);
+
+			Object parent = loop.parentPath != null ? resolve(item, loop.parentPath) : null;
+			Object[] node = parent != null ? hierarchy.get(parent.toString()) : null;
+			if (node == null)
+				break;
+
+			loop = (LoopPlan) node[0];
+			item = (GenericRecord) node[1];
+		}
+	}
+
+	private static void copy(GenericRecord source, GenericData.Record target, List<Column> columns) {
+		for (Column column : columns) {
+			Object value = resolve(source, column.path);
+
+			if (column.items != null && value != null) {
+				List<Object> flat = new ArrayList<Object>();
+				for (Object item : items(value)) {
+					GenericData.Record record = new GenericData.Record(column.items);
+					copy((GenericRecord) item, record, column.itemColumns);
+					flat.add(record);
+				}
+				value = flat;
+			}
+			target.put(column.target, value);
+		}
+	}
+
+	private static Object resolve(GenericRecord record, int[] path) {
+		Object value = record;
+		for (int i = 0; i < path.length && value != null; i++)
+			value = ((GenericRecord) value).get(path[i]);
+		return value;
+	}
+
+	private static Collection<?> items(Object value) {
+		if (value == null)
+			return Collections.emptyList();
+		if (value instanceof Collection)
+			return (Collection<?>) value;
+		return Collections.singletonList(value);
+	}
+
+	private static void flatten(Schema record, String prefix, int[] path, Set<String> exclude,
+			List<Schema.Field> fields, Set<String> names, List<Column> columns) {
+		flatten(CLAIM_RECORD, record, prefix, path, exclude, fields, names, columns);
+	}
+
+	private static void flatten(String recordName, Schema record, String prefix, int[] path, Set<String> exclude,
+			List<Schema.Field> fields, Set<String> names, List<Column> columns) {
+		for (Schema.Field field : record.getFields()) {
+			if (exclude.contains(field.name()))
+				continue;
+
+			int[] fieldPath = Arrays.copyOf(path, path.length + 1);
+			fieldPath[path.length] = field.pos();
+			Schema fieldSchema = nonNull(field.schema());
+
+			if (fieldSchema.getType() == Schema.Type.RECORD) {
+				flatten(recordName, fieldSchema, prefix + field.name() + "_", fieldPath, Collections.<String> emptySet(),
+						fields, names, columns);
+				continue;
+			}
+
+			String name = uniqueName(names, prefix + field.name());
+			Column column = new Column(fieldPath, fields.size());
+
+			if (fieldSchema.getType() == Schema.Type.ARRAY
+					&& nonNull(fieldSchema.getElementType()).getType() == Schema.Type.RECORD) {
+				String itemName = recordName + "_" + name;
+				List<Schema.Field> itemFields = new ArrayList<Schema.Field>();
+				flatten(itemName, nonNull(fieldSchema.getElementType()), "", new int[0],
+						Collections.<String> emptySet(), itemFields, new HashSet<String>(), column.itemColumns);
+
+				column.items = Schema.createRecord(itemName, null, null, false);
+				column.items.setFields(itemFields);
+				fieldSchema = Schema.createArray(column.items);
+			}
+
+			fields.add(new Schema.Field(name, optional(fieldSchema), null, null));
+			columns.add(column);
+		}
+	}
+
+	private static int[] findHierarchyField(Schema item, String name) {
+		for (Schema.Field field : item.getFields()) {
+			Schema fieldSchema = nonNull(field.schema());
+			if (fieldSchema.getType() == Schema.Type.RECORD && fieldSchema.getField(name) != null)
+				return new int[] { field.pos(), fieldSchema.getField(name).pos() };
+		}
+		return null;
+	}
+
+	private static Schema itemSchema(Schema schema) {
+		schema = nonNull(schema);
+		return schema.getType() == Schema.Type.ARRAY ? nonNull(schema.getElementType()) : schema;
+	}
+
+	private static Schema nonNull(Schema schema) {
+		if (schema.getType() != Schema.Type.UNION)
+			return schema;
+		for (Schema type : schema.getTypes())
+			if (type.getType() != Schema.Type.NULL)
+				return type;
+		return schema;
+	}
+
+	private static Schema optional(Schema schema) {
+		return Schema.createUnion(Arrays.asList(Schema.create(Schema.Type.NULL), schema));
+	}
+
+	private static String uniqueName(Set<String> names, String name) {
+		String unique = name;
+		for (int i = 1; !names.add(unique); i++)
+			unique = name + i;
+		return unique;
+	}
+
+	private static class Column {
+		final int[] path;
+		final int target;
+		Schema items;
+		final List<Column> itemColumns = new ArrayList<Column>();
+
+		Column(int[] path, int target) {
+			this.path = path;
+			this.target = target;
+		}
+	}
+
+	private static class LoopPlan {
+		final int pos;
+		int[] idPath;
+		int[] parentPath;
+		int claimPos = -1;
+		final List<Column> columns = new ArrayList<Column>();
+
+		LoopPlan(int pos) {
+			this.pos = pos;
+		}
+	}
+}
@@ -10,6 +10,7 @@ public final class Constants {
 	public static final String ISA_END = "IEA*";
 	public static final String ISA_VAL_DELIM = "\\*";
 	public static final Integer ISA_NUM_INDEX = 13;
+	public static final Integer ISA_SENDER_INDEX = 6;
 	public static final String ISA_TAILER_PREFIX = "IEA*1*";
 	
 	public static final String GS_START = "GS*";
@@ -18,9 +19,69 @@ public final class Constants {
 	public static final Integer GS_NUM_INDEX = 6;
 	public static final String GS_TAILER_PREFIX = "GE*1*";
 	
+	public static final String ST_START = "ST*";
+	public static final Integer ST_NUM_INDEX = 2;
+	public static final Integer ST_TYPE_INDEX = 1;
+	public static final Integer GS_VERSION_INDEX = 8;
+	
 	public static final String INCORRECT_TC_CNT_MSG = "*#Incorrect Transaction Count. Details: File Name - ";
 	public static final String INCORRECT_GS_CNT_MSG = "*#Incorrect Group Count. Details: File Name - ";
 	public static final String CHECK_TEXT = "*#Incorrect";
 	
 	public static final String FAILED_TEXT = "Failed";
+	
+	//Avro output Related Constants
+	public static final String AVRO_DIRECT_ENCODING = "edi.avro.direct";
+	public static final String AVRO_DIRECT_OUTPUT = "AvroDirect";
+	public static final String ENCODING_PLAN_FILE = "ANSI_837_05010.plan";
+	public static final String LOGICAL_TYPES = "edi.avro.logicalTypes";
+	
+	//Parquet output Related Constants
+	public static final String PARQUET_ENABLED = "edi.parquet.enabled";
+	public static final String PARQUET_OUTPUT = "ClaimParquet";
+	public static final String PARQUET_ROW_GROUP_SIZE = "edi.parquet.rowGroupSize";
+	public static final String PARQUET_DICTIONARY = "edi.parquet.dictionary";
+	public static final int DEFAULT_ROW_GROUP_SIZE = 128 * 1024 * 1024;
+	
+	//Claim flattening Related Constants
+	public static final String CLAIMS_ENABLED = "edi.claims.enabled";
+	public static final String CLAIM_OUTPUT = "ClaimData";
+	
+	//Transformation Related Constants
+	public static final String TABLE_TRANSFORM = "edi.transform.table";
+	public static final String TRANSFORM_TABLE_FILE = "ANSI_837_05010.xtab";
+	public static final String STREAMING_TRANSFORM = "edi.transform.streaming";
+	
+	//Validation Related Constants
+	public static final String NATIVE_VALIDATION = "edi.validation.native";
+	public static final String SPEC_FILE = "ANSI_837_05010.txt";
+	
+	//Metrics Related Constants
+	public static final String STAGE_HISTOGRAMS = "edi.metrics.histograms";
+	public static final String STAGE_HISTOGRAM_OUTPUT = "StageHistogram";
+	
+	//Routing Related Constants
+	public static final String ROUTING_BUNDLES = "edi.routing.bundles";
+	
+	//Reprocessing Related Constants
+	public static final String FAILURE_MANIFEST_OUTPUT = "FailureManifest";
+	public static final String REPROCESS_FAILURES = "edi.reprocess.failures";
+	
+	//Result cache Related Constants
+	public static final String RESULT_CACHE = "edi.cache.dir";
+	
+	//Duplicate detection Related Constants
+	public static final String DEDUP_INDEX = "edi.dedup.dir";
+	public static final String DEDUP_OUTPUT = "DedupKeys";
+	public static final String DEDUP_FALSE_POSITIVES = "edi.dedup.falsePositives";
+	
+	//Projection Related Constants
+	public static final String PROJECTION = "edi.projection";
+	public static final String PROJECTION_OUTPUT = "Projected";
+	
+	//Isolation Related Constants
+	public static final String TRANSACTION_ISOLATION = "edi.transaction.isolation";
+	
+	//Schema cache Related Constants
+	public static final String SCHEMA_CACHE_DIR = "edi.schema.cache.dir";
 }
@@ -0,0 +1,233 @@
+package com.org.util.tools.mainjob;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+
+/**
+ * The transactions processed by earlier runs, to skip those a partner sends again before they
+ * are converted.
+ *
+ * A transaction is known by the SHA-256 of the sender (ISA06), the ISA, GS and ST control
+ * numbers and the ST to SE text. The index directory holds a Bloom filter of the fingerprints,
+ * shipped to the mappers through the distributed cache, and a MapFile of all of them for the
+ * exact answer: only a fingerprint the filter may contain is looked up in the MapFile, which is
+ * opened on the first such lookup. Every run writes the fingerprints of its successful records
+ * to the DedupKeys output; update merges them into the index once the job has succeeded.
+ */
+public class DuplicateIndex {
+	public static final String BLOOM_LINK = "dedup.bloom";
+
+	private static final String BLOOM = "bloom";
+	private static final String KEYS = "keys";
+	private static final double DEFAULT_FALSE_POSITIVES = 0.01;
+	private static final int MIN_KEYS = 1024;
+
+	private final Configuration conf;
+	private final BloomFilter filter;
+	private final Path keys;
+	private MapFile.Reader reader;
+	private final Text probe = new Text();
+
+	private DuplicateIndex(Configuration conf, BloomFilter filter, Path keys) {
+		this.conf = conf;
+		this.filter = filter;
+		this.keys = keys;
+	}
+
+	/**
+	 * Returns the fingerprint of a transaction.
+	 */
+	public static String fingerprint(String sender, String isaControl, String gsControl, String stControl,
+			CharSequence body) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update((sender.trim() + '*' + isaControl + '*' + gsControl + '*' + stControl + '*').getBytes("UTF-8"));
+			digest.update(body.toString().getBytes("UTF-8"));
+			byte[] bytes = digest.digest();
+			StringBuilder sb = new StringBuilder(bytes.length * 2);
+			for (byte b : bytes)
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Adds the Bloom filter of an index to the distributed cache of a job. A new index has
+	 * none, its first run finds no duplicates.
+	 */
+	public static void distribute(Job job, Path dir) throws IOException {
+		Path bloom = new Path(dir, BLOOM);
+		FileSystem fs = bloom.getFileSystem(job.getConfiguration());
+		if (!fs.exists(bloom))
+			return;
+		try {
+			URI uri = fs.makeQualified(bloom).toUri();
+			job.addCacheFile(new URI(uri.getScheme(), uri.getAuthority(), uri.getPath(), null, BLOOM_LINK));
+		} catch (URISyntaxException e) {
+			throw new IOException("Cannot distribute " + bloom, e);
+		}
+	}
+
+	/**
+	 * Opens the index of a task from its cached Bloom filter, or returns null when the job has
+	 * none. The filter is read from the link in the working directory when the framework made
+	 * one, otherwise from where it was cached.
+	 */
+	public static DuplicateIndex open(Configuration conf, URI[] cacheFiles, Path dir) throws IOException {
+		if (cacheFiles == null)
+			return null;
+		for (URI uri : cacheFiles) {
+			if (!BLOOM_LINK.equals(uri.getFragment()))
+				continue;
+			File link = new File(BLOOM_LINK);
+			InputStream in = link.exists() ? new FileInputStream(link) : FileSystem.get(uri, conf).open(
+					new Path(uri.getScheme(), uri.getAuthority(), uri.getPath()));
+			BloomFilter filter = new BloomFilter();
+			DataInputStream data = new DataInputStream(in);
+			try {
+				filter.readFields(data);
+			} finally {
+				data.close();
+			}
+			return new DuplicateIndex(conf, filter, new Path(dir, KEYS));
+		}
+		return null;
+	}
+
+	public boolean contains(String fingerprint) throws IOException {
+		byte[] bytes = fingerprint.getBytes("UTF-8");
+		if (!filter.membershipTest(new Key(bytes)))
+			return false;
+		if (reader == null)
+			reader = new MapFile.Reader(keys, conf);
+		probe.set(bytes);
+		return reader.get(probe, NullWritable.get()) != null;
+	}
+
+	public void close() throws IOException {
+		if (reader != null)
+			reader.close();
+	}
+
+	/**
+	 * Merges the fingerprints written to the DedupKeys output of a job into the index and
+	 * rebuilds its Bloom filter for the new number of keys. The new MapFile and filter are
+	 * written beside the old ones and moved into place at the end.
+	 */
+	public static void update(Configuration conf, Path dir, Path output) throws IOException {
+		FileSystem fs = dir.getFileSystem(conf);
+		TreeSet<String> added = new TreeSet<String>();
+		FileSystem outputFs = output.getFileSystem(conf);
+		for (FileStatus status : outputFs.listStatus(output)) {
+			if (!status.getPath().getName().startsWith(Constants.DEDUP_OUTPUT))
+				continue;
+			LineReader lines = new LineReader(outputFs.open(status.getPath()));
+			try {
+				Text line = new Text();
+				while (lines.readLine(line) > 0)
+					if (line.getLength() > 0)
+						added.add(line.toString());
+			} finally {
+				lines.close();
+			}
+		}
+		if (added.isEmpty())
+			return;
+
+		Path keys = new Path(dir, KEYS);
+		Path newKeys = new Path(dir, KEYS + ".new");
+		fs.delete(newKeys, true);
+		long count = merge(conf, fs.exists(keys) ? keys : null, added, newKeys);
+
+		BloomFilter filter = newFilter(count, conf.getFloat(Constants.DEDUP_FALSE_POSITIVES, (float) DEFAULT_FALSE_POSITIVES));
+		MapFile.Reader reader = new MapFile.Reader(newKeys, conf);
+		try {
+			Text key = new Text();
+			while (reader.next(key, NullWritable.get()))
+				filter.add(new Key(key.copyBytes()));
+		} finally {
+			reader.close();
+		}
+		Path newBloom = new Path(dir, BLOOM + ".new");
+		DataOutputStream out = fs.create(newBloom, true);
+		try {
+			filter.write(out);
+		} finally {
+			out.close();
+		}
+
+		fs.delete(keys, true);
+		fs.rename(newKeys, keys);
+		Path bloom = new Path(dir, BLOOM);
+		fs.delete(bloom, false);
+		fs.rename(newBloom, bloom);
+	}
+
+	// both sources are sorted, the MapFile needs its keys in order and once
+	private static long merge(Configuration conf, Path keys, TreeSet<String> added, Path target) throws IOException {
+		MapFile.Writer writer = new MapFile.Writer(conf, target, MapFile.Writer.keyClass(Text.class),
+				MapFile.Writer.valueClass(NullWritable.class));
+		MapFile.Reader reader = keys == null ? null : new MapFile.Reader(keys, conf);
+		long count = 0;
+		try {
+			Text old = new Text();
+			boolean hasOld = reader != null && reader.next(old, NullWritable.get());
+			Iterator<String> news = added.iterator();
+			Text next = news.hasNext() ? new Text(news.next()) : null;
+			while (hasOld || next != null) {
+				int order = !hasOld ? 1 : next == null ? -1 : old.compareTo(next);
+				if (order <= 0) {
+					writer.append(old, NullWritable.get());
+					hasOld = reader.next(old, NullWritable.get());
+					if (order == 0)
+						next = news.hasNext() ? new Text(news.next()) : null;
+				} else {
+					writer.append(next, NullWritable.get());
+					next = news.hasNext() ? new Text(news.next()) : null;
+				}
+				count++;
+			}
+		} finally {
+			writer.close();
+			if (reader != null)
+				reader.close();
+		}
+		return count;
+	}
+
+	// m = -n ln p / (ln 2)^2 bits and k = m / n ln 2 hashes for n keys and false positive rate p
+	private static BloomFilter newFilter(long count, double falsePositives) {
+		long n = Math.max(count, MIN_KEYS);
+		long bits = (long) Math.ceil(-n * Math.log(falsePositives) / (Math.log(2) * Math.log(2)));
+		int vectorSize = (int) Math.min(Integer.MAX_VALUE - 64, bits);
+		int hashes = Math.max(1, (int) Math.round((double) vectorSize / n * Math.log(2)));
+		return new BloomFilter(vectorSize, hashes, Hash.MURMUR_HASH);
+	}
+}
@@ -0,0 +1,114 @@
+package com.org.util.tools.mainjob;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * The key of an EDI record. The text is the ISA and GS control numbers, as it has always been;
+ * the location of the transaction in its file, its type (ST01) and version (GS08), the control
+ * numbers of the envelope and, when
+ * duplicates are looked for, the fingerprint of the transaction are kept on the side for the
+ * failure manifest and the duplicate index. The side fields are not serialized, they only travel
+ * from the record reader to the mapper.
+ */
+public class EdiRecordKey extends Text {
+	private String path;
+	private long offset;
+	private long length;
+	private long isaOffset;
+	private long gsOffset;
+	private String isaControl;
+	private String gsControl;
+	private String stControl;
+	private String fingerprint;
+	private String type;
+	private String version;
+
+	/**
+	 * Sets the location of the record: the byte range of its ST to SE lines and the offsets of
+	 * the ISA and GS lines enclosing them.
+	 */
+	public void setLocation(String path, long offset, long length, long isaOffset, long gsOffset) {
+		this.path = path;
+		this.offset = offset;
+		this.length = length;
+		this.isaOffset = isaOffset;
+		this.gsOffset = gsOffset;
+	}
+
+	public void setControls(String isaControl, String gsControl, String stControl) {
+		this.isaControl = isaControl;
+		this.gsControl = gsControl;
+		this.stControl = stControl;
+	}
+
+	public void setDocument(String type, String version) {
+		this.type = type;
+		this.version = version;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sets the DuplicateIndex fingerprint of the record, null when it has none.
+	 */
+	public void setFingerprint(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public long getRecordLength() {
+		return length;
+	}
+
+	public long getIsaOffset() {
+		return isaOffset;
+	}
+
+	public long getGsOffset() {
+		return gsOffset;
+	}
+
+	public String getIsaControl() {
+		return isaControl;
+	}
+
+	public String getGsControl() {
+		return gsControl;
+	}
+
+	public String getStControl() {
+		return stControl;
+	}
+
+	public boolean hasLocation() {
+		return path != null;
+	}
+
+	// a Text equal to another must hash alike, the side fields are not part of either
+	@Override
+	public boolean equals(Object o) {
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		return super.hashCode();
+	}
+}
@@ -0,0 +1,40 @@
+package com.org.util.tools.mainjob;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+/**
+ * Reads the failure manifests in the output directory of an earlier run and gives the failed
+ * transactions again, framed as CFInputFormat frames them, so a run over the manifest processes
+ * only what failed before. Other files of the directory are ignored.
+ */
+public class FailureInputFormat extends FileInputFormat<Text, Text> {
+	@Override
+	public RecordReader<Text, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new FailureRecordReader();
+	}
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path file) {
+		return false;
+	}
+
+	@Override
+	protected List<FileStatus> listStatus(JobContext job) throws IOException {
+		List<FileStatus> manifests = new ArrayList<FileStatus>();
+		for (FileStatus status : super.listStatus(job))
+			if (status.getPath().getName().startsWith(Constants.FAILURE_MANIFEST_OUTPUT))
+				manifests.add(status);
+		return manifests;
+	}
+}
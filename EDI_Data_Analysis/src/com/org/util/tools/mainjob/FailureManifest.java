@@ -0,0 +1,77 @@
+package com.org.util.tools.mainjob;
+
+import org.apache.hadoop.io.Text;
+
+import com.org.util.tools.mainjob.StageMetrics.Stage;
+
+/**
+ * Lines of the failure manifest, one per failed transaction, tab separated:
+ *
+ * <pre>
+ * path  offset  length  isaOffset  gsOffset  ISA13  GS06  ST02  stage  message
+ * </pre>
+ *
+ * Offset and length give the byte range of the ST to SE lines in the input file; the ISA and GS
+ * lines enclosing them are found at their own offsets. The stage is the first one that failed,
+ * named as in StageMetrics. A record framed without a location has an empty path and zero
+ * offsets. FailureInputFormat reads the manifest of one run as the input of
+ * the next, so that only the failed transactions are processed again.
+ */
+public final class FailureManifest {
+	private static final int COLUMNS = 10;
+
+	private FailureManifest() {
+		// restrict instantiation
+	}
+
+	public static String format(EdiRecordKey key, Stage stage, String message) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(clean(key.getPath())).append('\t');
+		sb.append(key.getOffset()).append('\t');
+		sb.append(key.getRecordLength()).append('\t');
+		sb.append(key.getIsaOffset()).append('\t');
+		sb.append(key.getGsOffset()).append('\t');
+		sb.append(clean(key.getIsaControl())).append('\t');
+		sb.append(clean(key.getGsControl())).append('\t');
+		sb.append(clean(key.getStControl())).append('\t');
+		sb.append(stage.name()).append('\t');
+		sb.append(clean(message));
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the key of the record a manifest line describes, with its location and control
+	 * numbers set, or null for a blank line.
+	 */
+	public static EdiRecordKey parse(String line) {
+		if (line.trim().length() == 0)
+			return null;
+		String[] columns = line.split("\t", COLUMNS);
+		if (columns.length < COLUMNS)
+			throw new IllegalArgumentException("Not a failure manifest line: " + line);
+		EdiRecordKey key = new EdiRecordKey();
+		key.set(columns[5] + columns[6]);
+		key.setLocation(columns[0], Long.parseLong(columns[1]), Long.parseLong(columns[2]),
+				Long.parseLong(columns[3]), Long.parseLong(columns[4]));
+		key.setControls(columns[5], columns[6], columns[7]);
+		return key;
+	}
+
+	/**
+	 * Returns a key without location for a record framed by a reader that does not track one.
+	 */
+	public static EdiRecordKey unlocated(Text key) {
+		EdiRecordKey unlocated = new EdiRecordKey();
+		unlocated.set(key);
+		return unlocated;
+	}
+
+	public static Stage stageOf(String line) {
+		return Stage.valueOf(line.split("\t", COLUMNS)[8]);
+	}
+
+	// the manifest is line and tab delimited
+	private static String clean(String s) {
+		return s == null ? "" : s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+}
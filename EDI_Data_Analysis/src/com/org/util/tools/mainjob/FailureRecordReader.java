@@ -0,0 +1,153 @@
+package com.org.util.tools.mainjob;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.LineReader;
+
+/**
+ * Gives the transactions listed in a failure manifest. For each line the ISA and GS segments
+ * and the byte range of the transaction are read from the original file, which is kept open
+ * while the manifest refers to it, and the record is rebuilt as CFRecordReader builds it. The
+ * key carries the same control numbers and location, so a failure of the rerun is written to
+ * the new manifest against the original file.
+ */
+public class FailureRecordReader extends RecordReader<Text, Text> {
+	private static final int HEADER_BUFFER = 4096;
+
+	private long start;
+	private long end;
+	private long pos;
+	private FSDataInputStream manifestIn;
+	private LineReader manifest;
+	private Configuration conf;
+	private final Map<String, FSDataInputStream> files = new HashMap<String, FSDataInputStream>();
+	private final Map<String, String> headers = new HashMap<String, String>();
+	private final Text line = new Text();
+	private EdiRecordKey key;
+	private Text value;
+	private TaskAttemptContext context;
+	private StageMetrics metrics;
+
+	@Override
+	public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+		FileSplit fileSplit = (FileSplit) split;
+		Path path = fileSplit.getPath();
+		conf = context.getConfiguration();
+		start = fileSplit.getStart();
+		end = start + fileSplit.getLength();
+		manifestIn = path.getFileSystem(conf).open(path);
+		manifestIn.seek(start);
+		manifest = new LineReader(manifestIn);
+		pos = start;
+		this.context = context;
+		metrics = new StageMetrics(false);
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException {
+		while (pos < end) {
+			int size = manifest.readLine(line);
+			if (size == 0)
+				break;
+			pos += size;
+			EdiRecordKey failed = FailureManifest.parse(line.toString());
+			// records framed without a location or transaction cannot be read again
+			if (failed == null || failed.getPath().length() == 0 || failed.getRecordLength() == 0)
+				continue;
+			long started = metrics.start();
+			key = failed;
+			value = new Text(read(failed));
+			metrics.stop(StageMetrics.Stage.FRAMING, started, failed.getRecordLength(), value.getLength());
+			return true;
+		}
+		key = null;
+		value = null;
+		return false;
+	}
+
+	private String read(EdiRecordKey failed) throws IOException {
+		FSDataInputStream in = open(failed.getPath());
+		String isaHeader = header(in, failed.getPath(), failed.getIsaOffset());
+		String gsHeader = header(in, failed.getPath(), failed.getGsOffset());
+
+		byte[] range = new byte[(int) failed.getRecordLength()];
+		in.readFully(failed.getOffset(), range);
+		LineReader lines = new LineReader(new ByteArrayInputStream(range));
+		StringBuilder sb = new StringBuilder(range.length);
+		Text segment = new Text();
+		while (lines.readLine(segment) > 0) {
+			String line = segment.toString();
+			if (sb.length() == 0 && line.startsWith(Constants.ST_START))
+				failed.setDocument(CFRecordReader.element(line, Constants.ST_TYPE_INDEX),
+						CFRecordReader.element(gsHeader, Constants.GS_VERSION_INDEX));
+			sb.append(line);
+		}
+		lines.close();
+		return isaHeader + gsHeader + sb.toString() + CFRecordReader.gsTailer(gsHeader)
+				+ CFRecordReader.isaTailer(isaHeader);
+	}
+
+	private FSDataInputStream open(String name) throws IOException {
+		FSDataInputStream in = files.get(name);
+		if (in == null) {
+			Path path = new Path(name);
+			FileSystem fs = path.getFileSystem(conf);
+			in = fs.open(path);
+			files.put(name, in);
+		}
+		return in;
+	}
+
+	// failures of one envelope share its ISA and GS lines
+	private String header(FSDataInputStream in, String name, long offset) throws IOException {
+		String id = name + '@' + offset;
+		String header = headers.get(id);
+		if (header == null) {
+			in.seek(offset);
+			Text segment = new Text();
+			new LineReader(in, HEADER_BUFFER).readLine(segment);
+			header = segment.toString();
+			headers.put(id, header);
+		}
+		return header;
+	}
+
+	@Override
+	public Text getCurrentKey() {
+		return key;
+	}
+
+	@Override
+	public Text getCurrentValue() {
+		return value;
+	}
+
+	@Override
+	public float getProgress() {
+		if (start == end)
+			return 0;
+		return Math.min(1.0f, (pos - start) / (float) (end - start));
+	}
+
+	@Override
+	public void close() throws IOException {
+		metrics.report(context);
+		for (FSDataInputStream in : files.values())
+			in.close();
+		files.clear();
+		headers.clear();
+		manifest.close();
+	}
+}
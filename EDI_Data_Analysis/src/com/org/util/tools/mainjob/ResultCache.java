@@ -0,0 +1,225 @@
+package com.org.util.tools.mainjob;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.UUID;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+
+import com.berryworks.edireader.plugin.ANSI_837;
+
+/**
+ * Completed AvroData outputs of single input files, kept in a directory of the local file
+ * system or HDFS so an unchanged file is not processed again.
+ *
+ * An entry is found by the SHA-256 of the file content under a version directory, the SHA-256
+ * of the resource files (the avsc, XSD and XSL of every transaction type, the transform
+ * tables, encoding plan and specification) together with the class files of the EDIReader
+ * plugins, and the logical types option. A change to any of them
+ * starts an empty version directory; old ones can simply be deleted. An entry is complete once
+ * its _SUCCESS file exists, so an interrupted store is never read.
+ *
+ * In cache mode CFMapper writes the AvroData of every input file below FILES in the output
+ * directory, in a directory named by fileId, and marks a file with a record that failed by a
+ * FAILED_MARKER file; only files without failures are stored.
+ */
+public class ResultCache {
+	public static final String FILES = "files";
+	public static final String FAILED_MARKER = "_FAILED";
+
+	private static final String SUCCESS = "_SUCCESS";
+	private static final String PLUGIN_PACKAGE = "com/berryworks/edireader/plugin/";
+	private static final int BUFFER = 65536;
+
+	private final FileSystem fs;
+	private final Path dir;
+
+	public ResultCache(Configuration conf, Path root) throws IOException {
+		fs = root.getFileSystem(conf);
+		dir = new Path(root, version(conf));
+	}
+
+	/**
+	 * Returns the digest of everything besides the input that the AvroData output depends on.
+	 */
+	public static String version(Configuration conf) throws IOException {
+		MessageDigest digest = newDigest();
+		Path resources = new Path(conf.get("InputFiles"));
+		FileSystem fs = resources.getFileSystem(conf);
+		FileStatus[] files = fs.listStatus(resources);
+		Arrays.sort(files);
+		for (FileStatus status : files) {
+			if (!status.isFile())
+				continue;
+			digest.update(status.getPath().getName().getBytes("UTF-8"));
+			update(digest, fs.open(status.getPath()));
+		}
+		updatePlugins(digest);
+		// the same resources give other AvroData with logical types
+		if (conf.getBoolean(Constants.LOGICAL_TYPES, false))
+			digest.update(Constants.LOGICAL_TYPES.getBytes("UTF-8"));
+		return hex(digest.digest());
+	}
+
+	// the plugin classes, from the jar or the class directory holding them
+	private static void updatePlugins(MessageDigest digest) throws IOException {
+		CodeSource source = ANSI_837.class.getProtectionDomain().getCodeSource();
+		if (source == null)
+			throw new IOException("Cannot locate the EDIReader plugins");
+		File location;
+		try {
+			location = new File(source.getLocation().toURI());
+		} catch (URISyntaxException e) {
+			throw new IOException("Cannot locate the EDIReader plugins", e);
+		}
+
+		if (location.isDirectory()) {
+			File[] classes = new File(location, PLUGIN_PACKAGE).listFiles();
+			Arrays.sort(classes);
+			for (File file : classes) {
+				if (!file.getName().endsWith(".class"))
+					continue;
+				digest.update(file.getName().getBytes("UTF-8"));
+				update(digest, new FileInputStream(file));
+			}
+			return;
+		}
+
+		JarFile jar = new JarFile(location);
+		try {
+			List<String> names = new ArrayList<String>();
+			for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+				String name = entries.nextElement().getName();
+				if (name.startsWith(PLUGIN_PACKAGE) && name.endsWith(".class"))
+					names.add(name);
+			}
+			Collections.sort(names);
+			for (String name : names) {
+				digest.update(name.getBytes("UTF-8"));
+				update(digest, jar.getInputStream(jar.getEntry(name)));
+			}
+		} finally {
+			jar.close();
+		}
+	}
+
+	/**
+	 * Returns the SHA-256 of the content of a file.
+	 */
+	public String fingerprint(Path file) throws IOException {
+		MessageDigest digest = newDigest();
+		update(digest, file.getFileSystem(fs.getConf()).open(file));
+		return hex(digest.digest());
+	}
+
+	public boolean contains(String fingerprint) throws IOException {
+		return fs.exists(new Path(entry(fingerprint), SUCCESS));
+	}
+
+	/**
+	 * Copies the outputs of a file into the cache. The files are copied to a staging directory
+	 * of this store that is renamed into place, so concurrent stores of the same content are
+	 * harmless. A file without output is cached as an empty entry.
+	 */
+	public void store(String fingerprint, Path outputs) throws IOException {
+		if (contains(fingerprint))
+			return;
+		Path entry = entry(fingerprint);
+		Path staging = new Path(dir, fingerprint + "." + UUID.randomUUID() + ".tmp");
+		if (outputs.getFileSystem(fs.getConf()).exists(outputs))
+			copy(outputs, staging);
+		else
+			fs.mkdirs(staging);
+		fs.create(new Path(staging, SUCCESS), true).close();
+		if (!fs.rename(staging, entry))
+			fs.delete(staging, true);
+	}
+
+	/**
+	 * Returns whether a record of the file whose outputs are in the given directory failed.
+	 */
+	public boolean hasFailed(Path outputs) throws IOException {
+		return outputs.getFileSystem(fs.getConf()).exists(new Path(outputs, FAILED_MARKER));
+	}
+
+	/**
+	 * Copies the outputs cached for a file into a directory of the output. Copied, not linked:
+	 * HDFS does not support symbolic links in general.
+	 */
+	public void restore(String fingerprint, Path outputs) throws IOException {
+		copy(entry(fingerprint), outputs);
+	}
+
+	private void copy(Path from, Path to) throws IOException {
+		FileSystem target = to.getFileSystem(fs.getConf());
+		target.mkdirs(to);
+		FileSystem source = from.getFileSystem(fs.getConf());
+		for (FileStatus status : source.listStatus(from)) {
+			String name = status.getPath().getName();
+			if (status.isFile() && !name.startsWith("_") && !name.startsWith("."))
+				FileUtil.copy(source, status.getPath(), target, new Path(to, name), false, fs.getConf());
+		}
+	}
+
+	private Path entry(String fingerprint) {
+		return new Path(dir, fingerprint);
+	}
+
+	/**
+	 * Returns the name of the output directory of an input file: its name and a digest of its
+	 * full path, so files of the same name in different directories do not meet.
+	 */
+	public static String fileId(String path) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			return new Path(path).getName() + "-" + hex(digest.digest(path.getBytes("UTF-8"))).substring(0, 16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, InputStream in) throws IOException {
+		try {
+			byte[] buffer = new byte[BUFFER];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				digest.update(buffer, 0, read);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			sb.append(String.format("%02x", b & 0xff));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,135 @@
+package com.org.util.tools.mainjob;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Time, record and byte totals of the pipeline stages of one task.
+ *
+ * The totals are kept in plain arrays and added to the Hadoop counters of the EDIStages group
+ * once per task by report, so timing a record costs two System.nanoTime calls per stage. The
+ * clock of the stages excludes the time spent in OUTPUT: a stage that writes a result or an
+ * error record on its way is charged for its own work only. Bytes are the characters of the
+ * EDI and XML text, which are ASCII; Avro conversion has no text out and counts the encoded
+ * bytes only when the direct encoder is used.
+ *
+ * With histograms enabled every stage also keeps a latency histogram with power of two
+ * buckets, written by CFMapper next to its other output when the task ends.
+ */
+public final class StageMetrics {
+	public enum Stage {
+		FRAMING, EDI_TO_XML, XSL, VALIDATION, AVRO, OUTPUT
+	}
+
+	public static final String COUNTER_GROUP = "EDIStages";
+	public static final String NANOS = "_NANOS";
+	public static final String RECORDS = "_RECORDS";
+	public static final String BYTES_IN = "_BYTES_IN";
+	public static final String BYTES_OUT = "_BYTES_OUT";
+
+	private static final int STAGES = Stage.values().length;
+	private static final int BUCKETS = 64;
+
+	private final long[] nanos = new long[STAGES];
+	private final long[] records = new long[STAGES];
+	private final long[] bytesIn = new long[STAGES];
+	private final long[] bytesOut = new long[STAGES];
+	private final long[][] histograms;
+	private long outputNanos;
+
+	public StageMetrics(boolean histograms) {
+		this.histograms = histograms ? new long[STAGES][BUCKETS] : null;
+	}
+
+	/**
+	 * Returns the start time of a stage, to be passed to stop.
+	 */
+	public long start() {
+		return System.nanoTime() - outputNanos;
+	}
+
+	public void stop(Stage stage, long start, long in, long out) {
+		long elapsed = System.nanoTime() - outputNanos - start;
+		int i = stage.ordinal();
+		nanos[i] += elapsed;
+		records[i]++;
+		bytesIn[i] += in;
+		bytesOut[i] += out;
+		if (stage == Stage.OUTPUT)
+			outputNanos += elapsed;
+		if (histograms != null)
+			histograms[i][bucket(elapsed)]++;
+	}
+
+	// bucket b holds the durations below 2^b ns
+	private static int bucket(long elapsed) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, elapsed)));
+	}
+
+	public boolean hasHistograms() {
+		return histograms != null;
+	}
+
+	/**
+	 * Adds the totals to the task counters and starts over, so a task may report more than once.
+	 */
+	public void report(TaskAttemptContext context) {
+		for (Stage stage : Stage.values()) {
+			int i = stage.ordinal();
+			if (records[i] == 0)
+				continue;
+			context.getCounter(COUNTER_GROUP, stage.name() + NANOS).increment(nanos[i]);
+			context.getCounter(COUNTER_GROUP, stage.name() + RECORDS).increment(records[i]);
+			context.getCounter(COUNTER_GROUP, stage.name() + BYTES_IN).increment(bytesIn[i]);
+			context.getCounter(COUNTER_GROUP, stage.name() + BYTES_OUT).increment(bytesOut[i]);
+			nanos[i] = records[i] = bytesIn[i] = bytesOut[i] = 0;
+		}
+	}
+
+	/**
+	 * Writes the non-empty histogram buckets as tab separated lines: stage, upper bound of the
+	 * bucket in ns, count.
+	 */
+	public void writeHistograms(OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, "UTF-8");
+		for (Stage stage : Stage.values()) {
+			long[] histogram = histograms[stage.ordinal()];
+			for (int b = 0; b < BUCKETS; b++)
+				if (histogram[b] > 0)
+					writer.write(stage.name() + "\t" + (1L << b) + "\t" + histogram[b] + "\n");
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Prints the stage breakdown of a finished job: records, total and average time, share of
+	 * the mapper time (framing not included, it runs in the record reader) and throughput.
+	 */
+	public static void printTable(Counters counters, PrintStream out) {
+		CounterGroup group = counters.getGroup(COUNTER_GROUP);
+		long mapperNanos = 0;
+		for (Stage stage : Stage.values())
+			if (stage != Stage.FRAMING)
+				mapperNanos += group.findCounter(stage.name() + NANOS).getValue();
+
+		out.println(String.format("    %-11s %12s %12s %12s %7s %12s %12s %10s", "Stage", "Records", "Total ms",
+				"Avg us", "Share", "MB in", "MB out", "MB/s in"));
+		for (Stage stage : Stage.values()) {
+			long nanos = group.findCounter(stage.name() + NANOS).getValue();
+			long records = group.findCounter(stage.name() + RECORDS).getValue();
+			long in = group.findCounter(stage.name() + BYTES_IN).getValue();
+			long written = group.findCounter(stage.name() + BYTES_OUT).getValue();
+			double share = stage == Stage.FRAMING || mapperNanos == 0 ? 0 : 100.0 * nanos / mapperNanos;
+			out.println(String.format("    %-11s %12d %12.1f %12.1f %6.1f%% %12.1f %12.1f %10.1f", stage.name(),
+					records, nanos / 1e6, records == 0 ? 0 : nanos / 1e3 / records, share, in / 1048576.0,
+					written / 1048576.0, nanos == 0 ? 0 : in / 1048576.0 / (nanos / 1e9)));
+		}
+	}
+}
@@ -9,6 +9,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URL;
 
@@ -16,23 +17,124 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 // For write operation
+import javax.xml.transform.Result;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
 
 import com.berryworks.edireader.demo.IOString;
 
 public class Stylizer {
-	// Global value so it can be ref'd by the tree-adapter
-	static Document document;
-	
+	// factories are not thread-safe, the Templates they compile are
+	private static final ThreadLocal<SAXTransformerFactory> factories = new ThreadLocal<SAXTransformerFactory>();
+
+	private static SAXTransformerFactory getFactory() throws TransformerConfigurationException {
+		SAXTransformerFactory factory = factories.get();
+		if (factory == null) {
+			TransformerFactory tFactory = TransformerFactory.newInstance();
+			if (!tFactory.getFeature(SAXTransformerFactory.FEATURE))
+				throw new TransformerConfigurationException("TransformerFactory does not support SAX: "
+						+ tFactory.getClass().getName());
+			factory = (SAXTransformerFactory) tFactory;
+			factories.set(factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * Compiles the stylesheet once; the returned Templates can be shared between threads.
+	 */
+	public static Templates compile(InputStream xsl) throws TransformerConfigurationException {
+		return getFactory().newTemplates(new StreamSource(xsl));
+	}
+
+	/**
+	 * Returns a handler that applies the stylesheet to the SAX events it receives and passes the
+	 * result on to the given Result. A handler is good for one document.
+	 */
+	public static TransformerHandler newHandler(Templates templates, Result result)
+			throws TransformerConfigurationException {
+		TransformerHandler handler = getFactory().newTransformerHandler(templates);
+		handler.setResult(result);
+		return handler;
+	}
+
+	/**
+	 * Returns a handler that writes the SAX events it receives unchanged to the given Result.
+	 */
+	public static TransformerHandler newSerializer(Result result) throws TransformerConfigurationException {
+		TransformerHandler handler = getFactory().newTransformerHandler();
+		handler.setResult(result);
+		return handler;
+	}
+
+	/**
+	 * Streams the input read by the reader, typically an EDIReader, through the stylesheet into
+	 * the downstream handler without building a DOM or an intermediate string.
+	 */
+	public static void applyXMLStyle(Templates templates, XMLReader reader, InputSource input,
+			ContentHandler downstream) throws TransformerConfigurationException, SAXException, IOException {
+		apply(templates, reader, input, new SAXResult(downstream));
+	}
+
+	public static String applyXMLStyle(Templates templates, XMLReader reader, InputSource input)
+			throws TransformerConfigurationException, SAXException, IOException {
+		StringWriter out = new StringWriter();
+		apply(templates, reader, input, new StreamResult(out));
+		return out.toString();
+	}
+
+	private static void apply(Templates templates, XMLReader reader, InputSource input, Result result)
+			throws TransformerConfigurationException, SAXException, IOException {
+		NamespaceFilter filter = new NamespaceFilter(reader);
+		filter.setContentHandler(newHandler(templates, result));
+		filter.parse(input);
+	}
+
+	/**
+	 * The generated stylesheets match unprefixed names, as applyXMLStyle reads the XML without
+	 * namespace support. The filter drops the namespace of the events the same way.
+	 */
+	private static class NamespaceFilter extends XMLFilterImpl {
+		NamespaceFilter(XMLReader parent) {
+			super(parent);
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) {
+		}
+
+		@Override
+		public void endPrefixMapping(String prefix) {
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			super.startElement("", qName, qName, atts);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			super.endElement("", qName, qName);
+		}
+	}
+
 	public static String applyXMLStyle(InputStream strXSLTPath, String strXMLData) {
 
 		//URL url = Stylizer.class.getResource(strXSLTPath);
@@ -47,7 +149,7 @@ public class Stylizer {
 			//File stylesheet = new File(strXSLTPath);
 			//File stylesheet = new File(url.getPath());
 			DocumentBuilder builder = factory.newDocumentBuilder();
-			document = builder.parse(new ByteArrayInputStream(strXMLData.getBytes()));
+			Document document = builder.parse(new ByteArrayInputStream(strXMLData.getBytes()));
 
 			// Use a Transformer for output
 			TransformerFactory tFactory = TransformerFactory.newInstance();
@@ -4,15 +4,225 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
 
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
 
+/**
+ * Validates styled EDI XML against the generated XSD.
+ *
+ * An instance holds the compiled Schema, which is thread-safe, and keeps one ValidatorHandler
+ * per thread. The handler works as a SAX filter, so it can sit between Stylizer and the next
+ * consumer of the events instead of parsing the serialized XML again. Problems are collected
+ * in Errors, up to a limit, rather than thrown.
+ */
 public class XmlValidator {
+	public static final int DEFAULT_MAX_ERRORS = 100;
+
+	// SchemaFactory is not thread-safe, the Schema it compiles is
+	private static final ThreadLocal<SchemaFactory> factories = new ThreadLocal<SchemaFactory>();
+
+	private final Schema schema;
+	private final int maxErrors;
+	private final ThreadLocal<ValidatorHandler> handlers = new ThreadLocal<ValidatorHandler>();
+	private final ThreadLocal<XMLReader> readers = new ThreadLocal<XMLReader>();
+
+	public XmlValidator(Schema schema) {
+		this(schema, DEFAULT_MAX_ERRORS);
+	}
+
+	public XmlValidator(Schema schema, int maxErrors) {
+		this.schema = schema;
+		this.maxErrors = maxErrors;
+	}
+
+	public XmlValidator(InputStream xsd) throws SAXException {
+		this(compile(xsd));
+	}
+
+	public static Schema compile(InputStream xsd) throws SAXException {
+		SchemaFactory factory = factories.get();
+		if (factory == null) {
+			factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+			factories.set(factory);
+		}
+		return factory.newSchema(new StreamSource(xsd));
+	}
+
+	public Schema getSchema() {
+		return schema;
+	}
+
+	public Errors newErrors() {
+		return new Errors(maxErrors);
+	}
+
+	/**
+	 * Returns the validating filter of the current thread, reporting to errors and passing the
+	 * events on to downstream, which may be null. The filter is reused by the next call on the
+	 * same thread, so one document has to be finished before the next one is started.
+	 */
+	public ValidatorHandler newFilter(ContentHandler downstream, Errors errors) {
+		ValidatorHandler handler = handlers.get();
+		if (handler == null) {
+			handler = schema.newValidatorHandler();
+			handlers.set(handler);
+		}
+		handler.setContentHandler(downstream);
+		handler.setErrorHandler(errors);
+		return handler;
+	}
+
+	public Errors validate(String xml) throws IOException {
+		return validate(new InputSource(new StringReader(xml)));
+	}
+
+	public Errors validate(InputSource xml) throws IOException {
+		Errors errors = newErrors();
+		XMLReader reader = getReader();
+		reader.setErrorHandler(errors);
+		reader.setContentHandler(newFilter(null, errors));
+		try {
+			reader.parse(xml);
+		} catch (SAXException e) {
+			// fatal errors are recorded by the error handler before they end the parse
+			if (errors.getErrorCount() == 0)
+				errors.add(Errors.FATAL, e.getMessage(), -1, -1);
+		}
+		return errors;
+	}
+
+	private XMLReader getReader() throws IOException {
+		XMLReader reader = readers.get();
+		if (reader == null) {
+			try {
+				SAXParserFactory factory = SAXParserFactory.newInstance();
+				factory.setNamespaceAware(true);
+				reader = factory.newSAXParser().getXMLReader();
+			} catch (ParserConfigurationException e) {
+				throw new IOException(e);
+			} catch (SAXException e) {
+				throw new IOException(e);
+			}
+			readers.set(reader);
+		}
+		return reader;
+	}
+
+	/**
+	 * Problems reported for one document. Only the first maxErrors are kept, all are counted.
+	 */
+	public static class Errors implements ErrorHandler {
+		public static final String ERROR = "error";
+		public static final String FATAL = "fatal";
+
+		private final int maxErrors;
+		private final List<Problem> problems = new ArrayList<Problem>();
+		private int errorCount;
+
+		public Errors(int maxErrors) {
+			this.maxErrors = maxErrors;
+		}
+
+		public boolean isValid() {
+			return errorCount == 0;
+		}
+
+		public int getErrorCount() {
+			return errorCount;
+		}
+
+		public boolean isTruncated() {
+			return errorCount > problems.size();
+		}
+
+		public List<Problem> getProblems() {
+			return Collections.unmodifiableList(problems);
+		}
+
+		@Override
+		public void warning(SAXParseException e) {
+		}
+
+		@Override
+		public void error(SAXParseException e) {
+			add(ERROR, e.getMessage(), e.getLineNumber(), e.getColumnNumber());
+		}
+
+		@Override
+		public void fatalError(SAXParseException e) throws SAXException {
+			add(FATAL, e.getMessage(), e.getLineNumber(), e.getColumnNumber());
+			throw e;
+		}
+
+		void add(String severity, String message, int line, int column) {
+			errorCount++;
+			if (problems.size() < maxErrors)
+				problems.add(new Problem(severity, message, line, column));
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (Problem problem : problems)
+				sb.append(problem).append('\n');
+			if (isTruncated())
+				sb.append(errorCount - problems.size()).append(" more errors\n");
+			return sb.toString();
+		}
+	}
+
+	public static class Problem {
+		private final String severity;
+		private final String message;
+		private final int line;
+		private final int column;
+
+		public Problem(String severity, String message, int line, int column) {
+			this.severity = severity;
+			this.message = message;
+			this.line = line;
+			this.column = column;
+		}
+
+		public String getSeverity() {
+			return severity;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		public int getLine() {
+			return line;
+		}
+
+		public int getColumn() {
+			return column;
+		}
+
+		@Override
+		public String toString() {
+			return severity + " at " + line + ":" + column + " " + message;
+		}
+	}
 
 	public static void xmlValidate(InputStreamReader xsdpath,
 			InputStreamReader xmlMsg) throws SAXException, IOException {
@@ -21,16 +231,14 @@ public class XmlValidator {
 		Schema sch = schemaFactory.newSchema(new StreamSource(xsdpath));
 		Validator validator = sch.newValidator();
 		validator.validate(new StreamSource(xmlMsg));
-		System.out.println("Xml against xsd validated");
 	}
-	
+
 	public static void xmlValidate(InputStream xsdpath,InputStream xmlMsg) throws SAXException, IOException {
 		SchemaFactory schemaFactory = SchemaFactory
 				.newInstance("http://www.w3.org/2001/XMLSchema");
 		Schema sch = schemaFactory.newSchema(new StreamSource(xsdpath));
 		Validator validator = sch.newValidator();
 		validator.validate(new StreamSource(xmlMsg));
-		System.out.println("Xml against xsd validated");
 	}
 
 	public static void main(String... arg) throws SAXException, IOException {
@@ -39,6 +247,7 @@ public class XmlValidator {
 		InputStreamReader isxsd = new InputStreamReader(new FileInputStream(
 				arg[0]), "ISO-8859-1");
 		XmlValidator.xmlValidate(isxsd, is);
+		System.out.println("Xml against xsd validated");
 	}
 
 }
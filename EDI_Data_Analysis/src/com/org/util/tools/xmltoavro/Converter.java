@@ -25,26 +25,60 @@ import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 
 
 
 
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Converter  /*extends SpecificDatumWriter*/{
-    public static Schema createSchema(String xsd) { return new SchemaBuilder().createSchema(xsd); }
-    public static Schema createSchema(File file) throws ConverterException, IOException { return new SchemaBuilder().createSchema(file); }
-    public static Schema createSchema(Reader reader) { return new SchemaBuilder().createSchema(reader); }
-    public static Schema createSchema(InputStream stream) { return new SchemaBuilder().createSchema(stream); }
+    private static volatile SchemaCache schemaCache = new SchemaCache();
+    private static volatile SchemaCache logicalSchemaCache = logical(new SchemaCache());
+
+    // compiled schemas are shared through the cache; point it at a directory to keep them across runs
+    public static SchemaCache getSchemaCache() { return schemaCache; }
+    public static void setSchemaCache(SchemaCache cache) { schemaCache = cache; }
+
+    // logical types mode has a cache of its own, so the mode of the shared one never changes
+    public static SchemaCache getLogicalSchemaCache() { return logicalSchemaCache; }
+    public static void setLogicalSchemaCache(SchemaCache cache) { logicalSchemaCache = logical(cache); }
+
+    /**
+     * Points both caches at a directory on the local file system or HDFS, so that compiled schemas
+     * and encoding plans outlive the JVM. Logical schemas are keyed apart and can share it.
+     */
+    public static void setCacheDir(Path dir, Configuration conf) throws IOException {
+        setSchemaCache(new SchemaCache(dir, conf));
+        setLogicalSchemaCache(new SchemaCache(dir, conf));
+    }
+
+    private static SchemaCache logical(SchemaCache cache) {
+        cache.setLogicalTypes(true);
+        return cache;
+    }
+
+    public static Schema createSchema(String xsd) { return schemaCache.getSchema(xsd); }
+    public static Schema createSchema(File file) throws ConverterException, IOException { return schemaCache.getSchema(file); }
+    public static Schema createSchema(Reader reader) throws IOException { return schemaCache.getSchema(reader); }
+    public static Schema createSchema(InputStream stream) throws IOException { return schemaCache.getSchema(stream); }
+    public static Schema createLogicalSchema(String xsd) { return logicalSchemaCache.getSchema(xsd); }
 
     public static <T> T createDatum(Schema schema, File file) throws IOException { return new DatumBuilder(schema).createDatum(file); }
     public static <T> T createDatum(Schema schema, String xml) { return new DatumBuilder(schema).createDatum(xml); }
     public static <T> T createDatum(Schema schema, Reader reader) { return new DatumBuilder(schema).createDatum(reader); }
     public static <T> T createDatum(Schema schema, InputStream stream) { return new DatumBuilder(schema).createDatum(stream); }
 
+    public static EncodingPlan createEncodingPlan(Schema schema) { return new EncodingPlan(schema); }
+    public static EncodingPlan createEncodingPlan(Schema schema, Reader plan) throws IOException { return EncodingPlan.read(schema, plan); }
+    public static ByteBuffer encodeDatum(EncodingPlan plan, String xml) { return new DirectDatumEncoder(plan).encode(xml); }
+    public static ByteBuffer encodeDatum(EncodingPlan plan, InputStream stream) { return new DirectDatumEncoder(plan).encode(stream); }
+
    /* private static class Options {
         static final String USAGE = "{-d|--debug} {-b|--baseDir <baseDir>} <xsdFile> <xmlFile> {<avscFile>} {<avroFile>}";
         public enum args_enum{d,debug,b,basedir};
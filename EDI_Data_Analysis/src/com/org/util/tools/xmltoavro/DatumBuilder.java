@@ -101,6 +101,9 @@ public class DatumBuilder {
         if (!Arrays.asList(Node.ELEMENT_NODE, Node.ATTRIBUTE_NODE).contains(source.getNodeType()))
             throw new IllegalArgumentException("Unsupported node type " + source.getNodeType());
 
+        if (LogicalValues.getLogicalType(schema) != null)
+            return createLogicalValue(schema, source.getTextContent());
+
         if (PRIMITIVES.contains(schema.getType()))
             return createValue(schema.getType(), source.getTextContent());
 
@@ -161,7 +164,22 @@ public class DatumBuilder {
         throw new ConverterException("Unsupported type " + type);
     }
 
-    private static long parseDateTime(String text) {
+    private Object createLogicalValue(Schema schema, String text) {
+        String logicalType = LogicalValues.getLogicalType(schema);
+
+        if (LogicalValues.DATE.equals(logicalType))
+            return LogicalValues.parseDate(text);
+
+        if (LogicalValues.TIME_MILLIS.equals(logicalType))
+            return LogicalValues.parseTime(text);
+
+        if (LogicalValues.DECIMAL.equals(logicalType))
+            return LogicalValues.createDecimal(text, LogicalValues.getTextScale(schema));
+
+        return createValue(schema.getType(), text);
+    }
+
+    static long parseDateTime(String text) {
         Calendar c = DatatypeConverter.parseDateTime(text);
         c.setTimeZone(defaultTimeZone);
         return c.getTimeInMillis();
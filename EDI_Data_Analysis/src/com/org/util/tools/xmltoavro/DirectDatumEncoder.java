@@ -0,0 +1,389 @@
+package com.org.util.tools.xmltoavro;
+
+import com.org.util.tools.xmltoavro.EncodingPlan.FieldPlan;
+import com.org.util.tools.xmltoavro.EncodingPlan.RecordPlan;
+import com.org.util.tools.xmltoavro.EncodingPlan.ValuePlan;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes XML straight into Avro binary, without materializing the {@code GenericData.Record}
+ * tree that {@link DatumBuilder} builds and {@code GenericDatumWriter} then walks a second time.
+ * <p/>
+ * The encoder is a SAX {@code ContentHandler} driven by an {@link EncodingPlan}, so it can sit at
+ * the end of any SAX pipeline or parse a serialized document itself via {@link #encode(String)}.
+ * Elements must arrive in schema field order, which is the order the XSD/XSL generators produce.
+ * Repeated elements are written as one-item array blocks so nothing has to be buffered; missing
+ * optional fields are written as null and missing arrays as empty. Content destined for the
+ * "others" wildcard map is not supported - use {@link DatumBuilder} for schemas built from xs:any.
+ * <p/>
+ * An instance reuses its output buffer, {@link BinaryEncoder} and XML parser between documents
+ * and is therefore not thread-safe.
+ */
+public class DirectDatumEncoder extends DefaultHandler {
+    private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+    private static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+
+    private final EncodingPlan plan;
+    private final Buffer buffer = new Buffer();
+    private BinaryEncoder encoder;
+    private XMLReader reader;
+    private final byte[] decimal = new byte[8];
+
+    private Frame[] frames = new Frame[16];
+    private int depth;
+    // elements nested inside a primitive value only contribute their text
+    private int textDepth;
+
+    public DirectDatumEncoder(EncodingPlan plan) {
+        this.plan = plan;
+    }
+
+    public DirectDatumEncoder(Schema schema) {
+        this(new EncodingPlan(schema));
+    }
+
+    public EncodingPlan getPlan() { return plan; }
+
+    public ByteBuffer encode(String xml) { return encode(new InputSource(new StringReader(xml))); }
+    public ByteBuffer encode(Reader reader) { return encode(new InputSource(reader)); }
+    public ByteBuffer encode(InputStream stream) { return encode(new InputSource(stream)); }
+
+    /**
+     * Parses the source and returns its Avro binary encoding. The returned buffer wraps storage
+     * owned by this encoder and is only valid until the next document is encoded.
+     */
+    public ByteBuffer encode(InputSource source) {
+        try {
+            getReader().parse(source);
+        } catch (SAXException e) {
+            throw new ConverterException(e);
+        } catch (IOException e) {
+            throw new ConverterException(e);
+        }
+        return getEncoded();
+    }
+
+    /**
+     * Encodes the document and appends it to a shared container file as one datum.
+     */
+    public void append(DataFileWriter<?> writer, String xml) throws IOException {
+        writer.appendEncoded(encode(xml));
+    }
+
+    public void append(DataFileWriter<?> writer, InputSource source) throws IOException {
+        writer.appendEncoded(encode(source));
+    }
+
+    /**
+     * Returns the encoding of the most recently completed document. Use this when the encoder is
+     * fed SAX events directly rather than through {@link #encode(InputSource)}.
+     */
+    public ByteBuffer getEncoded() { return buffer.toByteBuffer(); }
+
+    private XMLReader getReader() {
+        if (reader == null) {
+            try {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setNamespaceAware(true);
+                reader = factory.newSAXParser().getXMLReader();
+            } catch (ParserConfigurationException e) {
+                throw new ConverterException(e);
+            } catch (SAXException e) {
+                throw new ConverterException(e);
+            }
+            reader.setContentHandler(this);
+        }
+        return reader;
+    }
+
+    @Override
+    public void startDocument() {
+        buffer.reset();
+        encoder = EncoderFactory.get().binaryEncoder(buffer, encoder);
+        depth = 0;
+        textDepth = 0;
+    }
+
+    @Override
+    public void endDocument() {
+        try {
+            while (depth > 0) {
+                Frame frame = frames[depth - 1];
+                if (frame.element) throw new ConverterException("Unexpected end of document inside " + frame);
+                finishRecord(frame);
+                depth--;
+            }
+            encoder.flush();
+        } catch (IOException e) {
+            throw new ConverterException(e);
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if (depth > 0 && (textDepth > 0 || frames[depth - 1].value != null)) {
+            textDepth++;
+            return;
+        }
+
+        String name = plan.key(localName.length() > 0 ? localName : qName);
+        try {
+            if (depth == 0) {
+                RecordPlan root = plan.getRoot();
+                if (root.document)
+                    startChild(push(root, false), name, attributes);
+                else
+                    setAttributes(push(root, true), attributes);
+            } else
+                startChild(frames[depth - 1], name, attributes);
+        } catch (IOException e) {
+            throw new ConverterException(e);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if (textDepth > 0) {
+            textDepth--;
+            return;
+        }
+
+        try {
+            Frame frame = frames[--depth];
+            if (frame.value != null)
+                writePrimitive(frame.value, frame.text);
+            else
+                finishRecord(frame);
+
+            // a group item holds exactly one member element, so it is complete as well
+            if (depth > 0 && frames[depth - 1].groupItem)
+                finishRecord(frames[--depth]);
+        } catch (IOException e) {
+            throw new ConverterException(e);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (depth > 0 && frames[depth - 1].value != null)
+            frames[depth - 1].text.append(ch, start, length);
+    }
+
+    private void startChild(Frame parent, String name, Attributes attributes) throws IOException {
+        RecordPlan record = parent.record;
+
+        FieldPlan field = record.elements.get(name);
+        if (field != null) {
+            advanceTo(parent, field);
+            startValue(field.value, attributes);
+            return;
+        }
+
+        // member of a repeating group: each occurrence becomes one item of the group array
+        FieldPlan group = record.nested.get(name);
+        if (group != null) {
+            advanceTo(parent, group);
+            if (group.value.optional) encoder.writeIndex(1);
+
+            Frame item = push(group.value.record, false);
+            item.groupItem = true;
+
+            FieldPlan member = item.record.elements.get(name);
+            advanceTo(item, member);
+            startValue(member.value, attributes);
+            return;
+        }
+
+        if (record.wildcard)
+            throw new ConverterException("Element " + name + " maps to the wildcard field of " + record.schema.getName() + ", which the direct encoder does not support");
+        throw new ConverterException("Could not find field " + name + " in Avro Schema " + record.schema.getName() + " , neither as specific field nor 'any' element");
+    }
+
+    private void startValue(ValuePlan value, Attributes attributes) throws IOException {
+        if (value.optional) encoder.writeIndex(1);
+
+        if (value.record != null)
+            setAttributes(push(value.record, true), attributes);
+        else
+            push(value);
+    }
+
+    private void setAttributes(Frame frame, Attributes attributes) {
+        for (int i = 0; i < attributes.getLength(); i++) {
+            String uri = attributes.getURI(i);
+            if (XSI_NAMESPACE.equals(uri) || XMLNS_NAMESPACE.equals(uri)) continue;
+
+            String name = attributes.getQName(i);
+            if (name.length() == 0) name = attributes.getLocalName(i);
+            if (name.equals("xml:lang") || name.equals("xmlns") || name.startsWith("xmlns:")) continue;
+
+            FieldPlan field = frame.record.attributes.get(plan.key(name));
+            if (field == null) throw new ConverterException("Unsupported attribute " + name);
+
+            frame.attributes[field.index] = attributes.getValue(i);
+        }
+    }
+
+    /**
+     * Moves the record frame up to the given field, writing defaults for the skipped fields. For
+     * array fields an item header is written, so the caller can encode the item right away.
+     */
+    private void advanceTo(Frame frame, FieldPlan field) throws IOException {
+        if (frame.openArray == field) {
+            encoder.setItemCount(1);
+            encoder.startItem();
+            return;
+        }
+
+        if (field.index < frame.next)
+            throw new ConverterException("Element " + field + " of " + frame.record.schema.getName() + " is out of schema order");
+
+        closeArray(frame);
+        skipTo(frame, field.index);
+        frame.next = field.index + 1;
+
+        if (field.array) {
+            encoder.writeArrayStart();
+            encoder.setItemCount(1);
+            encoder.startItem();
+            frame.openArray = field;
+        }
+    }
+
+    private void finishRecord(Frame frame) throws IOException {
+        closeArray(frame);
+        skipTo(frame, frame.record.fields.length);
+    }
+
+    private void closeArray(Frame frame) throws IOException {
+        if (frame.openArray == null) return;
+
+        encoder.writeArrayEnd();
+        frame.openArray = null;
+    }
+
+    private void skipTo(Frame frame, int end) throws IOException {
+        for (int i = frame.next; i < end; i++) {
+            FieldPlan field = frame.record.fields[i];
+
+            if (field.attribute && frame.attributes[i] != null) {
+                if (field.value.optional) encoder.writeIndex(1);
+                writePrimitive(field.value, frame.attributes[i]);
+            } else if (field.array) {
+                encoder.writeArrayStart();
+                encoder.writeArrayEnd();
+            } else if (field.wildcard) {
+                encoder.writeMapStart();
+                encoder.writeMapEnd();
+            } else if (field.value.optional) {
+                encoder.writeIndex(0);
+                encoder.writeNull();
+            } else if (field.value.type == Schema.Type.NULL)
+                encoder.writeNull();
+            else
+                throw new ConverterException("Missing value for mandatory field " + field + " of " + frame.record.schema.getName());
+        }
+        if (end > frame.next) frame.next = end;
+    }
+
+    private void writePrimitive(ValuePlan value, CharSequence text) throws IOException {
+        if (value.logicalType != null) {
+            if (LogicalValues.DATE.equals(value.logicalType)) {
+                encoder.writeInt(LogicalValues.parseDate(text));
+                return;
+            }
+            if (LogicalValues.TIME_MILLIS.equals(value.logicalType)) {
+                encoder.writeInt(LogicalValues.parseTime(text));
+                return;
+            }
+            if (LogicalValues.DECIMAL.equals(value.logicalType)) {
+                if (LogicalValues.significantDigits(text) + value.scale > 18)
+                    encoder.writeBytes(LogicalValues.createDecimal(text.toString(), value.scale));
+                else
+                    encoder.writeBytes(decimal, 0, LogicalValues.toBytes(LogicalValues.parseUnscaled(text, value.scale), decimal));
+                return;
+            }
+        }
+        writePrimitive(value.type, text.toString());
+    }
+
+    private void writePrimitive(Schema.Type type, String text) throws IOException {
+        switch (type) {
+            case BOOLEAN: encoder.writeBoolean("true".equals(text) || "1".equals(text)); break;
+            case INT: encoder.writeInt(Integer.parseInt(text)); break;
+            case LONG: encoder.writeLong(text.contains("T") ? DatumBuilder.parseDateTime(text) : Long.parseLong(text)); break;
+            case FLOAT: encoder.writeFloat(Float.parseFloat(text)); break;
+            case DOUBLE: encoder.writeDouble(Double.parseDouble(text)); break;
+            case STRING: encoder.writeString(text); break;
+            case NULL: encoder.writeNull(); break;
+            default: throw new ConverterException("Unsupported type " + type);
+        }
+    }
+
+    private Frame push(RecordPlan record, boolean element) {
+        Frame frame = push();
+        frame.record = record;
+        frame.element = element;
+        if (record.hasAttributes) {
+            if (frame.attributes == null || frame.attributes.length < record.fields.length)
+                frame.attributes = new String[record.fields.length];
+            else
+                Arrays.fill(frame.attributes, null);
+        }
+        return frame;
+    }
+
+    private Frame push(ValuePlan value) {
+        Frame frame = push();
+        frame.value = value;
+        frame.element = true;
+        return frame;
+    }
+
+    private Frame push() {
+        if (depth == frames.length) frames = Arrays.copyOf(frames, depth * 2);
+
+        Frame frame = frames[depth];
+        if (frame == null) frame = frames[depth] = new Frame();
+        depth++;
+
+        frame.record = null;
+        frame.value = null;
+        frame.openArray = null;
+        frame.next = 0;
+        frame.groupItem = false;
+        frame.text.setLength(0);
+        return frame;
+    }
+
+    private static class Frame {
+        RecordPlan record;
+        ValuePlan value;
+        FieldPlan openArray;
+        String[] attributes;
+        final StringBuilder text = new StringBuilder();
+        int next;
+        boolean element;
+        boolean groupItem;
+
+        public String toString() { return record != null ? record.schema.getName() : value.type.toString(); }
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        ByteBuffer toByteBuffer() { return ByteBuffer.wrap(buf, 0, count); }
+    }
+}
@@ -0,0 +1,277 @@
+package com.org.util.tools.xmltoavro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Schema-compiled lookup tables used by {@link DirectDatumEncoder}.
+ * <p/>
+ * {@link DatumBuilder} resolves every XML element by scanning the fields of the current record
+ * and comparing their "source" props. The plan does that work once per schema: each record gets
+ * positional field descriptors plus hash lookups for elements, attributes and the nested group
+ * arrays created by {@link SchemaBuilder} for repeating sequences. A plan is immutable and can be
+ * shared by any number of encoders.
+ * <p/>
+ * The lookup tables can be written next to the .avsc with {@link #write} and restored with
+ * {@link #read}, which trusts the tables instead of inspecting the "source" props again.
+ */
+public class EncodingPlan {
+    public static final String EXTENSION = ".plan";
+    private static final String HEADER = "EncodingPlan";
+
+    private final Schema schema;
+    private final boolean caseSensitiveNames;
+    private final Map<Schema, RecordPlan> records = new IdentityHashMap<Schema, RecordPlan>();
+    private final List<RecordPlan> order = new ArrayList<RecordPlan>();
+    private final Map<String, Table> tables;
+    private final ValuePlan root;
+
+    public EncodingPlan(Schema schema) { this(schema, true); }
+
+    public EncodingPlan(Schema schema, boolean caseSensitiveNames) { this(schema, caseSensitiveNames, null); }
+
+    private EncodingPlan(Schema schema, boolean caseSensitiveNames, Map<String, Table> tables) {
+        this.schema = schema;
+        this.caseSensitiveNames = caseSensitiveNames;
+        this.tables = tables;
+        this.root = compileValue(schema);
+        if (root.record == null) throw new ConverterException("Root schema must be a record, not " + schema.getType());
+    }
+
+    /**
+     * Restores a plan written by {@link #write} for the same schema.
+     */
+    public static EncodingPlan read(Schema schema, Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        String[] header = split(in.readLine());
+        if (header.length != 3 || !HEADER.equals(header[0])) throw new ConverterException("Not an encoding plan");
+        if (!header[1].equals(fingerprint(schema))) throw new ConverterException("Encoding plan was written for another schema");
+
+        Map<String, Table> tables = new HashMap<String, Table>();
+        Table table = null;
+        for (String line; (line = in.readLine()) != null; ) {
+            if (line.length() == 0) continue;
+            String[] fields = split(line);
+            if (fields.length != 3) throw new ConverterException("Malformed encoding plan line: " + line);
+
+            char kind = fields[0].charAt(0);
+            if (kind == 'R') {
+                table = new Table(fields[2]);
+                tables.put(fields[1], table);
+                continue;
+            }
+            if (table == null) throw new ConverterException("Malformed encoding plan line: " + line);
+
+            Integer index = Integer.valueOf(fields[2]);
+            switch (kind) {
+                case 'E': table.elements.put(fields[1], index); break;
+                case 'A': table.attributes.put(fields[1], index); break;
+                case 'N': table.nested.put(fields[1], index); break;
+                default: throw new ConverterException("Malformed encoding plan line: " + line);
+            }
+        }
+
+        return new EncodingPlan(schema, Boolean.parseBoolean(header[2]), tables);
+    }
+
+    public void write(Writer writer) throws IOException {
+        writer.write(HEADER + "\t" + fingerprint(schema) + "\t" + caseSensitiveNames + "\n");
+        for (RecordPlan plan : order) {
+            writer.write("R\t" + plan.schema.getFullName() + "\t" + (plan.document ? "d" : "") + (plan.wildcard ? "w" : "") + "\n");
+            for (Map.Entry<String, FieldPlan> entry : plan.elements.entrySet())
+                writer.write("E\t" + entry.getKey() + "\t" + entry.getValue().index + "\n");
+            for (Map.Entry<String, FieldPlan> entry : plan.attributes.entrySet())
+                writer.write("A\t" + entry.getKey() + "\t" + entry.getValue().index + "\n");
+            for (Map.Entry<String, FieldPlan> entry : plan.nested.entrySet())
+                writer.write("N\t" + entry.getKey() + "\t" + entry.getValue().index + "\n");
+        }
+        writer.flush();
+    }
+
+    // the props carry the XML names, so they are part of the fingerprint
+    static String fingerprint(Schema schema) {
+        try { return Long.toHexString(SchemaNormalization.fingerprint64(schema.toString().getBytes("UTF-8"))); }
+        catch (java.io.UnsupportedEncodingException impossible) { throw new ConverterException(impossible); }
+    }
+
+    private static String[] split(String line) {
+        if (line == null) return new String[0];
+        return line.split("\t", -1);
+    }
+
+    public Schema getSchema() { return schema; }
+    public boolean isCaseSensitiveNames() { return caseSensitiveNames; }
+
+    RecordPlan getRoot() { return root.record; }
+
+    String key(String name) { return caseSensitiveNames ? name : name.toLowerCase(); }
+
+    private ValuePlan compileValue(Schema schema) {
+        boolean optional = false;
+
+        if (schema.getType() == Schema.Type.UNION) {
+            List<Schema> types = schema.getTypes();
+            if (types.size() != 2 || types.get(0).getType() != Schema.Type.NULL)
+                throw new ConverterException("Unsupported union types " + types);
+            optional = true;
+            schema = types.get(1);
+        }
+
+        switch (schema.getType()) {
+            case RECORD: return new ValuePlan(schema, optional, compileRecord(schema));
+            case STRING: case INT: case LONG: case FLOAT: case DOUBLE: case BOOLEAN: case NULL:
+                return new ValuePlan(schema, optional, null);
+            case BYTES:
+                if (LogicalValues.DECIMAL.equals(LogicalValues.getLogicalType(schema))) return new ValuePlan(schema, optional, null);
+                throw new ConverterException("Unsupported schema type " + schema.getType());
+            default:
+                throw new ConverterException("Unsupported schema type " + schema.getType());
+        }
+    }
+
+    private RecordPlan compileRecord(Schema schema) {
+        RecordPlan plan = records.get(schema);
+        if (plan != null) return plan;
+
+        plan = new RecordPlan(schema);
+        records.put(schema, plan);
+        order.add(plan);
+
+        List<Schema.Field> fields = schema.getFields();
+        plan.fields = new FieldPlan[fields.size()];
+
+        for (Schema.Field field : fields) {
+            FieldPlan fieldPlan = new FieldPlan(field);
+            plan.fields[field.pos()] = fieldPlan;
+
+            if (field.name().equals(Source.WILDCARD)) {
+                fieldPlan.wildcard = true;
+                continue;
+            }
+
+            Schema fieldSchema = field.schema();
+            fieldPlan.array = fieldSchema.getType() == Schema.Type.ARRAY;
+            fieldPlan.value = compileValue(fieldPlan.array ? fieldSchema.getElementType() : fieldSchema);
+            if (tables != null) continue;
+
+            String source = field.getProp(Source.SOURCE);
+            if (source == null) continue;
+
+            if (source.startsWith("attribute ")) {
+                fieldPlan.attribute = true;
+                plan.attributes.put(key(source.substring("attribute ".length())), fieldPlan);
+                plan.hasAttributes = true;
+            } else if (source.startsWith("element "))
+                plan.elements.put(key(source.substring("element ".length())), fieldPlan);
+        }
+
+        if (tables != null) return restoreRecord(plan);
+
+        // repeating groups: an element not declared on the record itself may be the member of
+        // an anonymous group record held in an array field (see DatumBuilder.getNestedFieldBySource)
+        for (FieldPlan fieldPlan : plan.fields) {
+            if (!fieldPlan.array || fieldPlan.value.record == null || fieldPlan.value.record.fields == null) continue;
+
+            for (FieldPlan member : fieldPlan.value.record.fields) {
+                String source = member.field.getProp(Source.SOURCE);
+                if (source == null || !source.startsWith("element ")) continue;
+
+                String name = key(source.substring("element ".length()));
+                if (!plan.nested.containsKey(name)) plan.nested.put(name, fieldPlan);
+            }
+        }
+
+        plan.wildcard = schema.getField(Source.WILDCARD) != null;
+        plan.document = Source.DOCUMENT.equals(schema.getProp(Source.SOURCE));
+        return plan;
+    }
+
+    private RecordPlan restoreRecord(RecordPlan plan) {
+        Table table = tables.get(plan.schema.getFullName());
+        if (table == null) throw new ConverterException("Encoding plan has no record " + plan.schema.getFullName());
+
+        for (Map.Entry<String, Integer> entry : table.elements.entrySet())
+            plan.elements.put(entry.getKey(), restoreField(plan, entry.getValue()));
+        for (Map.Entry<String, Integer> entry : table.attributes.entrySet()) {
+            FieldPlan fieldPlan = restoreField(plan, entry.getValue());
+            fieldPlan.attribute = true;
+            plan.attributes.put(entry.getKey(), fieldPlan);
+            plan.hasAttributes = true;
+        }
+        for (Map.Entry<String, Integer> entry : table.nested.entrySet())
+            plan.nested.put(entry.getKey(), restoreField(plan, entry.getValue()));
+
+        plan.wildcard = table.flags.indexOf('w') != -1;
+        plan.document = table.flags.indexOf('d') != -1;
+        return plan;
+    }
+
+    private FieldPlan restoreField(RecordPlan plan, int index) {
+        if (index < 0 || index >= plan.fields.length)
+            throw new ConverterException("Encoding plan field " + index + " out of range for " + plan.schema.getFullName());
+        return plan.fields[index];
+    }
+
+    private static class Table {
+        final String flags;
+        final Map<String, Integer> elements = new HashMap<String, Integer>();
+        final Map<String, Integer> attributes = new HashMap<String, Integer>();
+        final Map<String, Integer> nested = new HashMap<String, Integer>();
+
+        Table(String flags) { this.flags = flags; }
+    }
+
+    static class ValuePlan {
+        final Schema schema;
+        final Schema.Type type;
+        final boolean optional;
+        final RecordPlan record;
+        final String logicalType;
+        // the scale of the text, see LogicalValues.getTextScale
+        final int scale;
+
+        ValuePlan(Schema schema, boolean optional, RecordPlan record) {
+            this.schema = schema;
+            this.type = schema.getType();
+            this.optional = optional;
+            this.record = record;
+            this.logicalType = LogicalValues.getLogicalType(schema);
+            this.scale = LogicalValues.getTextScale(schema);
+        }
+    }
+
+    static class FieldPlan {
+        final Schema.Field field;
+        final int index;
+        boolean array;
+        boolean attribute;
+        boolean wildcard;
+        ValuePlan value;
+
+        FieldPlan(Schema.Field field) {
+            this.field = field;
+            this.index = field.pos();
+        }
+
+        public String toString() { return field.name(); }
+    }
+
+    static class RecordPlan {
+        final Schema schema;
+        FieldPlan[] fields;
+        final Map<String, FieldPlan> elements = new HashMap<String, FieldPlan>();
+        final Map<String, FieldPlan> attributes = new HashMap<String, FieldPlan>();
+        final Map<String, FieldPlan> nested = new HashMap<String, FieldPlan>();
+        boolean hasAttributes;
+        boolean wildcard;
+        boolean document;
+
+        RecordPlan(Schema schema) { this.schema = schema; }
+    }
+}
@@ -0,0 +1,195 @@
+package com.org.util.tools.xmltoavro;
+
+import org.apache.avro.Schema;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+/**
+ * Avro logical type support for the schemas {@link SchemaBuilder} creates in logical types mode.
+ * <p/>
+ * The parsers work directly on the element text and do not allocate: EDI dates (CCYYMMDD, YYMMDD
+ * or xs:date CCYY-MM-DD) become days since the epoch, EDI times (HHMM, HHMMSS, HHMMSSD[D], or
+ * xs:time HH:MM:SS.sss) become milliseconds after midnight and decimals become the unscaled long of
+ * the field's fixed scale. Only decimals with more than 18 digits fall back to {@link BigDecimal}.
+ * <p/>
+ * A decimal marked {@link #IMPLIED_SCALE}, from an X12 Nn element, has no decimal point in its text:
+ * the digits are already the unscaled value, so 12345 at scale 2 is 123.45.
+ */
+public class LogicalValues {
+    public static final String LOGICAL_TYPE = "logicalType";
+    public static final String DECIMAL = "decimal";
+    public static final String DATE = "date";
+    public static final String TIME_MILLIS = "time-millis";
+    public static final String PRECISION = "precision";
+    public static final String SCALE = "scale";
+    public static final String IMPLIED_SCALE = "impliedScale";
+
+    /** Two digit years below this value are read as 20YY, the others as 19YY. */
+    public static final int CENTURY_PIVOT = 50;
+
+    private static final long[] POWERS = new long[19];
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) POWERS[i] = POWERS[i - 1] * 10;
+    }
+
+    private LogicalValues() {}
+
+    public static String getLogicalType(Schema schema) { return schema.getProp(LOGICAL_TYPE); }
+
+    public static int getScale(Schema schema) {
+        return schema.getJsonProp(SCALE) != null ? schema.getJsonProp(SCALE).getIntValue() : 0;
+    }
+
+    /** The scale the text of a decimal is written at: 0 for an implied scale, else the scale. */
+    public static int getTextScale(Schema schema) {
+        return schema.getProp(IMPLIED_SCALE) != null ? 0 : getScale(schema);
+    }
+
+    public static int parseDate(CharSequence text) {
+        int year = 0, month = 0, day = 0, digits = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '-' && digits > 0) continue;
+            if (c < '0' || c > '9') throw new ConverterException("Invalid date " + text);
+
+            digits++;
+            int d = c - '0';
+            if (digits <= 4) year = year * 10 + d;
+            else if (digits <= 6) month = month * 10 + d;
+            else if (digits <= 8) day = day * 10 + d;
+            else throw new ConverterException("Invalid date " + text);
+        }
+
+        if (digits == 6) {
+            // YYMMDD: the digits read as year were YYMM and the month digits were DD
+            day = month;
+            month = year % 100;
+            year = year / 100;
+            year += year < CENTURY_PIVOT ? 2000 : 1900;
+        } else if (digits != 8)
+            throw new ConverterException("Invalid date " + text);
+
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) throw new ConverterException("Invalid date " + text);
+        return daysSinceEpoch(year, month, day);
+    }
+
+    static int daysInMonth(int year, int month) {
+        if (month == 2) return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    static int daysSinceEpoch(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    public static int parseTime(CharSequence text) {
+        int hours = 0, minutes = 0, seconds = 0, millis = 0, digits = 0, fraction = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if ((c == ':' || c == '.') && digits > 0) continue;
+            if (c < '0' || c > '9') throw new ConverterException("Invalid time " + text);
+
+            digits++;
+            int d = c - '0';
+            if (digits <= 2) hours = hours * 10 + d;
+            else if (digits <= 4) minutes = minutes * 10 + d;
+            else if (digits <= 6) seconds = seconds * 10 + d;
+            else if (fraction < 3) {
+                millis = millis * 10 + d;
+                fraction++;
+            }
+        }
+
+        if (digits < 4 || digits == 5) throw new ConverterException("Invalid time " + text);
+        for (; fraction < 3; fraction++) millis *= 10;
+
+        if (hours > 23 || minutes > 59 || seconds > 59) throw new ConverterException("Invalid time " + text);
+        return ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+    }
+
+    /**
+     * Returns the unscaled value of the decimal text at the given scale, or throws if the text has
+     * more significant fraction digits than the scale allows or does not fit into a long.
+     */
+    public static long parseUnscaled(CharSequence text, int scale) {
+        int i = 0, length = text.length();
+        boolean negative = false;
+
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+
+        long value = 0;
+        int digits = 0, fraction = -1;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') throw new ConverterException("Invalid decimal " + text);
+
+            if (fraction >= 0 && fraction == scale) {
+                if (c != '0') throw new ConverterException("Decimal " + text + " exceeds scale " + scale);
+                continue;
+            }
+            if (fraction >= 0) fraction++;
+
+            if (value != 0 || c != '0') digits++;
+            if (digits > 18) throw new ConverterException("Decimal " + text + " exceeds 18 digits");
+            value = value * 10 + (c - '0');
+        }
+
+        int pad = scale - Math.max(fraction, 0);
+        if (digits + pad > 18) throw new ConverterException("Decimal " + text + " exceeds 18 digits");
+        value *= POWERS[pad];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Writes the minimal big-endian two's complement representation of the value, as required by
+     * the Avro decimal type, and returns its length.
+     */
+    public static int toBytes(long value, byte[] buf) {
+        int length = 8;
+        while (length > 1) {
+            long top = value >> ((length - 1) * 8 - 1);
+            if (top != 0 && top != -1) break;
+            length--;
+        }
+
+        for (int i = 0; i < length; i++)
+            buf[i] = (byte) (value >> ((length - 1 - i) * 8));
+        return length;
+    }
+
+    public static ByteBuffer createDecimal(String text, int scale) {
+        if (significantDigits(text) + scale > 18) {
+            BigDecimal decimal = new BigDecimal(text).setScale(scale);
+            return ByteBuffer.wrap(decimal.unscaledValue().toByteArray());
+        }
+
+        byte[] buf = new byte[8];
+        int length = toBytes(parseUnscaled(text, scale), buf);
+        return ByteBuffer.wrap(buf, 0, length);
+    }
+
+    static int significantDigits(CharSequence text) {
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '1' && c <= '9' || c == '0' && digits > 0) digits++;
+        }
+        return digits;
+    }
+}
@@ -11,6 +11,7 @@ import org.apache.xerces.xni.parser.XMLErrorHandler;
 import org.apache.xerces.xni.parser.XMLInputSource;
 import org.apache.xerces.xni.parser.XMLParseException;
 import org.apache.xerces.xs.*;
+import org.codehaus.jackson.node.IntNode;
 import org.w3c.dom.DOMError;
 import org.w3c.dom.DOMErrorHandler;
 import org.w3c.dom.DOMLocator;
@@ -22,6 +23,7 @@ import java.util.*;
 public class SchemaBuilder {
     private boolean debug;
     private Resolver resolver;
+    private boolean logicalTypes;
 
     private static Map<Short, Schema.Type> primitives = new HashMap<Short,Schema.Type>();
     static {
@@ -58,6 +60,17 @@ public class SchemaBuilder {
     public Resolver getResolver() { return resolver; }
     public void setResolver(Resolver resolver) { this.resolver = resolver; }
 
+    /**
+     * In logical types mode decimals with a fractionDigits facet become Avro decimals (or int/long
+     * for zero fraction digits), xs:date and xs:time become date and time-millis, and integers are
+     * sized by totalDigits. Decimals marked with an implied scale, X12 Nn elements, become Avro
+     * decimals of that scale read from digits without a decimal point. Decimals with neither, e.g.
+     * X12 R elements, become strings: any number of fraction digits is valid for them and the text
+     * keeps them exact.
+     */
+    public boolean getLogicalTypes() { return logicalTypes; }
+    public void setLogicalTypes(boolean logicalTypes) { this.logicalTypes = logicalTypes; }
+
 
     public Schema createSchema(String xsd) {
         return createSchema(new StringReader(xsd));
@@ -153,7 +166,7 @@ public class SchemaBuilder {
         Schema schema;
 
         if (type.getTypeCategory() == XSTypeDefinition.SIMPLE_TYPE)
-            schema = Schema.create(getPrimitiveType((XSSimpleTypeDefinition) type));
+            schema = logicalTypes ? createLogicalSchema((XSSimpleTypeDefinition) type) : Schema.create(getPrimitiveType((XSSimpleTypeDefinition) type));
         else {
             String name = typeName(type);
             debug("Creating schema for " + (type.getAnonymous() ? "anonymous type " + name : "type " + type.getName()));
@@ -306,6 +319,69 @@ public class SchemaBuilder {
         return avroType == null ? Schema.Type.STRING : avroType;
     }
 
+    private Schema createLogicalSchema(XSSimpleTypeDefinition type) {
+        int totalDigits = getFacet(type, XSSimpleTypeDefinition.FACET_TOTALDIGITS, 0);
+
+        switch (type.getBuiltInKind()) {
+            case XSConstants.DATE_DT:
+                return createLogicalSchema(Schema.Type.INT, LogicalValues.DATE);
+            case XSConstants.TIME_DT:
+                return createLogicalSchema(Schema.Type.INT, LogicalValues.TIME_MILLIS);
+            case XSConstants.DECIMAL_DT:
+                int implied = getImpliedScale(type);
+                if (implied > 0) {
+                    Schema schema = createDecimalSchema(totalDigits, implied);
+                    schema.addProp(LogicalValues.IMPLIED_SCALE, "true");
+                    return schema;
+                }
+                int scale = getFacet(type, XSSimpleTypeDefinition.FACET_FRACTIONDIGITS, -1);
+                if (scale < 0) return Schema.create(Schema.Type.STRING);
+                if (scale == 0) return Schema.create(totalDigits > 0 && totalDigits <= 9 ? Schema.Type.INT : Schema.Type.LONG);
+                return createDecimalSchema(totalDigits, scale);
+            case XSConstants.LONG_DT:
+            case XSConstants.INTEGER_DT:
+            case XSConstants.NEGATIVEINTEGER_DT:
+            case XSConstants.NONNEGATIVEINTEGER_DT:
+            case XSConstants.POSITIVEINTEGER_DT:
+            case XSConstants.NONPOSITIVEINTEGER_DT:
+                return Schema.create(totalDigits > 0 && totalDigits <= 9 ? Schema.Type.INT : Schema.Type.LONG);
+            default:
+                return Schema.create(getPrimitiveType(type));
+        }
+    }
+
+    private Schema createDecimalSchema(int totalDigits, int scale) {
+        Schema schema = createLogicalSchema(Schema.Type.BYTES, LogicalValues.DECIMAL);
+        schema.addProp(LogicalValues.PRECISION, IntNode.valueOf(Math.max(totalDigits > 0 ? totalDigits : 18, scale)));
+        schema.addProp(LogicalValues.SCALE, IntNode.valueOf(scale));
+        return schema;
+    }
+
+    private Schema createLogicalSchema(Schema.Type type, String logicalType) {
+        Schema schema = Schema.create(type);
+        schema.addProp(LogicalValues.LOGICAL_TYPE, logicalType);
+        return schema;
+    }
+
+    private int getFacet(XSSimpleTypeDefinition type, short facet, int defaultValue) {
+        String value = type.getLexicalFacetValue(facet);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    // the scale XsdGen writes as appinfo for Nn elements, 0 when there is none
+    private int getImpliedScale(XSSimpleTypeDefinition type) {
+        String marker = "source=\"" + LogicalValues.IMPLIED_SCALE + "\"";
+        XSObjectList annotations = type.getAnnotations();
+        for (int i = 0; i < annotations.getLength(); i++) {
+            String annotation = ((XSAnnotation) annotations.item(i)).getAnnotationString();
+            int at = annotation.indexOf(marker);
+            if (at < 0) continue;
+            int start = annotation.indexOf('>', at) + 1;
+            return Integer.parseInt(annotation.substring(start, annotation.indexOf('<', start)).trim());
+        }
+        return 0;
+    }
+
     static String uniqueFieldName(Iterable<Schema.Field> fields, String name) {
         int duplicates = 0;
 
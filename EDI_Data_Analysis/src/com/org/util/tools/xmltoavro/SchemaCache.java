@@ -0,0 +1,329 @@
+package com.org.util.tools.xmltoavro;
+
+import org.apache.avro.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed cache of compiled Avro schemas.
+ * <p/>
+ * The key is a SHA-1 digest over the XSD bytes and, recursively, the bytes of every document it
+ * pulls in through xs:include / xs:import / xs:redefine, so a schema is recompiled only when the
+ * XSD or one of its includes changes. Compiled schemas are kept in memory together with their
+ * {@link EncodingPlan} and persisted as "&lt;digest&gt;.avsc" and "&lt;digest&gt;.plan" files under a
+ * cache directory, which can be on the local file system or on HDFS so that job launches share the
+ * result. A persisted plan is only used for the schema whose fingerprint it records.
+ * <p/>
+ * Includes are read through the configured {@link SchemaBuilder.Resolver}; when a file is given and
+ * no resolver is set, includes are looked up relative to the file's directory.
+ */
+public class SchemaCache {
+    public static final String EXTENSION = ".avsc";
+
+    private static final Pattern LOCATION = Pattern.compile("<(?:\\w+:)?(?:include|import|redefine)\\b[^>]*?\\bschemaLocation\\s*=\\s*[\"']([^\"']+)[\"']");
+
+    private final Path dir;
+    private final FileSystem fs;
+    private SchemaBuilder.Resolver resolver;
+    private boolean debug;
+    private boolean logicalTypes;
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * Creates an in-memory only cache.
+     */
+    public SchemaCache() {
+        this.dir = null;
+        this.fs = null;
+    }
+
+    public SchemaCache(Path dir, Configuration conf) throws IOException {
+        this.dir = dir;
+        this.fs = dir.getFileSystem(conf);
+    }
+
+    public SchemaCache(File dir) throws IOException {
+        this(new Path(dir.toURI()), new Configuration());
+    }
+
+    public Path getDir() { return dir; }
+
+    public SchemaBuilder.Resolver getResolver() { return resolver; }
+    public void setResolver(SchemaBuilder.Resolver resolver) { this.resolver = resolver; }
+
+    public boolean getDebug() { return debug; }
+    public void setDebug(boolean debug) { this.debug = debug; }
+
+    // see SchemaBuilder.setLogicalTypes; part of the cache key
+    public boolean getLogicalTypes() { return logicalTypes; }
+    public void setLogicalTypes(boolean logicalTypes) { this.logicalTypes = logicalTypes; }
+
+    public Schema getSchema(String xsd) {
+        try { return getEntry(xsd.getBytes("UTF-8"), resolver).schema; }
+        catch (UnsupportedEncodingException impossible) { throw new ConverterException(impossible); }
+    }
+
+    public Schema getSchema(File file) throws IOException {
+        return getEntry(readFully(new FileInputStream(file)), resolver != null ? resolver : new DirResolver(file.getParentFile())).schema;
+    }
+
+    public Schema getSchema(InputStream stream) throws IOException {
+        return getEntry(readFully(stream), resolver).schema;
+    }
+
+    public Schema getSchema(Reader reader) throws IOException {
+        return getSchema(readFully(reader));
+    }
+
+    /**
+     * Returns the encoding plan of a schema obtained from this cache, compiling it on first use.
+     */
+    public EncodingPlan getPlan(Schema schema) {
+        synchronized (entries) {
+            for (Entry entry : entries.values())
+                if (entry.schema == schema) return getPlan(entry);
+        }
+        return new EncodingPlan(schema);
+    }
+
+    public EncodingPlan getPlan(String xsd) {
+        try { return getPlan(getEntry(xsd.getBytes("UTF-8"), resolver)); }
+        catch (UnsupportedEncodingException impossible) { throw new ConverterException(impossible); }
+    }
+
+    public EncodingPlan getPlan(File file) throws IOException {
+        return getPlan(getEntry(readFully(new FileInputStream(file)), resolver != null ? resolver : new DirResolver(file.getParentFile())));
+    }
+
+    // the plan is loaded or compiled once per entry and persisted next to its schema
+    private EncodingPlan getPlan(Entry entry) {
+        synchronized (entry) {
+            if (entry.plan == null) {
+                entry.plan = loadPlan(entry.key, entry.schema);
+                if (entry.plan == null) {
+                    entry.plan = new EncodingPlan(entry.schema);
+                    storePlan(entry.key, entry.plan);
+                }
+            }
+            return entry.plan;
+        }
+    }
+
+    /**
+     * Drops the in-memory entries; persisted schemas are kept.
+     */
+    public void clear() {
+        synchronized (entries) { entries.clear(); }
+    }
+
+    private Entry getEntry(byte[] xsd, SchemaBuilder.Resolver resolver) {
+        String key = digest(xsd, resolver) + (logicalTypes ? "-logical" : "");
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) return entry;
+        }
+
+        Schema schema = load(key);
+        if (schema == null) {
+            debug("Compiling schema " + key);
+            SchemaBuilder builder = new SchemaBuilder();
+            builder.setDebug(debug);
+            builder.setResolver(resolver);
+            builder.setLogicalTypes(logicalTypes);
+            schema = builder.createSchema(new ByteArrayInputStream(xsd));
+            try { store(key, EXTENSION, schema.toString(true).getBytes("UTF-8")); }
+            catch (UnsupportedEncodingException impossible) { throw new ConverterException(impossible); }
+        }
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, schema);
+                entries.put(key, entry);
+            }
+            return entry;
+        }
+    }
+
+    private Schema load(String key) {
+        if (fs == null) return null;
+
+        Path file = new Path(dir, key + EXTENSION);
+        FSDataInputStream in = null;
+        try {
+            if (!fs.exists(file)) return null;
+            in = fs.open(file);
+            debug("Loading cached schema " + file);
+            return new Schema.Parser().parse(in);
+        } catch (IOException e) {
+            // an unreadable entry is simply compiled again
+            debug("Ignoring cached schema " + file + ": " + e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private EncodingPlan loadPlan(String key, Schema schema) {
+        if (fs == null) return null;
+
+        Path file = new Path(dir, key + EncodingPlan.EXTENSION);
+        Reader in = null;
+        try {
+            if (!fs.exists(file)) return null;
+            in = new InputStreamReader(fs.open(file), "UTF-8");
+            debug("Loading cached encoding plan " + file);
+            return EncodingPlan.read(schema, in);
+        } catch (IOException e) {
+            debug("Ignoring cached encoding plan " + file + ": " + e);
+            return null;
+        } catch (ConverterException e) {
+            // written for another schema or damaged, compiled again
+            debug("Ignoring cached encoding plan " + file + ": " + e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void storePlan(String key, EncodingPlan plan) {
+        if (fs == null) return;
+
+        StringWriter text = new StringWriter();
+        try {
+            plan.write(text);
+            store(key, EncodingPlan.EXTENSION, text.toString().getBytes("UTF-8"));
+        } catch (IOException e) {
+            debug("Could not store encoding plan " + key + ": " + e);
+        }
+    }
+
+    private void store(String key, String extension, byte[] content) {
+        if (fs == null) return;
+
+        // written under a temporary name and renamed, so concurrent readers never see a partial file
+        Path file = new Path(dir, key + extension);
+        Path tmp = new Path(dir, "." + key + "." + UUID.randomUUID() + ".tmp");
+        FSDataOutputStream out = null;
+        try {
+            fs.mkdirs(dir);
+            out = fs.create(tmp, true);
+            out.write(content);
+            out.close();
+            out = null;
+
+            if (!fs.rename(tmp, file)) fs.delete(tmp, false);
+        } catch (IOException e) {
+            // the cache is an optimization only
+            debug("Could not store " + file + ": " + e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    static String digest(byte[] xsd, SchemaBuilder.Resolver resolver) {
+        MessageDigest digest;
+        try { digest = MessageDigest.getInstance("SHA-1"); }
+        catch (NoSuchAlgorithmException impossible) { throw new ConverterException(impossible); }
+
+        update(digest, xsd, resolver, new HashSet<String>());
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16));
+            key.append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    private static void update(MessageDigest digest, byte[] xsd, SchemaBuilder.Resolver resolver, Set<String> visited) {
+        digest.update(xsd);
+        if (resolver == null) return;
+
+        String text;
+        try { text = new String(xsd, "ISO-8859-1"); }
+        catch (UnsupportedEncodingException impossible) { throw new ConverterException(impossible); }
+
+        Matcher matcher = LOCATION.matcher(text);
+        while (matcher.find()) {
+            String location = matcher.group(1);
+            if (!visited.add(location)) continue;
+
+            InputStream stream = resolver.getStream(location);
+            if (stream == null) continue;
+
+            try { update(digest, readFully(stream), resolver, visited); }
+            catch (IOException e) { throw new ConverterException(e); }
+        }
+    }
+
+    private static byte[] readFully(InputStream stream) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = stream.read(buf)) != -1) out.write(buf, 0, n);
+            return out.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static String readFully(Reader reader) throws IOException {
+        try {
+            StringBuilder out = new StringBuilder();
+            char[] buf = new char[8192];
+            int n;
+            while ((n = reader.read(buf)) != -1) out.append(buf, 0, n);
+            return out.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try { closeable.close(); }
+        catch (IOException ignore) { }
+    }
+
+    private void debug(String s) {
+        if (debug) System.out.println(s);
+    }
+
+    private static class Entry {
+        final String key;
+        final Schema schema;
+        EncodingPlan plan;
+
+        Entry(String key, Schema schema) {
+            this.key = key;
+            this.schema = schema;
+        }
+    }
+
+    private static class DirResolver implements SchemaBuilder.Resolver {
+        private File dir;
+        private DirResolver(File dir) { this.dir = dir; }
+
+        public InputStream getStream(String systemId) {
+            File file = new File(systemId);
+            if (!file.isAbsolute()) file = new File(dir, systemId);
+
+            try { return new FileInputStream(file); }
+            catch (FileNotFoundException e) { return null; }
+        }
+    }
+}